@@ -0,0 +1,124 @@
+import benchmarks.GameHandle;
+import java.awt.Graphics;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.function.Consumer;
+
+/**
+ * Gli handle che espongono ai benchmark le classi del package di default
+ */
+public final class GameHandles implements GameHandle {
+    /** Il motore misurato */
+    private final GameEngine engine;
+
+    private GameHandles(GameEngine engine) {
+        this.engine = engine;
+    }
+
+    /**
+     * Crea un motore con le dimensioni indicate
+     *
+     * @param rows il numero di righe
+     * @param cols il numero di colonne
+     *
+     * @return l'handle del motore
+     */
+    public static GameHandle engine(int rows, int cols) {
+        return new GameHandles(new GameEngine(rows, cols));
+    }
+
+    /**
+     * Crea il pannello del gioco, già dimensionato, senza aggiungerlo a una finestra
+     *
+     * @param width la larghezza in pixel
+     * @param height l'altezza in pixel
+     *
+     * @return la funzione che disegna il pannello
+     */
+    public static Consumer<Graphics> panel(int width, int height) {
+        RogueLikeGame game = new RogueLikeGame(width, height);
+        game.setSize(width, height);
+        return game::paint;
+    }
+
+    /**
+     * Crea il pannello del gioco con livelli di dimensioni indipendenti dalla finestra
+     *
+     * @param width la larghezza in pixel
+     * @param height l'altezza in pixel
+     * @param levelRows il numero di righe del livello
+     * @param levelCols il numero di colonne del livello
+     *
+     * @return la funzione che disegna il pannello
+     */
+    public static Consumer<Graphics> panel(int width, int height, int levelRows, int levelCols) {
+        RogueLikeGame game = new RogueLikeGame(width, height, levelRows, levelCols);
+        game.setSize(width, height);
+        return game::paint;
+    }
+
+    /**
+     * Crea la generazione di una mappa intera, in un solo blocco, con un generatore di mappe
+     *
+     * @param name il nome del generatore: rooms, bsp o caves
+     * @param rows il numero di righe
+     * @param cols il numero di colonne
+     *
+     * @return la funzione che genera una mappa nuova, con un seme diverso a ogni chiamata
+     */
+    public static Runnable generator(String name, int rows, int cols) {
+        MapGenerator generator = MapGenerator.forName(name);
+        DungeonMap map = new DungeonMap(rows, cols);
+        Random random = new Random(0);
+        return () -> {
+            map.clear();
+            generator.generate(map, new Random(random.nextLong()));
+        };
+    }
+
+    @Override
+    public void generateMap() {
+        engine.generateMap();
+        engine.getMap().loadAll(); // La generazione è pigra: si misura il livello intero
+    }
+
+    @Override
+    public void placeEnemies(int count) {
+        engine.placeEnemies(count);
+    }
+
+    @Override
+    public void moveEnemies() {
+        engine.moveEnemies();
+    }
+
+    @Override
+    public void computeFieldOfView(int row, int col) {
+        engine.getFieldOfView().compute(row, col, 6);
+    }
+
+    @Override
+    public boolean isVisible(int row, int col) {
+        return engine.getFieldOfView().isVisible(row, col);
+    }
+
+    @Override
+    public int[] floorCells() {
+        TileMap map = engine.getMap();
+        int[] cells = new int[map.getRows() * map.getCols()];
+        int n = 0;
+        for (int row = 0; row < map.getRows(); row++) {
+            for (int col = 0; col < map.getCols(); col++) {
+                if (map.isWalkable(row, col)) {
+                    cells[n++] = row * map.getCols() + col;
+                }
+            }
+        }
+        return Arrays.copyOf(cells, n);
+    }
+
+    @Override
+    public int cols() {
+        return engine.getCols();
+    }
+}
@@ -0,0 +1,73 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Il controllo delle posizioni in classifica: {@link LeaderboardStore#ranked(long)} deve dare
+ * gli stessi risultati di un ordinamento completo, con una parte già compattata e una parte
+ * aggiunta dopo
+ *
+ * <p>
+ * Si lancia con {@code java -cp benchmarks/target/benchmarks.jar LeaderboardRankingCheck}; esce
+ * con un errore alla prima posizione sbagliata.
+ */
+public final class LeaderboardRankingCheck {
+    /** Il numero di risultati scritti prima della compattazione */
+    private static final int SORTED = 20000;
+    /** Il numero di risultati aggiunti dopo la compattazione */
+    private static final int APPENDED = 2000;
+
+    private LeaderboardRankingCheck() {
+    }
+
+    /**
+     * Il metodo principale
+     *
+     * @param args non usati
+     *
+     * @throws IOException se la classifica non si può scrivere
+     */
+    public static void main(String[] args) throws IOException {
+        Path dir = Files.createTempDirectory("leaderboard");
+        Random random = new Random(9);
+        List<Score> all = new ArrayList<>();
+        LeaderboardStore store = LeaderboardStore.open(dir.resolve("leaderboard.dat"), null);
+        store.append(scores(random, SORTED, all));
+        store.compact();
+        store.append(scores(random, APPENDED, all));
+
+        all.sort(Score.RANKING);
+        if (store.size() != all.size()) {
+            throw new IllegalStateException("La classifica ha " + store.size() + " risultati, non " + all.size());
+        }
+        for (int rank = 0; rank < all.size(); rank++) {
+            Score score = store.ranked(rank);
+            if (!score.equals(all.get(rank))) {
+                throw new IllegalStateException("Posizione " + rank + ": " + score + " invece di " + all.get(rank));
+            }
+        }
+        store.close();
+        System.out.println("ranked: " + all.size() + " posizioni, " + store.getSortedCount() + " già ordinate");
+    }
+
+    /**
+     * Crea dei risultati a caso
+     *
+     * @param random il generatore
+     * @param count il numero di risultati
+     * @param all la lista in cui aggiungere anche i risultati creati
+     *
+     * @return i risultati
+     */
+    private static List<Score> scores(Random random, int count, List<Score> all) {
+        List<Score> scores = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            scores.add(new Score("n" + random.nextInt(300), random.nextInt(5), random.nextInt(40), random.nextInt(50)));
+        }
+        all.addAll(scores);
+        return scores;
+    }
+}
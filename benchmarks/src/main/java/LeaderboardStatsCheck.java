@@ -0,0 +1,115 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Objects;
+import java.util.Random;
+
+/**
+ * Il controllo delle statistiche della classifica: dopo una riapertura e dopo l'unione di due
+ * classifiche devono coincidere con quelle ricalcolate da tutti i risultati
+ *
+ * <p>
+ * Si lancia con {@code java -cp benchmarks/target/benchmarks.jar LeaderboardStatsCheck}; esce
+ * con un errore alla prima statistica sbagliata.
+ */
+public final class LeaderboardStatsCheck {
+    /** Il numero di risultati di ciascuna classifica */
+    private static final int SCORES = 5000;
+    /** Il momento usato per le statistiche degli ultimi giorni */
+    private static final long NOW = 40L * 86400000L;
+
+    private LeaderboardStatsCheck() {
+    }
+
+    /**
+     * Il metodo principale
+     *
+     * @param args non usati
+     *
+     * @throws IOException se le classifiche non si possono scrivere
+     */
+    public static void main(String[] args) throws IOException {
+        Path dir = Files.createTempDirectory("leaderboard");
+        Path first = dir.resolve("first.dat");
+        Path second = dir.resolve("second.dat");
+        Random random = new Random(4);
+        List<Score> all = new ArrayList<>();
+
+        LeaderboardStore store = LeaderboardStore.open(first, null);
+        store.append(scores(random, "p", all));
+        store.close();
+        store = LeaderboardStore.open(first, null);
+        check("riapertura", store.getStats(), all);
+        store.close();
+
+        List<Score> others = new ArrayList<>();
+        store = LeaderboardStore.open(second, null);
+        store.append(scores(random, "q", others));
+        store.close();
+        all.addAll(others);
+        all = new ArrayList<>(new LinkedHashSet<>(all)); // L'unione scrive una volta sola i risultati identici
+        new LeaderboardMerge().merge(List.of(first, second), first);
+        store = LeaderboardStore.open(first, null);
+        check("unione", store.getStats(), all);
+        store.close();
+        System.out.println("stats: " + all.size() + " risultati");
+    }
+
+    /**
+     * Crea dei risultati a caso
+     *
+     * @param random il generatore
+     * @param prefix l'inizio dei nomi dei giocatori
+     * @param all la lista in cui aggiungere anche i risultati creati
+     *
+     * @return i risultati
+     */
+    private static List<Score> scores(Random random, String prefix, List<Score> all) {
+        List<Score> scores = new ArrayList<>(SCORES);
+        for (int i = 0; i < SCORES; i++) {
+            long timestamp = i % 10 == 0 ? 0 : NOW - random.nextInt(20) * 86400000L;
+            scores.add(new Score(prefix + random.nextInt(200), random.nextInt(30), random.nextInt(100), timestamp));
+        }
+        all.addAll(scores);
+        return scores;
+    }
+
+    /**
+     * Confronta le statistiche di una classifica con quelle ricalcolate da zero
+     *
+     * @param what la situazione controllata, per il messaggio di errore
+     * @param stats le statistiche della classifica
+     * @param all tutti i risultati della classifica
+     */
+    private static void check(String what, LeaderboardStats stats, List<Score> all) {
+        LeaderboardStats expected = new LeaderboardStats();
+        for (Score score : all) {
+            expected.record(score);
+        }
+        require(what, "totale", expected.getTotal(), stats.getTotal());
+        require(what, "giocatori", expected.getPlayerCount(), stats.getPlayerCount());
+        require(what, "migliori", expected.bestPerPlayer(), stats.bestPerPlayer());
+        require(what, "mediana", expected.depthPercentile(0.5), stats.depthPercentile(0.5));
+        require(what, "90%", expected.depthPercentile(0.9), stats.depthPercentile(0.9));
+        require(what, "almeno 50", expected.countAtLeast(50), stats.countAtLeast(50));
+        require(what, "settimana", expected.deepestInLastDays(7, NOW), stats.deepestInLastDays(7, NOW));
+        require(what, "risultati della settimana", expected.countInLastDays(7, NOW), stats.countInLastDays(7, NOW));
+    }
+
+    /**
+     * Controlla che una statistica abbia il valore atteso
+     *
+     * @param what la situazione controllata
+     * @param name il nome della statistica
+     * @param expected il valore atteso
+     * @param actual il valore letto
+     */
+    private static void require(String what, String name, Object expected, Object actual) {
+        if (!Objects.equals(expected, actual)) {
+            throw new IllegalStateException(what + ", " + name + ": " + actual + " invece di " + expected);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+import java.util.Random;
+
+/**
+ * Il controllo dei generatori di mappe: tutto il pavimento di una mappa generata deve essere
+ * raggiungibile a piedi da una qualsiasi cella di pavimento, come chiede {@link MapGenerator}
+ *
+ * <p>
+ * Si lancia con {@code java -cp benchmarks/target/benchmarks.jar MapConnectivityCheck}; esce
+ * con un errore alla prima mappa con del pavimento isolato.
+ */
+public final class MapConnectivityCheck {
+    /** Il numero di mappe generate per ogni generatore e dimensione */
+    private static final int SEEDS = 200;
+    /** Le dimensioni provate, righe e colonne */
+    private static final int[][] SIZES = {{64, 64}, {40, 120}, {128, 128}};
+
+    private MapConnectivityCheck() {
+    }
+
+    /**
+     * Il metodo principale
+     *
+     * @param args non usati
+     */
+    public static void main(String[] args) {
+        int maps = 0;
+        for (int id : new int[] {MapGenerator.ROOMS, MapGenerator.BSP, MapGenerator.CAVES}) {
+            MapGenerator generator = MapGenerator.forId(id);
+            for (int[] size : SIZES) {
+                DungeonMap map = new DungeonMap(size[0], size[1]);
+                for (long seed = 0; seed < SEEDS; seed++) {
+                    map.clear();
+                    generator.generate(map, new Random(seed));
+                    check(generator, map, seed);
+                    maps++;
+                }
+            }
+        }
+        System.out.println("connectivity: " + maps + " mappe collegate");
+    }
+
+    /**
+     * Controlla che il pavimento raggiunto dalla prima cella sia tutto il pavimento della mappa
+     *
+     * @param generator il generatore usato
+     * @param map la mappa generata
+     * @param seed il seme usato, per il messaggio di errore
+     */
+    private static void check(MapGenerator generator, DungeonMap map, long seed) {
+        int[] cells = map.walkableCells();
+        if (cells.length == 0) {
+            return;
+        }
+        int reached = 0;
+        for (long word : map.floodFill(cells[0] / map.getCols(), cells[0] % map.getCols())) {
+            reached += Long.bitCount(word);
+        }
+        if (reached != cells.length) {
+            throw new IllegalStateException(generator.getName() + " " + map.getRows() + "x" + map.getCols()
+                    + ", seme " + seed + ": raggiunte " + reached + " celle su " + cells.length);
+        }
+    }
+}
@@ -0,0 +1,111 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ * Il controllo dei salvataggi: una partita salvata turno per turno, con punti di controllo e
+ * differenze, si ricarica nello stesso stato e da lì continua allo stesso modo
+ *
+ * <p>
+ * Si lancia con {@code java -cp benchmarks/target/benchmarks.jar SaveGameCheck}; esce con un
+ * errore se uno stato ricaricato non coincide con quello salvato.
+ */
+public final class SaveGameCheck {
+    /** Il numero di turni giocati prima del caricamento */
+    private static final int TURNS = 1500;
+    /** Il numero di turni giocati dopo il caricamento */
+    private static final int MORE_TURNS = 500;
+
+    private SaveGameCheck() {
+    }
+
+    /**
+     * Il metodo principale
+     *
+     * @param args non usati
+     *
+     * @throws IOException se il salvataggio non si può leggere
+     */
+    public static void main(String[] args) throws IOException {
+        Path path = Files.createTempDirectory("savegame").resolve("autosave.dat");
+        GameEngine engine = new GameEngine(200, 300);
+        engine.setTrackExplored(true);
+        engine.placeEnemies(300);
+        Autosave saves = new Autosave(path);
+        Random random = new Random(5);
+        for (int i = 0; i < TURNS; i++) {
+            if (play(engine, random) != GameEngine.Event.NONE) {
+                saves.afterTurn(engine);
+            }
+            if (engine.isGameOver()) {
+                engine.restart();
+                saves.afterTurn(engine);
+            }
+        }
+        saves.awaitWritten();
+        saves.flush();
+
+        GameEngine loaded = new GameEngine(200, 300);
+        loaded.setTrackExplored(true);
+        loaded.restoreState(SaveGame.read(path));
+        require("dopo il caricamento", engine, loaded);
+
+        Path checkpoint = path.resolveSibling("checkpoint.dat");
+        SaveGame.write(checkpoint, engine.captureState(true));
+        GameEngine reloaded = new GameEngine(200, 300);
+        reloaded.setTrackExplored(true);
+        reloaded.restoreState(SaveGame.read(checkpoint));
+        require("dopo il punto di controllo", engine, reloaded);
+
+        for (int i = 0; i < MORE_TURNS; i++) {
+            GameEngine.Action action = action(engine, random);
+            engine.step(action);
+            loaded.step(action);
+            if (engine.isGameOver()) {
+                engine.restart();
+                loaded.restart();
+            }
+        }
+        require("dopo altri " + MORE_TURNS + " turni", engine, loaded);
+        System.out.println("savegame: " + Files.size(path) + " byte");
+    }
+
+    /**
+     * Gioca un turno a caso, tirando i dadi se c'è un combattimento
+     *
+     * @param engine il motore
+     * @param random il generatore delle mosse
+     *
+     * @return l'evento del turno
+     */
+    private static GameEngine.Event play(GameEngine engine, Random random) {
+        return engine.step(action(engine, random));
+    }
+
+    /**
+     * Sceglie l'azione del turno
+     *
+     * @param engine il motore
+     * @param random il generatore delle mosse
+     *
+     * @return un tiro di dadi durante un combattimento, altrimenti una mossa a caso
+     */
+    private static GameEngine.Action action(GameEngine engine, Random random) {
+        GameEngine.Action[] actions = GameEngine.Action.values();
+        return engine.getCombat() != null ? GameEngine.Action.ROLL : actions[random.nextInt(4)];
+    }
+
+    /**
+     * Controlla che due motori siano nello stesso stato
+     *
+     * @param what la situazione controllata, per il messaggio di errore
+     * @param expected il motore di riferimento
+     * @param actual il motore ricaricato
+     */
+    private static void require(String what, GameEngine expected, GameEngine actual) {
+        if (!expected.captureState(true).matches(actual.captureState(true))) {
+            throw new IllegalStateException("Lo stato " + what + " non coincide con quello salvato");
+        }
+    }
+}
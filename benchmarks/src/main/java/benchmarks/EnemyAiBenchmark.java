@@ -0,0 +1,37 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Benchmark di un turno dei nemici (percezione e movimento) al variare del loro numero
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class EnemyAiBenchmark {
+    /** Le dimensioni della mappa in celle, nel formato righe x colonne */
+    @Param({"25x33", "100x100", "500x500"})
+    public String mapSize;
+
+    /** Il numero di nemici sulla mappa */
+    @Param({"5", "50", "200"})
+    public int enemyCount;
+
+    /** Il motore su cui misurare */
+    private GameHandle engine;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        engine = Handles.engine(mapSize);
+        engine.placeEnemies(Math.min(enemyCount, engine.floorCells().length / 2));
+    }
+
+    @Benchmark
+    public void moveEnemies() {
+        engine.moveEnemies();
+    }
+}
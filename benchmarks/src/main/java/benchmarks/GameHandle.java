@@ -0,0 +1,61 @@
+package benchmarks;
+
+/**
+ * Le operazioni del motore misurate dai benchmark
+ *
+ * <p>
+ * Le classi del gioco stanno nel package di default, che non si può importare da un package
+ * con nome, mentre JMH rifiuta i benchmark nel package di default. L'implementazione vive
+ * quindi nel package di default ({@code GameHandles}) e i benchmark la usano tramite
+ * questa interfaccia; la chiamata è monomorfa e il JIT la risolve in linea.
+ */
+public interface GameHandle {
+    /**
+     * Rigenera la mappa del livello corrente
+     */
+    void generateMap();
+
+    /**
+     * Sostituisce i nemici del livello con un numero fissato di nemici
+     *
+     * @param count il numero di nemici
+     */
+    void placeEnemies(int count);
+
+    /**
+     * Muove tutti i nemici di un turno
+     */
+    void moveEnemies();
+
+    /**
+     * Calcola il campo visivo del giocatore da una cella, con il raggio di vista dei nemici
+     *
+     * @param row riga dell'osservatore
+     * @param col colonna dell'osservatore
+     */
+    void computeFieldOfView(int row, int col);
+
+    /**
+     * Controlla se una cella era nell'ultimo campo visivo calcolato
+     *
+     * @param row riga
+     * @param col colonna
+     *
+     * @return true se la cella è visibile
+     */
+    boolean isVisible(int row, int col);
+
+    /**
+     * Restituisce le celle di pavimento del livello corrente
+     *
+     * @return gli indici delle celle, nel formato riga * colonne + colonna
+     */
+    int[] floorCells();
+
+    /**
+     * Restituisce il numero di colonne della mappa
+     *
+     * @return il numero di colonne
+     */
+    int cols();
+}
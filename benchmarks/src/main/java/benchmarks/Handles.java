@@ -0,0 +1,77 @@
+package benchmarks;
+
+import java.awt.Graphics;
+import java.util.function.Consumer;
+
+/**
+ * Crea gli handle verso le classi del gioco, che stanno nel package di default
+ */
+final class Handles {
+    private Handles() {
+    }
+
+    /**
+     * Crea un motore con le dimensioni indicate
+     *
+     * @param mapSize le dimensioni nel formato righe x colonne, ad esempio "25x33"
+     *
+     * @return l'handle del motore con il primo livello già generato
+     */
+    static GameHandle engine(String mapSize) {
+        String[] parts = mapSize.split("x");
+        try {
+            return (GameHandle) Class.forName("GameHandles")
+                    .getMethod("engine", int.class, int.class)
+                    .invoke(null, Integer.parseInt(parts[0]), Integer.parseInt(parts[1]));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Impossibile creare il motore", e);
+        }
+    }
+
+    /**
+     * Crea la generazione di una mappa intera con un generatore di mappe
+     *
+     * @param generator il nome del generatore: rooms, bsp o caves
+     * @param mapSize le dimensioni nel formato righe x colonne, ad esempio "512x512"
+     *
+     * @return la funzione che genera una mappa nuova
+     */
+    static Runnable generator(String generator, String mapSize) {
+        String[] parts = mapSize.split("x");
+        try {
+            return (Runnable) Class.forName("GameHandles")
+                    .getMethod("generator", String.class, int.class, int.class)
+                    .invoke(null, generator, Integer.parseInt(parts[0]), Integer.parseInt(parts[1]));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Impossibile creare il generatore", e);
+        }
+    }
+
+    /**
+     * Crea il pannello del gioco per una finestra delle dimensioni indicate
+     *
+     * @param windowSize le dimensioni in pixel nel formato larghezza x altezza, ad esempio "800x600"
+     * @param levelSize le dimensioni del livello nel formato righe x colonne, o "window" per un livello grande quanto la finestra
+     *
+     * @return la funzione che disegna il pannello sul Graphics ricevuto
+     */
+    @SuppressWarnings("unchecked")
+    static Consumer<Graphics> panel(String windowSize, String levelSize) {
+        String[] parts = windowSize.split("x");
+        int width = Integer.parseInt(parts[0]);
+        int height = Integer.parseInt(parts[1]);
+        try {
+            if (levelSize.equals("window")) {
+                return (Consumer<Graphics>) Class.forName("GameHandles")
+                        .getMethod("panel", int.class, int.class)
+                        .invoke(null, width, height);
+            }
+            String[] level = levelSize.split("x");
+            return (Consumer<Graphics>) Class.forName("GameHandles")
+                    .getMethod("panel", int.class, int.class, int.class, int.class)
+                    .invoke(null, width, height, Integer.parseInt(level[0]), Integer.parseInt(level[1]));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Impossibile creare il pannello", e);
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package benchmarks;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Benchmark della percezione dei nemici: un campo visivo per turno e un controllo per nemico
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class LineOfSightBenchmark {
+    /** Il numero di posizioni precalcolate, potenza di due */
+    private static final int POSITIONS = 1024;
+
+    /** Le dimensioni della mappa in celle, nel formato righe x colonne */
+    @Param({"25x33", "100x100", "500x500"})
+    public String mapSize;
+
+    /** Il numero di nemici che controllano se vedono il giocatore */
+    @Param({"5", "50", "200"})
+    public int enemyCount;
+
+    /** Il motore su cui misurare */
+    private GameHandle engine;
+    /** Le posizioni del giocatore, righe e colonne alternate */
+    private int[] players;
+    /** Le posizioni dei nemici, righe e colonne alternate */
+    private int[] enemies;
+    /** La posizione successiva del giocatore */
+    private int next;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        engine = Handles.engine(mapSize);
+        int[] floor = engine.floorCells();
+        int cols = engine.cols();
+        Random random = new Random(42);
+        players = new int[POSITIONS * 2];
+        for (int i = 0; i < POSITIONS; i++) {
+            int cell = floor[random.nextInt(floor.length)];
+            players[i * 2] = cell / cols;
+            players[i * 2 + 1] = cell % cols;
+        }
+        enemies = new int[enemyCount * 2];
+        for (int i = 0; i < enemyCount; i++) {
+            int cell = floor[random.nextInt(floor.length)];
+            enemies[i * 2] = cell / cols;
+            enemies[i * 2 + 1] = cell % cols;
+        }
+    }
+
+    @Benchmark
+    public int perceptionTurn() {
+        int i = (next++ & (POSITIONS - 1)) * 2;
+        engine.computeFieldOfView(players[i], players[i + 1]);
+        int seen = 0;
+        for (int e = 0; e < enemies.length; e += 2) {
+            if (engine.isVisible(enemies[e], enemies[e + 1])) {
+                seen++;
+            }
+        }
+        return seen;
+    }
+}
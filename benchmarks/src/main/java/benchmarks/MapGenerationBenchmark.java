@@ -0,0 +1,44 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Benchmark della generazione della mappa e dei nemici a varie dimensioni del livello
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MapGenerationBenchmark {
+    /** Le dimensioni della mappa in celle, nel formato righe x colonne */
+    @Param({"25x33", "100x100", "500x500"})
+    public String mapSize;
+
+    /** Il numero di nemici da generare */
+    @Param({"5", "50", "200"})
+    public int enemyCount;
+
+    /** Il motore su cui generare i livelli */
+    private GameHandle engine;
+    /** Il numero di nemici effettivo, limitato dal pavimento disponibile */
+    private int enemies;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        engine = Handles.engine(mapSize);
+        enemies = Math.min(enemyCount, engine.floorCells().length / 2);
+    }
+
+    @Benchmark
+    public void generateMap() {
+        engine.generateMap();
+    }
+
+    @Benchmark
+    public void generaNemici() {
+        engine.placeEnemies(enemies);
+    }
+}
@@ -0,0 +1,36 @@
+package benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Benchmark dei generatori di mappe, in livelli al secondo, su una mappa intera in un solo blocco
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class MapGeneratorBenchmark {
+    /** Il nome del generatore */
+    @Param({"rooms", "bsp", "caves"})
+    public String generator;
+
+    /** Le dimensioni della mappa in celle, nel formato righe x colonne */
+    @Param({"64x64", "512x512", "2048x2048"})
+    public String mapSize;
+
+    /** La generazione di un livello */
+    private Runnable level;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        level = Handles.generator(generator, mapSize);
+    }
+
+    @Benchmark
+    public void generate() {
+        level.run();
+    }
+}
@@ -0,0 +1,59 @@
+package benchmarks;
+
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import org.openjdk.jmh.annotations.*;
+
+/**
+ * Benchmark del disegno di un frame del gioco in un'immagine fuori schermo
+ *
+ * <p>
+ * Non serve un display: il runner avvia la JVM con java.awt.headless=true.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RenderBenchmark {
+    /** Le dimensioni della finestra in pixel, nel formato larghezza x altezza */
+    @Param({"800x600", "1920x1080", "3840x2160"})
+    public String windowSize;
+
+    /**
+     * Le dimensioni del livello in celle, nel formato righe x colonne;
+     * "window" per un livello grande quanto la finestra
+     */
+    @Param({"window", "2000x2000"})
+    public String levelSize;
+
+    /** La funzione che disegna il pannello */
+    private Consumer<Graphics> panel;
+    /** L'immagine su cui disegnare */
+    private BufferedImage frame;
+    /** Il Graphics dell'immagine */
+    private Graphics2D graphics;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        String[] parts = windowSize.split("x");
+        frame = new BufferedImage(Integer.parseInt(parts[0]), Integer.parseInt(parts[1]), BufferedImage.TYPE_INT_RGB);
+        graphics = frame.createGraphics();
+        panel = Handles.panel(windowSize, levelSize);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        graphics.dispose();
+    }
+
+    @Benchmark
+    public BufferedImage paintComponent() {
+        panel.accept(graphics);
+        return frame;
+    }
+}
@@ -0,0 +1,230 @@
+import java.awt.AWTException;
+import java.awt.BufferCapabilities;
+import java.awt.Canvas;
+import java.awt.Graphics;
+import java.awt.GraphicsEnvironment;
+import java.awt.ImageCapabilities;
+import java.awt.Toolkit;
+import java.awt.image.BufferStrategy;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Consumer;
+
+/**
+ * Il disegno attivo: un thread dedicato che disegna i frame su un {@link Canvas}
+ * con una {@link BufferStrategy}, a una frequenza fissata
+ *
+ * <p>
+ * Si prova prima lo scambio di pagine e poi la copia del buffer nascosto; se nessuna delle due
+ * è accelerata, o non c'è un display, {@link #start()} restituisce false e il pannello
+ * continua a disegnare con Swing. Tra un frame e l'altro il thread dorme fino alla scadenza
+ * successiva, e se resta indietro salta i frame persi invece di recuperarli tutti insieme.
+ *
+ * <p>
+ * Si attiva con la proprietà di sistema {@value #ENABLED_PROPERTY}; la frequenza si sceglie
+ * con {@value #FPS_PROPERTY}, 60 frame al secondo se non indicata.
+ */
+public class ActiveRenderer implements Runnable {
+    /** La proprietà di sistema che attiva il disegno attivo */
+    public static final String ENABLED_PROPERTY = "rogue.activeRendering";
+    /** La proprietà di sistema con i frame al secondo desiderati */
+    public static final String FPS_PROPERTY = "rogue.targetFps";
+    /** I frame al secondo predefiniti */
+    public static final int DEFAULT_FPS = 60;
+
+    /** Il margine in nanosecondi che si aspetta girando invece di dormire, per non mancare la scadenza */
+    private static final long SPIN_NANOS = 1_000_000L;
+    /** Il peso dell'ultimo frame nella media mobile della durata */
+    private static final double AVERAGE_WEIGHT = 0.05;
+
+    /** La tela su cui disegnare */
+    private final Canvas canvas;
+    /** La funzione che disegna un frame */
+    private final Consumer<Graphics> scene;
+    /** La durata di un frame in nanosecondi */
+    private final long framePeriod;
+
+    /** La strategia di doppio buffer della tela */
+    private BufferStrategy strategy;
+    /** Il thread di disegno */
+    private Thread thread;
+    /** La booleana che indica se il ciclo deve continuare */
+    private volatile boolean running = false;
+
+    /** La durata dell'ultimo frame disegnato, senza l'attesa */
+    private volatile long lastFrameNanos;
+    /** La media mobile della durata dei frame, senza l'attesa */
+    private volatile long averageFrameNanos;
+    /** Il numero di frame saltati perché il disegno era in ritardo */
+    private volatile long droppedFrames;
+
+    /**
+     * Costruttore di ActiveRenderer
+     *
+     * @param canvas la tela, già aggiunta a una finestra visibile
+     * @param scene la funzione che disegna un frame sul Graphics ricevuto
+     * @param targetFps i frame al secondo desiderati
+     */
+    public ActiveRenderer(Canvas canvas, Consumer<Graphics> scene, int targetFps) {
+        this.canvas = canvas;
+        this.scene = scene;
+        this.framePeriod = 1_000_000_000L / Math.max(1, targetFps);
+    }
+
+    /**
+     * Controlla se il disegno attivo è stato richiesto
+     *
+     * @return true se la proprietà {@value #ENABLED_PROPERTY} vale true
+     */
+    public static boolean isRequested() {
+        return Boolean.getBoolean(ENABLED_PROPERTY);
+    }
+
+    /**
+     * Restituisce i frame al secondo richiesti
+     *
+     * @return il valore della proprietà {@value #FPS_PROPERTY}, o {@value #DEFAULT_FPS}
+     */
+    public static int requestedFps() {
+        return Integer.getInteger(FPS_PROPERTY, DEFAULT_FPS);
+    }
+
+    /**
+     * Crea la strategia di buffer e avvia il thread di disegno, da chiamare sull'EDT
+     *
+     * @return true se il disegno attivo è partito, false se l'accelerazione non è disponibile
+     */
+    public boolean start() {
+        if (GraphicsEnvironment.isHeadless() || !canvas.isDisplayable()) {
+            return false;
+        }
+        ImageCapabilities accelerated = new ImageCapabilities(true);
+        try {
+            canvas.createBufferStrategy(2, new BufferCapabilities(accelerated, accelerated,
+                    BufferCapabilities.FlipContents.UNDEFINED));
+        } catch (AWTException e) {
+            try {
+                canvas.createBufferStrategy(2, new BufferCapabilities(accelerated, accelerated, null));
+            } catch (AWTException ex) {
+                return false;
+            }
+        }
+        strategy = canvas.getBufferStrategy();
+        if (!strategy.getCapabilities().getBackBufferCapabilities().isAccelerated()) {
+            strategy.dispose();
+            strategy = null;
+            return false;
+        }
+
+        running = true;
+        thread = new Thread(this, "render");
+        thread.setDaemon(true);
+        thread.start();
+        return true;
+    }
+
+    /**
+     * Ferma il thread di disegno e libera i buffer
+     */
+    public void stop() {
+        running = false;
+        if (thread != null) {
+            thread.interrupt();
+            try {
+                thread.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            thread = null;
+        }
+        if (strategy != null) {
+            strategy.dispose();
+            strategy = null;
+        }
+    }
+
+    /**
+     * Il ciclo di disegno
+     */
+    @Override
+    public void run() {
+        long nextFrame = System.nanoTime();
+        while (running) {
+            long start = System.nanoTime();
+            renderFrame();
+            long elapsed = System.nanoTime() - start;
+            lastFrameNanos = elapsed;
+            averageFrameNanos = averageFrameNanos == 0 ? elapsed
+                    : (long) (averageFrameNanos + AVERAGE_WEIGHT * (elapsed - averageFrameNanos));
+
+            nextFrame += framePeriod;
+            long now = System.nanoTime();
+            if (now - nextFrame > framePeriod) {
+                // Troppo indietro: si ricomincia dal frame corrente
+                droppedFrames += (now - nextFrame) / framePeriod;
+                nextFrame = now;
+            }
+            waitUntil(nextFrame);
+        }
+    }
+
+    /**
+     * Disegna un frame, ripetendolo finché i buffer non sono validi
+     */
+    private void renderFrame() {
+        do {
+            do {
+                Graphics g = strategy.getDrawGraphics();
+                try {
+                    scene.accept(g);
+                } finally {
+                    g.dispose();
+                }
+            } while (running && strategy.contentsRestored());
+            strategy.show();
+            Toolkit.getDefaultToolkit().sync();
+        } while (running && strategy.contentsLost());
+    }
+
+    /**
+     * Aspetta fino a un istante: dorme per la maggior parte del tempo e gira sull'ultimo millisecondo
+     *
+     * @param deadline l'istante in nanosecondi, nella scala di {@link System#nanoTime()}
+     */
+    private void waitUntil(long deadline) {
+        long remaining;
+        while (running && (remaining = deadline - System.nanoTime()) > 0) {
+            if (remaining > SPIN_NANOS) {
+                LockSupport.parkNanos(remaining - SPIN_NANOS);
+            } else {
+                Thread.onSpinWait();
+            }
+        }
+    }
+
+    /**
+     * Restituisce la durata dell'ultimo frame
+     *
+     * @return la durata in nanosecondi, senza l'attesa
+     */
+    public long getLastFrameNanos() {
+        return lastFrameNanos;
+    }
+
+    /**
+     * Restituisce la durata media dei frame
+     *
+     * @return la media mobile in nanosecondi, senza l'attesa
+     */
+    public long getAverageFrameNanos() {
+        return averageFrameNanos;
+    }
+
+    /**
+     * Restituisce il numero di frame saltati perché il disegno era in ritardo
+     *
+     * @return il numero di frame saltati
+     */
+    public long getDroppedFrames() {
+        return droppedFrames;
+    }
+}
@@ -0,0 +1,193 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Il salvataggio automatico della partita, scritto su un thread dedicato
+ *
+ * <p>
+ * Dopo ogni turno la simulazione cattura lo stato del motore e lo passa a questa classe, che lo
+ * codifica e lo scrive sul thread di salvataggio: né il disegno né i turni aspettano il disco.
+ * Di solito si aggiunge in fondo al file solo la differenza dal turno precedente; ogni
+ * {@value #CHECKPOINT_INTERVAL} turni, e a ogni cambio di livello, il file viene riscritto
+ * da capo con un punto di controllo completo, così non cresce per sempre e il caricamento
+ * applica al massimo quel numero di differenze.
+ *
+ * <p>
+ * Lo stesso thread scrive i salvataggi manuali, quindi tutte le scritture avvengono nell'ordine
+ * in cui sono state chieste. Alla chiusura del programma quelle ancora in coda vengono completate.
+ */
+public class Autosave {
+    /** Il file predefinito del salvataggio automatico */
+    public static final String DEFAULT_FILE = "autosave.dat";
+    /** La proprietà di sistema che spegne il salvataggio automatico se vale false */
+    public static final String ENABLED_PROPERTY = "rogue.autosave";
+    /** Il numero di turni tra due punti di controllo */
+    public static final int CHECKPOINT_INTERVAL = 200;
+
+    /** Il file del salvataggio automatico, null se è spento */
+    private final Path path;
+    /** Il thread che scrive i salvataggi */
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "autosave");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /** I turni catturati dall'ultimo punto di controllo, usato solo dal thread della simulazione */
+    private int sinceCheckpoint = 0;
+    /** La booleana che indica se il prossimo turno deve essere un punto di controllo */
+    private volatile boolean needsCheckpoint = true;
+    /** Il seme del livello dell'ultimo turno catturato, usato solo dal thread della simulazione */
+    private long lastSeed;
+
+    /** L'ultimo stato scritto, usato solo dal thread di salvataggio */
+    private SaveGame.State previous;
+    /** Il file aperto per aggiungere le differenze, usato solo dal thread di salvataggio */
+    private FileChannel channel;
+
+    /**
+     * Costruttore di Autosave
+     *
+     * @param path il file del salvataggio automatico, o null per scrivere solo i salvataggi manuali
+     */
+    public Autosave(Path path) {
+        this.path = path;
+        Runtime.getRuntime().addShutdownHook(new Thread(this::flush, "autosave-flush"));
+    }
+
+    /**
+     * Crea il salvataggio del gioco, automatico se la proprietà {@value #ENABLED_PROPERTY} non lo spegne
+     *
+     * @return il salvataggio
+     */
+    public static Autosave fromSystemProperties() {
+        boolean enabled = !"false".equalsIgnoreCase(System.getProperty(ENABLED_PROPERTY));
+        return new Autosave(enabled ? Path.of(DEFAULT_FILE) : null);
+    }
+
+    /**
+     * Restituisce il file del salvataggio automatico
+     *
+     * @return il file, o null se il salvataggio automatico è spento
+     */
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Cattura lo stato dopo un turno e lo mette in coda per la scrittura, dal thread della simulazione
+     *
+     * @param engine il motore
+     */
+    public void afterTurn(GameEngine engine) {
+        if (path == null) {
+            return;
+        }
+        long seed = engine.getMap().getSeed();
+        boolean checkpoint = needsCheckpoint || ++sinceCheckpoint >= CHECKPOINT_INTERVAL || seed != lastSeed;
+        if (checkpoint) {
+            needsCheckpoint = false;
+            sinceCheckpoint = 0;
+            lastSeed = seed;
+        }
+        SaveGame.State state = engine.captureState(checkpoint);
+        execute(() -> write(state));
+    }
+
+    /**
+     * Fa cominciare il prossimo turno con un punto di controllo, per esempio dopo un caricamento
+     */
+    public void reset() {
+        needsCheckpoint = true;
+    }
+
+    /**
+     * Mette in coda un salvataggio manuale
+     *
+     * @param target il file da scrivere
+     * @param state lo stato, con tutte le pagine
+     */
+    public void save(Path target, SaveGame.State state) {
+        execute(() -> {
+            try {
+                SaveGame.write(target, state);
+            } catch (IOException e) {
+                System.out.println("Errore nel salvataggio della partita: " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Affida una scrittura al thread di salvataggio, se il programma non si sta chiudendo
+     *
+     * @param task la scrittura
+     */
+    private void execute(Runnable task) {
+        try {
+            writer.execute(task);
+        } catch (RejectedExecutionException e) {
+            // Il programma si sta chiudendo
+        }
+    }
+
+    /**
+     * Aspetta che tutte le scritture chieste finora siano finite
+     */
+    public void awaitWritten() {
+        try {
+            writer.submit(() -> { }).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException | RejectedExecutionException e) {
+            // Niente da aspettare
+        }
+    }
+
+    /**
+     * Completa le scritture in coda, chiamato alla chiusura del programma
+     */
+    public void flush() {
+        writer.shutdown();
+        try {
+            writer.awaitTermination(2, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Scrive un turno nel salvataggio automatico, dal thread di salvataggio
+     *
+     * @param state lo stato del turno
+     */
+    private void write(SaveGame.State state) {
+        try {
+            if (state.checkpoint() || previous == null || channel == null) {
+                if (channel != null) {
+                    channel.close();
+                    channel = null;
+                }
+                if (!state.checkpoint()) {
+                    return; // Si aspetta il punto di controllo già chiesto
+                }
+                SaveGame.write(path, state);
+                channel = FileChannel.open(path, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+            } else {
+                SaveGame.writeFully(channel, ByteBuffer.wrap(SaveGame.deltaRecord(previous, state)));
+            }
+            previous = state;
+        } catch (IOException e) {
+            System.out.println("Errore nel salvataggio automatico: " + e.getMessage());
+            previous = null;
+            needsCheckpoint = true;
+        }
+    }
+}
@@ -0,0 +1,133 @@
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Il generatore a partizione binaria dello spazio
+ *
+ * <p>
+ * La mappa si divide a metà, in un punto a caso, lungo il lato più lungo; ogni metà si divide
+ * di nuovo finché è troppo piccola per due stanze. In ogni foglia si scava una stanza e ogni
+ * divisione collega con un corridoio a L una stanza di una metà a una stanza dell'altra.
+ * Le stanze non si sovrappongono mai, senza tentativi da scartare, e coprono tutta la mappa
+ * qualunque sia la sua dimensione: il lavoro cresce con il numero di stanze.
+ */
+public class BspGenerator implements MapGenerator {
+    /** Il lato minimo di una foglia, muri compresi */
+    private static final int MIN_LEAF = 8;
+    /** Il lato minimo di una stanza */
+    private static final int MIN_ROOM = 3;
+
+    /**
+     * I punti di aggancio trovati durante la generazione
+     */
+    private static final class Anchors {
+        /** I centri delle stanze */
+        private int[] cells = new int[16];
+        /** Il numero di centri */
+        private int size = 0;
+
+        /**
+         * Aggiunge un centro
+         *
+         * @param cell la cella
+         */
+        void add(int cell) {
+            if (size == cells.length) {
+                cells = Arrays.copyOf(cells, size * 2);
+            }
+            cells[size++] = cell;
+        }
+    }
+
+    @Override
+    public int[] generate(DungeonMap map, Random random) {
+        Anchors anchors = new Anchors();
+        if (map.getRows() - 2 >= MIN_ROOM && map.getCols() - 2 >= MIN_ROOM) {
+            split(map, random, 1, 1, map.getCols() - 2, map.getRows() - 2, anchors);
+        }
+        return Arrays.copyOf(anchors.cells, anchors.size);
+    }
+
+    /**
+     * Divide un rettangolo della mappa, o ci scava una stanza se è una foglia
+     *
+     * @param map la mappa
+     * @param random il generatore
+     * @param x colonna dell'angolo in alto a sinistra
+     * @param y riga dell'angolo in alto a sinistra
+     * @param width larghezza
+     * @param height altezza
+     * @param anchors i centri delle stanze scavate
+     *
+     * @return il centro di una stanza del rettangolo, come riga per il numero di colonne più colonna
+     */
+    private static int split(DungeonMap map, Random random, int x, int y, int width, int height, Anchors anchors) {
+        boolean canSplitColumns = width >= 2 * MIN_LEAF;
+        boolean canSplitRows = height >= 2 * MIN_LEAF;
+        if (!canSplitColumns && !canSplitRows) {
+            return room(map, random, x, y, width, height, anchors);
+        }
+        boolean columns;
+        if (canSplitColumns && canSplitRows) {
+            columns = width * 4 > height * 5 || (height * 4 <= width * 5 && random.nextBoolean());
+        } else {
+            columns = canSplitColumns;
+        }
+        int a, b;
+        if (columns) {
+            int cut = MIN_LEAF + random.nextInt(width - 2 * MIN_LEAF + 1);
+            a = split(map, random, x, y, cut, height, anchors);
+            b = split(map, random, x + cut, y, width - cut, height, anchors);
+        } else {
+            int cut = MIN_LEAF + random.nextInt(height - 2 * MIN_LEAF + 1);
+            a = split(map, random, x, y, width, cut, anchors);
+            b = split(map, random, x, y + cut, width, height - cut, anchors);
+        }
+        int cols = map.getCols();
+        int rowA = a / cols, colA = a % cols, rowB = b / cols, colB = b % cols;
+        if (random.nextBoolean()) {
+            map.carveRow(rowA, colA, colB);
+            map.carveColumn(colB, rowA, rowB);
+        } else {
+            map.carveColumn(colA, rowA, rowB);
+            map.carveRow(rowB, colA, colB);
+        }
+        return random.nextBoolean() ? a : b;
+    }
+
+    /**
+     * Scava una stanza a caso dentro una foglia, lasciando un muro verso le foglie vicine
+     *
+     * @param map la mappa
+     * @param random il generatore
+     * @param x colonna dell'angolo in alto a sinistra della foglia
+     * @param y riga dell'angolo in alto a sinistra della foglia
+     * @param width larghezza della foglia
+     * @param height altezza della foglia
+     * @param anchors i centri delle stanze scavate
+     *
+     * @return il centro della stanza, come riga per il numero di colonne più colonna
+     */
+    private static int room(DungeonMap map, Random random, int x, int y, int width, int height, Anchors anchors) {
+        int maxWidth = Math.max(1, width - 1);
+        int maxHeight = Math.max(1, height - 1);
+        int w = Math.min(maxWidth, MIN_ROOM + random.nextInt(Math.max(1, maxWidth - MIN_ROOM + 1)));
+        int h = Math.min(maxHeight, MIN_ROOM + random.nextInt(Math.max(1, maxHeight - MIN_ROOM + 1)));
+        int rx = x + random.nextInt(maxWidth - w + 1);
+        int ry = y + random.nextInt(maxHeight - h + 1);
+        map.carveRect(rx, ry, w, h);
+        int center = (ry + h / 2) * map.getCols() + rx + w / 2;
+        anchors.add(center);
+        return center;
+    }
+
+    @Override
+    public int getId() {
+        return BSP;
+    }
+
+    @Override
+    public String getName() {
+        return "bsp";
+    }
+}
@@ -0,0 +1,90 @@
+/**
+ * La telecamera che decide quale parte del livello finisce nella finestra
+ *
+ * <p>
+ * Segue il giocatore tenendolo al centro della vista, senza uscire dai bordi del livello:
+ * vicino a un bordo la vista si ferma e il giocatore si sposta verso il lato della finestra.
+ * Se il livello è più piccolo della vista, la telecamera resta nell'angolo in alto a sinistra.
+ */
+public class Camera {
+    /** Il numero di righe e di colonne visibili */
+    private final int viewRows, viewCols;
+    /** Il numero di righe e di colonne del livello */
+    private final int levelRows, levelCols;
+    /** La riga e la colonna del livello nell'angolo in alto a sinistra della vista */
+    private int row, col;
+
+    /**
+     * Costruttore di Camera
+     *
+     * @param viewRows il numero di righe visibili
+     * @param viewCols il numero di colonne visibili
+     * @param levelRows il numero di righe del livello
+     * @param levelCols il numero di colonne del livello
+     */
+    public Camera(int viewRows, int viewCols, int levelRows, int levelCols) {
+        this.viewRows = viewRows;
+        this.viewCols = viewCols;
+        this.levelRows = levelRows;
+        this.levelCols = levelCols;
+    }
+
+    /**
+     * Centra la vista su una cella, restando dentro il livello
+     *
+     * @param targetRow riga da seguire
+     * @param targetCol colonna da seguire
+     */
+    public void follow(int targetRow, int targetCol) {
+        row = clamp(targetRow - viewRows / 2, levelRows - viewRows);
+        col = clamp(targetCol - viewCols / 2, levelCols - viewCols);
+    }
+
+    /**
+     * Limita una coordinata tra 0 e un massimo, che può essere negativo se il livello è piccolo
+     *
+     * @param value la coordinata
+     * @param max il massimo
+     *
+     * @return la coordinata limitata
+     */
+    private static int clamp(int value, int max) {
+        return Math.max(0, Math.min(value, max));
+    }
+
+    /**
+     * Restituisce la riga del livello in cima alla vista
+     *
+     * @return la riga
+     */
+    public int getRow() {
+        return row;
+    }
+
+    /**
+     * Restituisce la colonna del livello a sinistra della vista
+     *
+     * @return la colonna
+     */
+    public int getCol() {
+        return col;
+    }
+
+    /**
+     * Restituisce il numero di righe visibili
+     *
+     * @return il numero di righe
+     */
+    public int getViewRows() {
+        return viewRows;
+    }
+
+    /**
+     * Restituisce il numero di colonne visibili
+     *
+     * @return il numero di colonne
+     */
+    public int getViewCols() {
+        return viewCols;
+    }
+}
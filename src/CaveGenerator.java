@@ -0,0 +1,180 @@
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Il generatore di caverne con un automa cellulare
+ *
+ * <p>
+ * La mappa parte da rumore casuale, un po' più pavimento che muro, e per {@value #STEPS} passi
+ * ogni cella diventa quello che è la maggioranza del suo intorno 3x3: il rumore si raccoglie in
+ * caverne dai bordi irregolari. Alla fine resta solo la caverna più grande, così tutto il
+ * pavimento è collegato.
+ *
+ * <p>
+ * Un passo lavora su 64 celle alla volta ({@link DungeonMap#smooth(long[], long[], int, int)})
+ * e ogni riga dipende solo dal passo precedente. Sulle mappe grandi le righe si dividono quindi
+ * in fasce di {@value #BAND_ROWS} calcolate in parallelo con fork/join; sotto
+ * {@value #PARALLEL_CELLS} celle, come nei blocchi del {@link ChunkedWorld}, si resta su un thread.
+ * Il risultato non dipende dal numero di thread.
+ */
+public class CaveGenerator implements MapGenerator {
+    /** Il numero di passi dell'automa */
+    private static final int STEPS = 4;
+    /** Le parole casuali aggiunte al rumore iniziale: con 2 il pavimento parte dal 56% circa */
+    private static final int FLOOR_BIAS = 2;
+    /** Il numero di righe di una fascia calcolata da un solo thread */
+    private static final int BAND_ROWS = 64;
+    /** Il numero di celle sotto cui l'automa non si divide in fasce */
+    private static final int PARALLEL_CELLS = 1 << 18;
+
+    /**
+     * Un passo dell'automa su un tratto di righe, diviso a metà finché è più lungo di una fascia
+     */
+    private static final class Step extends RecursiveAction {
+        /** La versione della classe per la serializzazione */
+        private static final long serialVersionUID = 1L;
+        /** La mappa che dà la forma agli insiemi */
+        private final DungeonMap map;
+        /** L'insieme di partenza */
+        private final long[] src;
+        /** L'insieme del risultato */
+        private final long[] dst;
+        /** La prima riga e la riga dopo l'ultima */
+        private final int fromRow, toRow;
+
+        /**
+         * Costruttore di Step
+         *
+         * @param map la mappa che dà la forma agli insiemi
+         * @param src l'insieme di partenza
+         * @param dst l'insieme del risultato
+         * @param fromRow la prima riga
+         * @param toRow la riga dopo l'ultima
+         */
+        Step(DungeonMap map, long[] src, long[] dst, int fromRow, int toRow) {
+            this.map = map;
+            this.src = src;
+            this.dst = dst;
+            this.fromRow = fromRow;
+            this.toRow = toRow;
+        }
+
+        @Override
+        protected void compute() {
+            if (toRow - fromRow <= BAND_ROWS) {
+                map.smooth(src, dst, fromRow, toRow);
+                return;
+            }
+            int middle = (fromRow + toRow) >>> 1;
+            invokeAll(new Step(map, src, dst, fromRow, middle), new Step(map, src, dst, middle, toRow));
+        }
+    }
+
+    @Override
+    public int[] generate(DungeonMap map, Random random) {
+        int rows = map.getRows();
+        int cols = map.getCols();
+        if (rows < 3 || cols < 3) {
+            return new int[0];
+        }
+        long[] cells = map.newCellSet();
+        long[] next = map.newCellSet();
+        map.fillRandom(cells, random, FLOOR_BIAS);
+        boolean parallel = (long) rows * cols >= PARALLEL_CELLS;
+        for (int i = 0; i < STEPS; i++) {
+            if (parallel) {
+                ForkJoinPool.commonPool().invoke(new Step(map, cells, next, 0, rows));
+            } else {
+                map.smooth(cells, next, 0, rows);
+            }
+            long[] swap = cells;
+            cells = next;
+            next = swap;
+        }
+        map.setWalkable(cells);
+        map.setWalkable(largestCave(map, next));
+        return map.walkableCells();
+    }
+
+    /**
+     * Trova la caverna più grande, visitando ogni caverna una volta
+     *
+     * @param map la mappa, con il pavimento delle caverne
+     * @param reached un insieme della stessa forma, usato per le celle visitate
+     *
+     * @return l'insieme delle celle della caverna più grande
+     */
+    private static long[] largestCave(DungeonMap map, long[] reached) {
+        Arrays.fill(reached, 0L);
+        int rows = map.getRows();
+        int cols = map.getCols();
+        int[][] queue = {new int[64]};
+        int bestStart = -1;
+        int bestSize = 0;
+        for (int row = 1; row < rows - 1; row++) {
+            for (int col = 1; col < cols - 1; col++) {
+                if (map.isWalkable(row, col) && !map.contains(reached, row, col)) {
+                    int size = visit(map, reached, row * cols + col, queue);
+                    if (size > bestSize) {
+                        bestSize = size;
+                        bestStart = row * cols + col;
+                    }
+                }
+            }
+        }
+        long[] cave = map.newCellSet();
+        if (bestStart >= 0) {
+            visit(map, cave, bestStart, queue);
+        }
+        return cave;
+    }
+
+    /**
+     * Visita in ampiezza una caverna e segna le sue celle in un insieme
+     *
+     * @param map la mappa
+     * @param reached l'insieme delle celle visitate
+     * @param start la prima cella, come riga per il numero di colonne più colonna
+     * @param queue la coda delle celle, da riusare tra una visita e l'altra e ingrandita se serve
+     *
+     * @return il numero di celle della caverna
+     */
+    private static int visit(DungeonMap map, long[] reached, int start, int[][] queue) {
+        int cols = map.getCols();
+        int[] cells = queue[0];
+        int head = 0;
+        int tail = 0;
+        cells[tail++] = start;
+        map.setInSet(reached, start / cols, start % cols, true);
+        while (head < tail) {
+            int cell = cells[head++];
+            int row = cell / cols;
+            int col = cell % cols;
+            for (int d = 0; d < 4; d++) {
+                int r = row + (d == 0 ? -1 : d == 1 ? 1 : 0);
+                int c = col + (d == 2 ? -1 : d == 3 ? 1 : 0);
+                if (map.isWalkable(r, c) && !map.contains(reached, r, c)) {
+                    map.setInSet(reached, r, c, true);
+                    if (tail == cells.length) {
+                        cells = Arrays.copyOf(cells, cells.length * 2);
+                        queue[0] = cells;
+                    }
+                    cells[tail++] = r * cols + c;
+                }
+            }
+        }
+        return tail;
+    }
+
+    @Override
+    public int getId() {
+        return CAVES;
+    }
+
+    @Override
+    public String getName() {
+        return "caves";
+    }
+}
@@ -0,0 +1,342 @@
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Il mondo di un livello diviso in blocchi quadrati generati solo quando servono
+ *
+ * <p>
+ * Ogni blocco è una piccola {@link DungeonMap} disegnata da un {@link MapGenerator} con il seme
+ * del livello e le sue coordinate, quindi la stessa cella esce sempre uguale qualunque sia
+ * l'ordine in cui i blocchi vengono visitati. I blocchi sono collegati da una porta su ogni lato
+ * condiviso, in una posizione che dipende solo dal seme e dal lato: i due blocchi confinanti la
+ * scavano entrambi e il livello resta tutto collegato senza che uno debba conoscere l'altro.
+ *
+ * <p>
+ * Si tengono in memoria al massimo {@code maxChunks} blocchi; quando il limite viene superato
+ * si scarta quello usato meno di recente, che verrà rigenerato identico se serve di nuovo.
+ * Un livello che sta in un solo blocco è la pianta del generatore così com'è.
+ */
+public class ChunkedWorld implements TileMap {
+    /** Il lato predefinito di un blocco, una parola di bit per riga */
+    public static final int DEFAULT_CHUNK_SIZE = 64;
+    /** Il numero predefinito di blocchi tenuti in memoria */
+    public static final int DEFAULT_MAX_CHUNKS = 256;
+
+    /** Il numero di righe e di colonne del livello */
+    private final int rows, cols;
+    /** Il logaritmo in base 2 del lato di un blocco */
+    private final int chunkShift;
+    /** Il numero di blocchi in verticale e in orizzontale */
+    private final int chunkRows, chunkCols;
+    /** Il numero massimo di blocchi in memoria */
+    private final int maxChunks;
+    /** Il generatore della pianta di ogni blocco */
+    private final MapGenerator generator;
+    /** I blocchi generati, dal meno al più recentemente usato */
+    private final LinkedHashMap<Integer, DungeonMap> chunks;
+
+    /** Il seme del livello corrente */
+    private long seed;
+    /** La chiave e il blocco dell'ultimo accesso, per le letture consecutive nello stesso blocco */
+    private int lastKey = -1;
+    private DungeonMap lastChunk;
+
+    /**
+     * Costruttore di ChunkedWorld con blocchi e limite di memoria predefiniti
+     *
+     * @param rows il numero di righe del livello
+     * @param cols il numero di colonne del livello
+     */
+    public ChunkedWorld(int rows, int cols) {
+        this(rows, cols, DEFAULT_CHUNK_SIZE, DEFAULT_MAX_CHUNKS);
+    }
+
+    /**
+     * Costruttore di ChunkedWorld
+     *
+     * @param rows il numero di righe del livello
+     * @param cols il numero di colonne del livello
+     * @param chunkSize il lato di un blocco, una potenza di 2
+     * @param maxChunks il numero massimo di blocchi in memoria
+     */
+    public ChunkedWorld(int rows, int cols, int chunkSize, int maxChunks) {
+        this(rows, cols, chunkSize, maxChunks, new RoomsGenerator());
+    }
+
+    /**
+     * Costruttore di ChunkedWorld con un generatore scelto
+     *
+     * @param rows il numero di righe del livello
+     * @param cols il numero di colonne del livello
+     * @param chunkSize il lato di un blocco, una potenza di 2
+     * @param maxChunks il numero massimo di blocchi in memoria
+     * @param generator il generatore della pianta di ogni blocco
+     */
+    public ChunkedWorld(int rows, int cols, int chunkSize, int maxChunks, MapGenerator generator) {
+        if (Integer.bitCount(chunkSize) != 1) {
+            throw new IllegalArgumentException("Il lato dei blocchi deve essere una potenza di 2: " + chunkSize);
+        }
+        if (maxChunks < 1) {
+            throw new IllegalArgumentException("Serve almeno un blocco in memoria");
+        }
+        this.rows = rows;
+        this.cols = cols;
+        this.chunkShift = Integer.numberOfTrailingZeros(chunkSize);
+        this.chunkRows = (rows + chunkSize - 1) >> chunkShift;
+        this.chunkCols = (cols + chunkSize - 1) >> chunkShift;
+        this.maxChunks = maxChunks;
+        this.generator = generator;
+        this.chunks = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, DungeonMap> eldest) {
+                return size() > ChunkedWorld.this.maxChunks;
+            }
+        };
+    }
+
+    /**
+     * Passa a un nuovo livello: dimentica i blocchi generati, che verranno creati dal nuovo seme
+     *
+     * @param seed il seme del livello
+     */
+    public void regenerate(long seed) {
+        this.seed = seed;
+        chunks.clear();
+        lastKey = -1;
+        lastChunk = null;
+    }
+
+    /**
+     * Passa a un nuovo livello di cui alcuni blocchi sono già stati generati, per esempio da un altro thread
+     *
+     * @param seed il seme del livello
+     * @param prepared i blocchi generati dallo stesso seme, per chiave, dal meno al più recentemente usato;
+     *                 vengono solo letti
+     */
+    public void regenerate(long seed, Map<Integer, DungeonMap> prepared) {
+        regenerate(seed);
+        chunks.putAll(prepared);
+    }
+
+    /**
+     * Crea un mondo vuoto con le stesse dimensioni, gli stessi blocchi e lo stesso limite di memoria
+     *
+     * @return il mondo, senza seme
+     */
+    public ChunkedWorld emptyCopy() {
+        return new ChunkedWorld(rows, cols, 1 << chunkShift, maxChunks, generator);
+    }
+
+    /**
+     * Restituisce i blocchi in memoria
+     *
+     * @return una copia non modificabile, per chiave, dal meno al più recentemente usato
+     */
+    public Map<Integer, DungeonMap> copyChunks() {
+        return Collections.unmodifiableMap(new LinkedHashMap<>(chunks));
+    }
+
+    /**
+     * Restituisce il generatore della pianta dei blocchi
+     *
+     * @return il generatore
+     */
+    public MapGenerator getGenerator() {
+        return generator;
+    }
+
+    /**
+     * Restituisce il seme del livello corrente
+     *
+     * @return il seme
+     */
+    public long getSeed() {
+        return seed;
+    }
+
+    @Override
+    public int getRows() {
+        return rows;
+    }
+
+    @Override
+    public int getCols() {
+        return cols;
+    }
+
+    @Override
+    public boolean isWalkable(int row, int col) {
+        if (row < 0 || row >= rows || col < 0 || col >= cols) {
+            return false;
+        }
+        int cr = row >> chunkShift;
+        int cc = col >> chunkShift;
+        return chunk(cr, cc).isWalkable(row - (cr << chunkShift), col - (cc << chunkShift));
+    }
+
+    /**
+     * Genera subito tutti i blocchi del livello, finché stanno nel limite di memoria
+     */
+    public void loadAll() {
+        for (int cr = 0; cr < chunkRows; cr++) {
+            for (int cc = 0; cc < chunkCols; cc++) {
+                chunk(cr, cc);
+            }
+        }
+    }
+
+    /**
+     * Restituisce il numero di blocchi del livello, in memoria o no
+     *
+     * @return il numero di blocchi
+     */
+    public int getChunkCount() {
+        return chunkRows * chunkCols;
+    }
+
+    /**
+     * Elenca le celle percorribili di un blocco, generandolo se non è in memoria
+     *
+     * @param key l'indice del blocco, riga del blocco per il numero di colonne di blocchi più colonna
+     *
+     * @return gli indici delle celle nel livello, nel formato riga * colonne + colonna
+     */
+    public long[] walkableCells(int key) {
+        int cr = key / chunkCols;
+        int cc = key % chunkCols;
+        DungeonMap chunk = chunk(cr, cc);
+        int[] local = chunk.walkableCells();
+        long[] cells = new long[local.length];
+        int rowOffset = cr << chunkShift;
+        int colOffset = cc << chunkShift;
+        for (int i = 0; i < local.length; i++) {
+            int row = rowOffset + local[i] / chunk.getCols();
+            int col = colOffset + local[i] % chunk.getCols();
+            cells[i] = (long) row * cols + col;
+        }
+        return cells;
+    }
+
+    /**
+     * Restituisce un blocco, generandolo se non è in memoria
+     *
+     * @param cr riga del blocco
+     * @param cc colonna del blocco
+     *
+     * @return il blocco
+     */
+    private DungeonMap chunk(int cr, int cc) {
+        int key = cr * chunkCols + cc;
+        if (key == lastKey) {
+            return lastChunk;
+        }
+        DungeonMap chunk = chunks.get(key);
+        if (chunk == null) {
+            chunk = generateChunk(cr, cc);
+            chunks.put(key, chunk);
+        }
+        lastKey = key;
+        lastChunk = chunk;
+        return chunk;
+    }
+
+    /**
+     * Genera un blocco: la pianta del generatore, poi un corridoio da ogni porta
+     * verso il punto di aggancio più vicino
+     *
+     * @param cr riga del blocco
+     * @param cc colonna del blocco
+     *
+     * @return il blocco generato
+     */
+    private DungeonMap generateChunk(int cr, int cc) {
+        int height = Math.min(1 << chunkShift, rows - (cr << chunkShift));
+        int width = Math.min(1 << chunkShift, cols - (cc << chunkShift));
+        DungeonMap chunk = new DungeonMap(height, width);
+        int[] anchors = generator.generate(chunk, new Random(mix(seed, cr, cc, 0)));
+
+        // Le porte sui lati condivisi con i blocchi vicini
+        if (cr > 0) {
+            connectDoor(chunk, anchors, 0, doorOffset(cr - 1, cc, 1, width));
+        }
+        if (cr < chunkRows - 1) {
+            connectDoor(chunk, anchors, height - 1, doorOffset(cr, cc, 1, width));
+        }
+        if (cc > 0) {
+            connectDoor(chunk, anchors, doorOffset(cr, cc - 1, 0, height), 0);
+        }
+        if (cc < chunkCols - 1) {
+            connectDoor(chunk, anchors, doorOffset(cr, cc, 0, height), width - 1);
+        }
+        return chunk;
+    }
+
+    /**
+     * Calcola la posizione della porta su un lato, uguale per i due blocchi che lo condividono
+     *
+     * @param cr riga del blocco a nord o a ovest del lato
+     * @param cc colonna del blocco a nord o a ovest del lato
+     * @param side 0 per il lato est, 1 per il lato sud
+     * @param length la lunghezza del lato
+     *
+     * @return la posizione della porta lungo il lato, lontana dagli angoli quando possibile
+     */
+    private int doorOffset(int cr, int cc, int side, int length) {
+        if (length <= 2) {
+            return 0;
+        }
+        return 1 + (int) Long.remainderUnsigned(mix(seed, cr, cc, side + 1), length - 2);
+    }
+
+    /**
+     * Scava un corridoio da una porta sul bordo del blocco al punto di aggancio più vicino,
+     * o al centro del blocco se non ce ne sono
+     *
+     * @param chunk il blocco
+     * @param anchors i punti di aggancio del blocco, come riga per il numero di colonne più colonna
+     * @param row riga della porta
+     * @param col colonna della porta
+     */
+    private static void connectDoor(DungeonMap chunk, int[] anchors, int row, int col) {
+        int targetRow = chunk.getRows() / 2;
+        int targetCol = chunk.getCols() / 2;
+        int best = Integer.MAX_VALUE;
+        for (int anchor : anchors) {
+            int anchorRow = anchor / chunk.getCols();
+            int anchorCol = anchor % chunk.getCols();
+            int d = Math.abs(anchorRow - row) + Math.abs(anchorCol - col);
+            if (d < best) {
+                best = d;
+                targetRow = anchorRow;
+                targetCol = anchorCol;
+            }
+        }
+        if (row == 0 || row == chunk.getRows() - 1) {
+            // Porta a nord o a sud: prima in verticale, così si esce dal bordo
+            chunk.carveColumn(col, row, targetRow);
+            chunk.carveRow(targetRow, col, targetCol);
+        } else {
+            chunk.carveRow(row, col, targetCol);
+            chunk.carveColumn(targetCol, row, targetRow);
+        }
+    }
+
+    /**
+     * Mescola il seme del livello con le coordinate di un blocco, nello stile di SplitMix64
+     *
+     * @param seed il seme del livello
+     * @param cr riga del blocco
+     * @param cc colonna del blocco
+     * @param salt distingue gli usi diversi dello stesso blocco
+     *
+     * @return un valore a 64 bit ben distribuito
+     */
+    private static long mix(long seed, int cr, int cc, int salt) {
+        long z = seed + 0x9E3779B97F4A7C15L * (((long) cr << 32 | (cc & 0xFFFFFFFFL)) + 1) + salt * 0xD1B54A32D192ED03L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
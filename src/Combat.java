@@ -0,0 +1,282 @@
+import java.util.Random;
+
+/**
+ * Le regole di un combattimento tra il giocatore e un nemico, senza interfaccia grafica
+ *
+ * <p>
+ * Ogni round si gioca in tre passi: tiro del giocatore, tiro del nemico e applicazione dei danni.
+ * Chi tira più alto colpisce; l'armatura assorbe i colpi con scarto inferiore
+ * e si consuma quando lo scarto è esattamente uguale al suo valore.
+ *
+ * <p>
+ * Invece di giocarlo round per round, il combattimento si può chiudere in un colpo con
+ * {@link #resolve()}, che estrae il risultato dalle probabilità esatte di {@link CombatResolver}.
+ */
+public class Combat {
+    /** Vita, danni e armatura del giocatore */
+    private int playerHealth;
+    private final int playerDmg;
+    private int playerArmor;
+
+    /** Nemico con vita, danni ed esperienza del nemico */
+    private final Enemy enemy;
+    private int enemyHealth;
+    private final int enemyDmg;
+    private final int enemyExp;
+
+    /** Variabili per il lancio dei dadi */
+    private boolean playerRolled = false;
+    private boolean enemyRolled = false;
+    private int playerRoll = 0;
+    private int enemyRoll = 0;
+    /** Generatore di numeri casuali */
+    private final Random random;
+
+    /**
+     * Costruttore di Combat
+     *
+     * @param playerHealth vita del giocatore
+     * @param playerDmg danni del giocatore
+     * @param playerArmor armatura del giocatore
+     * @param enemy nemico
+     * @param random generatore per i tiri di dado
+     */
+    public Combat(int playerHealth, int playerDmg, int playerArmor, Enemy enemy, Random random) {
+        this.playerHealth = playerHealth;
+        this.playerDmg = playerDmg;
+        this.playerArmor = playerArmor;
+
+        this.enemy = enemy;
+        this.enemyHealth = enemy.getVita();
+        this.enemyDmg = enemy.getDanni();
+        this.enemyExp = enemy.getExp();
+        this.random = random;
+    }
+
+    /**
+     * Riporta il combattimento a un punto salvato
+     *
+     * @param enemyHealth vita del nemico
+     * @param playerRolled true se il giocatore ha già tirato in questo round
+     * @param playerRoll ultimo tiro del giocatore
+     * @param enemyRolled true se il nemico ha già tirato in questo round
+     * @param enemyRoll ultimo tiro del nemico
+     */
+    void restore(int enemyHealth, boolean playerRolled, int playerRoll, boolean enemyRolled, int enemyRoll) {
+        this.enemyHealth = enemyHealth;
+        this.playerRolled = playerRolled;
+        this.playerRoll = playerRoll;
+        this.enemyRolled = enemyRolled;
+        this.enemyRoll = enemyRoll;
+    }
+
+    /**
+     * Lancia un dado a 6 facce
+     *
+     * @return risultato del lancio
+     */
+    private int rollDice() {
+        return random.nextInt(6) + 1;
+    }
+
+    /**
+     * Esegue il prossimo passo del round: tiro del giocatore, tiro del nemico o danni
+     *
+     * @return true se il combattimento è finito
+     */
+    public boolean advance() {
+        if (!playerRolled) {
+            playerRoll = rollDice();
+            playerRolled = true;
+        } else if (!enemyRolled) {
+            enemyRoll = rollDice();
+            enemyRolled = true;
+        } else {
+            applyDamage();
+            // Reset rolls for next round
+            playerRolled = false;
+            enemyRolled = false;
+        }
+        return isOver();
+    }
+
+    /**
+     * Chiude il combattimento in un passo solo: finisce il round in corso con i dadi,
+     * poi estrae lo stato finale dalle probabilità esatte
+     *
+     * @return true, il combattimento è finito
+     */
+    public boolean resolve() {
+        while (playerRolled && !isOver()) {
+            advance();
+        }
+        if (!isOver()) {
+            CombatResolver.Result result = CombatResolver.resolve(playerHealth, playerDmg, playerArmor, enemyHealth,
+                    enemyDmg, random);
+            playerHealth = result.playerHealth();
+            playerArmor = result.armor();
+            enemyHealth = result.enemyHealth();
+        }
+        return true;
+    }
+
+    /**
+     * Restituisce la probabilità che il giocatore vinca il combattimento da qui
+     *
+     * @return la probabilità, tra 0 e 1, tenendo conto dei tiri già fatti in questo round
+     */
+    public double winProbability() {
+        if (isOver()) {
+            return playerWon() ? 1 : 0;
+        }
+        if (!playerRolled) {
+            return CombatResolver.winProbability(playerHealth, playerDmg, playerArmor, enemyHealth, enemyDmg);
+        }
+        if (enemyRolled) {
+            return winProbabilityAfter(playerRoll, enemyRoll);
+        }
+        double total = 0;
+        for (int roll = 1; roll <= 6; roll++) {
+            total += winProbabilityAfter(playerRoll, roll);
+        }
+        return total / 6;
+    }
+
+    /**
+     * Restituisce la probabilità di vittoria dopo un round con certi tiri
+     *
+     * @param playerRoll il tiro del giocatore
+     * @param enemyRoll il tiro del nemico
+     *
+     * @return la probabilità, tra 0 e 1
+     */
+    private double winProbabilityAfter(int playerRoll, int enemyRoll) {
+        int health = playerHealth;
+        int armor = playerArmor;
+        int enemy = enemyHealth;
+        if (playerRoll > enemyRoll) {
+            enemy -= playerDmg;
+        } else if (enemyRoll > playerRoll) {
+            if (enemyRoll - playerRoll > armor) {
+                health -= enemyDmg;
+            } else if (enemyRoll - playerRoll == armor) {
+                armor--;
+            }
+        }
+        return CombatResolver.winProbability(health, playerDmg, armor, enemy, enemyDmg);
+    }
+
+    /**
+     * Applica i danni in base ai tiri del round
+     */
+    private void applyDamage() {
+        if (playerRoll > enemyRoll) {
+            enemyHealth-=playerDmg;
+        } else if (enemyRoll > playerRoll) {
+            if(enemyRoll-playerRoll>playerArmor){
+                playerHealth-=enemyDmg;
+            }else if(enemyRoll-playerRoll==playerArmor){
+                playerArmor--;
+            }
+        }
+    }
+
+    /**
+     * Controlla se il combattimento è finito
+     *
+     * @return true se uno dei due è morto
+     */
+    public boolean isOver() {
+        return enemyHealth <= 0 || playerHealth <= 0;
+    }
+
+    /**
+     * Controlla se il giocatore ha vinto
+     *
+     * @return true se il nemico è morto
+     */
+    public boolean playerWon() {
+        return enemyHealth <= 0;
+    }
+
+    /**
+     * Restituisce il nemico
+     *
+     * @return il nemico
+     */
+    public Enemy getEnemy() {
+        return enemy;
+    }
+
+    /**
+     * Restituisce la vita attuale del giocatore
+     *
+     * @return la vita del giocatore
+     */
+    public int getPlayerHealth() {
+        return playerHealth;
+    }
+
+    /**
+     * Restituisce l'armatura attuale del giocatore
+     *
+     * @return l'armatura del giocatore
+     */
+    public int getPlayerArmor() {
+        return playerArmor;
+    }
+
+    /**
+     * Restituisce la vita attuale del nemico
+     *
+     * @return la vita del nemico
+     */
+    public int getEnemyHealth() {
+        return enemyHealth;
+    }
+
+    /**
+     * Restituisce l'esperienza data dal nemico
+     *
+     * @return l'esperienza
+     */
+    public int getEnemyExp() {
+        return enemyExp;
+    }
+
+    /**
+     * Controlla se il giocatore ha già tirato in questo round
+     *
+     * @return true se il giocatore ha tirato
+     */
+    public boolean hasPlayerRolled() {
+        return playerRolled;
+    }
+
+    /**
+     * Controlla se il nemico ha già tirato in questo round
+     *
+     * @return true se il nemico ha tirato
+     */
+    public boolean hasEnemyRolled() {
+        return enemyRolled;
+    }
+
+    /**
+     * Restituisce l'ultimo tiro del giocatore
+     *
+     * @return il risultato del tiro
+     */
+    public int getPlayerRoll() {
+        return playerRoll;
+    }
+
+    /**
+     * Restituisce l'ultimo tiro del nemico
+     *
+     * @return il risultato del tiro
+     */
+    public int getEnemyRoll() {
+        return enemyRoll;
+    }
+}
@@ -0,0 +1,305 @@
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Il risultato esatto di un combattimento, calcolato invece che giocato round per round
+ *
+ * <p>
+ * Con le regole di {@link Combat} lo stato dopo un round dipende solo da vita del giocatore,
+ * vita del nemico e armatura, più i danni dei due che non cambiano: il combattimento è una catena
+ * di Markov. Su 36 coppie di dadi, 15 fanno colpire il giocatore; delle 15 in cui il nemico tira
+ * più alto, quelle con scarto maggiore dell'armatura tolgono vita, quella con scarto uguale
+ * consuma l'armatura e le altre, con i pareggi, lasciano tutto com'è. I round che non cambiano
+ * niente non contano per il risultato, quindi si salta direttamente al prossimo round che cambia
+ * qualcosa.
+ *
+ * <p>
+ * Ogni round che cambia qualcosa toglie un colpo a uno dei due o un punto di armatura, quindi gli
+ * stati si visitano in ordine, una volta sola, portando avanti la probabilità di arrivarci. Quella
+ * che esce dagli stati vivi si raccoglie negli stati finali. La tabella degli esiti si calcola una
+ * volta per ogni combinazione di vite, danni e armatura e resta in memoria per i combattimenti
+ * successivi; da lì la probabilità di vittoria si legge subito e un esito si estrae in tempo
+ * costante, con il metodo dell'alias.
+ */
+public final class CombatResolver {
+    /** Il numero massimo di tabelle tenute in memoria */
+    private static final int MAX_TABLES = 1024;
+
+    /**
+     * Le tabelle degli esiti già calcolate, dalla meno alla più recentemente usata
+     */
+    private static final Map<Key, Outcomes> TABLES = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Key, Outcomes> eldest) {
+            return size() > MAX_TABLES;
+        }
+    };
+
+    /**
+     * Lo stato di partenza di un combattimento all'inizio di un round
+     *
+     * @param playerHealth la vita del giocatore
+     * @param playerDmg i danni del giocatore
+     * @param armor l'armatura del giocatore
+     * @param enemyHealth la vita del nemico
+     * @param enemyDmg i danni del nemico
+     */
+    private record Key(int playerHealth, int playerDmg, int armor, int enemyHealth, int enemyDmg) {
+    }
+
+    /**
+     * Lo stato alla fine di un combattimento
+     *
+     * @param playerHealth la vita del giocatore
+     * @param armor l'armatura del giocatore
+     * @param enemyHealth la vita del nemico
+     */
+    public record Result(int playerHealth, int armor, int enemyHealth) {
+        /**
+         * Controlla se il giocatore ha vinto
+         *
+         * @return true se il nemico è morto
+         */
+        public boolean playerWon() {
+            return enemyHealth <= 0;
+        }
+    }
+
+    /**
+     * Gli esiti possibili di un combattimento, con le tabelle per estrarli
+     *
+     * @param results gli stati finali
+     * @param probability per ogni colonna dell'alias, la probabilità di restare sul suo esito
+     * @param alias per ogni colonna dell'alias, l'altro esito
+     * @param winProbability la probabilità che il giocatore vinca
+     */
+    private record Outcomes(Result[] results, double[] probability, int[] alias, double winProbability) {
+    }
+
+    private CombatResolver() {
+    }
+
+    /**
+     * Restituisce la probabilità che il giocatore vinca, con un round che comincia ora
+     *
+     * @param playerHealth la vita del giocatore
+     * @param playerDmg i danni del giocatore
+     * @param armor l'armatura del giocatore
+     * @param enemyHealth la vita del nemico
+     * @param enemyDmg i danni del nemico
+     *
+     * @return la probabilità, tra 0 e 1
+     */
+    public static double winProbability(int playerHealth, int playerDmg, int armor, int enemyHealth, int enemyDmg) {
+        return outcomes(playerHealth, playerDmg, armor, enemyHealth, enemyDmg).winProbability();
+    }
+
+    /**
+     * Estrae lo stato finale di un combattimento, con un round che comincia ora
+     *
+     * <p>
+     * Ogni stato finale esce con la stessa probabilità che avrebbe giocando round per round;
+     * dal generatore si prende un solo double.
+     *
+     * @param playerHealth la vita del giocatore
+     * @param playerDmg i danni del giocatore
+     * @param armor l'armatura del giocatore
+     * @param enemyHealth la vita del nemico
+     * @param enemyDmg i danni del nemico
+     * @param random il generatore
+     *
+     * @return lo stato finale
+     */
+    public static Result resolve(int playerHealth, int playerDmg, int armor, int enemyHealth, int enemyDmg,
+            Random random) {
+        Outcomes outcomes = outcomes(playerHealth, playerDmg, armor, enemyHealth, enemyDmg);
+        double x = random.nextDouble() * outcomes.results().length;
+        int column = (int) x;
+        int chosen = x - column < outcomes.probability()[column] ? column : outcomes.alias()[column];
+        return outcomes.results()[chosen];
+    }
+
+    /**
+     * Restituisce la tabella degli esiti, calcolandola se non è in memoria
+     *
+     * @param playerHealth la vita del giocatore
+     * @param playerDmg i danni del giocatore
+     * @param armor l'armatura del giocatore
+     * @param enemyHealth la vita del nemico
+     * @param enemyDmg i danni del nemico
+     *
+     * @return la tabella
+     */
+    private static Outcomes outcomes(int playerHealth, int playerDmg, int armor, int enemyHealth, int enemyDmg) {
+        // Un'armatura negativa si comporta come 0: ogni scarto la supera e nessuno la consuma
+        Key key = new Key(playerHealth, playerDmg, Math.max(0, armor), enemyHealth, enemyDmg);
+        synchronized (TABLES) {
+            Outcomes outcomes = TABLES.get(key);
+            if (outcomes == null) {
+                outcomes = compute(key);
+                TABLES.put(key, outcomes);
+            }
+            return outcomes;
+        }
+    }
+
+    /**
+     * Calcola gli esiti di un combattimento
+     *
+     * <p>
+     * Lo stato si indica con i colpi subiti dal giocatore, i colpi dati al nemico e l'armatura
+     * rimasta: i colpi crescono e l'armatura scende, quindi basta scorrerli in quest'ordine.
+     *
+     * @param key lo stato di partenza
+     *
+     * @return gli esiti
+     *
+     * @throws IllegalArgumentException se nessun round può cambiare lo stato, e il combattimento non finisce
+     */
+    private static Outcomes compute(Key key) {
+        int a0 = key.armor();
+        if (key.enemyHealth() <= 0 || key.playerHealth() <= 0) {
+            return table(new Result[] {new Result(key.playerHealth(), a0, key.enemyHealth())}, new double[] {1});
+        }
+        // I colpi che servono per finire l'uno o l'altro; con danni non positivi nessuno finisce l'altro
+        int hitsTaken = key.enemyDmg() > 0 ? (key.playerHealth() + key.enemyDmg() - 1) / key.enemyDmg() : 1;
+        int hitsGiven = key.playerDmg() > 0 ? (key.enemyHealth() + key.playerDmg() - 1) / key.playerDmg() : 1;
+
+        // Per ogni armatura, le coppie di dadi su 36 che colpiscono il nemico, il giocatore o l'armatura
+        int[] strike = new int[a0 + 1];
+        int[] wound = new int[a0 + 1];
+        int[] wear = new int[a0 + 1];
+        for (int a = 0; a <= a0; a++) {
+            strike[a] = key.playerDmg() > 0 ? 15 : 0;
+            for (int d = 1; d <= 5; d++) {
+                if (d > a && key.enemyDmg() > 0) {
+                    wound[a] += 6 - d;
+                } else if (d == a) {
+                    wear[a] += 6 - d;
+                }
+            }
+            if (strike[a] + wound[a] + wear[a] == 0) {
+                throw new IllegalArgumentException("Il combattimento non può finire: danni " + key.playerDmg()
+                        + " e " + key.enemyDmg() + ", armatura " + a);
+            }
+        }
+
+        // I vinti per colpi subiti e armatura, i persi per colpi dati e armatura
+        double[] won = new double[hitsTaken * (a0 + 1)];
+        double[] lost = new double[hitsGiven * (a0 + 1)];
+        double[] mass = new double[hitsGiven * (a0 + 1)];
+        double[] nextRow = new double[hitsGiven * (a0 + 1)];
+        mass[a0] = 1;
+        for (int i = 0; i < hitsTaken; i++) {
+            for (int j = 0; j < hitsGiven; j++) {
+                for (int a = a0; a >= 0; a--) {
+                    double m = mass[j * (a0 + 1) + a];
+                    if (m == 0) {
+                        continue;
+                    }
+                    double step = m / (strike[a] + wound[a] + wear[a]);
+                    if (j + 1 == hitsGiven) {
+                        won[i * (a0 + 1) + a] += step * strike[a];
+                    } else {
+                        mass[(j + 1) * (a0 + 1) + a] += step * strike[a];
+                    }
+                    if (i + 1 == hitsTaken) {
+                        lost[j * (a0 + 1) + a] += step * wound[a];
+                    } else {
+                        nextRow[j * (a0 + 1) + a] += step * wound[a];
+                    }
+                    if (wear[a] > 0) {
+                        mass[j * (a0 + 1) + a - 1] += step * wear[a];
+                    }
+                }
+            }
+            double[] swap = mass;
+            mass = nextRow;
+            nextRow = swap;
+            Arrays.fill(nextRow, 0);
+        }
+
+        int count = 0;
+        for (double p : won) {
+            count += p > 0 ? 1 : 0;
+        }
+        for (double p : lost) {
+            count += p > 0 ? 1 : 0;
+        }
+        Result[] results = new Result[count];
+        double[] weights = new double[count];
+        int n = 0;
+        for (int k = 0; k < won.length; k++) {
+            if (won[k] > 0) {
+                int i = k / (a0 + 1);
+                results[n] = new Result(key.playerHealth() - i * key.enemyDmg(), k % (a0 + 1),
+                        key.enemyHealth() - hitsGiven * key.playerDmg());
+                weights[n++] = won[k];
+            }
+        }
+        for (int k = 0; k < lost.length; k++) {
+            if (lost[k] > 0) {
+                int j = k / (a0 + 1);
+                results[n] = new Result(key.playerHealth() - hitsTaken * key.enemyDmg(), k % (a0 + 1),
+                        key.enemyHealth() - j * key.playerDmg());
+                weights[n++] = lost[k];
+            }
+        }
+        return table(results, weights);
+    }
+
+    /**
+     * Costruisce le tabelle dell'alias per estrarre gli esiti in tempo costante
+     *
+     * @param results gli stati finali
+     * @param weights le loro probabilità, che sommano a 1 a meno degli arrotondamenti
+     *
+     * @return gli esiti
+     */
+    private static Outcomes table(Result[] results, double[] weights) {
+        int n = results.length;
+        double total = 0;
+        double winProbability = 0;
+        for (int k = 0; k < n; k++) {
+            total += weights[k];
+            if (results[k].playerWon()) {
+                winProbability += weights[k];
+            }
+        }
+        double[] probability = new double[n];
+        int[] alias = new int[n];
+        int[] small = new int[n];
+        int[] large = new int[n];
+        int smalls = 0;
+        int larges = 0;
+        for (int k = 0; k < n; k++) {
+            probability[k] = weights[k] * n / total;
+            alias[k] = k;
+            if (probability[k] < 1) {
+                small[smalls++] = k;
+            } else {
+                large[larges++] = k;
+            }
+        }
+        while (smalls > 0 && larges > 0) {
+            int s = small[--smalls];
+            int l = large[larges - 1];
+            alias[s] = l;
+            probability[l] -= 1 - probability[s];
+            if (probability[l] < 1) {
+                larges--;
+                small[smalls++] = l;
+            }
+        }
+        // Quelli rimasti valgono 1 a meno degli arrotondamenti
+        while (larges > 0) {
+            probability[large[--larges]] = 1;
+        }
+        while (smalls > 0) {
+            probability[small[--smalls]] = 1;
+        }
+        return new Outcomes(results, probability, alias, winProbability / total);
+    }
+}
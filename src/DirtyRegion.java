@@ -0,0 +1,188 @@
+import java.util.Arrays;
+
+/**
+ * Le celle cambiate durante un turno, raccolte in pochi rettangoli
+ *
+ * <p>
+ * Ogni cella o rettangolo segnato viene unito al rettangolo esistente che cresce di meno,
+ * se la crescita non supera l'area dei due pezzi separati; altrimenti diventa un rettangolo nuovo.
+ * Oltre {@link #MAX_RECTS} rettangoli si fondono le due coppie più vicine, così chi ridisegna
+ * riceve sempre poche zone compatte. Il turno che cambia tutto, come un nuovo livello,
+ * segna l'intera mappa e i rettangoli non servono più.
+ */
+public class DirtyRegion {
+    /** Il numero massimo di rettangoli tenuti separati */
+    public static final int MAX_RECTS = 4;
+
+    /** I rettangoli, quattro interi ciascuno: prima riga, prima colonna, ultima riga, ultima colonna */
+    private final int[] rects = new int[(MAX_RECTS + 1) * 4];
+    /** Il numero di rettangoli */
+    private int count = 0;
+    /** La booleana che indica se è cambiata tutta la mappa */
+    private boolean all = false;
+
+    /**
+     * Segna una cella come cambiata
+     *
+     * @param row riga
+     * @param col colonna
+     */
+    public void add(int row, int col) {
+        add(row, col, row, col);
+    }
+
+    /**
+     * Segna un rettangolo di celle come cambiato, estremi compresi
+     *
+     * @param row1 prima riga
+     * @param col1 prima colonna
+     * @param row2 ultima riga
+     * @param col2 ultima colonna
+     */
+    public void add(int row1, int col1, int row2, int col2) {
+        if (all) {
+            return;
+        }
+        int area = area(row1, col1, row2, col2);
+        int best = -1;
+        int bestGrowth = Integer.MAX_VALUE;
+        for (int i = 0; i < count; i++) {
+            int o = i * 4;
+            int union = area(Math.min(row1, rects[o]), Math.min(col1, rects[o + 1]),
+                    Math.max(row2, rects[o + 2]), Math.max(col2, rects[o + 3]));
+            int growth = union - area(rects[o], rects[o + 1], rects[o + 2], rects[o + 3]);
+            if (growth <= area && growth < bestGrowth) {
+                best = i;
+                bestGrowth = growth;
+            }
+        }
+        if (best >= 0) {
+            unite(best, row1, col1, row2, col2);
+            return;
+        }
+        int o = count * 4;
+        rects[o] = row1;
+        rects[o + 1] = col1;
+        rects[o + 2] = row2;
+        rects[o + 3] = col2;
+        count++;
+        if (count > MAX_RECTS) {
+            mergeClosestPair();
+        }
+    }
+
+    /**
+     * Segna come cambiata tutta la mappa
+     */
+    public void addAll() {
+        all = true;
+        count = 0;
+    }
+
+    /**
+     * Controlla se è cambiata tutta la mappa
+     *
+     * @return true se va ridisegnato tutto
+     */
+    public boolean isAll() {
+        return all;
+    }
+
+    /**
+     * Controlla se non è cambiato niente
+     *
+     * @return true se non ci sono celle segnate
+     */
+    public boolean isEmpty() {
+        return !all && count == 0;
+    }
+
+    /**
+     * Restituisce il numero di rettangoli
+     *
+     * @return il numero di rettangoli
+     */
+    public int size() {
+        return count;
+    }
+
+    /**
+     * Restituisce un rettangolo
+     *
+     * @param i l'indice del rettangolo
+     *
+     * @return prima riga, prima colonna, ultima riga e ultima colonna
+     */
+    public int[] get(int i) {
+        return Arrays.copyOfRange(rects, i * 4, i * 4 + 4);
+    }
+
+    /**
+     * Dimentica le celle segnate, da chiamare dopo averle ridisegnate
+     */
+    public void clear() {
+        count = 0;
+        all = false;
+    }
+
+    /**
+     * Allarga un rettangolo esistente per contenerne un altro
+     *
+     * @param i l'indice del rettangolo da allargare
+     * @param row1 prima riga
+     * @param col1 prima colonna
+     * @param row2 ultima riga
+     * @param col2 ultima colonna
+     */
+    private void unite(int i, int row1, int col1, int row2, int col2) {
+        int o = i * 4;
+        rects[o] = Math.min(rects[o], row1);
+        rects[o + 1] = Math.min(rects[o + 1], col1);
+        rects[o + 2] = Math.max(rects[o + 2], row2);
+        rects[o + 3] = Math.max(rects[o + 3], col2);
+    }
+
+    /**
+     * Fonde i due rettangoli la cui unione spreca meno celle
+     */
+    private void mergeClosestPair() {
+        int bestA = 0;
+        int bestB = 1;
+        int bestWaste = Integer.MAX_VALUE;
+        for (int a = 0; a < count; a++) {
+            for (int b = a + 1; b < count; b++) {
+                int oa = a * 4;
+                int ob = b * 4;
+                int union = area(Math.min(rects[oa], rects[ob]), Math.min(rects[oa + 1], rects[ob + 1]),
+                        Math.max(rects[oa + 2], rects[ob + 2]), Math.max(rects[oa + 3], rects[ob + 3]));
+                int waste = union - area(rects[oa], rects[oa + 1], rects[oa + 2], rects[oa + 3])
+                        - area(rects[ob], rects[ob + 1], rects[ob + 2], rects[ob + 3]);
+                if (waste < bestWaste) {
+                    bestA = a;
+                    bestB = b;
+                    bestWaste = waste;
+                }
+            }
+        }
+        int ob = bestB * 4;
+        unite(bestA, rects[ob], rects[ob + 1], rects[ob + 2], rects[ob + 3]);
+        // L'ultimo rettangolo prende il posto di quello fuso
+        int last = (count - 1) * 4;
+        System.arraycopy(rects, last, rects, ob, 4);
+        count--;
+    }
+
+    /**
+     * Calcola l'area di un rettangolo, estremi compresi
+     *
+     * @param row1 prima riga
+     * @param col1 prima colonna
+     * @param row2 ultima riga
+     * @param col2 ultima colonna
+     *
+     * @return il numero di celle
+     */
+    private static int area(int row1, int col1, int row2, int col2) {
+        return (row2 - row1 + 1) * (col2 - col1 + 1);
+    }
+}
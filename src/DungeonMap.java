@@ -0,0 +1,445 @@
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * La mappa di un livello in forma compatta
+ *
+ * <p>
+ * La percorribilità di ogni cella è un bit di un array di long, con le righe allineate a parole
+ * intere: una riga di 64 celle occupa una sola parola. Stanze, corridoi, riempimenti e dilatazioni
+ * lavorano quindi su 64 celle alla volta. I tipi di cella oltre a muro e pavimento
+ * finiscono in un array di byte, allocato solo quando serve.
+ */
+public class DungeonMap implements TileMap {
+    /** Il tipo di cella muro */
+    public static final byte MURO = 0;
+    /** Il tipo di cella pavimento */
+    public static final byte PAVIMENTO = 1;
+
+    /** Il numero di righe e di colonne */
+    private final int rows, cols;
+    /** Il numero di parole per riga */
+    private final int stride;
+    /** Il bit di percorribilità di ogni cella */
+    private final long[] walkable;
+    /** Il tipo di ogni cella, null finché tutte le celle sono muro o pavimento */
+    private byte[] tiles;
+
+    /**
+     * Costruttore di DungeonMap, crea una mappa tutta muro
+     *
+     * @param rows il numero di righe
+     * @param cols il numero di colonne
+     */
+    public DungeonMap(int rows, int cols) {
+        this.rows = rows;
+        this.cols = cols;
+        this.stride = (cols + 63) >>> 6;
+        this.walkable = new long[rows * stride];
+    }
+
+    @Override
+    public int getRows() {
+        return rows;
+    }
+
+    @Override
+    public int getCols() {
+        return cols;
+    }
+
+    /**
+     * Riporta tutta la mappa a muro
+     */
+    public void clear() {
+        Arrays.fill(walkable, 0L);
+        tiles = null;
+    }
+
+    @Override
+    public boolean isWalkable(int row, int col) {
+        if (row < 0 || row >= rows || col < 0 || col >= cols) {
+            return false;
+        }
+        return (walkable[row * stride + (col >>> 6)] & (1L << col)) != 0;
+    }
+
+    /**
+     * Restituisce il tipo di una cella
+     *
+     * @param row riga
+     * @param col colonna
+     *
+     * @return il tipo, {@link #MURO} o {@link #PAVIMENTO} se non è stato impostato altro
+     */
+    public byte getTile(int row, int col) {
+        if (tiles != null) {
+            return tiles[row * cols + col];
+        }
+        return isWalkable(row, col) ? PAVIMENTO : MURO;
+    }
+
+    /**
+     * Imposta il tipo di una cella
+     *
+     * @param row riga
+     * @param col colonna
+     * @param tipo il tipo della cella
+     * @param percorribile true se la cella si può attraversare
+     */
+    public void setTile(int row, int col, byte tipo, boolean percorribile) {
+        if (tiles == null) {
+            if (tipo == (percorribile ? PAVIMENTO : MURO)) {
+                setWalkable(row, col, percorribile);
+                return;
+            }
+            tiles = new byte[rows * cols];
+            for (int r = 0; r < rows; r++) {
+                for (int c = 0; c < cols; c++) {
+                    tiles[r * cols + c] = isWalkable(r, c) ? PAVIMENTO : MURO;
+                }
+            }
+        }
+        tiles[row * cols + col] = tipo;
+        setWalkable(row, col, percorribile);
+    }
+
+    /**
+     * Imposta la percorribilità di una cella
+     *
+     * @param row riga
+     * @param col colonna
+     * @param percorribile true per il pavimento, false per il muro
+     */
+    public void setWalkable(int row, int col, boolean percorribile) {
+        int word = row * stride + (col >>> 6);
+        if (percorribile) {
+            walkable[word] |= 1L << col;
+        } else {
+            walkable[word] &= ~(1L << col);
+        }
+        if (tiles != null) {
+            tiles[row * cols + col] = percorribile ? PAVIMENTO : MURO;
+        }
+    }
+
+    /**
+     * Scava a pavimento un rettangolo di celle, una parola alla volta
+     *
+     * @param x colonna dell'angolo in alto a sinistra
+     * @param y riga dell'angolo in alto a sinistra
+     * @param width larghezza
+     * @param height altezza
+     */
+    public void carveRect(int x, int y, int width, int height) {
+        for (int row = y; row < y + height; row++) {
+            carveRow(row, x, x + width - 1);
+        }
+    }
+
+    /**
+     * Scava a pavimento un tratto di riga, estremi compresi
+     *
+     * @param row riga
+     * @param col1 prima colonna
+     * @param col2 ultima colonna
+     */
+    public void carveRow(int row, int col1, int col2) {
+        int from = Math.min(col1, col2);
+        int to = Math.max(col1, col2);
+        int base = row * stride;
+        int firstWord = from >>> 6;
+        int lastWord = to >>> 6;
+        long firstMask = -1L << from;
+        long lastMask = -1L >>> (63 - (to & 63));
+        if (firstWord == lastWord) {
+            walkable[base + firstWord] |= firstMask & lastMask;
+        } else {
+            walkable[base + firstWord] |= firstMask;
+            for (int w = firstWord + 1; w < lastWord; w++) {
+                walkable[base + w] = -1L;
+            }
+            walkable[base + lastWord] |= lastMask;
+        }
+        if (tiles != null) {
+            Arrays.fill(tiles, row * cols + from, row * cols + to + 1, PAVIMENTO);
+        }
+    }
+
+    /**
+     * Scava a pavimento un tratto di colonna, estremi compresi
+     *
+     * @param col colonna
+     * @param row1 prima riga
+     * @param row2 ultima riga
+     */
+    public void carveColumn(int col, int row1, int row2) {
+        for (int row = Math.min(row1, row2); row <= Math.max(row1, row2); row++) {
+            setWalkable(row, col, true);
+        }
+    }
+
+    /**
+     * Conta le celle percorribili
+     *
+     * @return il numero di celle di pavimento
+     */
+    public int countWalkable() {
+        int count = 0;
+        for (long word : walkable) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    /**
+     * Elenca le celle percorribili scorrendo i bit accesi
+     *
+     * @return gli indici delle celle, nel formato riga * colonne + colonna
+     */
+    public int[] walkableCells() {
+        int[] cells = new int[countWalkable()];
+        int n = 0;
+        for (int row = 0; row < rows; row++) {
+            for (int w = 0; w < stride; w++) {
+                long word = walkable[row * stride + w];
+                while (word != 0) {
+                    int col = (w << 6) + Long.numberOfTrailingZeros(word);
+                    cells[n++] = row * cols + col;
+                    word &= word - 1;
+                }
+            }
+        }
+        return cells;
+    }
+
+    /**
+     * Crea un insieme di celle vuoto con la stessa forma della mappa
+     *
+     * @return l'insieme, un bit per cella
+     */
+    public long[] newCellSet() {
+        return new long[walkable.length];
+    }
+
+    /**
+     * Controlla se una cella appartiene a un insieme creato da questa mappa
+     *
+     * @param set l'insieme
+     * @param row riga
+     * @param col colonna
+     *
+     * @return true se la cella è nell'insieme
+     */
+    public boolean contains(long[] set, int row, int col) {
+        if (row < 0 || row >= rows || col < 0 || col >= cols) {
+            return false;
+        }
+        return (set[row * stride + (col >>> 6)] & (1L << col)) != 0;
+    }
+
+    /**
+     * Aggiunge o toglie una cella da un insieme creato da questa mappa
+     *
+     * @param set l'insieme
+     * @param row riga
+     * @param col colonna
+     * @param presente true per aggiungere la cella, false per toglierla
+     */
+    public void setInSet(long[] set, int row, int col, boolean presente) {
+        int word = row * stride + (col >>> 6);
+        if (presente) {
+            set[word] |= 1L << col;
+        } else {
+            set[word] &= ~(1L << col);
+        }
+    }
+
+    /**
+     * Dilata un insieme di celle di un passo nelle quattro direzioni
+     *
+     * <p>
+     * Lo spostamento orizzontale è uno shift di parola con il riporto dalle parole vicine,
+     * quello verticale è un OR con la riga sopra e con quella sotto.
+     *
+     * @param src l'insieme di partenza
+     * @param dst l'insieme in cui scrivere il risultato, diverso da src
+     */
+    public void dilate(long[] src, long[] dst) {
+        long lastMask = -1L >>> (63 - ((cols - 1) & 63));
+        for (int row = 0; row < rows; row++) {
+            int base = row * stride;
+            for (int w = 0; w < stride; w++) {
+                long word = src[base + w];
+                long left = word << 1;
+                long right = word >>> 1;
+                if (w > 0) {
+                    left |= src[base + w - 1] >>> 63;
+                }
+                if (w < stride - 1) {
+                    right |= src[base + w + 1] << 63;
+                }
+                long result = word | left | right;
+                if (row > 0) {
+                    result |= src[base - stride + w];
+                }
+                if (row < rows - 1) {
+                    result |= src[base + stride + w];
+                }
+                if (w == stride - 1) {
+                    result &= lastMask;
+                }
+                dst[base + w] = result;
+            }
+        }
+    }
+
+    /**
+     * Rende percorribili esattamente le celle di un insieme creato da questa mappa
+     *
+     * @param set l'insieme delle celle di pavimento
+     */
+    public void setWalkable(long[] set) {
+        System.arraycopy(set, 0, walkable, 0, walkable.length);
+        if (tiles != null) {
+            for (int row = 0; row < rows; row++) {
+                for (int col = 0; col < cols; col++) {
+                    tiles[row * cols + col] = isWalkable(row, col) ? PAVIMENTO : MURO;
+                }
+            }
+        }
+    }
+
+    /**
+     * Riempie un insieme di celle a caso, una parola alla volta; le celle del bordo restano fuori
+     *
+     * @param set l'insieme da riempire
+     * @param random il generatore
+     * @param extra il numero di parole casuali in AND aggiunte in OR a ogni parola: con 0 ogni cella
+     *              è dentro con probabilità 1/2, con k con probabilità 1/2 + 1/2^(k+2)
+     */
+    public void fillRandom(long[] set, Random random, int extra) {
+        for (int i = 0; i < set.length; i++) {
+            long word = random.nextLong();
+            if (extra > 0) {
+                long bias = -1L;
+                for (int k = 0; k <= extra; k++) {
+                    bias &= random.nextLong();
+                }
+                word |= bias;
+            }
+            set[i] = word;
+        }
+        clearBorder(set, 0, rows);
+    }
+
+    /**
+     * Applica a un tratto di righe un passo dell'automa cellulare della maggioranza: una cella
+     * è nell'insieme se almeno 5 delle 9 celle del suo intorno 3x3, lei compresa, ci sono
+     *
+     * <p>
+     * Le nove celle dell'intorno si sommano in un contatore di 4 bit per ogni cella della
+     * parola, con addizionatori bit a bit: 64 celle alla volta, senza salti. Le righe del tratto
+     * dipendono solo da src, quindi tratti diversi si possono calcolare su thread diversi.
+     * Le celle del bordo della mappa restano fuori dall'insieme.
+     *
+     * @param src l'insieme di partenza
+     * @param dst l'insieme in cui scrivere il risultato, diverso da src
+     * @param fromRow la prima riga del tratto
+     * @param toRow la riga dopo l'ultima del tratto
+     */
+    public void smooth(long[] src, long[] dst, int fromRow, int toRow) {
+        for (int row = fromRow; row < toRow; row++) {
+            int base = row * stride;
+            for (int w = 0; w < stride; w++) {
+                long c0 = 0, c1 = 0, c2 = 0, c3 = 0;
+                for (int dr = -1; dr <= 1; dr++) {
+                    int r = row + dr;
+                    if (r < 0 || r >= rows) {
+                        continue;
+                    }
+                    int rb = r * stride;
+                    long word = src[rb + w];
+                    long left = word << 1;
+                    long right = word >>> 1;
+                    if (w > 0) {
+                        left |= src[rb + w - 1] >>> 63;
+                    }
+                    if (w < stride - 1) {
+                        right |= src[rb + w + 1] << 63;
+                    }
+                    for (int k = 0; k < 3; k++) {
+                        long x = k == 0 ? left : k == 1 ? word : right;
+                        long carry = c0 & x;
+                        c0 ^= x;
+                        long next = c1 & carry;
+                        c1 ^= carry;
+                        carry = next;
+                        next = c2 & carry;
+                        c2 ^= carry;
+                        c3 |= next;
+                    }
+                }
+                dst[base + w] = c3 | (c2 & (c1 | c0)); // Almeno 5
+            }
+        }
+        clearBorder(dst, fromRow, toRow);
+    }
+
+    /**
+     * Toglie da un insieme le celle del bordo della mappa e i bit oltre l'ultima colonna in un tratto di righe
+     *
+     * @param set l'insieme
+     * @param fromRow la prima riga del tratto
+     * @param toRow la riga dopo l'ultima del tratto
+     */
+    private void clearBorder(long[] set, int fromRow, int toRow) {
+        long lastMask = -1L >>> (63 - ((cols - 1) & 63));
+        for (int row = fromRow; row < toRow; row++) {
+            int base = row * stride;
+            if (row == 0 || row == rows - 1) {
+                Arrays.fill(set, base, base + stride, 0L);
+                continue;
+            }
+            set[base] &= ~1L;
+            set[base + stride - 1] &= lastMask & ~(1L << (cols - 1));
+        }
+    }
+
+    /**
+     * Calcola le celle raggiungibili a piedi da una cella di partenza
+     *
+     * <p>
+     * A ogni passo l'insieme raggiunto viene dilatato e intersecato con il pavimento,
+     * finché non cresce più.
+     *
+     * @param row riga di partenza
+     * @param col colonna di partenza
+     *
+     * @return l'insieme delle celle raggiungibili, vuoto se la partenza è un muro
+     */
+    public long[] floodFill(int row, int col) {
+        long[] reached = newCellSet();
+        if (!isWalkable(row, col)) {
+            return reached;
+        }
+        reached[row * stride + (col >>> 6)] = 1L << col;
+        long[] next = newCellSet();
+        boolean grown = true;
+        while (grown) {
+            dilate(reached, next);
+            grown = false;
+            for (int i = 0; i < next.length; i++) {
+                long word = next[i] & walkable[i];
+                if (word != reached[i]) {
+                    grown = true;
+                }
+                next[i] = word;
+            }
+            long[] swap = reached;
+            reached = next;
+            next = swap;
+        }
+        return reached;
+    }
+}
@@ -14,6 +14,10 @@ public class Enemy implements Serializable{
     private int danni;
     @SuppressWarnings("FieldMayBeFinal")
     private int exp;
+    /** L'indice di occupazione in cui è registrato il nemico */
+    private transient OccupancyGrid griglia;
+    /** L'handle del nemico nell'indice di occupazione */
+    private transient int handle;
 
     /**
      * Costruttore di Enemy
@@ -48,7 +52,9 @@ public class Enemy implements Serializable{
      * @param row riga
      */
     public void setRow(int row) {
+        int oldRow = this.row;
         this.row = row;
+        notifyMove(oldRow, col);
     }
 
     /**
@@ -66,7 +72,9 @@ public class Enemy implements Serializable{
      * @param col colonna
      */
     public void setCol(int col) {
+        int oldCol = this.col;
         this.col = col;
+        notifyMove(row, oldCol);
     }
 
     /**
@@ -112,6 +120,7 @@ public class Enemy implements Serializable{
      */
     public void updateRow(int var) {
         this.row+=var; 
+        notifyMove(row - var, col);
     }
 
     /**
@@ -121,5 +130,46 @@ public class Enemy implements Serializable{
      */
     public void updateCol(int var) {
         this.col+=var;
+        notifyMove(row, col - var);
+    }
+
+    /**
+     * Aggiorna l'indice di occupazione dopo uno spostamento
+     * 
+     * @param oldRow riga di partenza
+     * @param oldCol colonna di partenza
+     */
+    private void notifyMove(int oldRow, int oldCol) {
+        if (griglia != null) {
+            griglia.spostaNemico(handle, oldRow, oldCol, row, col);
+        }
+    }
+
+    /**
+     * Collega il nemico a un indice di occupazione
+     * 
+     * @param griglia l'indice
+     * @param handle l'handle assegnato al nemico
+     */
+    void attach(OccupancyGrid griglia, int handle) {
+        this.griglia = griglia;
+        this.handle = handle;
+    }
+
+    /**
+     * Scollega il nemico dal suo indice di occupazione
+     */
+    void detach() {
+        this.griglia = null;
+        this.handle = 0;
+    }
+
+    /**
+     * Restituisce l'handle del nemico nell'indice di occupazione
+     * 
+     * @return l'handle, 0 se il nemico non è registrato
+     */
+    int getHandle() {
+        return handle;
     }
 }
@@ -7,7 +7,7 @@ public class EnemyManager {
     /** Lista dei nemici */
     private final List<Enemy> nemici;
     /** Generatore di numeri casuali */
-    private final Random random = new Random();
+    private final Random random;
     /** 
      * Lista dei tipi di nemici
      * 
@@ -29,7 +29,17 @@ public class EnemyManager {
      * Costruttore della classe EnemyManager
      */
     public EnemyManager() {
+        this(new Random());
+    }
+
+    /**
+     * Costruttore della classe EnemyManager con un generatore dato
+     * 
+     * @param random il generatore di numeri casuali
+     */
+    public EnemyManager(Random random) {
         this.nemici = new ArrayList<>();
+        this.random = random;
     }
 
     /**
@@ -44,36 +54,70 @@ public class EnemyManager {
     /**
      * Genera i nemici sulla mappa
      * 
-     * @param mappa la mappa
+     * @param celle le celle libere da cui pescare le posizioni, che restano occupate
      * @param livello il livello del gioco
+     * @param griglia l'indice di occupazione in cui registrare i nemici
      * 
      * @return la lista dei nemici
      */
-    public List<Enemy> generaNemici(char[][] mappa, int livello) {
-        nemici.clear();
+    public List<Enemy> generaNemici(FreeCellIndex celle, int livello, OccupancyGrid griglia) {
         int maxNemici = random.nextInt(4) + 2; // Da 2 a 5 nemici
+        return generaNemici(celle, livello, griglia, maxNemici);
+    }
+
+    /**
+     * Genera un numero fissato di nemici sulla mappa
+     * 
+     * <p>
+     * Se le celle libere finiscono prima, i nemici sono di meno.
+     * 
+     * @param celle le celle libere da cui pescare le posizioni, che restano occupate
+     * @param livello il livello del gioco
+     * @param griglia l'indice di occupazione in cui registrare i nemici
+     * @param maxNemici il numero di nemici da generare
+     * 
+     * @return la lista dei nemici
+     */
+    public List<Enemy> generaNemici(FreeCellIndex celle, int livello, OccupancyGrid griglia, int maxNemici) {
+        nemici.clear();
         for (int i = 0; i < maxNemici; i++) {
-            while (true) {
-                int row = random.nextInt(mappa.length);
-                int col = random.nextInt(mappa[0].length);
-
-                if (mappa[row][col] == '.') {
-                    char tipoNemico = determinaTipoNemico(livello);
-                    int vitanemico = determinaVitaNemico(tipoNemico, livello);
-                    int danniNemico = determinaDanniNemico(tipoNemico, livello);
-                    int expNemico = determinaExpNemico(tipoNemico, livello);
-
-                    if (tipoNemico != ' ') {
-                        nemici.add(new Enemy(row, col, tipoNemico, vitanemico, danniNemico, expNemico));
-                        break;
-                    }
-                }
+            long cella = celle.take(random);
+            if (cella < 0) {
+                break; // Nessuna cella libera
             }
+            char tipoNemico;
+            do {
+                tipoNemico = determinaTipoNemico(livello);
+            } while (tipoNemico == ' ');
+            int vitanemico = determinaVitaNemico(tipoNemico, livello);
+            int danniNemico = determinaDanniNemico(tipoNemico, livello);
+            int expNemico = determinaExpNemico(tipoNemico, livello);
+
+            Enemy nemico = new Enemy(celle.rowOf(cella), celle.colOf(cella), tipoNemico, vitanemico, danniNemico, expNemico);
+            nemici.add(nemico);
+            griglia.aggiungiNemico(nemico);
         }
 
         return new ArrayList<>(nemici);
     }
 
+    /**
+     * Sostituisce i nemici con quelli di un salvataggio
+     * 
+     * @param salvati i nemici salvati
+     * @param griglia l'indice di occupazione in cui registrare i nemici
+     * 
+     * @return la lista dei nemici
+     */
+    public List<Enemy> ripristinaNemici(List<Enemy> salvati, OccupancyGrid griglia) {
+        nemici.clear();
+        for (Enemy nemico : salvati) {
+            nemici.add(nemico);
+            griglia.aggiungiNemico(nemico);
+        }
+        return new ArrayList<>(nemici);
+    }
+
     /**
      * Determina il tipo di nemico in base al livello
      * 
@@ -0,0 +1,306 @@
+import java.util.Arrays;
+
+/**
+ * Il campo visivo del giocatore, calcolato con lo shadowcasting ricorsivo
+ *
+ * <p>
+ * Il campo viene calcolato una volta per turno dalla posizione del giocatore e salvato come
+ * insieme di bit grande quanto il quadrato del raggio intorno all'osservatore, quindi la sua
+ * dimensione non dipende da quella del livello. La visibilità è simmetrica
+ * per i nostri scopi: un nemico vede il giocatore se la sua cella è nel campo visivo,
+ * quindi il controllo per ogni nemico costa la lettura di un bit. Le celle viste almeno una volta
+ * restano nell'insieme delle celle esplorate, usato per la nebbia di guerra, diviso in pagine
+ * di 64 per 64 celle allocate solo dove il giocatore è passato.
+ */
+public class FieldOfView {
+    /**
+     * Le trasformazioni degli otto ottanti
+     *
+     * <p>
+     * Per ogni ottante: contributo di dx e dy alla colonna, contributo di dx e dy alla riga.
+     */
+    private static final int[][] OTTANTI = {
+        {1, 0, 0, 1}, {0, 1, 1, 0}, {0, -1, 1, 0}, {-1, 0, 0, 1},
+        {-1, 0, 0, -1}, {0, -1, -1, 0}, {0, 1, -1, 0}, {1, 0, 0, -1}
+    };
+
+    /** Il logaritmo in base 2 del lato di una pagina di celle esplorate */
+    private static final int PAGE_SHIFT = 6;
+
+    /** La mappa su cui calcolare il campo visivo */
+    private final TileMap map;
+    /** Il numero di righe e di colonne della mappa */
+    private final int rows, cols;
+    /** Le celle visibili nell'ultimo calcolo, nel quadrato di lato 2 * raggio + 1 intorno all'origine */
+    private long[] visible = new long[1];
+    /** Il lato del quadrato delle celle visibili */
+    private int window = 1;
+    /** Il numero di pagine per riga di pagine */
+    private final int pageCols;
+    /** Le pagine delle celle viste almeno una volta nel livello, una riga di bit per parola, null se mai toccate */
+    private final long[][] explored;
+    /** Le pagine di celle esplorate cambiate dall'ultima volta che sono state chieste, un bit per pagina */
+    private final long[] changedPages;
+    /** La riga e la colonna da cui è stato fatto l'ultimo calcolo */
+    private int originRow, originCol;
+    /** Il raggio dell'ultimo calcolo */
+    private int radius;
+    /**
+     * Le pendenze dei bordi di ogni cella di un ottante, indicizzate per distanza e per dx + distanza,
+     * precalcolate per il raggio corrente così il ciclo interno non divide
+     */
+    private double[][] leftSlopes = new double[0][], rightSlopes = new double[0][];
+
+    /**
+     * Costruttore di FieldOfView
+     *
+     * @param map la mappa su cui calcolare il campo visivo
+     */
+    public FieldOfView(TileMap map) {
+        this.map = map;
+        this.rows = map.getRows();
+        this.cols = map.getCols();
+        this.pageCols = (cols + 63) >>> PAGE_SHIFT;
+        this.explored = new long[((rows + 63) >>> PAGE_SHIFT) * pageCols][];
+        this.changedPages = new long[(explored.length + 63) >>> 6];
+    }
+
+    /**
+     * Dimentica le celle esplorate, da chiamare a ogni nuovo livello
+     */
+    public void reset() {
+        Arrays.fill(visible, 0L);
+        Arrays.fill(explored, null);
+        Arrays.fill(changedPages, 0L);
+    }
+
+    /**
+     * Calcola le celle visibili da una posizione
+     *
+     * @param row riga dell'osservatore
+     * @param col colonna dell'osservatore
+     * @param radius raggio di vista in celle, misurato con la distanza euclidea
+     */
+    public void compute(int row, int col, int radius) {
+        this.originRow = row;
+        this.originCol = col;
+        this.radius = radius;
+        if (leftSlopes.length != radius + 1) {
+            buildSlopes(radius);
+            window = 2 * radius + 1;
+            visible = new long[(window * window + 63) >>> 6];
+        } else {
+            Arrays.fill(visible, 0L);
+        }
+
+        mark(row, col);
+        for (int[] o : OTTANTI) {
+            castLight(1, 1.0, 0.0, o[0], o[1], o[2], o[3]);
+        }
+    }
+
+    /**
+     * Controlla se una cella era visibile nell'ultimo calcolo
+     *
+     * @param row riga
+     * @param col colonna
+     *
+     * @return true se la cella è nel campo visivo
+     */
+    public boolean isVisible(int row, int col) {
+        int r = row - originRow + radius;
+        int c = col - originCol + radius;
+        if (r < 0 || r >= window || c < 0 || c >= window) {
+            return false;
+        }
+        int bit = r * window + c;
+        return (visible[bit >>> 6] & (1L << bit)) != 0;
+    }
+
+    /**
+     * Controlla se una cella è stata vista almeno una volta nel livello
+     *
+     * @param row riga
+     * @param col colonna
+     *
+     * @return true se la cella è stata esplorata
+     */
+    public boolean isExplored(int row, int col) {
+        if (row < 0 || row >= rows || col < 0 || col >= cols) {
+            return false;
+        }
+        long[] page = explored[(row >>> PAGE_SHIFT) * pageCols + (col >>> PAGE_SHIFT)];
+        return page != null && (page[row & 63] & (1L << col)) != 0;
+    }
+
+    /**
+     * Elenca le pagine di celle esplorate che esistono
+     *
+     * @return gli indici delle pagine
+     */
+    public int[] exploredPages() {
+        int count = 0;
+        for (long[] page : explored) {
+            if (page != null) {
+                count++;
+            }
+        }
+        int[] pages = new int[count];
+        int n = 0;
+        for (int p = 0; p < explored.length; p++) {
+            if (explored[p] != null) {
+                pages[n++] = p;
+            }
+        }
+        return pages;
+    }
+
+    /**
+     * Elenca le pagine di celle esplorate cambiate dall'ultima chiamata e ricomincia a contarle
+     *
+     * @return gli indici delle pagine cambiate
+     */
+    public int[] takeChangedPages() {
+        int count = 0;
+        for (long word : changedPages) {
+            count += Long.bitCount(word);
+        }
+        int[] pages = new int[count];
+        int n = 0;
+        for (int w = 0; w < changedPages.length; w++) {
+            long word = changedPages[w];
+            while (word != 0) {
+                pages[n++] = (w << 6) + Long.numberOfTrailingZeros(word);
+                word &= word - 1;
+            }
+            changedPages[w] = 0L;
+        }
+        return pages;
+    }
+
+    /**
+     * Restituisce una copia di una pagina di celle esplorate
+     *
+     * @param page l'indice della pagina
+     *
+     * @return le 64 righe di bit della pagina, tutte a zero se la pagina non esiste
+     */
+    public long[] copyExploredPage(int page) {
+        return explored[page] == null ? new long[64] : explored[page].clone();
+    }
+
+    /**
+     * Sostituisce una pagina di celle esplorate, per esempio leggendola da un salvataggio
+     *
+     * @param page l'indice della pagina
+     * @param bits le 64 righe di bit della pagina
+     */
+    public void restoreExploredPage(int page, long[] bits) {
+        if (bits.length != 64) {
+            throw new IllegalArgumentException("Una pagina ha 64 righe: " + bits.length);
+        }
+        explored[page] = bits.clone();
+    }
+
+    /**
+     * Restituisce il numero di pagine di celle esplorate del livello
+     *
+     * @return il numero di pagine
+     */
+    public int getPageCount() {
+        return explored.length;
+    }
+
+    /**
+     * Precalcola le pendenze dei bordi delle celle per un raggio
+     *
+     * @param radius il raggio
+     */
+    private void buildSlopes(int radius) {
+        leftSlopes = new double[radius + 1][];
+        rightSlopes = new double[radius + 1][];
+        for (int j = 1; j <= radius; j++) {
+            int dy = -j;
+            leftSlopes[j] = new double[j + 1];
+            rightSlopes[j] = new double[j + 1];
+            for (int dx = -j; dx <= 0; dx++) {
+                leftSlopes[j][dx + j] = (dx - 0.5) / (dy + 0.5);
+                rightSlopes[j][dx + j] = (dx + 0.5) / (dy - 0.5);
+            }
+        }
+    }
+
+    /**
+     * Segna una cella come visibile ed esplorata
+     *
+     * @param row riga
+     * @param col colonna
+     */
+    private void mark(int row, int col) {
+        int bit = (row - originRow + radius) * window + (col - originCol + radius);
+        visible[bit >>> 6] |= 1L << bit;
+        int p = (row >>> PAGE_SHIFT) * pageCols + (col >>> PAGE_SHIFT);
+        long[] page = explored[p];
+        if (page == null) {
+            page = new long[64];
+            explored[p] = page;
+        }
+        page[row & 63] |= 1L << col;
+        changedPages[p >>> 6] |= 1L << p;
+    }
+
+    /**
+     * Illumina un ottante riga dopo riga, ricorrendo dietro ogni ostacolo
+     *
+     * @param distance la distanza della prima riga da esaminare
+     * @param start la pendenza di inizio del cono ancora libero
+     * @param end la pendenza di fine del cono ancora libero
+     * @param xx contributo di dx alla colonna
+     * @param xy contributo di dy alla colonna
+     * @param yx contributo di dx alla riga
+     * @param yy contributo di dy alla riga
+     */
+    private void castLight(int distance, double start, double end, int xx, int xy, int yx, int yy) {
+        if (start < end) {
+            return;
+        }
+        int radiusSquared = radius * radius;
+        double newStart = 0.0;
+        for (int j = distance; j <= radius; j++) {
+            int dy = -j;
+            boolean blocked = false;
+            for (int dx = -j; dx <= 0; dx++) {
+                double leftSlope = leftSlopes[j][dx + j];
+                double rightSlope = rightSlopes[j][dx + j];
+                if (start < rightSlope) {
+                    continue;
+                } else if (end > leftSlope) {
+                    break;
+                }
+
+                int col = originCol + dx * xx + dy * xy;
+                int row = originRow + dx * yx + dy * yy;
+                if (dx * dx + dy * dy <= radiusSquared && row >= 0 && row < rows && col >= 0 && col < cols) {
+                    mark(row, col);
+                }
+
+                boolean opaque = !map.isWalkable(row, col);
+                if (blocked) {
+                    if (opaque) {
+                        newStart = rightSlope;
+                    } else {
+                        blocked = false;
+                        start = newStart;
+                    }
+                } else if (opaque && j < radius) {
+                    blocked = true;
+                    castLight(j + 1, start, leftSlope, xx, xy, yx, yy);
+                    newStart = rightSlope;
+                }
+            }
+            if (blocked) {
+                break;
+            }
+        }
+    }
+}
@@ -0,0 +1,183 @@
+import java.util.Arrays;
+
+/**
+ * Il campo di distanze dal giocatore, condiviso da tutti i nemici che lo inseguono
+ *
+ * <p>
+ * Una visita in ampiezza dalla cella del giocatore scrive in ogni cella percorribile il numero
+ * di passi necessari per raggiungerlo; un nemico che insegue scende il gradiente passando
+ * alla cella vicina con la distanza minore. Il campo serve qualunque numero di inseguitori
+ * con un solo calcolo per turno.
+ *
+ * <p>
+ * La visita si ferma a un orizzonte fissato, quindi le distanze vivono in un quadrato di lato
+ * 2 * orizzonte + 1 centrato sull'obiettivo: memoria e costo del ricalcolo non dipendono dalla
+ * dimensione della mappa. Gli array sono allocati una volta sola e non vengono mai svuotati:
+ * ogni calcolo usa un nuovo timbro e le celle con un timbro vecchio valgono come non raggiunte.
+ */
+public class FlowField {
+    /** La distanza delle celle non raggiunte */
+    public static final int UNREACHED = Integer.MAX_VALUE;
+
+    /** Gli spostamenti di riga e di colonna delle quattro direzioni */
+    private static final int[] DR = {-1, 1, 0, 0};
+    private static final int[] DC = {0, 0, -1, 1};
+
+    /** La mappa su cui calcolare il campo */
+    private final TileMap map;
+    /** La distanza massima esplorata */
+    private final int horizon;
+    /** Il lato del quadrato coperto dal campo */
+    private final int window;
+    /** La riga e la colonna dell'angolo in alto a sinistra del quadrato nell'ultimo calcolo */
+    private int originRow, originCol;
+    /** La distanza di ogni cella del quadrato, valida solo se il timbro è quello corrente */
+    private final int[] dist;
+    /** Il timbro dell'ultimo calcolo che ha raggiunto ogni cella */
+    private final int[] stamp;
+    /** La coda della visita in ampiezza */
+    private final int[] queue;
+    /** Il timbro del calcolo corrente */
+    private int currentStamp = 0;
+
+    /**
+     * Costruttore di FlowField
+     *
+     * @param map la mappa
+     * @param horizon la distanza massima da esplorare a ogni calcolo
+     */
+    public FlowField(TileMap map, int horizon) {
+        this.map = map;
+        this.horizon = horizon;
+        this.window = 2 * horizon + 1;
+        int cells = window * window;
+        this.dist = new int[cells];
+        this.stamp = new int[cells];
+        this.queue = new int[cells];
+    }
+
+    /**
+     * Ricalcola le distanze da una cella obiettivo
+     *
+     * @param row riga dell'obiettivo
+     * @param col colonna dell'obiettivo
+     */
+    public void compute(int row, int col) {
+        if (++currentStamp == 0) {
+            // Il contatore ha fatto il giro: i timbri vecchi potrebbero sembrare nuovi
+            Arrays.fill(stamp, 0);
+            currentStamp = 1;
+        }
+        originRow = row - horizon;
+        originCol = col - horizon;
+        int head = 0;
+        int tail = 0;
+        int start = horizon * window + horizon;
+        dist[start] = 0;
+        stamp[start] = currentStamp;
+        queue[tail++] = start;
+
+        while (head < tail) {
+            int cell = queue[head++];
+            int d = dist[cell];
+            if (d >= horizon) {
+                continue;
+            }
+            int r = cell / window;
+            int c = cell - r * window;
+            for (int k = 0; k < 4; k++) {
+                int nr = r + DR[k];
+                int nc = c + DC[k];
+                if (!map.isWalkable(originRow + nr, originCol + nc)) {
+                    continue;
+                }
+                int next = nr * window + nc;
+                if (stamp[next] != currentStamp) {
+                    stamp[next] = currentStamp;
+                    dist[next] = d + 1;
+                    queue[tail++] = next;
+                }
+            }
+        }
+    }
+
+    /**
+     * Restituisce la distanza di una cella dall'obiettivo
+     *
+     * @param row riga
+     * @param col colonna
+     *
+     * @return il numero di passi, {@link #UNREACHED} se la cella è oltre l'orizzonte o isolata
+     */
+    public int distance(int row, int col) {
+        int r = row - originRow;
+        int c = col - originCol;
+        if (r < 0 || r >= window || c < 0 || c >= window) {
+            return UNREACHED;
+        }
+        int cell = r * window + c;
+        return stamp[cell] == currentStamp ? dist[cell] : UNREACHED;
+    }
+
+    /**
+     * Sceglie il passo che avvicina di più all'obiettivo tra le celle vicine ammesse
+     *
+     * @param row riga di partenza
+     * @param col colonna di partenza
+     * @param blocked le celle da evitare, ad esempio quelle occupate da altri nemici
+     *
+     * @return l'indice della direzione (0 su, 1 giù, 2 sinistra, 3 destra), -1 se nessun passo avvicina
+     */
+    public int nextStep(int row, int col, CellFilter blocked) {
+        int best = -1;
+        int bestDistance = distance(row, col);
+        for (int k = 0; k < 4; k++) {
+            int nr = row + DR[k];
+            int nc = col + DC[k];
+            int d = distance(nr, nc);
+            if (d < bestDistance && !blocked.test(nr, nc)) {
+                best = k;
+                bestDistance = d;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Lo spostamento di riga di una direzione
+     *
+     * @param direction l'indice della direzione
+     *
+     * @return lo spostamento di riga
+     */
+    public static int rowOffset(int direction) {
+        return DR[direction];
+    }
+
+    /**
+     * Lo spostamento di colonna di una direzione
+     *
+     * @param direction l'indice della direzione
+     *
+     * @return lo spostamento di colonna
+     */
+    public static int colOffset(int direction) {
+        return DC[direction];
+    }
+
+    /**
+     * Un filtro sulle celle, senza boxing delle coordinate
+     */
+    @FunctionalInterface
+    public interface CellFilter {
+        /**
+         * Controlla una cella
+         *
+         * @param row riga
+         * @param col colonna
+         *
+         * @return true se la cella soddisfa il filtro
+         */
+        boolean test(int row, int col);
+    }
+}
@@ -0,0 +1,484 @@
+import java.util.Arrays;
+
+/**
+ * Una fotografia immutabile di tutto quello che serve per disegnare un frame
+ *
+ * <p>
+ * Il thread della simulazione ne crea una dopo ogni turno e la pubblica; chi disegna legge solo
+ * fotografie e non tocca mai il motore, quindi i due thread non si bloccano a vicenda.
+ * Nemici, oggetti e nebbia sono copiati solo per le celle inquadrate dalla telecamera,
+ * così la fotografia resta piccola anche nei livelli enormi. I muri non vengono copiati:
+ * si rigenerano identici dal seme del livello.
+ */
+public final class FrameSnapshot {
+    /** Il tipo di entità dei nemici */
+    public static final int ENEMY = 0;
+    /** Il tipo di entità degli oggetti */
+    public static final int ITEM = 1;
+
+    /**
+     * Lo stato di un combattimento in corso
+     *
+     * @param enemyType il tipo del nemico
+     * @param enemyHealth la vita del nemico
+     * @param playerHealth la vita del giocatore
+     * @param playerRolled true se il giocatore ha tirato in questo round
+     * @param playerRoll l'ultimo tiro del giocatore
+     * @param enemyRolled true se il nemico ha tirato in questo round
+     * @param enemyRoll l'ultimo tiro del nemico
+     * @param winProbability la probabilità che il giocatore vinca
+     */
+    public record CombatState(char enemyType, int enemyHealth, int playerHealth,
+                              boolean playerRolled, int playerRoll, boolean enemyRolled, int enemyRoll,
+                              double winProbability) {
+    }
+
+    /** Il numero del turno che ha prodotto la fotografia */
+    private final long turn;
+    /** La versione della mappa e il seme da cui rigenerarla */
+    private final int mapVersion;
+    private final long levelSeed;
+    /** Le dimensioni del livello */
+    private final int rows, cols;
+    /** La posizione del giocatore e del portale */
+    private final int playerRow, playerCol, portalRow, portalCol;
+    /** Le statistiche mostrate nella barra delle informazioni */
+    private final int health, armor, weaponDamage, exp, playerLevel, level;
+    /** Lo stato della partita */
+    private final boolean gameOver, gameWin;
+    /** Il combattimento in corso, null se non ce n'è uno */
+    private final CombatState combat;
+    /** La zona inquadrata dalla telecamera */
+    private final int cameraRow, cameraCol, viewRows, viewCols;
+    /** Le entità inquadrate, tre interi ciascuna: riga, colonna e (tipo di entità << 16 | tipo) */
+    private final int[] entities;
+    /** Le celle inquadrate visibili ed esplorate, un bit per cella; null se la nebbia è spenta */
+    private final long[] visible, explored;
+    /** I rettangoli di celle cambiate nel turno, quattro interi ciascuno */
+    private final int[] dirtyRects;
+    /** La booleana che indica se nel turno è cambiato tutto */
+    private final boolean dirtyAll;
+
+    /**
+     * Costruttore di FrameSnapshot, copia lo stato del motore
+     *
+     * @param engine il motore, da leggere solo dal thread della simulazione
+     * @param camera la telecamera, già centrata sul giocatore
+     * @param turn il numero del turno
+     * @param fog true se va copiata la nebbia di guerra
+     */
+    FrameSnapshot(GameEngine engine, Camera camera, long turn, boolean fog) {
+        this.turn = turn;
+        this.mapVersion = engine.getMapVersion();
+        this.levelSeed = engine.getMap().getSeed();
+        this.rows = engine.getRows();
+        this.cols = engine.getCols();
+        this.playerRow = engine.getPlayerRow();
+        this.playerCol = engine.getPlayerCol();
+        this.portalRow = engine.getPortalRow();
+        this.portalCol = engine.getPortalCol();
+        this.health = engine.getPlayerHealth();
+        this.armor = engine.getArmor();
+        this.weaponDamage = engine.getWeaponDamage();
+        this.exp = engine.getPlayerExp();
+        this.playerLevel = engine.getPlayerLevel();
+        this.level = engine.getLevel();
+        this.gameOver = engine.isGameOver();
+        this.gameWin = engine.isGameWin();
+
+        Combat fight = engine.getCombat();
+        this.combat = fight == null ? null : new CombatState(fight.getEnemy().getTipo(), fight.getEnemyHealth(),
+                fight.getPlayerHealth(), fight.hasPlayerRolled(), fight.getPlayerRoll(), fight.hasEnemyRolled(), fight.getEnemyRoll(),
+                fight.winProbability());
+
+        this.cameraRow = camera.getRow();
+        this.cameraCol = camera.getCol();
+        this.viewRows = camera.getViewRows();
+        this.viewCols = camera.getViewCols();
+        this.entities = captureEntities(engine.getOccupancy());
+
+        if (fog) {
+            FieldOfView fov = engine.getFieldOfView();
+            int cells = viewRows * viewCols;
+            visible = new long[(cells + 63) >>> 6];
+            explored = new long[(cells + 63) >>> 6];
+            for (int r = 0; r < viewRows; r++) {
+                for (int c = 0; c < viewCols; c++) {
+                    int bit = r * viewCols + c;
+                    if (fov.isVisible(cameraRow + r, cameraCol + c)) {
+                        visible[bit >>> 6] |= 1L << bit;
+                    }
+                    if (fov.isExplored(cameraRow + r, cameraCol + c)) {
+                        explored[bit >>> 6] |= 1L << bit;
+                    }
+                }
+            }
+        } else {
+            visible = null;
+            explored = null;
+        }
+
+        DirtyRegion dirty = engine.getDirtyRegion();
+        this.dirtyAll = dirty.isAll();
+        this.dirtyRects = new int[dirty.size() * 4];
+        for (int i = 0; i < dirty.size(); i++) {
+            System.arraycopy(dirty.get(i), 0, dirtyRects, i * 4, 4);
+        }
+        dirty.clear();
+    }
+
+    /**
+     * Copia nemici e oggetti che cadono nella zona inquadrata
+     *
+     * <p>
+     * Si leggono dall'indice di occupazione solo le celle inquadrate, così il costo dipende dalla
+     * finestra e non dal numero di entità del livello. I nemici vengono prima degli oggetti, come
+     * nell'ordine in cui si disegnano.
+     *
+     * @param occupazione l'indice di occupazione del livello
+     *
+     * @return le entità, tre interi ciascuna
+     */
+    private int[] captureEntities(OccupancyGrid occupazione) {
+        int firstRow = Math.max(0, cameraRow);
+        int lastRow = Math.min(rows, cameraRow + viewRows);
+        int firstCol = Math.max(0, cameraCol);
+        int lastCol = Math.min(cols, cameraCol + viewCols);
+        int[] enemies = new int[48];
+        int[] items = new int[48];
+        int e = 0;
+        int i = 0;
+        for (int row = firstRow; row < lastRow; row++) {
+            for (int col = firstCol; col < lastCol; col++) {
+                Enemy enemy = occupazione.nemicoIn(row, col);
+                if (enemy != null) {
+                    if (e == enemies.length) {
+                        enemies = Arrays.copyOf(enemies, e * 2);
+                    }
+                    enemies[e++] = row;
+                    enemies[e++] = col;
+                    enemies[e++] = ENEMY << 16 | enemy.getTipo();
+                }
+                Item item = occupazione.oggettoIn(row, col);
+                if (item != null) {
+                    if (i == items.length) {
+                        items = Arrays.copyOf(items, i * 2);
+                    }
+                    items[i++] = row;
+                    items[i++] = col;
+                    items[i++] = ITEM << 16 | item.getTipo();
+                }
+            }
+        }
+        int[] out = Arrays.copyOf(enemies, e + i);
+        System.arraycopy(items, 0, out, e, i);
+        return out;
+    }
+
+    /**
+     * Controlla se una cella è inquadrata dalla telecamera
+     *
+     * @param row riga
+     * @param col colonna
+     *
+     * @return true se la cella è nella zona inquadrata
+     */
+    public boolean inView(int row, int col) {
+        return row >= cameraRow && row < cameraRow + viewRows && col >= cameraCol && col < cameraCol + viewCols;
+    }
+
+    /**
+     * Aggiunge a una regione le celle cambiate nel turno
+     *
+     * @param region la regione da allargare
+     */
+    public void addDirtyTo(DirtyRegion region) {
+        if (dirtyAll) {
+            region.addAll();
+            return;
+        }
+        for (int i = 0; i < dirtyRects.length; i += 4) {
+            region.add(dirtyRects[i], dirtyRects[i + 1], dirtyRects[i + 2], dirtyRects[i + 3]);
+        }
+    }
+
+    /**
+     * Restituisce il numero di entità inquadrate
+     *
+     * @return il numero di entità
+     */
+    public int getEntityCount() {
+        return entities.length / 3;
+    }
+
+    /**
+     * Restituisce la riga di un'entità
+     *
+     * @param i l'indice dell'entità
+     *
+     * @return la riga
+     */
+    public int getEntityRow(int i) {
+        return entities[i * 3];
+    }
+
+    /**
+     * Restituisce la colonna di un'entità
+     *
+     * @param i l'indice dell'entità
+     *
+     * @return la colonna
+     */
+    public int getEntityCol(int i) {
+        return entities[i * 3 + 1];
+    }
+
+    /**
+     * Restituisce il tipo di entità, {@link #ENEMY} o {@link #ITEM}
+     *
+     * @param i l'indice dell'entità
+     *
+     * @return il tipo di entità
+     */
+    public int getEntityKind(int i) {
+        return entities[i * 3 + 2] >>> 16;
+    }
+
+    /**
+     * Restituisce il tipo del nemico o dell'oggetto
+     *
+     * @param i l'indice dell'entità
+     *
+     * @return il carattere del tipo
+     */
+    public char getEntityType(int i) {
+        return (char) entities[i * 3 + 2];
+    }
+
+    /**
+     * Controlla se la nebbia di guerra è stata copiata
+     *
+     * @return true se la nebbia è attiva
+     */
+    public boolean hasFog() {
+        return visible != null;
+    }
+
+    /**
+     * Controlla se una cella inquadrata è nel campo visivo
+     *
+     * @param row riga
+     * @param col colonna
+     *
+     * @return true se la cella è visibile
+     */
+    public boolean isVisible(int row, int col) {
+        return inView(row, col) && testBit(visible, row, col);
+    }
+
+    /**
+     * Controlla se una cella inquadrata è stata esplorata
+     *
+     * @param row riga
+     * @param col colonna
+     *
+     * @return true se la cella è stata vista almeno una volta
+     */
+    public boolean isExplored(int row, int col) {
+        return inView(row, col) && testBit(explored, row, col);
+    }
+
+    /**
+     * Legge il bit di una cella inquadrata
+     *
+     * @param bits l'insieme di bit
+     * @param row riga
+     * @param col colonna
+     *
+     * @return il bit della cella
+     */
+    private boolean testBit(long[] bits, int row, int col) {
+        int bit = (row - cameraRow) * viewCols + (col - cameraCol);
+        return (bits[bit >>> 6] & (1L << bit)) != 0;
+    }
+
+    /**
+     * Restituisce il numero del turno
+     *
+     * @return il turno
+     */
+    public long getTurn() {
+        return turn;
+    }
+
+    /**
+     * Restituisce la versione della mappa
+     *
+     * @return la versione
+     */
+    public int getMapVersion() {
+        return mapVersion;
+    }
+
+    /**
+     * Restituisce il seme del livello, da cui rigenerare i muri
+     *
+     * @return il seme
+     */
+    public long getLevelSeed() {
+        return levelSeed;
+    }
+
+    /**
+     * Restituisce il numero di righe del livello
+     *
+     * @return il numero di righe
+     */
+    public int getRows() {
+        return rows;
+    }
+
+    /**
+     * Restituisce il numero di colonne del livello
+     *
+     * @return il numero di colonne
+     */
+    public int getCols() {
+        return cols;
+    }
+
+    /**
+     * Restituisce la riga del giocatore
+     *
+     * @return la riga
+     */
+    public int getPlayerRow() {
+        return playerRow;
+    }
+
+    /**
+     * Restituisce la colonna del giocatore
+     *
+     * @return la colonna
+     */
+    public int getPlayerCol() {
+        return playerCol;
+    }
+
+    /**
+     * Restituisce la riga del portale
+     *
+     * @return la riga
+     */
+    public int getPortalRow() {
+        return portalRow;
+    }
+
+    /**
+     * Restituisce la colonna del portale
+     *
+     * @return la colonna
+     */
+    public int getPortalCol() {
+        return portalCol;
+    }
+
+    /**
+     * Restituisce la salute del giocatore
+     *
+     * @return la salute
+     */
+    public int getPlayerHealth() {
+        return health;
+    }
+
+    /**
+     * Restituisce l'armatura del giocatore
+     *
+     * @return l'armatura
+     */
+    public int getArmor() {
+        return armor;
+    }
+
+    /**
+     * Restituisce il danno dell'arma
+     *
+     * @return il danno
+     */
+    public int getWeaponDamage() {
+        return weaponDamage;
+    }
+
+    /**
+     * Restituisce l'esperienza del giocatore
+     *
+     * @return l'esperienza
+     */
+    public int getPlayerExp() {
+        return exp;
+    }
+
+    /**
+     * Restituisce il livello del giocatore
+     *
+     * @return il livello del giocatore
+     */
+    public int getPlayerLevel() {
+        return playerLevel;
+    }
+
+    /**
+     * Restituisce il livello del dungeon
+     *
+     * @return il livello del dungeon
+     */
+    public int getLevel() {
+        return level;
+    }
+
+    /**
+     * Controlla se la partita è persa
+     *
+     * @return true se il giocatore è morto
+     */
+    public boolean isGameOver() {
+        return gameOver;
+    }
+
+    /**
+     * Controlla se la partita è vinta
+     *
+     * @return true se la partita è vinta
+     */
+    public boolean isGameWin() {
+        return gameWin;
+    }
+
+    /**
+     * Restituisce il combattimento in corso
+     *
+     * @return lo stato del combattimento, null se non ce n'è uno
+     */
+    public CombatState getCombat() {
+        return combat;
+    }
+
+    /**
+     * Restituisce la riga in cima alla zona inquadrata
+     *
+     * @return la riga
+     */
+    public int getCameraRow() {
+        return cameraRow;
+    }
+
+    /**
+     * Restituisce la colonna a sinistra della zona inquadrata
+     *
+     * @return la colonna
+     */
+    public int getCameraCol() {
+        return cameraCol;
+    }
+}
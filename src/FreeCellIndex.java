@@ -0,0 +1,160 @@
+import java.util.Arrays;
+import java.util.Random;
+import java.util.function.LongPredicate;
+
+/**
+ * L'indice delle celle di pavimento ancora libere, da cui si pescano le posizioni di giocatore,
+ * portale, nemici e oggetti
+ *
+ * <p>
+ * Le celle stanno in un array di long, così anche un livello con più di {@link Integer#MAX_VALUE}
+ * celle ha un indice per ognuna; {@link #take(Random)} fa un passo di Fisher–Yates: sceglie
+ * a caso una cella tra quelle non ancora prese, la scambia in testa e la toglie dal gioco. Ogni
+ * pesca costa O(1), non tocca mai due volte la stessa cella e finisce anche su una mappa quasi
+ * tutta muro, dove i vecchi tentativi a caso su tutta l'area giravano a vuoto.
+ *
+ * <p>
+ * Su un {@link ChunkedWorld} l'indice si costruisce con {@link #of(ChunkedWorld, Random)} dai
+ * blocchi del livello. Fino a {@value #MAX_CHUNKS} blocchi li prende tutti, e la pesca è uniforme
+ * su tutto il pavimento; oltre, ne sceglie {@value #MAX_CHUNKS} a caso, così un livello enorme non
+ * va generato per intero per metterci dentro qualche nemico.
+ */
+public class FreeCellIndex {
+    /** Il numero di blocchi oltre cui l'indice si costruisce da un campione di blocchi */
+    public static final int MAX_CHUNKS = 16;
+
+    /** Il numero di colonne della mappa */
+    private final int cols;
+    /** Le celle, come riga per il numero di colonne più colonna: prima quelle già prese */
+    private long[] cells;
+    /** Il numero di celle nell'indice */
+    private int size = 0;
+    /** Il numero di celle già prese */
+    private int taken = 0;
+
+    /**
+     * Costruttore di FreeCellIndex, vuoto
+     *
+     * @param cols il numero di colonne della mappa
+     */
+    public FreeCellIndex(int cols) {
+        this.cols = cols;
+        this.cells = new long[64];
+    }
+
+    /**
+     * Costruisce l'indice del pavimento di un livello
+     *
+     * <p>
+     * I blocchi da usare si scelgono anche loro con un Fisher–Yates parziale sugli indici dei
+     * blocchi; se il campione non ha pavimento si continua con gli altri blocchi.
+     *
+     * @param world il livello, già rigenerato con il suo seme
+     * @param random il generatore, usato solo se i blocchi sono più di {@value #MAX_CHUNKS}
+     *
+     * @return l'indice, vuoto se il livello non ha pavimento
+     */
+    public static FreeCellIndex of(ChunkedWorld world, Random random) {
+        FreeCellIndex index = new FreeCellIndex(world.getCols());
+        int count = world.getChunkCount();
+        if (count <= MAX_CHUNKS) {
+            for (int key = 0; key < count; key++) {
+                index.addAll(world.walkableCells(key));
+            }
+            return index;
+        }
+        int[] keys = new int[count];
+        for (int i = 0; i < count; i++) {
+            keys[i] = i;
+        }
+        for (int i = 0; i < count && (i < MAX_CHUNKS || index.size == 0); i++) {
+            int j = i + random.nextInt(count - i);
+            int key = keys[j];
+            keys[j] = keys[i];
+            keys[i] = key;
+            index.addAll(world.walkableCells(key));
+        }
+        return index;
+    }
+
+    /**
+     * Aggiunge delle celle libere all'indice
+     *
+     * @param added le celle, come riga per il numero di colonne più colonna
+     */
+    public void addAll(long[] added) {
+        if (size + added.length > cells.length) {
+            cells = Arrays.copyOf(cells, Math.max(cells.length * 2, size + added.length));
+        }
+        System.arraycopy(added, 0, cells, size, added.length);
+        size += added.length;
+    }
+
+    /**
+     * Prende a caso una cella libera, che da qui in poi non è più libera
+     *
+     * @param random il generatore
+     *
+     * @return la cella, come riga per il numero di colonne più colonna, o -1 se non ne restano
+     */
+    public long take(Random random) {
+        if (taken == size) {
+            return -1;
+        }
+        int j = taken + random.nextInt(size - taken);
+        long cell = cells[j];
+        cells[j] = cells[taken];
+        cells[taken++] = cell;
+        return cell;
+    }
+
+    /**
+     * Segna come prese le celle libere che sono già occupate
+     *
+     * @param occupied dice se una cella, come riga per il numero di colonne più colonna, è occupata
+     */
+    public void exclude(LongPredicate occupied) {
+        for (int j = taken; j < size; j++) {
+            long cell = cells[j];
+            if (occupied.test(cell)) {
+                cells[j] = cells[taken];
+                cells[taken++] = cell;
+            }
+        }
+    }
+
+    /**
+     * Restituisce una copia dell'indice, con le stesse celle libere
+     *
+     * @return la copia
+     */
+    public FreeCellIndex copy() {
+        FreeCellIndex copy = new FreeCellIndex(cols);
+        copy.cells = Arrays.copyOf(cells, size);
+        copy.size = size;
+        copy.taken = taken;
+        return copy;
+    }
+
+    /**
+     * Restituisce la riga di una cella dell'indice
+     *
+     * @param cell la cella
+     *
+     * @return la riga
+     */
+    public int rowOf(long cell) {
+        return (int) (cell / cols);
+    }
+
+    /**
+     * Restituisce la colonna di una cella dell'indice
+     *
+     * @param cell la cella
+     *
+     * @return la colonna
+     */
+    public int colOf(long cell) {
+        return (int) (cell % cols);
+    }
+}
@@ -0,0 +1,1107 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Il motore del gioco: stato della partita e regole, senza dipendenze da AWT o Swing
+ *
+ * <p>
+ * Ogni input del giocatore passa da {@link #step(Action)}, che applica un turno intero
+ * e restituisce l'evento prodotto. I pannelli Swing si limitano a leggere lo stato
+ * e a tradurre i tasti in azioni, quindi il motore può girare anche senza display.
+ *
+ * <p>
+ * Mentre si gioca un livello, il successivo viene già generato su un thread in background
+ * come {@link Level}: quando il giocatore entra nel portale il motore lo adotta senza attese.
+ * Il livello pronto si usa solo se è stato generato dagli stessi stati dei generatori che
+ * avrebbe usato il motore, quindi la partita resta identica a quella senza pregenerazione.
+ */
+public class GameEngine {
+    /**
+     * Le azioni che il giocatore può compiere
+     *
+     * <ul>
+     * <li>UP, DOWN, LEFT, RIGHT: muove il giocatore di una cella</li>
+     * <li>DESCEND: scende al livello successivo se il giocatore è sul portale, altrimenti attende</li>
+     * <li>WAIT: passa il turno</li>
+     * <li>ROLL: esegue il prossimo passo del combattimento in corso</li>
+     * <li>RESOLVE: chiude in un passo solo il combattimento in corso</li>
+     * </ul>
+     */
+    public enum Action {
+        UP, DOWN, LEFT, RIGHT, DESCEND, WAIT, ROLL, RESOLVE
+    }
+
+    /**
+     * Gli eventi prodotti da un'azione
+     *
+     * <ul>
+     * <li>NONE: l'azione non ha avuto effetto</li>
+     * <li>TURN: è passato un turno</li>
+     * <li>NEXT_LEVEL: il giocatore è sceso al livello successivo</li>
+     * <li>COMBAT_STARTED: un nemico ha raggiunto il giocatore</li>
+     * <li>COMBAT_ROLL: il combattimento è andato avanti di un passo</li>
+     * <li>COMBAT_WON: il giocatore ha vinto il combattimento</li>
+     * <li>LEVEL_UP: il giocatore ha vinto il combattimento ed è salito di livello</li>
+     * <li>GAME_OVER: il giocatore è morto</li>
+     * </ul>
+     */
+    public enum Event {
+        NONE, TURN, NEXT_LEVEL, COMBAT_STARTED, COMBAT_ROLL, COMBAT_WON, LEVEL_UP, GAME_OVER
+    }
+
+    /** Il numero di righe della mappa */
+    private final int rows;
+    /** Il numero di colonne della mappa */
+    private final int cols;
+
+    /** La mappa del gioco, generata a blocchi man mano che serve */
+    private final ChunkedWorld map;
+
+    /** La proprietà di sistema con il seme della partita, per rigiocare una partita precisa */
+    public static final String SEED_PROPERTY = "rogue.seed";
+
+    /** Il seme della partita, da cui vengono tutti i generatori */
+    private final long runSeed;
+    /** Il generatore dei livelli: semi delle mappe, posizione di giocatore e portale */
+    private final GameRandom random;
+    /** Il generatore dei movimenti casuali dei nemici */
+    private final GameRandom aiRandom;
+    /** Il generatore per i tiri di dado dei combattimenti */
+    private final GameRandom combatRandom;
+    /** Il generatore dei nemici */
+    private final GameRandom enemyRandom;
+    /** Il generatore degli oggetti */
+    private final GameRandom itemRandom;
+
+    /** Il raggio di vista dei nemici */
+    private static final int SIGHT_RADIUS = 6;
+    /** Il campo visivo del giocatore, condiviso da tutti i nemici */
+    private final FieldOfView fov;
+    /** La booleana che indica se il campo visivo è aggiornato alla posizione del giocatore */
+    private boolean fovValid = false;
+    /** La booleana che indica se il campo visivo va calcolato a ogni turno per la nebbia di guerra */
+    private boolean trackExplored = false;
+    /** La distanza massima fino a cui i nemici seguono il campo di inseguimento */
+    private static final int CHASE_HORIZON = SIGHT_RADIUS * 4;
+    /** Il campo delle distanze dal giocatore, condiviso da tutti i nemici che inseguono */
+    private final FlowField flowField;
+    /** La booleana che indica se il campo delle distanze è aggiornato alla posizione del giocatore */
+    private boolean flowValid = false;
+    /** Il filtro delle celle già occupate da un nemico */
+    private final FlowField.CellFilter occupiedByEnemy;
+
+    /** La posizione del giocatore */
+    private int playerRow, playerCol;
+    /** La salute massima del giocatore */
+    private int hpMax = 10;
+    /** La salute del giocatore */
+    private int playerHealth = hpMax;
+    /** L'armatura del giocatore */
+    private int armor = 0;
+    /** Il danno inflitto dall'arma */
+    private int weaponDamage = 1;
+    /** L'espererienza del giocatore */
+    private int playerExp = 0;
+    /** Il livello del giocatore */
+    private int playerLevel = 1;
+
+    /** La posizione del portale */
+    private int portalRow, portalCol;
+
+    /** La lista degli oggetti */
+    private List<Item> items = new ArrayList<>();
+    /** Inizializzazione del gestore oggetti */
+    private final ItemManager gestoreOggetti;
+
+    /** La lista degli nemici */
+    private List<Enemy> enemies = new ArrayList<>();
+    /** Inizializzazione del gestore nemici */
+    private final EnemyManager gestoreNemici;
+    /** L'indice di occupazione delle celle da parte di nemici e oggetti */
+    private final OccupancyGrid occupazione;
+
+    /** La booleana che indica se il gioco è finito */
+    private boolean gameOver = false;
+    /** La booleana che indica se il gioco è vinto */
+    private boolean gameWin = false;
+    /** Il livello del gioco */
+    private int level = 1;
+
+    /** La proprietà di sistema che spegne la pregenerazione del livello successivo se vale false */
+    public static final String PREGENERATE_PROPERTY = "rogue.pregenerate";
+    /** La booleana che indica se il livello successivo si genera in background */
+    private static final boolean PREGENERATE = !"false".equalsIgnoreCase(System.getProperty(PREGENERATE_PROPERTY));
+    /** Il thread che genera in background i livelli successivi di tutti i motori */
+    private static final ExecutorService LEVEL_GENERATOR = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "level-generator");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        return thread;
+    });
+    /** Il livello successivo in generazione, null se non ce n'è uno */
+    private Future<Level> preparedLevel;
+    /** Gli stati dei generatori da cui parte il livello in generazione */
+    private Level.Streams preparedStreams;
+    /** Il livello del gioco da cui parte il livello in generazione */
+    private int preparedDepth;
+
+    /** Le celle libere del livello, da cui si pescano i nemici aggiunti; null se vanno ricalcolate */
+    private FreeCellIndex freeCells;
+
+    /** Il contatore delle mappe generate, cambia a ogni nuovo livello */
+    private int mapVersion = 0;
+
+    /** Il combattimento in corso, null se il giocatore non sta combattendo */
+    private Combat combat;
+
+    /** Le celle cambiate dall'ultima volta che la vista le ha ridisegnate */
+    private final DirtyRegion dirty = new DirtyRegion();
+
+    /**
+     * Costruttore di GameEngine, genera subito il primo livello
+     *
+     * @param rows il numero di righe della mappa
+     * @param cols il numero di colonne della mappa
+     */
+    public GameEngine(int rows, int cols) {
+        this(rows, cols, ChunkedWorld.DEFAULT_MAX_CHUNKS);
+    }
+
+    /**
+     * Costruttore di GameEngine con un limite ai blocchi di mappa tenuti in memoria
+     *
+     * @param rows il numero di righe della mappa
+     * @param cols il numero di colonne della mappa
+     * @param maxChunks il numero massimo di blocchi in memoria
+     */
+    public GameEngine(int rows, int cols, int maxChunks) {
+        this(rows, cols, maxChunks, newRunSeed());
+    }
+
+    /**
+     * Costruttore di GameEngine con il seme della partita: due motori con lo stesso seme
+     * che ricevono le stesse azioni giocano la stessa partita
+     *
+     * @param rows il numero di righe della mappa
+     * @param cols il numero di colonne della mappa
+     * @param maxChunks il numero massimo di blocchi in memoria
+     * @param runSeed il seme della partita
+     */
+    public GameEngine(int rows, int cols, int maxChunks, long runSeed) {
+        this(rows, cols, maxChunks, runSeed, MapGenerator.fromSystemProperties());
+    }
+
+    /**
+     * Costruttore di GameEngine con il seme della partita e il generatore delle mappe
+     *
+     * @param rows il numero di righe della mappa
+     * @param cols il numero di colonne della mappa
+     * @param maxChunks il numero massimo di blocchi in memoria
+     * @param runSeed il seme della partita
+     * @param generator il generatore che disegna ogni blocco di mappa
+     */
+    public GameEngine(int rows, int cols, int maxChunks, long runSeed, MapGenerator generator) {
+        this.runSeed = runSeed;
+        this.random = GameRandom.forStream(runSeed, GameRandom.LEVEL_STREAM);
+        this.aiRandom = GameRandom.forStream(runSeed, GameRandom.AI_STREAM);
+        this.combatRandom = GameRandom.forStream(runSeed, GameRandom.COMBAT_STREAM);
+        this.enemyRandom = GameRandom.forStream(runSeed, GameRandom.ENEMY_STREAM);
+        this.itemRandom = GameRandom.forStream(runSeed, GameRandom.ITEM_STREAM);
+        this.gestoreOggetti = new ItemManager(itemRandom);
+        this.gestoreNemici = new EnemyManager(enemyRandom);
+        this.rows = rows;
+        this.cols = cols;
+        this.map = new ChunkedWorld(rows, cols, ChunkedWorld.DEFAULT_CHUNK_SIZE, maxChunks, generator);
+        this.occupazione = new OccupancyGrid(rows, cols);
+        this.fov = new FieldOfView(map);
+        this.flowField = new FlowField(map, CHASE_HORIZON);
+        this.occupiedByEnemy = occupazione::haNemico;
+
+        adopt(Level.generate(map.emptyCopy(), level, level, currentStreams()));
+        prepareNextLevel();
+    }
+
+    /**
+     * Sceglie un seme nuovo per una partita
+     *
+     * @return il seme
+     */
+    public static long newRunSeed() {
+        return new SplittableRandom().nextLong();
+    }
+
+    /**
+     * Sceglie il seme di una partita: quello della proprietà {@value #SEED_PROPERTY} se c'è, altrimenti uno nuovo
+     *
+     * @return il seme
+     */
+    public static long seedFromSystemProperties() {
+        Long seed = Long.getLong(SEED_PROPERTY);
+        return seed != null ? seed : newRunSeed();
+    }
+
+    /**
+     * Applica un'azione del giocatore
+     *
+     * @param action l'azione
+     *
+     * @return l'evento prodotto dall'azione
+     */
+    public Event step(Action action) {
+        if (gameOver || gameWin) return Event.NONE;
+
+        if (combat != null) {
+            return switch (action) {
+                case ROLL -> rollCombat();
+                case RESOLVE -> resolveCombat();
+                default -> Event.NONE;
+            };
+        }
+
+        int newRow = playerRow;
+        int newCol = playerCol;
+
+        switch (action) {
+            case UP -> newRow--;
+            case DOWN -> newRow++;
+            case LEFT -> newCol--;
+            case RIGHT -> newCol++;
+            case DESCEND -> {
+                if (playerRow == portalRow && playerCol == portalCol) {
+                    nextLevel();
+                    return Event.NEXT_LEVEL;
+                }
+            }
+            case ROLL, RESOLVE -> {
+                return Event.NONE;
+            }
+            case WAIT -> {
+            }
+        }
+
+        if (newRow >= 0 && newRow < rows && newCol >= 0 && newCol < cols && map.isWalkable(newRow, newCol)) {
+            if (newRow != playerRow || newCol != playerCol) {
+                markMoved(playerRow, playerCol, newRow, newCol);
+                if (trackExplored) {
+                    // Il campo visivo si sposta con il giocatore e cambia la nebbia intorno
+                    dirty.add(Math.min(playerRow, newRow) - SIGHT_RADIUS, Math.min(playerCol, newCol) - SIGHT_RADIUS,
+                            Math.max(playerRow, newRow) + SIGHT_RADIUS, Math.max(playerCol, newCol) + SIGHT_RADIUS);
+                }
+                playerRow = newRow;
+                playerCol = newCol;
+                invalidatePlayerFields();
+            }
+
+            handleItemPickup();  // Controlla se il giocatore ha raccolto un oggetto
+            moveEnemies();
+            if (checkEncounter()) return Event.COMBAT_STARTED;
+            return Event.TURN;
+        }
+        return Event.NONE;
+    }
+
+    /**
+     * Ricomincia la partita dal primo livello con le statistiche iniziali
+     */
+    public void restart() {
+        level = 0;
+        gameOver = false;
+        gameWin = false;
+        combat = null;
+        playerHealth = hpMax;
+        playerExp = 0;
+        playerLevel = 1;
+        armor = 0;
+        weaponDamage = 1;
+        nextLevel();
+    }
+
+    /**
+     * Il metodo per passare al livello successivo
+     */
+    private void nextLevel() {
+        adopt(takeNextLevel());
+        if(playerHealth<hpMax){
+            playerHealth +=1;
+        }
+        gameOver = false; // Ripristina lo stato di fine partita
+        gameWin = false;  // Ripristina lo stato di vittoria
+        level++; // Incrementa il livello
+        prepareNextLevel();
+    }
+
+    /**
+     * Restituisce gli stati attuali dei generatori usati per creare i livelli
+     *
+     * @return gli stati
+     */
+    private Level.Streams currentStreams() {
+        return new Level.Streams(random.getState(), enemyRandom.getState(), itemRandom.getState());
+    }
+
+    /**
+     * Comincia a generare in background il livello successivo a quello attuale
+     */
+    private void prepareNextLevel() {
+        if (preparedLevel != null) {
+            preparedLevel.cancel(false);
+            preparedLevel = null;
+        }
+        if (!PREGENERATE) {
+            return;
+        }
+        Level.Streams streams = currentStreams();
+        int depth = level;
+        ChunkedWorld world = map.emptyCopy();
+        preparedStreams = streams;
+        preparedDepth = depth;
+        preparedLevel = LEVEL_GENERATOR.submit(() -> Level.generate(world, depth, depth + 1, streams));
+    }
+
+    /**
+     * Restituisce il livello successivo: quello generato in background se è ancora valido,
+     * altrimenti lo genera subito
+     *
+     * <p>
+     * I nemici si generano con il livello del gioco attuale, gli oggetti con quello successivo.
+     *
+     * @return il livello
+     */
+    private Level takeNextLevel() {
+        Level.Streams streams = currentStreams();
+        Future<Level> prepared = preparedLevel;
+        preparedLevel = null;
+        if (prepared != null) {
+            if (preparedDepth == level && preparedStreams.equals(streams)) {
+                try {
+                    return prepared.get(); // Di solito è già pronto, altrimenti si aspetta meno che a generarlo da capo
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException e) {
+                    System.out.println("Errore nella generazione del livello: " + e.getCause());
+                }
+            } else {
+                prepared.cancel(false);
+            }
+        }
+        return Level.generate(map.emptyCopy(), level, level + 1, streams);
+    }
+
+    /**
+     * Sostituisce il livello attuale con uno già generato
+     *
+     * @param next il livello
+     */
+    private void adopt(Level next) {
+        mapVersion++;
+        dirty.addAll();
+        map.regenerate(next.seed(), next.chunks());
+        fov.reset();
+        occupazione.clear();
+        playerRow = next.playerRow();
+        playerCol = next.playerCol();
+        portalRow = next.portalRow();
+        portalCol = next.portalCol();
+        enemies = gestoreNemici.ripristinaNemici(next.copyEnemies(), occupazione);
+        items = gestoreOggetti.ripristinaOggetti(next.copyItems(), occupazione);
+        freeCells = next.copyFreeCells();
+        random.setState(next.after().level());
+        enemyRandom.setState(next.after().enemy());
+        itemRandom.setState(next.after().item());
+        invalidatePlayerFields();
+    }
+
+    /**
+     * Il metodo per generare la mappa
+     *
+     * <p>
+     * Si sceglie solo il seme del livello: i blocchi vengono generati quando qualcuno
+     * ci si avvicina. Giocatore, portale ed entità restano dove sono; lo usano i benchmark.
+     */
+    void generateMap() {
+        mapVersion++;
+        dirty.addAll();
+        map.regenerate(random.nextLong());
+        fov.reset();
+        freeCells = null;
+    }
+
+    /**
+     * Il metodo per gestire il ritiro degli oggetti
+     */
+    private void handleItemPickup() {
+        Item item = occupazione.oggettoIn(playerRow, playerCol);
+        if (item == null) {
+            return;
+        }
+        switch (item.getTipo()) {
+            case 'W' ->
+                   this.weaponDamage += item.getValue(); // Aumenta il danno dell'arma
+            case 'A' ->
+                    this.armor += item.getValue(); // Ignora 4 colpi nemici
+            case 'H' -> {
+                playerHealth += item.getValue(); // Cura il giocatore di 10 danni
+                if (playerHealth > hpMax) playerHealth = hpMax; // La salute non supera hpMax
+            }
+        }
+        items.remove(item); // Rimuove l'oggetto dalla mappa dopo che è stato raccolto
+        occupazione.rimuoviOggetto(item);
+    }
+
+    /**
+     * Il metodo per sostituire i nemici del livello con un numero fissato di nemici,
+     * usato dai benchmark e dalle simulazioni
+     * 
+     * @param count il numero di nemici
+     */
+    void placeEnemies(int count) {
+        for (Enemy enemy : enemies) {
+            occupazione.rimuoviNemico(enemy);
+        }
+        enemies=gestoreNemici.generaNemici(freeCells(), level, occupazione, count);
+    }
+
+    /**
+     * Restituisce le celle libere del livello, ricalcolandole se la mappa è cambiata senza un nuovo livello
+     *
+     * @return le celle libere, senza giocatore, portale, nemici e oggetti
+     */
+    private FreeCellIndex freeCells() {
+        if (freeCells == null) {
+            FreeCellIndex free = FreeCellIndex.of(map, enemyRandom);
+            free.exclude(cell -> {
+                int row = free.rowOf(cell);
+                int col = free.colOf(cell);
+                return row == playerRow && col == playerCol || row == portalRow && col == portalCol
+                        || occupazione.haNemico(row, col) || occupazione.haOggetto(row, col);
+            });
+            freeCells = free;
+        }
+        return freeCells;
+    }
+
+    /**
+     * Il metodo per muovere i nemici nella mappa
+     * 
+     * <p>
+     * Il campo visivo del giocatore deve essere già aggiornato alla sua posizione.
+     */
+    void moveEnemies() {
+        for (Enemy enemy : enemies) {
+            int row = enemy.getRow();
+            int col = enemy.getCol();
+            if (canSeePlayer(enemy)) {
+                moveTowardPlayer(enemy);
+            } else {
+                moveRandomly(enemy);
+            }
+            if (enemy.getRow() != row || enemy.getCol() != col) {
+                markMoved(row, col, enemy.getRow(), enemy.getCol());
+            }
+        }
+    }
+
+    /**
+     * Il metodo per segnare come cambiate la cella di partenza e quella di arrivo di uno spostamento
+     *
+     * @param oldRow la riga di partenza
+     * @param oldCol la colonna di partenza
+     * @param newRow la riga di arrivo
+     * @param newCol la colonna di arrivo
+     */
+    private void markMoved(int oldRow, int oldCol, int newRow, int newCol) {
+        dirty.add(Math.min(oldRow, newRow), Math.min(oldCol, newCol), Math.max(oldRow, newRow), Math.max(oldCol, newCol));
+    }
+
+    /**
+     * Il metodo per controllare se un nemico può vedere il giocatore
+     * 
+     * @param enemy
+     * @return true se il nemico è nel campo visivo del giocatore, false altrimenti
+     */
+    private boolean canSeePlayer(Enemy enemy) {
+        int dx = playerCol - enemy.getCol();
+        int dy = playerRow - enemy.getRow();
+        if (dx * dx + dy * dy > SIGHT_RADIUS * SIGHT_RADIUS) {
+            return false; // Fuori dal raggio
+        }
+        return updatedFieldOfView().isVisible(enemy.getRow(), enemy.getCol());
+    }
+
+    /**
+     * Il metodo per segnare campo visivo e campo delle distanze come da ricalcolare
+     * dopo che il giocatore si è spostato
+     * 
+     * <p>
+     * Il calcolo vero avviene al primo nemico che ne ha bisogno, al massimo una volta per turno,
+     * oppure subito se si stanno tracciando le celle esplorate.
+     */
+    private void invalidatePlayerFields() {
+        fovValid = false;
+        flowValid = false;
+        if (trackExplored) {
+            updatedFieldOfView();
+        }
+    }
+
+    /**
+     * Il metodo per ottenere il campo visivo aggiornato alla posizione del giocatore
+     * 
+     * @return il campo visivo
+     */
+    private FieldOfView updatedFieldOfView() {
+        if (!fovValid) {
+            fov.compute(playerRow, playerCol, SIGHT_RADIUS);
+            fovValid = true;
+        }
+        return fov;
+    }
+
+    /**
+     * Il metodo per ottenere il campo delle distanze aggiornato alla posizione del giocatore
+     * 
+     * @return il campo delle distanze
+     */
+    private FlowField updatedFlowField() {
+        if (!flowValid) {
+            flowField.compute(playerRow, playerCol);
+            flowValid = true;
+        }
+        return flowField;
+    }
+
+    /**
+     * Attiva o disattiva il calcolo del campo visivo a ogni turno, necessario per
+     * tenere traccia delle celle esplorate
+     * 
+     * @param trackExplored true per calcolare il campo visivo a ogni turno
+     */
+    public void setTrackExplored(boolean trackExplored) {
+        this.trackExplored = trackExplored;
+        dirty.addAll();
+        if (trackExplored) {
+            updatedFieldOfView();
+        }
+    }
+
+    /**
+     * Il metodo per muovere un nemico verso il giocatore
+     *
+     * <p>
+     * Il nemico scende il campo delle distanze, così aggira i muri invece di fermarsi contro.
+     * Se il campo non lo raggiunge, ripiega sul passo diretto lungo l'asse più lontano.
+     *
+     * @param enemy il nemico da muovere
+     */
+    private void moveTowardPlayer(Enemy enemy) {
+        int row = enemy.getRow();
+        int col = enemy.getCol();
+
+        FlowField field = updatedFlowField();
+        int direction = field.nextStep(row, col, occupiedByEnemy);
+        if (direction >= 0) {
+            if (FlowField.rowOffset(direction) != 0) {
+                enemy.updateRow(FlowField.rowOffset(direction));
+            } else {
+                enemy.updateCol(FlowField.colOffset(direction));
+            }
+            return;
+        }
+        if (field.distance(row, col) != FlowField.UNREACHED) {
+            return; // Tutti i passi utili sono occupati da altri nemici
+        }
+
+        int dx = playerCol - col;
+        int dy = playerRow - row;
+
+        if (Math.abs(dx) > Math.abs(dy)) { // Movimento orizzontale
+            if (dx > 0 && isFreeForEnemy(row, col + 1)) {
+                enemy.updateCol(+1);
+            } else if (dx < 0 && isFreeForEnemy(row, col - 1)) {
+                enemy.updateCol(-1);
+            }
+        } else { // Movimento verticale
+            if (dy > 0 && isFreeForEnemy(row + 1, col)) {
+                enemy.updateRow(+1);
+            } else if (dy < 0 && isFreeForEnemy(row - 1, col)) {
+                enemy.updateRow(-1);
+            }
+        }
+    }
+
+    /**
+     * Il metodo per controllare se un nemico può entrare in una cella
+     *
+     * @param row la riga della cella
+     * @param col la colonna della cella
+     * @return true se la cella è pavimento e non c'è già un altro nemico
+     */
+    private boolean isFreeForEnemy(int row, int col) {
+        return map.isWalkable(row, col) && !occupazione.haNemico(row, col);
+    }
+
+    /**
+     * Il metodo per muovere un nemico casualmente
+     *
+     * @param enemy il nemico da muovere
+     */
+    private void moveRandomly(Enemy enemy) {
+        // Movimento casuale in una delle 4 direzioni
+        int[] directions = {-1, 1, 0, 0};
+        int[] rowOffsets = {0, 0, -1, 1};
+
+        int direction = aiRandom.nextInt(4);
+        int newRow = enemy.getRow() + directions[direction];
+        int newCol = enemy.getCol() + rowOffsets[direction];
+
+        if (isFreeForEnemy(newRow, newCol)) {
+            enemy.setRow(newRow);
+            enemy.setCol(newCol);
+        }
+    }
+
+    /**
+     * Il metodo per controllare se un nemico ha raggiunto il giocatore
+     *
+     * @return true se è iniziato un combattimento
+     */
+    private boolean checkEncounter() {
+        Enemy enemy = occupazione.nemicoIn(playerRow, playerCol);
+        if (enemy != null) {
+            combat = new Combat(playerHealth, weaponDamage, armor, enemy, combatRandom);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Il metodo per far avanzare il combattimento in corso
+     *
+     * @return l'evento prodotto
+     */
+    private Event rollCombat() {
+        if (!combat.advance()) {
+            return Event.COMBAT_ROLL;
+        }
+        Combat finished = combat;
+        combat = null;
+        return endCombat(finished.playerWon(), finished.getPlayerHealth(), finished.getPlayerArmor(),
+                finished.getEnemyExp(), finished.getEnemy());
+    }
+
+    /**
+     * Il metodo per chiudere subito il combattimento in corso con il risultato calcolato
+     *
+     * @return l'evento prodotto
+     */
+    private Event resolveCombat() {
+        combat.resolve();
+        Combat finished = combat;
+        combat = null;
+        return endCombat(finished.playerWon(), finished.getPlayerHealth(), finished.getPlayerArmor(),
+                finished.getEnemyExp(), finished.getEnemy());
+    }
+
+    /**
+     * Il metodo per terminare il combattimento
+     *
+     * @param playerWon true se il giocatore ha vinto, false altrimenti
+     * @param newPlayerHealth la nuova salute del giocatore
+     * @param playerArmor l'armatura rimasta al giocatore
+     * @param newExp l'esperienza guadagnata
+     * @param defeatedEnemy il nemico sconfitto
+     *
+     * @return l'evento prodotto
+     */
+    private Event endCombat(boolean playerWon, int newPlayerHealth, int playerArmor, int newExp, Enemy defeatedEnemy) {
+        armor = playerArmor;
+
+        if (playerWon) {
+            enemies.remove(defeatedEnemy);
+            dirty.add(defeatedEnemy.getRow(), defeatedEnemy.getCol());
+            gestoreNemici.rimuoviNemico(defeatedEnemy);
+            occupazione.rimuoviNemico(defeatedEnemy);
+            playerExp += newExp;
+            if(playerExp>=(2*playerLevel*10)){
+                playerLevel++;
+                hpMax+=10;
+                return Event.LEVEL_UP;
+            }else{
+                playerHealth = newPlayerHealth;
+            }
+            return Event.COMBAT_WON;
+        }
+        gameOver = true;
+        dirty.addAll();
+        return Event.GAME_OVER;
+    }
+
+    /**
+     * Cattura lo stato della partita per un salvataggio
+     *
+     * @param checkpoint true per includere tutte le celle esplorate, false per includere solo
+     *                   quelle cambiate dall'ultima cattura senza punto di controllo
+     *
+     * @return lo stato
+     */
+    SaveGame.State captureState(boolean checkpoint) {
+        int[] stats = new int[SaveGame.STAT_COUNT];
+        stats[SaveGame.PLAYER_ROW] = playerRow;
+        stats[SaveGame.PLAYER_COL] = playerCol;
+        stats[SaveGame.HP_MAX] = hpMax;
+        stats[SaveGame.HEALTH] = playerHealth;
+        stats[SaveGame.ARMOR] = armor;
+        stats[SaveGame.WEAPON] = weaponDamage;
+        stats[SaveGame.EXP] = playerExp;
+        stats[SaveGame.PLAYER_LEVEL] = playerLevel;
+        stats[SaveGame.PORTAL_ROW] = portalRow;
+        stats[SaveGame.PORTAL_COL] = portalCol;
+        stats[SaveGame.LEVEL] = level;
+        stats[SaveGame.GAME_OVER] = gameOver ? 1 : 0;
+        stats[SaveGame.GAME_WIN] = gameWin ? 1 : 0;
+        stats[SaveGame.GENERATOR] = map.getGenerator().getId();
+
+        GameRandom[] streams = streams();
+        long[] randoms = new long[streams.length];
+        for (int i = 0; i < streams.length; i++) {
+            randoms[i] = streams[i].getState();
+        }
+
+        int[] enemyData = new int[enemies.size() * SaveGame.ENEMY_FIELDS];
+        int n = 0;
+        for (Enemy enemy : enemies) {
+            enemyData[n++] = enemy.getRow();
+            enemyData[n++] = enemy.getCol();
+            enemyData[n++] = enemy.getTipo();
+            enemyData[n++] = enemy.getVita();
+            enemyData[n++] = enemy.getDanni();
+            enemyData[n++] = enemy.getExp();
+        }
+        int[] itemData = new int[items.size() * SaveGame.ITEM_FIELDS];
+        n = 0;
+        for (Item item : items) {
+            itemData[n++] = item.getRow();
+            itemData[n++] = item.getCol();
+            itemData[n++] = item.getTipo();
+            itemData[n++] = item.getValue();
+        }
+        int[] combatData = null;
+        if (combat != null) {
+            combatData = new int[] {enemies.indexOf(combat.getEnemy()), combat.getPlayerHealth(), combat.getPlayerArmor(),
+                    combat.getEnemyHealth(), combat.hasPlayerRolled() ? combat.getPlayerRoll() : 0,
+                    combat.hasEnemyRolled() ? combat.getEnemyRoll() : 0};
+        }
+
+        // Un punto di controllo non consuma le pagine cambiate: la prossima differenza le riscrive, al più una volta di troppo
+        int[] pageIndexes = checkpoint ? fov.exploredPages() : fov.takeChangedPages();
+        long[][] pages = new long[pageIndexes.length][];
+        for (int i = 0; i < pageIndexes.length; i++) {
+            pages[i] = fov.copyExploredPage(pageIndexes[i]);
+        }
+        return new SaveGame.State(rows, cols, map.getSeed(), stats, randoms, enemyData, itemData, combatData,
+                pageIndexes, pages, checkpoint);
+    }
+
+    /**
+     * Restituisce i generatori della partita nell'ordine dei flussi di {@link GameRandom}
+     *
+     * @return i generatori
+     */
+    private GameRandom[] streams() {
+        return new GameRandom[] {random, aiRandom, combatRandom, enemyRandom, itemRandom};
+    }
+
+    /**
+     * Riporta la partita a uno stato salvato
+     *
+     * @param state lo stato, con tutte le pagine di celle esplorate
+     *
+     * @throws IllegalArgumentException se lo stato è di un livello di dimensioni diverse
+     */
+    void restoreState(SaveGame.State state) {
+        if (state.rows() != rows || state.cols() != cols) {
+            throw new IllegalArgumentException("Il salvataggio è di un livello " + state.rows() + "x" + state.cols()
+                    + ", non " + rows + "x" + cols);
+        }
+        if (state.stats()[SaveGame.GENERATOR] != map.getGenerator().getId()) {
+            throw new IllegalArgumentException("Il salvataggio usa un altro generatore di mappe, non "
+                    + map.getGenerator().getName());
+        }
+        mapVersion++;
+        dirty.addAll();
+        map.regenerate(state.seed());
+        fov.reset();
+        freeCells = null;
+        for (int i = 0; i < state.pageIndexes().length; i++) {
+            fov.restoreExploredPage(state.pageIndexes()[i], state.pages()[i]);
+        }
+
+        int[] stats = state.stats();
+        playerRow = stats[SaveGame.PLAYER_ROW];
+        playerCol = stats[SaveGame.PLAYER_COL];
+        hpMax = stats[SaveGame.HP_MAX];
+        playerHealth = stats[SaveGame.HEALTH];
+        armor = stats[SaveGame.ARMOR];
+        weaponDamage = stats[SaveGame.WEAPON];
+        playerExp = stats[SaveGame.EXP];
+        playerLevel = stats[SaveGame.PLAYER_LEVEL];
+        portalRow = stats[SaveGame.PORTAL_ROW];
+        portalCol = stats[SaveGame.PORTAL_COL];
+        level = stats[SaveGame.LEVEL];
+        gameOver = stats[SaveGame.GAME_OVER] != 0;
+        gameWin = stats[SaveGame.GAME_WIN] != 0;
+
+        GameRandom[] streams = streams();
+        for (int i = 0; i < streams.length; i++) {
+            streams[i].setState(state.randoms()[i]);
+        }
+
+        occupazione.clear();
+        int[] enemyData = state.enemies();
+        List<Enemy> savedEnemies = new ArrayList<>();
+        for (int i = 0; i < enemyData.length; i += SaveGame.ENEMY_FIELDS) {
+            savedEnemies.add(new Enemy(enemyData[i], enemyData[i + 1], (char) enemyData[i + 2], enemyData[i + 3],
+                    enemyData[i + 4], enemyData[i + 5]));
+        }
+        enemies = gestoreNemici.ripristinaNemici(savedEnemies, occupazione);
+        int[] itemData = state.items();
+        List<Item> savedItems = new ArrayList<>();
+        for (int i = 0; i < itemData.length; i += SaveGame.ITEM_FIELDS) {
+            savedItems.add(new Item(itemData[i], itemData[i + 1], (char) itemData[i + 2], itemData[i + 3]));
+        }
+        items = gestoreOggetti.ripristinaOggetti(savedItems, occupazione);
+
+        combat = null;
+        int[] combatData = state.combat();
+        if (combatData != null) {
+            combat = new Combat(combatData[1], weaponDamage, combatData[2], enemies.get(combatData[0]), combatRandom);
+            combat.restore(combatData[3], combatData[4] != 0, combatData[4], combatData[5] != 0, combatData[5]);
+        }
+        invalidatePlayerFields();
+        prepareNextLevel();
+    }
+
+    /**
+     * Controlla se una cella è un muro
+     *
+     * @param row riga
+     * @param col colonna
+     *
+     * @return true se la cella è un muro
+     */
+    public boolean isWall(int row, int col) {
+        return !map.isWalkable(row, col);
+    }
+
+    /**
+     * Restituisce il campo visivo del giocatore
+     *
+     * @return il campo visivo
+     */
+    public FieldOfView getFieldOfView() {
+        return updatedFieldOfView();
+    }
+
+    /**
+     * Restituisce il seme della partita
+     *
+     * @return il seme
+     */
+    public long getRunSeed() {
+        return runSeed;
+    }
+
+    /**
+     * Restituisce la mappa del livello corrente
+     *
+     * @return la mappa
+     */
+    public ChunkedWorld getMap() {
+        return map;
+    }
+
+    /**
+     * Restituisce la versione della mappa, che cambia ogni volta che viene generato un livello
+     *
+     * @return la versione della mappa
+     */
+    public int getMapVersion() {
+        return mapVersion;
+    }
+
+    /**
+     * Restituisce il numero di righe della mappa
+     *
+     * @return il numero di righe
+     */
+    public int getRows() {
+        return rows;
+    }
+
+    /**
+     * Restituisce il numero di colonne della mappa
+     *
+     * @return il numero di colonne
+     */
+    public int getCols() {
+        return cols;
+    }
+
+    /**
+     * Restituisce la riga del giocatore
+     *
+     * @return la riga
+     */
+    public int getPlayerRow() {
+        return playerRow;
+    }
+
+    /**
+     * Restituisce la colonna del giocatore
+     *
+     * @return la colonna
+     */
+    public int getPlayerCol() {
+        return playerCol;
+    }
+
+    /**
+     * Restituisce la riga del portale
+     *
+     * @return la riga
+     */
+    public int getPortalRow() {
+        return portalRow;
+    }
+
+    /**
+     * Restituisce la colonna del portale
+     *
+     * @return la colonna
+     */
+    public int getPortalCol() {
+        return portalCol;
+    }
+
+    /**
+     * Restituisce la salute del giocatore
+     *
+     * @return la salute
+     */
+    public int getPlayerHealth() {
+        return playerHealth;
+    }
+
+    /**
+     * Restituisce l'armatura del giocatore
+     *
+     * @return l'armatura
+     */
+    public int getArmor() {
+        return armor;
+    }
+
+    /**
+     * Restituisce il danno dell'arma
+     *
+     * @return il danno
+     */
+    public int getWeaponDamage() {
+        return weaponDamage;
+    }
+
+    /**
+     * Restituisce l'esperienza del giocatore
+     *
+     * @return l'esperienza
+     */
+    public int getPlayerExp() {
+        return playerExp;
+    }
+
+    /**
+     * Restituisce il livello del giocatore
+     *
+     * @return il livello del giocatore
+     */
+    public int getPlayerLevel() {
+        return playerLevel;
+    }
+
+    /**
+     * Restituisce il livello del dungeon
+     *
+     * @return il livello del dungeon
+     */
+    public int getLevel() {
+        return level;
+    }
+
+    /**
+     * Controlla se la partita è persa
+     *
+     * @return true se il giocatore è morto
+     */
+    public boolean isGameOver() {
+        return gameOver;
+    }
+
+    /**
+     * Controlla se la partita è vinta
+     *
+     * @return true se la partita è vinta
+     */
+    public boolean isGameWin() {
+        return gameWin;
+    }
+
+    /**
+     * Restituisce i nemici ancora vivi
+     *
+     * @return la lista dei nemici
+     */
+    public List<Enemy> getEnemies() {
+        return gestoreNemici.getNemici();
+    }
+
+    /**
+     * Restituisce gli oggetti ancora da raccogliere
+     *
+     * @return la lista degli oggetti
+     */
+    public List<Item> getItems() {
+        return items;
+    }
+
+    /**
+     * Restituisce l'indice di occupazione delle celle
+     *
+     * @return l'indice di occupazione
+     */
+    public OccupancyGrid getOccupancy() {
+        return occupazione;
+    }
+
+    /**
+     * Restituisce le celle cambiate dall'ultimo ridisegno, che la vista svuota dopo averle usate
+     *
+     * @return le celle cambiate
+     */
+    public DirtyRegion getDirtyRegion() {
+        return dirty;
+    }
+
+    /**
+     * Restituisce il combattimento in corso
+     *
+     * @return il combattimento, null se non ce n'è uno
+     */
+    public Combat getCombat() {
+        return combat;
+    }
+}
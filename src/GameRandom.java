@@ -0,0 +1,111 @@
+import java.util.Random;
+
+/**
+ * Un generatore di numeri casuali di cui si può leggere e reimpostare lo stato
+ *
+ * <p>
+ * È un SplitMix64, lo stesso algoritmo di {@link java.util.SplittableRandom}: lo stato è un solo
+ * long che avanza di una costante fissa, e ogni numero è lo stato mescolato. Lo stato sta in un
+ * campo proprio, così un salvataggio può scriverlo e rileggerlo e la partita caricata continua
+ * con gli stessi tiri. Estende {@link Random} per poter essere passato a chi usa già quella classe.
+ * {@link #nextGaussian()} non fa parte dello stato salvato e il gioco non lo usa.
+ *
+ * <p>
+ * Una partita ha un solo seme; da lì {@link #forStream(long, int)} ricava un generatore
+ * indipendente per ogni parte del gioco, così i tiri di una parte non spostano quelli delle altre.
+ */
+public class GameRandom extends Random {
+    /** La versione della classe per la serializzazione */
+    private static final long serialVersionUID = 1L;
+    /** L'incremento dello stato a ogni numero, la parte frazionaria della sezione aurea */
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+    /** Il flusso dei livelli: semi delle mappe, giocatore e portale */
+    public static final int LEVEL_STREAM = 0;
+    /** Il flusso dei movimenti casuali dei nemici */
+    public static final int AI_STREAM = 1;
+    /** Il flusso dei tiri di dado dei combattimenti */
+    public static final int COMBAT_STREAM = 2;
+    /** Il flusso della generazione dei nemici */
+    public static final int ENEMY_STREAM = 3;
+    /** Il flusso della generazione degli oggetti */
+    public static final int ITEM_STREAM = 4;
+    /** Il numero di flussi di una partita */
+    public static final int STREAM_COUNT = 5;
+
+    /** Lo stato del generatore, non inizializzato qui perché lo imposta già il costruttore di Random */
+    private long state;
+
+    /**
+     * Costruttore di GameRandom
+     *
+     * @param seed il seme
+     */
+    public GameRandom(long seed) {
+        super(seed);
+    }
+
+    /**
+     * Crea il generatore di una parte del gioco a partire dal seme della partita
+     *
+     * @param runSeed il seme della partita
+     * @param stream il flusso, per esempio {@link #COMBAT_STREAM}
+     *
+     * @return il generatore
+     */
+    public static GameRandom forStream(long runSeed, int stream) {
+        return new GameRandom(mix64(runSeed + mix64((stream + 1) * GOLDEN_GAMMA)));
+    }
+
+    @Override
+    public synchronized void setSeed(long seed) {
+        state = seed;
+    }
+
+    @Override
+    protected int next(int bits) {
+        return (int) (nextLong() >>> (64 - bits));
+    }
+
+    @Override
+    public long nextLong() {
+        state += GOLDEN_GAMMA;
+        return mix64(state);
+    }
+
+    @Override
+    public int nextInt() {
+        return (int) (nextLong() >>> 32);
+    }
+
+    /**
+     * Restituisce lo stato del generatore
+     *
+     * @return lo stato
+     */
+    public long getState() {
+        return state;
+    }
+
+    /**
+     * Reimposta lo stato del generatore, letto prima con {@link #getState()}
+     *
+     * @param state lo stato
+     */
+    public void setState(long state) {
+        this.state = state;
+    }
+
+    /**
+     * Mescola i bit di un long, la funzione finale di SplitMix64
+     *
+     * @param z il valore
+     *
+     * @return il valore mescolato
+     */
+    private static long mix64(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+}
@@ -0,0 +1,338 @@
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.function.Supplier;
+
+/**
+ * Il thread della simulazione: applica i turni al motore e pubblica una fotografia dopo ognuno
+ *
+ * <p>
+ * Il motore appartiene a questo thread e nessun altro lo tocca. Tastiera e finestre inviano
+ * comandi in una coda; dopo ogni comando la simulazione crea una {@link FrameSnapshot} nuova,
+ * la pubblica con un riferimento volatile e avvisa l'ascoltatore con l'evento prodotto.
+ * Un turno lento ritarda solo i turni successivi: disegno e input restano reattivi.
+ *
+ * <p>
+ * I comandi arrivano da una {@link InputQueue} che scarta le ripetizioni automatiche di troppo.
+ * Quando ci sono più comandi in attesa se ne applicano fino a {@value #MAX_TURNS_PROPERTY}
+ * di fila e si pubblica una sola fotografia, così chi disegna ridisegna una volta per gruppo.
+ * Un gruppo si chiude prima se un turno produce un evento diverso dal semplice movimento,
+ * come l'inizio di un combattimento, perché chi ascolta deve vederlo con la sua fotografia.
+ *
+ * <p>
+ * Anche salvataggi e caricamenti passano dalla coda: lo stato si cattura e si ripristina su questo
+ * thread, tra un turno e l'altro, e la scrittura su disco avviene sul thread dell'{@link Autosave}.
+ * Allo stesso modo gli input vengono scritti nell'{@link InputJournal} nell'ordine in cui sono
+ * applicati, non in quello in cui arrivano, così il {@link ReplayEngine} rigioca la stessa partita.
+ */
+public class GameSimulation implements Runnable {
+    /** La proprietà di sistema con il numero massimo di turni applicati per fotografia */
+    public static final String MAX_TURNS_PROPERTY = "rogue.maxTurnsPerFrame";
+    /** Il numero predefinito di turni applicati per fotografia */
+    public static final int DEFAULT_MAX_TURNS = 4;
+
+    /**
+     * Chi vuole sapere quando è stato applicato un turno
+     */
+    @FunctionalInterface
+    public interface Listener {
+        /**
+         * Chiamato dal thread della simulazione dopo ogni gruppo di comandi
+         *
+         * @param event l'evento prodotto dall'ultimo comando del gruppo
+         * @param snapshot la fotografia pubblicata subito dopo
+         */
+        void onTurn(GameEngine.Event event, FrameSnapshot snapshot);
+    }
+
+    /** Il motore, usato solo dal thread della simulazione */
+    private final GameEngine engine;
+    /** La telecamera che decide quale zona fotografare */
+    private final Camera camera;
+    /** I comandi in attesa */
+    private final InputQueue commands = new InputQueue();
+    /** Il numero massimo di turni applicati per fotografia */
+    private final int maxTurns = Math.max(1, Integer.getInteger(MAX_TURNS_PROPERTY, DEFAULT_MAX_TURNS));
+    /** L'ascoltatore dei turni */
+    private final Listener listener;
+    /** Il salvataggio della partita, null se la partita non si salva */
+    private final Autosave saves;
+    /** Il diario degli input, null se gli input non si scrivono */
+    private final InputJournal journal;
+    /** Il thread della simulazione */
+    private final Thread thread;
+
+    /** L'ultima fotografia pubblicata */
+    private volatile FrameSnapshot snapshot;
+    /** Il numero di fotografie pubblicate */
+    private long turn = 0;
+    /** La booleana che indica se la nebbia di guerra va fotografata */
+    private boolean fog = false;
+
+    /**
+     * Costruttore di GameSimulation, pubblica subito la fotografia del primo livello
+     *
+     * @param engine il motore, da qui in poi di proprietà della simulazione
+     * @param viewRows il numero di righe inquadrate
+     * @param viewCols il numero di colonne inquadrate
+     * @param listener l'ascoltatore dei turni
+     */
+    public GameSimulation(GameEngine engine, int viewRows, int viewCols, Listener listener) {
+        this(engine, viewRows, viewCols, listener, null);
+    }
+
+    /**
+     * Costruttore di GameSimulation con il salvataggio della partita
+     *
+     * @param engine il motore, da qui in poi di proprietà della simulazione
+     * @param viewRows il numero di righe inquadrate
+     * @param viewCols il numero di colonne inquadrate
+     * @param listener l'ascoltatore dei turni
+     * @param saves il salvataggio, o null se la partita non si salva
+     */
+    public GameSimulation(GameEngine engine, int viewRows, int viewCols, Listener listener, Autosave saves) {
+        this(engine, viewRows, viewCols, listener, saves, null);
+    }
+
+    /**
+     * Costruttore di GameSimulation con il salvataggio della partita e il diario degli input
+     *
+     * @param engine il motore appena creato, da qui in poi di proprietà della simulazione
+     * @param viewRows il numero di righe inquadrate
+     * @param viewCols il numero di colonne inquadrate
+     * @param listener l'ascoltatore dei turni
+     * @param saves il salvataggio, o null se la partita non si salva
+     * @param journal il diario, o null se gli input non si scrivono
+     */
+    public GameSimulation(GameEngine engine, int viewRows, int viewCols, Listener listener, Autosave saves,
+            InputJournal journal) {
+        this.engine = engine;
+        this.camera = new Camera(viewRows, viewCols, engine.getRows(), engine.getCols());
+        this.listener = listener;
+        this.saves = saves;
+        this.journal = journal;
+        if (journal != null) {
+            journal.begin(engine);
+        }
+        publish();
+        this.thread = new Thread(this, "simulation");
+        this.thread.setDaemon(true);
+    }
+
+    /**
+     * Avvia il thread della simulazione
+     */
+    public void start() {
+        thread.start();
+    }
+
+    /**
+     * Ferma il thread della simulazione; i comandi ancora in coda vengono scartati
+     */
+    public void stop() {
+        thread.interrupt();
+    }
+
+    /**
+     * Chiede un'azione del giocatore
+     *
+     * @param action l'azione
+     */
+    public void submit(GameEngine.Action action) {
+        submit(action, false);
+    }
+
+    /**
+     * Chiede un'azione del giocatore, scartandola se è una ripetizione automatica di troppo
+     *
+     * @param action l'azione
+     * @param repeat true se l'azione viene da un tasto tenuto premuto
+     *
+     * @return true se l'azione è stata messa in coda
+     */
+    public boolean submit(GameEngine.Action action, boolean repeat) {
+        return commands.offer(action, () -> {
+            if (journal != null) {
+                journal.recordAction(action);
+            }
+            return engine.step(action);
+        }, repeat);
+    }
+
+    /**
+     * Chiede di ricominciare la partita dal primo livello
+     */
+    public void restart() {
+        commands.offerCommand(() -> {
+            if (journal != null) {
+                journal.recordRestart();
+            }
+            engine.restart();
+            return GameEngine.Event.NEXT_LEVEL;
+        });
+    }
+
+    /**
+     * Chiede di attivare o disattivare la nebbia di guerra
+     *
+     * @param enabled true per attivarla
+     */
+    public void setFogOfWar(boolean enabled) {
+        commands.offerCommand(() -> {
+            if (journal != null) {
+                journal.recordFog(enabled);
+            }
+            fog = enabled;
+            engine.setTrackExplored(enabled);
+            return GameEngine.Event.NONE;
+        });
+    }
+
+    /**
+     * Chiede di salvare la partita in un file
+     *
+     * @param path il file
+     */
+    public void save(Path path) {
+        commands.offerCommand(() -> {
+            if (saves == null || engine.isGameOver()) {
+                return GameEngine.Event.NONE;
+            }
+            saves.save(path, engine.captureState(true));
+            return GameEngine.Event.NONE;
+        });
+    }
+
+    /**
+     * Chiede di caricare la partita salvata più di recente tra alcuni file
+     *
+     * <p>
+     * Il turno del caricamento produce {@link GameEngine.Event#COMBAT_STARTED} se la partita era
+     * salvata a metà di un combattimento, altrimenti {@link GameEngine.Event#NEXT_LEVEL}.
+     *
+     * @param paths i file tra cui scegliere; quelli che non esistono si ignorano
+     */
+    public void load(Path... paths) {
+        commands.offerCommand(() -> {
+            if (saves != null) {
+                saves.awaitWritten(); // Il salvataggio automatico deve arrivare fino all'ultimo turno
+            }
+            Path latest = null;
+            long latestTime = Long.MIN_VALUE;
+            for (Path path : paths) {
+                try {
+                    long time = Files.getLastModifiedTime(path).toMillis();
+                    if (time > latestTime) {
+                        latest = path;
+                        latestTime = time;
+                    }
+                } catch (IOException e) {
+                    // Il file non c'è
+                }
+            }
+            if (latest == null) {
+                System.out.println("Nessuna partita salvata");
+                return GameEngine.Event.NONE;
+            }
+            try {
+                SaveGame.State state = SaveGame.read(latest);
+                if (state.isGameOver()) {
+                    System.out.println("La partita salvata è già finita: " + latest);
+                    return GameEngine.Event.NONE;
+                }
+                engine.restoreState(state);
+                if (saves != null) {
+                    saves.reset();
+                }
+                if (journal != null) {
+                    journal.recordReset(engine, fog);
+                }
+                return state.combat() != null ? GameEngine.Event.COMBAT_STARTED : GameEngine.Event.NEXT_LEVEL;
+            } catch (IOException | IllegalArgumentException e) {
+                System.out.println("Errore nel caricamento della partita: " + e.getMessage());
+                return GameEngine.Event.NONE;
+            }
+        });
+    }
+
+    /**
+     * Restituisce l'ultima fotografia pubblicata
+     *
+     * @return la fotografia, mai null
+     */
+    public FrameSnapshot getSnapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Il ciclo della simulazione
+     */
+    @Override
+    public void run() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                GameEngine.Event event = apply(commands.take());
+                Supplier<GameEngine.Event> next;
+                for (int applied = 1; applied < maxTurns && isRoutine(event)
+                        && (next = commands.poll()) != null; applied++) {
+                    event = apply(next);
+                }
+                FrameSnapshot published = publish();
+                listener.onTurn(event, published);
+            }
+        } catch (InterruptedException e) {
+            // Fine della simulazione
+        }
+    }
+
+    /**
+     * Applica un comando e, se ha cambiato qualcosa, passa il turno al salvataggio automatico;
+     * passa ogni comando al diario, che decide quando scrivere un fotogramma chiave
+     *
+     * @param command il comando
+     *
+     * @return l'evento prodotto
+     */
+    private GameEngine.Event apply(Supplier<GameEngine.Event> command) {
+        GameEngine.Event event = command.get();
+        if (saves != null && event != GameEngine.Event.NONE) {
+            saves.afterTurn(engine);
+        }
+        if (journal != null) {
+            journal.afterCommand(engine, fog);
+        }
+        return event;
+    }
+
+    /**
+     * Controlla se un evento può restare in mezzo a un gruppo di turni senza essere notato
+     *
+     * @param event l'evento
+     *
+     * @return true per i turni di solo movimento e per i comandi senza effetto
+     */
+    private static boolean isRoutine(GameEngine.Event event) {
+        return event == GameEngine.Event.TURN || event == GameEngine.Event.NONE;
+    }
+
+    /**
+     * Restituisce il numero di azioni scartate dalla coda dei comandi
+     *
+     * @return il numero di azioni scartate
+     */
+    public long getDroppedInputs() {
+        return commands.getDropped();
+    }
+
+    /**
+     * Crea e pubblica la fotografia dello stato attuale
+     *
+     * @return la fotografia pubblicata
+     */
+    private FrameSnapshot publish() {
+        camera.follow(engine.getPlayerRow(), engine.getPlayerCol());
+        FrameSnapshot next = new FrameSnapshot(engine, camera, turn++, fog);
+        snapshot = next;
+        return next;
+    }
+}
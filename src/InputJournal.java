@@ -0,0 +1,306 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Il diario degli input del giocatore, per rigiocare una partita con il {@link ReplayEngine}
+ *
+ * <p>
+ * Il motore è deterministico: dallo stesso seme, con le stesse azioni, gioca la stessa partita.
+ * Il diario quindi contiene solo il seme, nell'intestazione, e gli input nell'ordine in cui la
+ * simulazione li ha applicati. Le azioni uguali di fila si scrivono in un solo byte, fino a
+ * {@value #MAX_RUN} alla volta, e lo stesso byte ne contiene il tipo; ricominciare la partita
+ * e accendere o spegnere la nebbia di guerra occupano un byte ciascuno.
+ *
+ * <p>
+ * Ogni {@value #KEYFRAME_INTERVAL} azioni il diario contiene anche un fotogramma chiave, lo
+ * stato completo codificato come un punto di controllo di {@link SaveGame}: per arrivare a un
+ * turno lontano si riparte dal fotogramma precedente invece che dall'inizio. Un caricamento
+ * viene scritto nello stesso modo, perché la partita caricata non viene dagli input precedenti.
+ *
+ * <p>
+ * Gli input si raccolgono in memoria sul thread della simulazione e si scrivono a blocchi sul
+ * thread del diario, così il disco non rallenta i turni. Alla chiusura del programma si scrive
+ * quello che resta. Una chiusura improvvisa può troncare il diario a metà di un elemento:
+ * il {@link ReplayEngine} si ferma all'ultimo elemento intero.
+ */
+public class InputJournal {
+    /** Il file predefinito del diario */
+    public static final String DEFAULT_FILE = "journal.dat";
+    /** La proprietà di sistema che spegne il diario se vale false */
+    public static final String ENABLED_PROPERTY = "rogue.journal";
+    /** Il numero di azioni tra due fotogrammi chiave */
+    public static final int KEYFRAME_INTERVAL = 500;
+
+    /** Il numero magico all'inizio del file, "RJNL" */
+    static final int MAGIC = 0x524A4E4C;
+    /**
+     * La versione del formato; la 2 salva anche il {@link MapGenerator} dei livelli, la 3 può
+     * contenere l'azione RESOLVE
+     */
+    static final int VERSION = 3;
+    /** La versione più vecchia che si può ancora rigiocare */
+    static final int MIN_VERSION = 2;
+    /** La dimensione dell'intestazione in byte: numero magico, versione, righe, colonne, seme e generatore */
+    static final int HEADER_SIZE = 28;
+    /** Il bit che distingue un gruppo di azioni uguali dagli altri elementi */
+    static final int RUN_FLAG = 0x80;
+    /** Il numero massimo di azioni uguali in un gruppo */
+    static final int MAX_RUN = 16;
+    /** L'elemento che ricomincia la partita */
+    static final byte RESTART = 0x01;
+    /** L'elemento con un fotogramma chiave */
+    static final byte KEYFRAME = 0x02;
+    /** L'elemento con lo stato di una partita caricata */
+    static final byte RESET = 0x03;
+    /** L'elemento che spegne la nebbia di guerra */
+    static final byte FOG_OFF = 0x04;
+    /** L'elemento che accende la nebbia di guerra */
+    static final byte FOG_ON = 0x05;
+    /** La dimensione in byte dell'inizio di un fotogramma: tipo, turno e nebbia */
+    static final int KEYFRAME_HEADER_SIZE = 6;
+
+    /** Il numero di byte raccolti prima di passarli al thread del diario */
+    private static final int FLUSH_BYTES = 4096;
+
+    /** Il file del diario */
+    private final Path path;
+    /** Il thread che scrive il diario */
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "journal");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /** Gli elementi non ancora passati al thread del diario */
+    private final ByteArrayOutputStream pending = new ByteArrayOutputStream();
+    /** L'azione del gruppo in corso, -1 se non c'è */
+    private int runAction = -1;
+    /** Il numero di azioni nel gruppo in corso */
+    private int runLength = 0;
+    /** Il numero di azioni scritte */
+    private int turns = 0;
+    /** Il numero di azioni scritte dall'ultimo fotogramma chiave */
+    private int sinceKeyframe = 0;
+
+    /** Il file aperto, usato solo dal thread del diario */
+    private FileChannel channel;
+
+    /**
+     * Costruttore di InputJournal
+     *
+     * @param path il file del diario
+     */
+    public InputJournal(Path path) {
+        this.path = path;
+        Runtime.getRuntime().addShutdownHook(new Thread(this::flush, "journal-flush"));
+    }
+
+    /**
+     * Crea il diario del gioco, se la proprietà {@value #ENABLED_PROPERTY} non lo spegne
+     *
+     * @return il diario, o null se è spento
+     */
+    public static InputJournal fromSystemProperties() {
+        if ("false".equalsIgnoreCase(System.getProperty(ENABLED_PROPERTY))) {
+            return null;
+        }
+        return new InputJournal(Path.of(DEFAULT_FILE));
+    }
+
+    /**
+     * Restituisce il file del diario
+     *
+     * @return il file
+     */
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Comincia il diario di una partita appena creata, sostituendo quello vecchio
+     *
+     * @param engine il motore, nello stato in cui l'ha lasciato il costruttore
+     */
+    public synchronized void begin(GameEngine engine) {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).putInt(engine.getRows()).putInt(engine.getCols()).putLong(engine.getRunSeed())
+                .putInt(engine.getMap().getGenerator().getId());
+        byte[] bytes = header.array();
+        execute(() -> {
+            try {
+                if (channel != null) {
+                    channel.close();
+                }
+                channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                        StandardOpenOption.TRUNCATE_EXISTING);
+                SaveGame.writeFully(channel, ByteBuffer.wrap(bytes));
+            } catch (IOException e) {
+                System.out.println("Errore nella scrittura del diario: " + e.getMessage());
+                channel = null;
+            }
+        });
+    }
+
+    /**
+     * Scrive un'azione del giocatore, dal thread della simulazione prima di applicarla
+     *
+     * @param action l'azione
+     */
+    public synchronized void recordAction(GameEngine.Action action) {
+        if (runAction != action.ordinal() || runLength == MAX_RUN) {
+            endRun();
+            runAction = action.ordinal();
+        }
+        runLength++;
+        turns++;
+        sinceKeyframe++;
+    }
+
+    /**
+     * Scrive che la partita ricomincia dal primo livello
+     */
+    public synchronized void recordRestart() {
+        endRun();
+        pending.write(RESTART);
+    }
+
+    /**
+     * Scrive che la nebbia di guerra è stata accesa o spenta
+     *
+     * @param enabled true se è stata accesa
+     */
+    public synchronized void recordFog(boolean enabled) {
+        endRun();
+        pending.write(enabled ? FOG_ON : FOG_OFF);
+    }
+
+    /**
+     * Scrive lo stato di una partita appena caricata
+     *
+     * @param engine il motore, dopo il caricamento
+     * @param fog true se la nebbia di guerra è accesa
+     */
+    public synchronized void recordReset(GameEngine engine, boolean fog) {
+        writeState(RESET, engine, fog);
+    }
+
+    /**
+     * Chiamato dopo ogni comando applicato: scrive un fotogramma chiave quando serve
+     * e passa al thread del diario gli elementi raccolti
+     *
+     * @param engine il motore
+     * @param fog true se la nebbia di guerra è accesa
+     */
+    public synchronized void afterCommand(GameEngine engine, boolean fog) {
+        if (sinceKeyframe >= KEYFRAME_INTERVAL) {
+            writeState(KEYFRAME, engine, fog);
+        } else if (pending.size() >= FLUSH_BYTES) {
+            hand();
+        }
+    }
+
+    /**
+     * Restituisce il numero di azioni scritte
+     *
+     * @return il numero di azioni
+     */
+    public synchronized int getTurns() {
+        return turns;
+    }
+
+    /**
+     * Scrive lo stato completo del motore e passa tutto al thread del diario
+     *
+     * @param kind {@link #KEYFRAME} o {@link #RESET}
+     * @param engine il motore
+     * @param fog true se la nebbia di guerra è accesa
+     */
+    private void writeState(byte kind, GameEngine engine, boolean fog) {
+        endRun();
+        sinceKeyframe = 0;
+        ByteBuffer header = ByteBuffer.allocate(KEYFRAME_HEADER_SIZE);
+        header.put(kind).putInt(turns).put((byte) (fog ? 1 : 0));
+        pending.writeBytes(header.array());
+        pending.writeBytes(SaveGame.checkpointRecord(engine.captureState(true)));
+        hand();
+    }
+
+    /**
+     * Chiude il gruppo di azioni uguali in corso
+     */
+    private void endRun() {
+        if (runLength > 0) {
+            pending.write(RUN_FLAG | ((runLength - 1) << 3) | runAction);
+        }
+        runAction = -1;
+        runLength = 0;
+    }
+
+    /**
+     * Passa gli elementi raccolti al thread del diario
+     */
+    private void hand() {
+        if (pending.size() == 0) {
+            return;
+        }
+        byte[] bytes = pending.toByteArray();
+        pending.reset();
+        execute(() -> {
+            if (channel == null) {
+                return;
+            }
+            try {
+                SaveGame.writeFully(channel, ByteBuffer.wrap(bytes));
+            } catch (IOException e) {
+                System.out.println("Errore nella scrittura del diario: " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Affida una scrittura al thread del diario, se il programma non si sta chiudendo
+     *
+     * @param task la scrittura
+     */
+    private void execute(Runnable task) {
+        try {
+            writer.execute(task);
+        } catch (RejectedExecutionException e) {
+            // Il programma si sta chiudendo
+        }
+    }
+
+    /**
+     * Scrive gli elementi ancora in memoria e aspetta che arrivino sul disco, chiamato alla chiusura del programma
+     */
+    public void flush() {
+        synchronized (this) {
+            endRun();
+            hand();
+        }
+        execute(() -> {
+            try {
+                if (channel != null) {
+                    channel.close();
+                    channel = null;
+                }
+            } catch (IOException e) {
+                System.out.println("Errore nella chiusura del diario: " + e.getMessage());
+            }
+        });
+        writer.shutdown();
+        try {
+            writer.awaitTermination(2, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
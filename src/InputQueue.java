@@ -0,0 +1,144 @@
+import java.util.ArrayDeque;
+import java.util.EnumSet;
+import java.util.function.Supplier;
+
+/**
+ * La coda dei comandi tra la tastiera e il thread della simulazione
+ *
+ * <p>
+ * Tenere premuta una freccia genera un evento di tastiera per ogni ripetizione automatica.
+ * Una ripetizione viene scartata se ce n'è già una della stessa azione in attesa: chi tiene
+ * premuto si muove alla velocità con cui i turni vengono applicati, e la coda non cresce.
+ * I tasti premuti uno alla volta vengono tenuti tutti, fino a {@code capacity} in attesa.
+ * I comandi di controllo, come ricominciare la partita, non vengono mai scartati.
+ *
+ * <p>
+ * I metodi sono sincronizzati: la coda viene riempita dall'EDT e svuotata dalla simulazione.
+ */
+public class InputQueue {
+    /** Il numero predefinito di azioni in attesa */
+    public static final int DEFAULT_CAPACITY = 32;
+
+    /**
+     * Un comando in attesa
+     *
+     * @param command il comando da eseguire
+     * @param repeatOf l'azione ripetuta, null se il comando non viene da una ripetizione automatica
+     */
+    private record Entry(Supplier<GameEngine.Event> command, GameEngine.Action repeatOf) {
+    }
+
+    /** I comandi in attesa, in ordine di arrivo */
+    private final ArrayDeque<Entry> entries = new ArrayDeque<>();
+    /** Le azioni che hanno già una ripetizione automatica in attesa */
+    private final EnumSet<GameEngine.Action> pendingRepeats = EnumSet.noneOf(GameEngine.Action.class);
+    /** Il numero massimo di azioni in attesa */
+    private final int capacity;
+    /** Il numero di azioni scartate */
+    private long dropped = 0;
+
+    /**
+     * Costruttore di InputQueue con la capacità predefinita
+     */
+    public InputQueue() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    /**
+     * Costruttore di InputQueue
+     *
+     * @param capacity il numero massimo di azioni in attesa
+     */
+    public InputQueue(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("La coda deve contenere almeno un'azione");
+        }
+        this.capacity = capacity;
+    }
+
+    /**
+     * Mette in coda un'azione del giocatore
+     *
+     * @param action l'azione
+     * @param command il comando che la esegue
+     * @param repeat true se l'azione viene dalla ripetizione automatica di un tasto tenuto premuto
+     *
+     * @return true se l'azione è stata messa in coda, false se è stata scartata
+     */
+    public synchronized boolean offer(GameEngine.Action action, Supplier<GameEngine.Event> command, boolean repeat) {
+        if ((repeat && pendingRepeats.contains(action)) || entries.size() >= capacity) {
+            dropped++;
+            return false;
+        }
+        entries.add(new Entry(command, repeat ? action : null));
+        if (repeat) {
+            pendingRepeats.add(action);
+        }
+        notifyAll();
+        return true;
+    }
+
+    /**
+     * Mette in coda un comando di controllo, che non viene mai scartato
+     *
+     * @param command il comando
+     */
+    public synchronized void offerCommand(Supplier<GameEngine.Event> command) {
+        entries.add(new Entry(command, null));
+        notifyAll();
+    }
+
+    /**
+     * Toglie il primo comando dalla coda, aspettando se è vuota
+     *
+     * @return il comando
+     *
+     * @throws InterruptedException se il thread viene interrotto durante l'attesa
+     */
+    public synchronized Supplier<GameEngine.Event> take() throws InterruptedException {
+        while (entries.isEmpty()) {
+            wait();
+        }
+        return remove();
+    }
+
+    /**
+     * Toglie il primo comando dalla coda, senza aspettare
+     *
+     * @return il comando, null se la coda è vuota
+     */
+    public synchronized Supplier<GameEngine.Event> poll() {
+        return entries.isEmpty() ? null : remove();
+    }
+
+    /**
+     * Restituisce il numero di comandi in attesa
+     *
+     * @return il numero di comandi
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Restituisce il numero di azioni scartate perché ripetute o perché la coda era piena
+     *
+     * @return il numero di azioni scartate
+     */
+    public synchronized long getDropped() {
+        return dropped;
+    }
+
+    /**
+     * Toglie il primo comando e libera la sua azione, se era una ripetizione
+     *
+     * @return il comando
+     */
+    private Supplier<GameEngine.Event> remove() {
+        Entry entry = entries.poll();
+        if (entry.repeatOf() != null) {
+            pendingRepeats.remove(entry.repeatOf());
+        }
+        return entry.command();
+    }
+}
@@ -6,13 +6,23 @@ public class ItemManager {
     /** Lista di oggetti */
     private final List<Item> items;
     /** Generatore di numeri casuali */
-    private final Random random = new Random();
+    private final Random random;
 
     /** 
      * Costruttore di ItemManager
      */
     public ItemManager() {
+        this(new Random());
+    }
+
+    /**
+     * Costruttore di ItemManager con un generatore dato
+     * 
+     * @param random generatore di numeri casuali
+     */
+    public ItemManager(Random random) {
         this.items = new ArrayList<>();
+        this.random = random;
     }
     
     /**
@@ -27,35 +37,52 @@ public class ItemManager {
     /**
      * Genera oggetti casuali sulla mappa
      * 
-     * @param mappa mappa del livello
+     * @param celle celle libere da cui pescare le posizioni, che restano occupate
      * @param livello livello corrente
+     * @param griglia indice di occupazione in cui registrare gli oggetti
      * 
      * @return lista di oggetti generati
      */
-    public List<Item> generaOggetti(char[][] mappa, int livello) {
+    public List<Item> generaOggetti(FreeCellIndex celle, int livello, OccupancyGrid griglia) {
         items.clear();
         int maxOggetti = random.nextInt(1)+1; // Da 1 a 2 oggetti
         
         for (int i = 0; i < maxOggetti; i++) {
-            while (true) {
-                int row = random.nextInt(mappa.length);
-                int col = random.nextInt(mappa[0].length);
-
-                if (mappa[row][col] == '.') {
-                    char tipoOggetto = determinaTipoOggetto(livello);
-                    int valoreOggetto = determinaValoreOggetto(tipoOggetto);
-
-                    if (tipoOggetto != ' ') {
-                        items.add(new Item(row, col, tipoOggetto, valoreOggetto));
-                        break;
-                    }
-                }
+            long cella = celle.take(random);
+            if (cella < 0) {
+                break; // Nessuna cella libera
             }
+            char tipoOggetto;
+            do {
+                tipoOggetto = determinaTipoOggetto(livello);
+            } while (tipoOggetto == ' ');
+            int valoreOggetto = determinaValoreOggetto(tipoOggetto);
+
+            Item oggetto = new Item(celle.rowOf(cella), celle.colOf(cella), tipoOggetto, valoreOggetto);
+            items.add(oggetto);
+            griglia.aggiungiOggetto(oggetto);
         }
 
         return new ArrayList<>(items);
     }
 
+    /**
+     * Sostituisce gli oggetti con quelli di un salvataggio
+     * 
+     * @param salvati oggetti salvati
+     * @param griglia indice di occupazione in cui registrare gli oggetti
+     * 
+     * @return lista di oggetti
+     */
+    public List<Item> ripristinaOggetti(List<Item> salvati, OccupancyGrid griglia) {
+        items.clear();
+        for (Item oggetto : salvati) {
+            items.add(oggetto);
+            griglia.aggiungiOggetto(oggetto);
+        }
+        return new ArrayList<>(items);
+    }
+
     /**
      * Determina il tipo di oggetto da generare a seconda del livello
      * 
@@ -1,6 +1,6 @@
 import java.awt.*;
 import java.awt.event.*;
-import java.io.*;
+import java.io.IOException;
 import javax.swing.*;
 
 public class LeaderBoard extends JPanel {
@@ -11,6 +11,15 @@ public class LeaderBoard extends JPanel {
     @SuppressWarnings("unused")
     private int height;
 
+    /** Il modello che legge la classifica a pagine */
+    private final LeaderboardTableModel model = new LeaderboardTableModel();
+    /** Il campo per filtrare per giocatore */
+    private final JTextField playerField = new JTextField(12);
+    /** Il campo per filtrare per livello del dungeon */
+    private final JTextField depthField = new JTextField(4);
+    /** Le statistiche mostrate sotto la tabella */
+    private final JLabel statsLabel = new JLabel(" ");
+
     public LeaderBoard(JFrame frame, int width, int height) {
         this.frame = frame;
         this.width = width;
@@ -20,46 +29,128 @@ public class LeaderBoard extends JPanel {
 
     private void initialize() {
         setLayout(new BorderLayout());
-        JTextArea textArea = new JTextArea();
-        textArea.setEditable(false);
-        textArea.setFont(new Font("Monospaced", Font.PLAIN, 15));
-        textArea.setBackground(Color.BLACK);
-        textArea.setForeground(Color.WHITE);
-        textArea.setCaretColor(Color.WHITE);
-        textArea.setAlignmentX(CENTER_ALIGNMENT);
-        textArea.setAlignmentY(CENTER_ALIGNMENT);
+        setBackground(Color.BLACK);
+        Font font = new Font("Monospaced", Font.PLAIN, 15);
 
-        String data = readDataFromFile("lead.bin");
-        textArea.setText(data);
-        JScrollPane scrollPane = new JScrollPane(textArea);
-        add(scrollPane, BorderLayout.CENTER);
+        JTable table = new JTable(model);
+        table.setFont(font);
+        table.setBackground(Color.BLACK);
+        table.setForeground(Color.WHITE);
+        table.setGridColor(Color.DARK_GRAY);
+        table.setRowHeight(20);
+        table.setFillsViewportHeight(true);
+        table.setAutoCreateRowSorter(false); // Ordina la classifica, non la tabella
 
-        addKeyListener(new KeyAdapter() {
+        // Un clic sulla posizione o sul livello del dungeon inverte l'ordine della classifica
+        table.getTableHeader().addMouseListener(new MouseAdapter() {
             @Override
-            public void keyPressed(KeyEvent e) {
-                if (e.getKeyCode() == KeyEvent.VK_ESCAPE) {
-                    frame.dispose();
+            public void mouseClicked(MouseEvent e) {
+                int column = table.getTableHeader().columnAtPoint(e.getPoint());
+                if (column == LeaderboardTableModel.RANK_COLUMN || column == LeaderboardTableModel.DEPTH_COLUMN) {
+                    LeaderboardStore.Query query = model.getQuery();
+                    model.setQuery(new LeaderboardStore.Query(query.player(), query.depth(), !query.reverse()));
                 }
             }
         });
+
+        JScrollPane scrollPane = new JScrollPane(table);
+        scrollPane.getViewport().setBackground(Color.BLACK);
+        add(scrollPane, BorderLayout.CENTER);
+
+        JPanel filters = new JPanel(new FlowLayout(FlowLayout.LEFT));
+        filters.setBackground(Color.BLACK);
+        filters.add(label("Giocatore:", font));
+        filters.add(playerField);
+        filters.add(label("Livello dungeon:", font));
+        filters.add(depthField);
+        JButton search = new JButton("Cerca");
+        filters.add(search);
+        add(filters, BorderLayout.NORTH);
+
+        statsLabel.setFont(font);
+        statsLabel.setForeground(Color.WHITE);
+        statsLabel.setBorder(BorderFactory.createEmptyBorder(4, 8, 4, 8));
+        add(statsLabel, BorderLayout.SOUTH);
+        refreshStats();
+
+        ActionListener applyFilters = e -> applyFilters();
+        playerField.addActionListener(applyFilters);
+        depthField.addActionListener(applyFilters);
+        search.addActionListener(applyFilters);
+
+        getInputMap(WHEN_IN_FOCUSED_WINDOW).put(KeyStroke.getKeyStroke(KeyEvent.VK_ESCAPE, 0), "close");
+        getActionMap().put("close", new AbstractAction() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                frame.dispose();
+            }
+        });
         setFocusable(true);
         requestFocusInWindow();
     }
 
-    private String readDataFromFile(String filePath) {
-        StringBuilder data = new StringBuilder();
-        try (BufferedReader br = new BufferedReader(new FileReader(filePath))) {
-            String line;
-            while ((line = br.readLine()) != null) {
-                if (line.length() > 3) {
-                    data.append(line.substring(3)).append("\n");
-                } else {
-                    data.append(line).append("\n");
-                }
+    /**
+     * Il metodo per creare un'etichetta della barra dei filtri
+     *
+     * @param text il testo
+     * @param font il font
+     *
+     * @return l'etichetta
+     */
+    private static JLabel label(String text, Font font) {
+        JLabel label = new JLabel(text);
+        label.setFont(font);
+        label.setForeground(Color.WHITE);
+        return label;
+    }
+
+    /**
+     * Il metodo per passare alla classifica i filtri scritti nei campi
+     */
+    private void applyFilters() {
+        int depth = 0;
+        String depthText = depthField.getText().trim();
+        if (!depthText.isEmpty()) {
+            try {
+                depth = Integer.parseInt(depthText);
+            } catch (NumberFormatException e) {
+                depthField.setText("");
             }
-        } catch (IOException e) {
-            System.out.println("Errore nella lettura del file: " + filePath);
         }
-        return data.toString();
+        model.setQuery(new LeaderboardStore.Query(playerField.getText(), depth, model.getQuery().reverse()));
+        refreshStats();
+    }
+
+    /**
+     * Il metodo per aggiornare la riga delle statistiche, lette in background
+     */
+    private void refreshStats() {
+        String player = playerField.getText().trim();
+        new SwingWorker<String, Void>() {
+            @Override
+            protected String doInBackground() throws IOException {
+                LeaderboardStats stats = LeaderboardStore.getDefault().getStats();
+                StringBuilder text = new StringBuilder();
+                text.append("Partite: ").append(stats.getTotal());
+                text.append("  Mediana: ").append(stats.depthPercentile(0.5));
+                text.append("  90%: ").append(stats.depthPercentile(0.9));
+                Score week = stats.deepestInLastDays(7, System.currentTimeMillis());
+                text.append("  Settimana: ").append(week == null ? "-" : week.name() + " " + week.dungeonLevel());
+                Score best = player.isEmpty() ? null : stats.bestOf(player);
+                if (best != null) {
+                    text.append("  Record di ").append(best.name()).append(": ").append(best.dungeonLevel());
+                }
+                return text.toString();
+            }
+
+            @Override
+            protected void done() {
+                try {
+                    statsLabel.setText(get());
+                } catch (Exception e) {
+                    statsLabel.setText(" ");
+                }
+            }
+        }.execute();
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,310 @@
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.stream.Stream;
+
+/**
+ * Lo strumento che unisce le classifiche di più installazioni in una sola
+ *
+ * <p>
+ * Ogni file, nel vecchio formato di testo o in quello binario della {@link LeaderboardStore},
+ * viene letto in sequenza. La parte già ordinata di un file binario si usa così com'è; il resto
+ * viene raccolto a blocchi di al massimo {@link #DEFAULT_RUN_RECORDS} risultati, ordinato e
+ * scritto in un file temporaneo. Alla fine tutti i blocchi ordinati vengono fusi insieme con una
+ * coda di priorità, tenendo aperti al massimo {@link #DEFAULT_FAN_IN} file alla volta: se sono di
+ * più si fondono prima a gruppi. In memoria c'è sempre al più un blocco, qualunque sia la
+ * dimensione dei file.
+ *
+ * <p>
+ * I risultati identici (stesso giocatore, stessi livelli, stesso istante) vengono scritti una
+ * volta sola, così unire due copie dello stesso file non raddoppia la classifica. I risultati del
+ * vecchio formato non hanno l'istante, quindi due partite uguali nello stesso file di testo
+ * contano come una.
+ *
+ * <p>
+ * Si usa da riga di comando: {@code java -cp bin LeaderboardMerge lead.dat lead1.bin lead2.dat ...}
+ */
+public final class LeaderboardMerge {
+    /** Il numero predefinito di risultati ordinati in memoria prima di scriverli su disco */
+    public static final int DEFAULT_RUN_RECORDS = 1 << 16;
+    /** Il numero predefinito di file fusi insieme in un passaggio */
+    public static final int DEFAULT_FAN_IN = 64;
+
+    /** Il numero di risultati ordinati in memoria prima di scriverli su disco */
+    private final int runRecords;
+    /** Il numero di file fusi insieme in un passaggio */
+    private final int fanIn;
+    /** Il numero di risultati letti */
+    private long read = 0;
+    /** Il numero di risultati scartati perché già presenti */
+    private long duplicates = 0;
+    /** Il numero di blocchi scritti nei file temporanei */
+    private int spilled = 0;
+
+    /**
+     * Un intervallo già in ordine di un file di classifica
+     *
+     * @param file il file
+     * @param from il primo record
+     * @param to il record dopo l'ultimo
+     * @param temporary se il file è temporaneo e va cancellato dopo la fusione
+     */
+    private record Run(Path file, long from, long to, boolean temporary) {
+    }
+
+    /**
+     * Il prossimo risultato di un intervallo durante la fusione
+     *
+     * @param score il risultato
+     * @param cursor la lettura dell'intervallo
+     */
+    private record Head(Score score, LeaderboardStore.RecordCursor cursor) {
+    }
+
+    /**
+     * Costruttore di LeaderboardMerge con i limiti predefiniti
+     */
+    public LeaderboardMerge() {
+        this(DEFAULT_RUN_RECORDS, DEFAULT_FAN_IN);
+    }
+
+    /**
+     * Costruttore di LeaderboardMerge
+     *
+     * @param runRecords il numero di risultati ordinati in memoria prima di scriverli su disco
+     * @param fanIn il numero di file fusi insieme in un passaggio, almeno 2
+     */
+    public LeaderboardMerge(int runRecords, int fanIn) {
+        if (runRecords < 1 || fanIn < 2) {
+            throw new IllegalArgumentException("Limiti non validi: " + runRecords + ", " + fanIn);
+        }
+        this.runRecords = runRecords;
+        this.fanIn = fanIn;
+    }
+
+    /**
+     * Il punto di ingresso da riga di comando
+     *
+     * @param args il file da scrivere seguito dalle classifiche da unire
+     */
+    public static void main(String[] args) {
+        if (args.length < 2) {
+            System.out.println("Uso: java -cp bin LeaderboardMerge <uscita> <classifica> [<classifica> ...]");
+            System.exit(2);
+        }
+        List<Path> inputs = new ArrayList<>();
+        for (int i = 1; i < args.length; i++) {
+            inputs.add(Path.of(args[i]));
+        }
+        LeaderboardMerge merge = new LeaderboardMerge();
+        try {
+            long written = merge.merge(inputs, Path.of(args[0]));
+            System.out.println("Letti " + merge.getRead() + " risultati da " + inputs.size() + " file, "
+                    + merge.getDuplicates() + " doppi, scritti " + written + " in " + args[0]);
+        } catch (IOException e) {
+            System.out.println("Errore nell'unione delle classifiche: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Unisce le classifiche in un file binario ordinato
+     *
+     * @param inputs le classifiche, nel vecchio formato di testo o in quello binario
+     * @param output il file da creare o sostituire
+     *
+     * @return il numero di risultati scritti
+     *
+     * @throws IOException se un file non si può leggere o scrivere
+     */
+    public long merge(List<Path> inputs, Path output) throws IOException {
+        Path parent = output.toAbsolutePath().getParent();
+        Path workDir = Files.createTempDirectory(parent, "lead-merge");
+        try {
+            List<Run> runs = new ArrayList<>();
+            for (Path input : inputs) {
+                collectRuns(input, workDir, runs);
+            }
+            while (runs.size() > fanIn) {
+                List<Run> next = new ArrayList<>();
+                for (int i = 0; i < runs.size(); i += fanIn) {
+                    List<Run> group = runs.subList(i, Math.min(runs.size(), i + fanIn));
+                    if (group.size() == 1) {
+                        next.add(group.get(0));
+                        continue;
+                    }
+                    Path file = workDir.resolve("run-" + spilled++ + ".dat");
+                    long written = mergeRuns(group, file);
+                    next.add(new Run(file, 0, written, true));
+                }
+                runs = next;
+            }
+            return mergeRuns(runs, output);
+        } finally {
+            try (Stream<Path> files = Files.list(workDir)) {
+                for (Path file : (Iterable<Path>) files::iterator) {
+                    Files.deleteIfExists(file);
+                }
+            }
+            Files.deleteIfExists(workDir);
+        }
+    }
+
+    /**
+     * Legge una classifica e aggiunge i suoi intervalli in ordine, scrivendo su disco quelli da ordinare
+     *
+     * @param input la classifica
+     * @param workDir la cartella dei file temporanei
+     * @param runs gli intervalli in ordine trovati finora
+     *
+     * @throws IOException se un file non si può leggere o scrivere
+     */
+    private void collectRuns(Path input, Path workDir, List<Run> runs) throws IOException {
+        List<Score> buffer = new ArrayList<>();
+        try (FileChannel in = FileChannel.open(input, StandardOpenOption.READ)) {
+            long sorted = LeaderboardStore.readSortedCount(in);
+            if (sorted >= 0) {
+                long count = LeaderboardStore.recordCount(in);
+                if (sorted > 0) {
+                    runs.add(new Run(input, 0, sorted, false));
+                    read += sorted;
+                }
+                LeaderboardStore.RecordCursor cursor = new LeaderboardStore.RecordCursor(in, sorted, count);
+                for (Score score = cursor.next(); score != null; score = cursor.next()) {
+                    add(score, buffer, workDir, runs);
+                }
+                spill(buffer, workDir, runs);
+                return;
+            }
+        }
+        try (BufferedReader br = Files.newBufferedReader(input, StandardCharsets.ISO_8859_1)) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                Score score = LeaderboardStore.parseLegacyLine(line);
+                if (score != null) {
+                    add(score, buffer, workDir, runs);
+                }
+            }
+        }
+        spill(buffer, workDir, runs);
+    }
+
+    /**
+     * Aggiunge un risultato al blocco in memoria, scrivendolo su disco quando è pieno
+     *
+     * @param score il risultato
+     * @param buffer il blocco in memoria
+     * @param workDir la cartella dei file temporanei
+     * @param runs gli intervalli in ordine trovati finora
+     *
+     * @throws IOException se il file temporaneo non si può scrivere
+     */
+    private void add(Score score, List<Score> buffer, Path workDir, List<Run> runs) throws IOException {
+        read++;
+        buffer.add(score);
+        if (buffer.size() >= runRecords) {
+            spill(buffer, workDir, runs);
+        }
+    }
+
+    /**
+     * Ordina il blocco in memoria e lo scrive in un file temporaneo, poi lo svuota
+     *
+     * @param buffer il blocco in memoria
+     * @param workDir la cartella dei file temporanei
+     * @param runs gli intervalli in ordine trovati finora
+     *
+     * @throws IOException se il file temporaneo non si può scrivere
+     */
+    private void spill(List<Score> buffer, Path workDir, List<Run> runs) throws IOException {
+        if (buffer.isEmpty()) {
+            return;
+        }
+        buffer.sort(Score.RANKING);
+        Path file = workDir.resolve("run-" + spilled++ + ".dat");
+        LeaderboardStore.writeSorted(file, buffer);
+        runs.add(new Run(file, 0, buffer.size(), true));
+        buffer.clear();
+    }
+
+    /**
+     * Fonde degli intervalli in ordine in un file, scartando i risultati identici
+     *
+     * @param runs gli intervalli da fondere
+     * @param output il file da creare o sostituire
+     *
+     * @return il numero di risultati scritti
+     *
+     * @throws IOException se un file non si può leggere o scrivere
+     */
+    private long mergeRuns(List<Run> runs, Path output) throws IOException {
+        List<FileChannel> channels = new ArrayList<>();
+        try {
+            PriorityQueue<Head> heads = new PriorityQueue<>(Math.max(1, runs.size()), Comparator.comparing(Head::score, Score.RANKING));
+            for (Run run : runs) {
+                FileChannel in = FileChannel.open(run.file(), StandardOpenOption.READ);
+                channels.add(in);
+                LeaderboardStore.RecordCursor cursor = new LeaderboardStore.RecordCursor(in, run.from(), run.to());
+                Score first = cursor.next();
+                if (first != null) {
+                    heads.add(new Head(first, cursor));
+                }
+            }
+            Score[] last = new Score[1];
+            long written = LeaderboardStore.writeSorted(output, () -> {
+                while (!heads.isEmpty()) {
+                    Head head = heads.poll();
+                    Score next = head.cursor().next();
+                    if (next != null) {
+                        heads.add(new Head(next, head.cursor()));
+                    }
+                    if (!head.score().equals(last[0])) {
+                        last[0] = head.score();
+                        return head.score();
+                    }
+                    duplicates++;
+                }
+                return null;
+            });
+            for (FileChannel in : channels) {
+                in.close();
+            }
+            for (Run run : runs) {
+                if (run.temporary()) {
+                    Files.deleteIfExists(run.file());
+                }
+            }
+            return written;
+        } finally {
+            for (FileChannel in : channels) {
+                in.close();
+            }
+        }
+    }
+
+    /**
+     * Restituisce il numero di risultati letti
+     *
+     * @return il numero di risultati
+     */
+    public long getRead() {
+        return read;
+    }
+
+    /**
+     * Restituisce il numero di risultati scartati perché già presenti
+     *
+     * @return il numero di risultati doppi
+     */
+    public long getDuplicates() {
+        return duplicates;
+    }
+}
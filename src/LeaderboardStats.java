@@ -0,0 +1,376 @@
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Le statistiche della classifica, aggiornate a ogni risultato invece di rileggere il file
+ *
+ * <p>
+ * Si tengono il miglior risultato di ogni giocatore, un istogramma dei livelli del dungeon raggiunti
+ * in un albero di Fenwick, così percentili e conteggi costano O(log n), e il risultato più profondo
+ * di ciascuno degli ultimi {@value #DAYS} giorni in un anello di contenitori giornalieri.
+ * Le domande sull'ultima settimana guardano al massimo sette contenitori.
+ *
+ * <p>
+ * Le statistiche si salvano in un file accanto alla classifica, con il numero di risultati che
+ * coprono e la generazione della classifica; alla riapertura si leggono solo i risultati aggiunti dopo.
+ * I risultati senza istante, convertiti dal vecchio file di testo, non cadono in nessun giorno.
+ */
+public final class LeaderboardStats {
+    /** Il numero di giorni tenuti nell'anello */
+    public static final int DAYS = 32;
+    /** Il numero di livelli del dungeon distinti nell'istogramma; i più profondi finiscono nell'ultimo */
+    public static final int MAX_DEPTH = 1024;
+
+    /** Il numero magico all'inizio del file, "LSTA" */
+    private static final int MAGIC = 0x4C535441;
+    /** La versione del formato */
+    private static final int VERSION = 1;
+    /** I millisecondi di un giorno */
+    private static final long DAY_MILLIS = 86_400_000L;
+
+    /** Il miglior risultato di ogni giocatore */
+    private final Map<String, Score> bestByPlayer = new HashMap<>();
+    /** Il numero di risultati per livello del dungeon */
+    private final long[] histogram = new long[MAX_DEPTH];
+    /** L'albero di Fenwick sull'istogramma, indicizzato da 1 */
+    private final long[] fenwick = new long[MAX_DEPTH + 1];
+    /** Il giorno di ogni contenitore dell'anello, in giorni dal 1970; -1 se vuoto */
+    private final long[] dayIndex = new long[DAYS];
+    /** Il numero di risultati di ogni giorno dell'anello */
+    private final long[] dayCount = new long[DAYS];
+    /** Il risultato più profondo di ogni giorno dell'anello */
+    private final Score[] dayBest = new Score[DAYS];
+    /** Il numero di risultati contati */
+    private long total = 0;
+
+    /**
+     * Costruttore di LeaderboardStats, senza risultati
+     */
+    public LeaderboardStats() {
+        Arrays.fill(dayIndex, -1);
+    }
+
+    /**
+     * Aggiunge un risultato alle statistiche
+     *
+     * @param score il risultato
+     */
+    public synchronized void record(Score score) {
+        total++;
+        bestByPlayer.merge(score.name(), score, (a, b) -> Score.RANKING.compare(a, b) <= 0 ? a : b);
+
+        int depth = bucket(score.dungeonLevel());
+        histogram[depth]++;
+        for (int i = depth + 1; i <= MAX_DEPTH; i += i & -i) {
+            fenwick[i]++;
+        }
+
+        if (score.timestamp() > 0) {
+            long day = Math.floorDiv(score.timestamp(), DAY_MILLIS);
+            int slot = Math.floorMod(day, DAYS);
+            if (dayIndex[slot] < day) {
+                // Il contenitore era di un giorno uscito dall'anello
+                dayIndex[slot] = day;
+                dayCount[slot] = 0;
+                dayBest[slot] = null;
+            }
+            if (dayIndex[slot] == day) {
+                dayCount[slot]++;
+                if (dayBest[slot] == null || Score.RANKING.compare(score, dayBest[slot]) < 0) {
+                    dayBest[slot] = score;
+                }
+            }
+        }
+    }
+
+    /**
+     * Restituisce il numero di risultati
+     *
+     * @return il numero di risultati
+     */
+    public synchronized long getTotal() {
+        return total;
+    }
+
+    /**
+     * Restituisce il miglior risultato di un giocatore
+     *
+     * @param player il nome del giocatore
+     *
+     * @return il risultato, o null se il giocatore non ha giocato
+     */
+    public synchronized Score bestOf(String player) {
+        return bestByPlayer.get(player);
+    }
+
+    /**
+     * Restituisce il numero di giocatori distinti
+     *
+     * @return il numero di giocatori
+     */
+    public synchronized int getPlayerCount() {
+        return bestByPlayer.size();
+    }
+
+    /**
+     * Restituisce il miglior risultato di ogni giocatore, per le esportazioni
+     *
+     * @return i risultati in ordine di classifica
+     */
+    public synchronized List<Score> bestPerPlayer() {
+        List<Score> best = new ArrayList<>(bestByPlayer.values());
+        best.sort(Score.RANKING);
+        return best;
+    }
+
+    /**
+     * Conta i risultati arrivati almeno a un livello del dungeon
+     *
+     * @param depth il livello
+     *
+     * @return il numero di risultati
+     */
+    public synchronized long countAtLeast(int depth) {
+        return total - prefix(bucket(depth));
+    }
+
+    /**
+     * Restituisce il livello del dungeon sotto cui è rimasta una frazione delle partite
+     *
+     * @param fraction la frazione, tra 0 e 1; 0.5 è la mediana
+     *
+     * @return il più piccolo livello raggiunto da almeno quella frazione delle partite, 0 se non ce ne sono
+     */
+    public synchronized int depthPercentile(double fraction) {
+        if (total == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(fraction * total));
+        // Discesa sull'albero: la posizione più alta con somma dei prefissi minore del bersaglio
+        int pos = 0;
+        long remaining = target;
+        for (int step = Integer.highestOneBit(MAX_DEPTH); step > 0; step >>= 1) {
+            int next = pos + step;
+            if (next <= MAX_DEPTH && fenwick[next] < remaining) {
+                pos = next;
+                remaining -= fenwick[next];
+            }
+        }
+        return pos; // pos è già il livello, perché l'albero parte da 1
+    }
+
+    /**
+     * Restituisce il risultato più profondo degli ultimi giorni
+     *
+     * @param days il numero di giorni, oggi compreso, al massimo {@value #DAYS}
+     * @param now l'istante di adesso in millisecondi
+     *
+     * @return il risultato, o null se negli ultimi giorni non si è giocato
+     */
+    public synchronized Score deepestInLastDays(int days, long now) {
+        long today = Math.floorDiv(now, DAY_MILLIS);
+        Score best = null;
+        for (int d = 0; d < Math.min(days, DAYS); d++) {
+            int slot = Math.floorMod(today - d, DAYS);
+            if (dayIndex[slot] == today - d && dayBest[slot] != null
+                    && (best == null || Score.RANKING.compare(dayBest[slot], best) < 0)) {
+                best = dayBest[slot];
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Conta le partite degli ultimi giorni
+     *
+     * @param days il numero di giorni, oggi compreso, al massimo {@value #DAYS}
+     * @param now l'istante di adesso in millisecondi
+     *
+     * @return il numero di partite
+     */
+    public synchronized long countInLastDays(int days, long now) {
+        long today = Math.floorDiv(now, DAY_MILLIS);
+        long count = 0;
+        for (int d = 0; d < Math.min(days, DAYS); d++) {
+            int slot = Math.floorMod(today - d, DAYS);
+            if (dayIndex[slot] == today - d) {
+                count += dayCount[slot];
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Somma l'istogramma sotto un livello
+     *
+     * @param depth il livello, escluso
+     *
+     * @return il numero di risultati più in superficie
+     */
+    private long prefix(int depth) {
+        long sum = 0;
+        for (int i = depth; i > 0; i -= i & -i) {
+            sum += fenwick[i];
+        }
+        return sum;
+    }
+
+    /**
+     * Restituisce il contenitore dell'istogramma di un livello
+     *
+     * @param depth il livello del dungeon
+     *
+     * @return il contenitore
+     */
+    private static int bucket(int depth) {
+        return Math.max(0, Math.min(MAX_DEPTH - 1, depth));
+    }
+
+    /**
+     * Scrive le statistiche in un array di byte
+     *
+     * @param generation la generazione della classifica
+     * @param covered il numero di risultati della classifica già contati
+     *
+     * @return i byte da salvare
+     */
+    synchronized byte[] serialize(long generation, long covered) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(generation);
+            out.writeLong(covered);
+            out.writeLong(total);
+            for (long count : histogram) {
+                out.writeLong(count);
+            }
+            for (int i = 0; i < DAYS; i++) {
+                out.writeLong(dayIndex[i]);
+                out.writeLong(dayCount[i]);
+                out.writeBoolean(dayBest[i] != null);
+                if (dayBest[i] != null) {
+                    writeScore(out, dayBest[i]);
+                }
+            }
+            out.writeInt(bestByPlayer.size());
+            for (Score score : bestByPlayer.values()) {
+                writeScore(out, score);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException(e); // Non succede scrivendo in memoria
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Salva i byte delle statistiche passando da un file temporaneo
+     *
+     * @param path il file delle statistiche
+     * @param data i byte prodotti da {@link #serialize(long, long)}
+     *
+     * @throws IOException se il file non si può scrivere
+     */
+    static void save(Path path, byte[] data) throws IOException {
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        Files.write(tmp, data);
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Le statistiche lette da un file, con la parte di classifica che coprono
+     *
+     * @param stats le statistiche
+     * @param generation la generazione della classifica quando sono state salvate
+     * @param covered il numero di risultati contati
+     */
+    record Saved(LeaderboardStats stats, long generation, long covered) {
+    }
+
+    /**
+     * Legge le statistiche salvate
+     *
+     * @param path il file delle statistiche
+     *
+     * @return le statistiche, o null se il file manca o non si riconosce
+     */
+    static Saved load(Path path) {
+        if (!Files.exists(path)) {
+            return null;
+        }
+        try (InputStream file = Files.newInputStream(path);
+             DataInputStream in = new DataInputStream(new BufferedInputStream(file))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return null;
+            }
+            long generation = in.readLong();
+            long covered = in.readLong();
+            LeaderboardStats stats = new LeaderboardStats();
+            stats.total = in.readLong();
+            for (int d = 0; d < MAX_DEPTH; d++) {
+                stats.histogram[d] = in.readLong();
+            }
+            // L'albero si ricostruisce in tempo lineare dall'istogramma
+            for (int i = 1; i <= MAX_DEPTH; i++) {
+                stats.fenwick[i] += stats.histogram[i - 1];
+                int parent = i + (i & -i);
+                if (parent <= MAX_DEPTH) {
+                    stats.fenwick[parent] += stats.fenwick[i];
+                }
+            }
+            for (int i = 0; i < DAYS; i++) {
+                stats.dayIndex[i] = in.readLong();
+                stats.dayCount[i] = in.readLong();
+                stats.dayBest[i] = in.readBoolean() ? readScore(in) : null;
+            }
+            int players = in.readInt();
+            for (int i = 0; i < players; i++) {
+                Score score = readScore(in);
+                stats.bestByPlayer.put(score.name(), score);
+            }
+            return new Saved(stats, generation, covered);
+        } catch (IOException e) {
+            return null; // Statistiche rovinate: si ricalcolano
+        }
+    }
+
+    /**
+     * Scrive un risultato
+     *
+     * @param out il flusso
+     * @param score il risultato
+     *
+     * @throws IOException se il flusso non si può scrivere
+     */
+    private static void writeScore(DataOutputStream out, Score score) throws IOException {
+        out.writeUTF(score.name());
+        out.writeInt(score.playerLevel());
+        out.writeInt(score.dungeonLevel());
+        out.writeLong(score.timestamp());
+    }
+
+    /**
+     * Legge un risultato
+     *
+     * @param in il flusso
+     *
+     * @return il risultato
+     *
+     * @throws IOException se il flusso non si può leggere
+     */
+    private static Score readScore(DataInputStream in) throws IOException {
+        return new Score(in.readUTF(), in.readInt(), in.readInt(), in.readLong());
+    }
+}
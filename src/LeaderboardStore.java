@@ -0,0 +1,1045 @@
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * La classifica su disco, in record binari di lunghezza fissa
+ *
+ * <p>
+ * Il file comincia con un'intestazione che dice quanti record sono già in ordine di classifica;
+ * dopo di loro ci sono quelli aggiunti di recente, nell'ordine di arrivo. Aggiungere un risultato
+ * è una sola scrittura in fondo al file. I primi {@value #TOP_N} sono tenuti anche in memoria,
+ * quindi chiederli non tocca il disco. Quando la coda non ordinata diventa troppo lunga, un thread
+ * in background la ordina e la fonde con la parte ordinata in un file nuovo, che sostituisce
+ * il vecchio con uno spostamento atomico.
+ *
+ * <p>
+ * I record si leggono attraverso mappature in memoria del file, a segmenti di {@value #SEGMENT_RECORDS}
+ * record. La prima volta che il file non esiste viene creato dal vecchio {@code lead.bin} di testo,
+ * che resta dov'è.
+ *
+ * <p>
+ * Ogni risultato aggiunto aggiorna anche le {@link LeaderboardStats}, salvate in background
+ * in un file accanto. L'intestazione conta le compattazioni: finché non ce n'è stata una nuova
+ * il file cresce solo in fondo, quindi alla riapertura le statistiche leggono solo i risultati
+ * che non avevano ancora contato.
+ */
+public final class LeaderboardStore implements Closeable {
+    /** Il file predefinito della classifica */
+    public static final String DEFAULT_FILE = "lead.dat";
+    /** Il vecchio file di testo della classifica */
+    public static final String LEGACY_FILE = "lead.bin";
+    /** Il numero di risultati migliori tenuti in memoria */
+    public static final int TOP_N = 100;
+
+    /** Il numero magico all'inizio del file, "LEAD" */
+    private static final int MAGIC = 0x4C454144;
+    /** La versione del formato */
+    private static final int VERSION = 1;
+    /** La dimensione dell'intestazione in byte */
+    static final int HEADER_SIZE = 64;
+    /** La dimensione di un record in byte */
+    static final int RECORD_SIZE = 64;
+    /** I byte riservati al nome in UTF-8 */
+    private static final int NAME_BYTES = 48;
+    /** Il numero di record di un segmento mappato in memoria */
+    private static final int SEGMENT_RECORDS = 1 << 20;
+    /** La coda non ordinata più corta che fa partire la compattazione */
+    private static final int MIN_TAIL_TO_COMPACT = 1024;
+
+    /** Il formato di una riga del vecchio file di testo */
+    private static final Pattern LEGACY_LINE = Pattern.compile("(.*), of level (-?\\d+), reached the (-?\\d+)th level of the dungeon");
+
+    /** La classifica predefinita, aperta al primo uso */
+    private static LeaderboardStore shared;
+
+    /** Il file della classifica */
+    private final Path path;
+    /** Il file delle statistiche */
+    private final Path statsPath;
+    /** Le statistiche aggiornate a ogni risultato */
+    private final LeaderboardStats stats;
+    /** Il thread della compattazione */
+    private final ExecutorService compactor = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "leaderboard-compaction");
+        thread.setDaemon(true);
+        return thread;
+    });
+    /** Il blocco che impedisce due compattazioni contemporanee */
+    private final Object compactionLock = new Object();
+    /** I risultati migliori, in ordine di classifica */
+    private final List<Score> top = new ArrayList<>(TOP_N + 1);
+
+    /** Il canale del file */
+    private FileChannel channel;
+    /** Il numero di record in totale e di quelli nella parte ordinata */
+    private long count, sortedCount;
+    /**
+     * La generazione del file: cresce a ogni compattazione e prende un valore nuovo a caso quando
+     * il file viene creato o riscritto da capo, così le statistiche salvate di un file vecchio non valgono più
+     */
+    private long generation;
+    /** La booleana che indica se un salvataggio delle statistiche è già in coda */
+    private boolean statsSavePending = false;
+    /** I segmenti del file mappati in memoria, creati alla prima lettura */
+    private MappedByteBuffer[] segments = new MappedByteBuffer[0];
+    /** La booleana che indica se una compattazione è in corso */
+    private boolean compacting = false;
+    /** La coda non ordinata messa in ordine, creata alla prima lettura per posizione in classifica */
+    private Score[] sortedTail;
+
+    /**
+     * Un risultato con la sua posizione in classifica
+     *
+     * @param rank la posizione, da 0
+     * @param score il risultato
+     */
+    public record Ranked(long rank, Score score) {
+    }
+
+    /**
+     * Una ricerca nella classifica
+     *
+     * @param player il testo da cercare nel nome del giocatore, senza distinguere le maiuscole; null per tutti
+     * @param depth il livello del dungeon, 0 per tutti
+     * @param reverse true per partire dal risultato peggiore
+     */
+    public record Query(String player, int depth, boolean reverse) {
+        /** La ricerca di tutti i risultati dal migliore */
+        public static final Query ALL = new Query(null, 0, false);
+
+        /**
+         * Costruttore di Query, il nome vuoto vale come nessun filtro
+         */
+        public Query {
+            player = player == null || player.isBlank() ? null : player.trim().toLowerCase();
+        }
+
+        /**
+         * Controlla se la ricerca filtra per giocatore, quindi il numero di risultati non è noto in anticipo
+         *
+         * @return true se c'è un filtro sul nome
+         */
+        public boolean filtersPlayer() {
+            return player != null;
+        }
+    }
+
+    /**
+     * Una pagina di risultati di una ricerca
+     *
+     * @param rows i risultati
+     * @param next il punto da cui continuare la ricerca, -1 se è finita
+     */
+    public record Page(List<Ranked> rows, long next) {
+    }
+
+    /**
+     * Restituisce la classifica predefinita, aprendola o creandola la prima volta
+     *
+     * @return la classifica
+     *
+     * @throws IOException se il file non si può aprire
+     */
+    public static synchronized LeaderboardStore getDefault() throws IOException {
+        if (shared == null) {
+            shared = open(Path.of(DEFAULT_FILE), Path.of(LEGACY_FILE));
+        }
+        return shared;
+    }
+
+    /**
+     * Apre una classifica, creandola dal vecchio file di testo se non esiste ancora
+     *
+     * @param path il file della classifica
+     * @param legacy il vecchio file di testo, o null
+     *
+     * @return la classifica
+     *
+     * @throws IOException se un file non si può leggere o scrivere
+     */
+    public static LeaderboardStore open(Path path, Path legacy) throws IOException {
+        if (!Files.exists(path) && legacy != null && Files.exists(legacy)) {
+            List<Score> scores = readLegacy(legacy);
+            scores.sort(Score.RANKING);
+            writeSorted(path, scores);
+        }
+        return new LeaderboardStore(path);
+    }
+
+    /**
+     * Costruttore di LeaderboardStore
+     *
+     * @param path il file della classifica
+     *
+     * @throws IOException se il file non si può aprire o non è una classifica
+     */
+    private LeaderboardStore(Path path) throws IOException {
+        this.path = path;
+        this.statsPath = path.resolveSibling(path.getFileName() + ".stats");
+        openChannel();
+        loadTop();
+        LeaderboardStats.Saved saved = LeaderboardStats.load(statsPath);
+        this.stats = loadStats(saved);
+        // Il thread della compattazione usa le statistiche: si parte solo quando sono assegnate
+        if (saved == null || saved.generation() != generation || saved.covered() != count) {
+            scheduleStatsSave();
+        }
+        maybeCompact();
+    }
+
+    /**
+     * Legge le statistiche salvate e conta i risultati aggiunti dopo, o le ricalcola da capo
+     * se il file è stato compattato nel frattempo
+     *
+     * @param saved le statistiche salvate, o null se mancano
+     *
+     * @return le statistiche aggiornate
+     *
+     * @throws IOException se il file non si può leggere
+     */
+    private LeaderboardStats loadStats(LeaderboardStats.Saved saved) throws IOException {
+        LeaderboardStats loaded;
+        long from;
+        if (saved != null && saved.generation() == generation && saved.covered() <= count) {
+            loaded = saved.stats();
+            from = saved.covered();
+        } else {
+            loaded = new LeaderboardStats();
+            from = 0;
+        }
+        RecordCursor cursor = new RecordCursor(channel, from, count);
+        for (Score score = cursor.next(); score != null; score = cursor.next()) {
+            loaded.record(score);
+        }
+        return loaded;
+    }
+
+    /**
+     * Apre il file, scrive l'intestazione se è nuovo e legge i contatori
+     *
+     * @throws IOException se il file non si può aprire o non è una classifica
+     */
+    private void openChannel() throws IOException {
+        channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        if (channel.size() < HEADER_SIZE) {
+            writeHeader(channel, 0, newGeneration());
+            channel.force(true);
+        }
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        readFully(channel, header, 0);
+        header.flip();
+        if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+            channel.close();
+            throw new IOException("Il file non è una classifica: " + path);
+        }
+        count = (channel.size() - HEADER_SIZE) / RECORD_SIZE;
+        // Un record scritto a metà da una chiusura improvvisa viene scartato
+        channel.truncate(HEADER_SIZE + count * RECORD_SIZE);
+        sortedCount = Math.min(header.getLong(), count);
+        generation = header.getLong();
+        segments = new MappedByteBuffer[0];
+        sortedTail = null;
+    }
+
+    /**
+     * Carica in memoria i risultati migliori: i primi della parte ordinata più quelli della coda
+     *
+     * @throws IOException se il file non si può leggere
+     */
+    private void loadTop() throws IOException {
+        top.clear();
+        for (long i = 0; i < Math.min(TOP_N, sortedCount); i++) {
+            top.add(read(i));
+        }
+        for (long i = sortedCount; i < count; i++) {
+            offerTop(read(i));
+        }
+    }
+
+    /**
+     * Aggiunge un risultato alla classifica
+     *
+     * @param score il risultato
+     *
+     * @throws IOException se il file non si può scrivere
+     */
+    public void append(Score score) throws IOException {
+        append(List.of(score));
+    }
+
+    /**
+     * Aggiunge un gruppo di risultati con una sola scrittura e una sola sincronizzazione su disco
+     *
+     * @param scores i risultati
+     *
+     * @throws IOException se il file non si può scrivere
+     */
+    public synchronized void append(List<Score> scores) throws IOException {
+        if (scores.isEmpty()) {
+            return;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(scores.size() * RECORD_SIZE);
+        for (Score score : scores) {
+            encode(score, buffer);
+        }
+        buffer.flip();
+        writeFully(channel, buffer, HEADER_SIZE + count * RECORD_SIZE);
+        channel.force(false);
+        count += scores.size();
+        sortedTail = null;
+        for (Score score : scores) {
+            offerTop(score);
+            stats.record(score);
+        }
+        scheduleStatsSave();
+        maybeCompact();
+    }
+
+    /**
+     * Restituisce i risultati migliori, senza leggere il file
+     *
+     * @param n il numero di risultati, al massimo {@value #TOP_N}
+     *
+     * @return i risultati in ordine di classifica
+     */
+    public synchronized List<Score> top(int n) {
+        return new ArrayList<>(top.subList(0, Math.min(Math.min(n, TOP_N), top.size())));
+    }
+
+    /**
+     * Restituisce le statistiche della classifica
+     *
+     * @return le statistiche, aggiornate a ogni risultato aggiunto
+     */
+    public LeaderboardStats getStats() {
+        return stats;
+    }
+
+    /**
+     * Mette in coda il salvataggio delle statistiche, se non ce n'è già uno
+     */
+    private synchronized void scheduleStatsSave() {
+        if (!statsSavePending && !compactor.isShutdown()) {
+            statsSavePending = true;
+            compactor.execute(this::saveStats);
+        }
+    }
+
+    /**
+     * Salva le statistiche con la generazione e il numero di risultati che coprono
+     */
+    private void saveStats() {
+        byte[] data;
+        synchronized (this) {
+            statsSavePending = false;
+            data = stats.serialize(generation, count);
+        }
+        try {
+            LeaderboardStats.save(statsPath, data);
+        } catch (IOException e) {
+            System.out.println("Errore nel salvataggio delle statistiche: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Restituisce il numero di risultati in classifica
+     *
+     * @return il numero di risultati
+     */
+    public synchronized long size() {
+        return count;
+    }
+
+    /**
+     * Restituisce il numero di risultati già in ordine di classifica all'inizio del file
+     *
+     * @return il numero di risultati ordinati
+     */
+    public synchronized long getSortedCount() {
+        return sortedCount;
+    }
+
+    /**
+     * Restituisce un risultato nell'ordine del file: prima la parte ordinata, poi la coda
+     *
+     * @param index la posizione nel file
+     *
+     * @return il risultato
+     *
+     * @throws IOException se il file non si può leggere
+     */
+    public synchronized Score get(long index) throws IOException {
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("Risultato " + index + " di " + count);
+        }
+        return read(index);
+    }
+
+    /**
+     * Restituisce il risultato in una posizione della classifica
+     *
+     * <p>
+     * La classifica è la fusione della parte ordinata del file con la coda messa in ordine;
+     * la posizione si trova con una ricerca binaria su quanti risultati vengono dalla coda,
+     * senza scorrere la parte ordinata. A parità di ordine viene prima la parte ordinata.
+     *
+     * @param rank la posizione, da 0
+     *
+     * @return il risultato
+     *
+     * @throws IOException se il file non si può leggere
+     */
+    public synchronized Score ranked(long rank) throws IOException {
+        if (rank < 0 || rank >= count) {
+            throw new IndexOutOfBoundsException("Posizione " + rank + " di " + count);
+        }
+        Score[] tail = sortedTail();
+        long taken = rank + 1;
+        // j risultati dalla coda e taken - j dalla parte ordinata formano le prime taken posizioni
+        int lo = (int) Math.max(0, taken - sortedCount);
+        int hi = (int) Math.min(taken, tail.length);
+        while (true) {
+            int j = (lo + hi) >>> 1;
+            long i = taken - j;
+            if (i > 0 && j < tail.length && Score.RANKING.compare(read(i - 1), tail[j]) > 0) {
+                lo = j + 1; // Troppi dalla parte ordinata
+            } else if (j > 0 && i < sortedCount && Score.RANKING.compare(tail[j - 1], read(i)) >= 0) {
+                hi = j - 1; // Troppi dalla coda
+            } else if (i == 0) {
+                return tail[j - 1];
+            } else if (j == 0) {
+                return read(i - 1);
+            } else {
+                Score a = read(i - 1);
+                return Score.RANKING.compare(a, tail[j - 1]) <= 0 ? tail[j - 1] : a;
+            }
+        }
+    }
+
+    /**
+     * Conta i risultati arrivati più in profondità di un livello, che in classifica vengono per primi
+     *
+     * @param depth il livello del dungeon
+     *
+     * @return il numero di risultati con livello del dungeon maggiore di depth
+     *
+     * @throws IOException se il file non si può leggere
+     */
+    public synchronized long countDeeperThan(int depth) throws IOException {
+        long lo = 0;
+        long hi = count;
+        while (lo < hi) {
+            long mid = (lo + hi) >>> 1;
+            if (ranked(mid).dungeonLevel() > depth) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Conta i risultati di una ricerca che non filtra per giocatore
+     *
+     * @param query la ricerca
+     *
+     * @return il numero di risultati
+     *
+     * @throws IOException se il file non si può leggere
+     */
+    public synchronized long count(Query query) throws IOException {
+        long[] range = range(query);
+        return range[1] - range[0];
+    }
+
+    /**
+     * Legge una pagina di risultati di una ricerca
+     *
+     * <p>
+     * Il filtro sul livello si risolve con due ricerche binarie, perché in classifica i risultati dello
+     * stesso livello sono vicini; il filtro sul nome scorre le posizioni dell'intervallo finché la pagina
+     * non è piena. Per le ricerche senza filtro sul nome il punto di partenza è semplicemente la riga.
+     *
+     * @param query la ricerca
+     * @param from il punto da cui partire: 0, o il {@link Page#next()} della pagina precedente
+     * @param size il numero massimo di risultati
+     *
+     * @return la pagina
+     *
+     * @throws IOException se il file non si può leggere
+     */
+    public synchronized Page page(Query query, long from, int size) throws IOException {
+        long[] range = range(query);
+        long length = range[1] - range[0];
+        List<Ranked> rows = new ArrayList<>(size);
+        long cursor = from;
+        while (cursor < length && rows.size() < size) {
+            long rank = query.reverse() ? range[1] - 1 - cursor : range[0] + cursor;
+            Score score = ranked(rank);
+            cursor++;
+            if (query.player() == null || score.name().toLowerCase().contains(query.player())) {
+                rows.add(new Ranked(rank, score));
+            }
+        }
+        return new Page(rows, cursor < length ? cursor : -1);
+    }
+
+    /**
+     * Calcola l'intervallo di posizioni in classifica in cui cade una ricerca
+     *
+     * @param query la ricerca
+     *
+     * @return la prima posizione e quella dopo l'ultima
+     *
+     * @throws IOException se il file non si può leggere
+     */
+    private long[] range(Query query) throws IOException {
+        if (query.depth() <= 0) {
+            return new long[] {0, count};
+        }
+        return new long[] {countDeeperThan(query.depth()), countDeeperThan(query.depth() - 1)};
+    }
+
+    /**
+     * Restituisce la coda non ordinata messa in ordine, ordinandola se è cambiata
+     *
+     * @return la coda in ordine di classifica
+     *
+     * @throws IOException se il file non si può leggere
+     */
+    private Score[] sortedTail() throws IOException {
+        if (sortedTail == null) {
+            Score[] tail = new Score[(int) (count - sortedCount)];
+            for (int i = 0; i < tail.length; i++) {
+                tail[i] = read(sortedCount + i);
+            }
+            Arrays.sort(tail, Score.RANKING);
+            sortedTail = tail;
+        }
+        return sortedTail;
+    }
+
+    /**
+     * Legge un record attraverso il segmento mappato che lo contiene
+     *
+     * @param index la posizione nel file
+     *
+     * @return il risultato
+     *
+     * @throws IOException se il file non si può mappare
+     */
+    private Score read(long index) throws IOException {
+        int segment = (int) (index / SEGMENT_RECORDS);
+        int offset = (int) (index % SEGMENT_RECORDS) * RECORD_SIZE;
+        if (segment >= segments.length) {
+            segments = Arrays.copyOf(segments, segment + 1);
+        }
+        MappedByteBuffer buffer = segments[segment];
+        if (buffer == null || buffer.capacity() < offset + RECORD_SIZE) {
+            // Il segmento si allarga fin dove arriva il file, o fino alla sua dimensione piena
+            long start = HEADER_SIZE + (long) segment * SEGMENT_RECORDS * RECORD_SIZE;
+            long records = Math.min(SEGMENT_RECORDS, count - (long) segment * SEGMENT_RECORDS);
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, records * RECORD_SIZE);
+            segments[segment] = buffer;
+        }
+        return decode(buffer, offset);
+    }
+
+    /**
+     * Inserisce un risultato tra i migliori in memoria, se ci rientra
+     *
+     * @param score il risultato
+     */
+    private void offerTop(Score score) {
+        int pos = Collections.binarySearch(top, score, Score.RANKING);
+        if (pos < 0) {
+            pos = -pos - 1;
+        }
+        if (pos < TOP_N) {
+            top.add(pos, score);
+            if (top.size() > TOP_N) {
+                top.remove(TOP_N);
+            }
+        }
+    }
+
+    /**
+     * Fa partire la compattazione in background se la coda non ordinata è troppo lunga
+     */
+    private void maybeCompact() {
+        long tail = count - sortedCount;
+        if (!compacting && tail > Math.max(MIN_TAIL_TO_COMPACT, sortedCount / 8)) {
+            compacting = true;
+            compactor.execute(() -> {
+                try {
+                    compact();
+                } catch (IOException e) {
+                    System.out.println("Errore nella compattazione della classifica: " + e.getMessage());
+                }
+            });
+        }
+    }
+
+    /**
+     * Ordina la coda e la fonde con la parte ordinata, in un file nuovo che sostituisce il vecchio
+     *
+     * <p>
+     * La parte ordinata viene letta in sequenza e non cambia durante la fusione, quindi si legge
+     * senza bloccare la classifica. Solo la coda, che è corta, viene ordinata in memoria. I risultati
+     * aggiunti mentre la fusione era in corso vengono copiati in fondo al file nuovo prima dello scambio.
+     *
+     * @throws IOException se un file non si può leggere o scrivere
+     */
+    public void compact() throws IOException {
+        synchronized (compactionLock) {
+            compactLocked();
+        }
+    }
+
+    /**
+     * Il corpo della compattazione, con il blocco della compattazione già preso
+     *
+     * @throws IOException se un file non si può leggere o scrivere
+     */
+    private void compactLocked() throws IOException {
+        long sorted;
+        long total;
+        Score[] tail;
+        synchronized (this) {
+            compacting = true;
+            sorted = sortedCount;
+            total = count;
+            tail = new Score[(int) (total - sorted)];
+            for (int i = 0; i < tail.length; i++) {
+                tail[i] = read(sorted + i);
+            }
+        }
+        try {
+            Arrays.sort(tail, Score.RANKING);
+            Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+            long position = HEADER_SIZE;
+            try (FileChannel source = FileChannel.open(path, StandardOpenOption.READ);
+                 FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                         StandardOpenOption.TRUNCATE_EXISTING)) {
+                writeHeader(out, total, generation + 1);
+                RecordCursor prefix = new RecordCursor(source, 0, sorted);
+                ByteBuffer buffer = ByteBuffer.allocate(RecordCursor.BUFFER_RECORDS * RECORD_SIZE);
+                int t = 0;
+                Score head = prefix.next();
+                while (head != null || t < tail.length) {
+                    Score next;
+                    if (t < tail.length && (head == null || Score.RANKING.compare(tail[t], head) < 0)) {
+                        next = tail[t++];
+                    } else {
+                        next = head;
+                        head = prefix.next();
+                    }
+                    encode(next, buffer);
+                    if (!buffer.hasRemaining()) {
+                        buffer.flip();
+                        position += writeFully(out, buffer, position);
+                        buffer.clear();
+                    }
+                }
+                buffer.flip();
+                position += writeFully(out, buffer, position);
+            }
+
+            synchronized (this) {
+                // I risultati arrivati durante la fusione restano in coda nel file nuovo
+                try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                    long extra = (count - total) * RECORD_SIZE;
+                    long from = HEADER_SIZE + total * RECORD_SIZE;
+                    while (extra > 0) {
+                        long moved = channel.transferTo(from, extra, out.position(position));
+                        from += moved;
+                        position += moved;
+                        extra -= moved;
+                    }
+                    out.force(true);
+                }
+                // Le mappature tengono aperto il file vecchio e su Windows impediscono di sostituirlo
+                segments = new MappedByteBuffer[0];
+                channel.close();
+                try {
+                    replace(tmp, path);
+                } catch (IOException e) {
+                    try {
+                        openChannel(); // Si continua sul file vecchio, che non è stato toccato
+                        Files.deleteIfExists(tmp);
+                    } catch (IOException reopen) {
+                        e.addSuppressed(reopen);
+                    }
+                    throw e;
+                }
+                openChannel();
+                scheduleStatsSave(); // Le statistiche salvate si riferiscono alla generazione precedente
+            }
+        } finally {
+            synchronized (this) {
+                compacting = false;
+            }
+        }
+    }
+
+    /**
+     * Chiude la classifica, aspettando un'eventuale compattazione in corso
+     *
+     * @throws IOException se il file non si può chiudere
+     */
+    @Override
+    public void close() throws IOException {
+        compactor.shutdown();
+        try {
+            compactor.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        saveStats();
+        synchronized (this) {
+            channel.close();
+        }
+    }
+
+    /**
+     * Scrive un file di classifica con i risultati già in ordine, passando da un file temporaneo
+     *
+     * @param path il file da creare o sostituire
+     * @param scores i risultati in ordine di classifica
+     *
+     * @throws IOException se il file non si può scrivere
+     */
+    static void writeSorted(Path path, List<Score> scores) throws IOException {
+        Iterator<Score> iterator = scores.iterator();
+        writeSorted(path, () -> iterator.hasNext() ? iterator.next() : null);
+    }
+
+    /**
+     * Scrive un file di classifica leggendo i risultati già in ordine uno alla volta, passando da
+     * un file temporaneo; l'intestazione viene scritta alla fine, quando si sa quanti sono
+     *
+     * @param path il file da creare o sostituire
+     * @param scores i risultati in ordine di classifica
+     *
+     * @return il numero di risultati scritti
+     *
+     * @throws IOException se un file non si può leggere o scrivere
+     */
+    static long writeSorted(Path path, ScoreSource scores) throws IOException {
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        long written = 0;
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer buffer = ByteBuffer.allocate(RecordCursor.BUFFER_RECORDS * RECORD_SIZE);
+            long position = HEADER_SIZE;
+            for (Score score = scores.next(); score != null; score = scores.next()) {
+                encode(score, buffer);
+                written++;
+                if (!buffer.hasRemaining()) {
+                    buffer.flip();
+                    position += writeFully(out, buffer, position);
+                    buffer.clear();
+                }
+            }
+            buffer.flip();
+            writeFully(out, buffer, position);
+            writeHeader(out, written, newGeneration());
+            out.force(true);
+        }
+        replace(tmp, path);
+        return written;
+    }
+
+    /**
+     * Sostituisce un file con uno nuovo, in modo atomico se il file system lo permette
+     *
+     * @param source il file nuovo
+     * @param target il file da sostituire
+     *
+     * @throws IOException se il file non si può sostituire
+     */
+    private static void replace(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+        }
+    }
+
+    /**
+     * Legge dall'intestazione quanti record di un file sono in ordine, senza modificare il file
+     *
+     * @param in il canale del file
+     *
+     * @return il numero di record in ordine, o -1 se il file non è una classifica
+     *
+     * @throws IOException se il file non si può leggere
+     */
+    static long readSortedCount(FileChannel in) throws IOException {
+        if (in.size() < HEADER_SIZE) {
+            return -1;
+        }
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        readFully(in, header, 0);
+        header.flip();
+        if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+            return -1;
+        }
+        return Math.min(header.getLong(), recordCount(in));
+    }
+
+    /**
+     * Restituisce il numero di record interi di un file di classifica
+     *
+     * @param in il canale del file
+     *
+     * @return il numero di record
+     *
+     * @throws IOException se il file non si può leggere
+     */
+    static long recordCount(FileChannel in) throws IOException {
+        return Math.max(0, in.size() - HEADER_SIZE) / RECORD_SIZE;
+    }
+
+    /**
+     * Legge i risultati dal vecchio file di testo, saltando le righe che non si riconoscono
+     *
+     * @param legacy il vecchio file
+     *
+     * @return i risultati nell'ordine del file, senza istante
+     *
+     * @throws IOException se il file non si può leggere
+     */
+    public static List<Score> readLegacy(Path legacy) throws IOException {
+        List<Score> scores = new ArrayList<>();
+        try (BufferedReader br = Files.newBufferedReader(legacy, StandardCharsets.ISO_8859_1)) {
+            String line;
+            while ((line = br.readLine()) != null) {
+                Score score = parseLegacyLine(line);
+                if (score != null) {
+                    scores.add(score);
+                }
+            }
+        }
+        return scores;
+    }
+
+    /**
+     * Riconosce una riga del vecchio file di testo
+     *
+     * @param line la riga, con i tre byte dell'ObjectOutputStream davanti
+     *
+     * @return il risultato, o null se la riga non è un risultato
+     */
+    public static Score parseLegacyLine(String line) {
+        if (line.length() <= 3) {
+            return null;
+        }
+        // Le righe sono state scritte in UTF-8 e lette byte per byte
+        String text = new String(line.substring(3).getBytes(StandardCharsets.ISO_8859_1), StandardCharsets.UTF_8);
+        Matcher m = LEGACY_LINE.matcher(text);
+        if (!m.matches()) {
+            return null;
+        }
+        try {
+            return new Score(m.group(1), Integer.parseInt(m.group(2)), Integer.parseInt(m.group(3)), 0);
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Sceglie la generazione di un file creato o riscritto da capo
+     *
+     * @return una generazione a caso, diversa con ogni probabilità da quella del file sostituito
+     */
+    private static long newGeneration() {
+        return ThreadLocalRandom.current().nextLong();
+    }
+
+    /**
+     * Scrive l'intestazione di un file di classifica
+     *
+     * @param out il canale del file
+     * @param sorted il numero di record in ordine all'inizio del file
+     * @param generation la generazione del file
+     *
+     * @throws IOException se il file non si può scrivere
+     */
+    private static void writeHeader(FileChannel out, long sorted, long generation) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).putLong(sorted).putLong(generation);
+        header.clear();
+        writeFully(out, header, 0);
+    }
+
+    /**
+     * Scrive un risultato in un record
+     *
+     * @param score il risultato
+     * @param buffer il buffer, con almeno {@value #RECORD_SIZE} byte liberi
+     */
+    static void encode(Score score, ByteBuffer buffer) {
+        byte[] name = score.name().getBytes(StandardCharsets.UTF_8);
+        int length = Math.min(name.length, NAME_BYTES);
+        while (length < name.length && length > 0 && (name[length] & 0xC0) == 0x80) {
+            length--; // Non si taglia un carattere a metà
+        }
+        buffer.put(name, 0, length);
+        for (int i = length; i < NAME_BYTES; i++) {
+            buffer.put((byte) 0);
+        }
+        buffer.putInt(score.playerLevel());
+        buffer.putInt(score.dungeonLevel());
+        buffer.putLong(score.timestamp());
+    }
+
+    /**
+     * Legge un risultato da un record
+     *
+     * @param buffer il buffer
+     * @param offset la posizione del record nel buffer
+     *
+     * @return il risultato
+     */
+    static Score decode(ByteBuffer buffer, int offset) {
+        byte[] name = new byte[NAME_BYTES];
+        buffer.get(offset, name);
+        int length = 0;
+        while (length < NAME_BYTES && name[length] != 0) {
+            length++;
+        }
+        return new Score(new String(name, 0, length, StandardCharsets.UTF_8), buffer.getInt(offset + NAME_BYTES),
+                buffer.getInt(offset + NAME_BYTES + 4), buffer.getLong(offset + NAME_BYTES + 8));
+    }
+
+    /**
+     * Scrive tutto il buffer a partire da una posizione del file
+     *
+     * @param out il canale
+     * @param buffer il buffer
+     * @param position la posizione nel file
+     *
+     * @return il numero di byte scritti
+     *
+     * @throws IOException se il file non si può scrivere
+     */
+    private static int writeFully(FileChannel out, ByteBuffer buffer, long position) throws IOException {
+        int written = 0;
+        while (buffer.hasRemaining()) {
+            written += out.write(buffer, position + written);
+        }
+        return written;
+    }
+
+    /**
+     * Riempie il buffer leggendo a partire da una posizione del file
+     *
+     * @param in il canale
+     * @param buffer il buffer
+     * @param position la posizione nel file
+     *
+     * @throws IOException se il file finisce prima
+     */
+    private static void readFully(FileChannel in, ByteBuffer buffer, long position) throws IOException {
+        long offset = position;
+        while (buffer.hasRemaining()) {
+            int read = in.read(buffer, offset);
+            if (read < 0) {
+                throw new IOException("Il file della classifica è troncato");
+            }
+            offset += read;
+        }
+    }
+
+    /**
+     * Una sorgente di risultati letti uno alla volta
+     */
+    interface ScoreSource {
+        /**
+         * Restituisce il prossimo risultato
+         *
+         * @return il risultato, o null se non ce ne sono altri
+         *
+         * @throws IOException se i risultati non si possono leggere
+         */
+        Score next() throws IOException;
+    }
+
+    /**
+     * Una lettura in sequenza di un intervallo di record, un blocco alla volta
+     */
+    static final class RecordCursor implements ScoreSource {
+        /** Il numero di record letti in un blocco */
+        static final int BUFFER_RECORDS = 1024;
+
+        /** Il canale da leggere */
+        private final FileChannel in;
+        /** Il blocco di record letto */
+        private final ByteBuffer buffer = ByteBuffer.allocate(BUFFER_RECORDS * RECORD_SIZE);
+        /** Il record dopo l'ultimo */
+        private final long end;
+        /** Il prossimo record da leggere dal file */
+        private long next;
+
+        /**
+         * Costruttore di RecordCursor
+         *
+         * @param in il canale da leggere
+         * @param from il primo record
+         * @param to il record dopo l'ultimo
+         */
+        RecordCursor(FileChannel in, long from, long to) {
+            this.in = in;
+            this.next = from;
+            this.end = to;
+            buffer.limit(0);
+        }
+
+        /**
+         * Restituisce il prossimo risultato
+         *
+         * @return il risultato, o null se l'intervallo è finito
+         *
+         * @throws IOException se il file non si può leggere
+         */
+        @Override
+        public Score next() throws IOException {
+            if (!buffer.hasRemaining()) {
+                if (next >= end) {
+                    return null;
+                }
+                int records = (int) Math.min(BUFFER_RECORDS, end - next);
+                buffer.clear().limit(records * RECORD_SIZE);
+                readFully(in, buffer, HEADER_SIZE + next * RECORD_SIZE);
+                buffer.flip();
+                next += records;
+            }
+            Score score = decode(buffer, buffer.position());
+            buffer.position(buffer.position() + RECORD_SIZE);
+            return score;
+        }
+    }
+}
@@ -0,0 +1,214 @@
+import java.io.IOException;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import javax.swing.SwingUtilities;
+import javax.swing.table.AbstractTableModel;
+
+/**
+ * Il modello della tabella della classifica, che legge i risultati dalla {@link LeaderboardStore} a pagine
+ *
+ * <p>
+ * La tabella chiede solo le righe visibili; quando una riga cade in una pagina che non è in memoria
+ * il modello restituisce una cella vuota e chiede la pagina a un thread in background, poi
+ * ridisegna le righe quando arriva. In memoria restano al massimo {@value #MAX_PAGES} pagine.
+ *
+ * <p>
+ * Senza filtro sul nome il numero di righe si conosce subito. Con il filtro sul nome si scoprono
+ * pagina dopo pagina: finché la ricerca non è finita c'è un'ultima riga in più, che quando
+ * diventa visibile fa cercare la pagina successiva.
+ */
+public class LeaderboardTableModel extends AbstractTableModel {
+    /** La versione della classe per la serializzazione */
+    private static final long serialVersionUID = 1L;
+    /** Il numero di righe di una pagina */
+    public static final int PAGE_SIZE = 100;
+    /** Il numero massimo di pagine in memoria */
+    private static final int MAX_PAGES = 32;
+
+    /** I nomi delle colonne */
+    private static final String[] COLUMNS = {"Posizione", "Giocatore", "Livello giocatore", "Livello dungeon", "Data"};
+    /** La colonna della posizione */
+    public static final int RANK_COLUMN = 0;
+    /** La colonna del livello del dungeon */
+    public static final int DEPTH_COLUMN = 3;
+    /** Il formato della data */
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm").withZone(ZoneId.systemDefault());
+
+    /** Il thread che legge le pagine, che si ferma da solo quando non serve */
+    private final ThreadPoolExecutor loader = new ThreadPoolExecutor(1, 1, 5, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+        Thread thread = new Thread(r, "leaderboard-pages");
+        thread.setDaemon(true);
+        return thread;
+    });
+    /** Le pagine in memoria, dalla meno alla più recentemente usata */
+    private final LinkedHashMap<Integer, List<LeaderboardStore.Ranked>> pages = new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Integer, List<LeaderboardStore.Ranked>> eldest) {
+            return size() > MAX_PAGES;
+        }
+    };
+    /** Le pagine chieste e non ancora arrivate */
+    private final Set<Integer> loading = new HashSet<>();
+    /** Il punto di partenza di ogni pagina scoperta, per le ricerche con filtro sul nome */
+    private final List<Long> pageStarts = new ArrayList<>();
+
+    /** La ricerca mostrata */
+    private LeaderboardStore.Query query = LeaderboardStore.Query.ALL;
+    /** Il numero di righe della tabella */
+    private int rowCount = 0;
+    /** Il numero della ricerca, per scartare le pagine arrivate dopo un cambio di ricerca */
+    private int generation = 0;
+
+    /**
+     * Costruttore di LeaderboardTableModel, comincia a leggere la classifica completa
+     */
+    public LeaderboardTableModel() {
+        loader.allowCoreThreadTimeOut(true);
+        setQuery(LeaderboardStore.Query.ALL);
+    }
+
+    /**
+     * Cambia la ricerca mostrata, da chiamare sull'EDT
+     *
+     * @param query la nuova ricerca
+     */
+    public void setQuery(LeaderboardStore.Query query) {
+        this.query = query;
+        int current = ++generation;
+        pages.clear();
+        loading.clear();
+        pageStarts.clear();
+        pageStarts.add(0L);
+        rowCount = 0;
+        fireTableDataChanged();
+
+        if (query.filtersPlayer()) {
+            rowCount = 1; // La riga che fa cercare la prima pagina
+            fireTableDataChanged();
+            return;
+        }
+        loader.execute(() -> {
+            try {
+                long total = LeaderboardStore.getDefault().count(query);
+                SwingUtilities.invokeLater(() -> {
+                    if (current == generation) {
+                        rowCount = (int) Math.min(Integer.MAX_VALUE, total);
+                        fireTableDataChanged();
+                    }
+                });
+            } catch (IOException e) {
+                System.out.println("Errore nella lettura della classifica: " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Restituisce la ricerca mostrata
+     *
+     * @return la ricerca
+     */
+    public LeaderboardStore.Query getQuery() {
+        return query;
+    }
+
+    @Override
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    @Override
+    public int getColumnCount() {
+        return COLUMNS.length;
+    }
+
+    @Override
+    public String getColumnName(int column) {
+        return COLUMNS[column];
+    }
+
+    @Override
+    public Object getValueAt(int row, int column) {
+        int page = row / PAGE_SIZE;
+        List<LeaderboardStore.Ranked> rows = pages.get(page);
+        if (rows == null) {
+            requestPage(page);
+            return column == RANK_COLUMN ? "..." : null;
+        }
+        int index = row % PAGE_SIZE;
+        if (index >= rows.size()) {
+            return null;
+        }
+        LeaderboardStore.Ranked ranked = rows.get(index);
+        Score score = ranked.score();
+        return switch (column) {
+            case 0 -> ranked.rank() + 1;
+            case 1 -> score.name();
+            case 2 -> score.playerLevel();
+            case 3 -> score.dungeonLevel();
+            default -> score.timestamp() == 0 ? "-" : DATE_FORMAT.format(Instant.ofEpochMilli(score.timestamp()));
+        };
+    }
+
+    /**
+     * Chiede una pagina al thread di lettura, se non è già stata chiesta
+     *
+     * @param page il numero della pagina
+     */
+    private void requestPage(int page) {
+        if (page >= pageStarts.size() && query.filtersPlayer()) {
+            return; // Non si sa ancora da dove parte
+        }
+        if (!loading.add(page)) {
+            return;
+        }
+        LeaderboardStore.Query current = query;
+        int currentGeneration = generation;
+        long from = current.filtersPlayer() ? pageStarts.get(page) : (long) page * PAGE_SIZE;
+        loader.execute(() -> {
+            try {
+                LeaderboardStore.Page result = LeaderboardStore.getDefault().page(current, from, PAGE_SIZE);
+                SwingUtilities.invokeLater(() -> pageLoaded(currentGeneration, page, result));
+            } catch (IOException e) {
+                System.out.println("Errore nella lettura della classifica: " + e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * Il metodo chiamato sull'EDT quando arriva una pagina
+     *
+     * @param pageGeneration il numero della ricerca per cui era stata chiesta
+     * @param page il numero della pagina
+     * @param result la pagina
+     */
+    private void pageLoaded(int pageGeneration, int page, LeaderboardStore.Page result) {
+        if (pageGeneration != generation) {
+            return;
+        }
+        loading.remove(page);
+        pages.put(page, result.rows());
+        int first = page * PAGE_SIZE;
+        if (!query.filtersPlayer()) {
+            fireTableRowsUpdated(first, first + result.rows().size() - 1);
+            return;
+        }
+        if (page == pageStarts.size() - 1 && result.next() >= 0) {
+            pageStarts.add(result.next());
+        }
+        int discovered = first + result.rows().size() + (result.next() >= 0 ? 1 : 0);
+        if (page == pageStarts.size() - 1 || page == pageStarts.size() - 2) {
+            rowCount = discovered; // L'ultima pagina scoperta decide quante righe ci sono
+        }
+        fireTableDataChanged();
+    }
+}
@@ -0,0 +1,140 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Il thread che scrive i risultati in classifica, lontano dal disegno e dalla tastiera
+ *
+ * <p>
+ * I risultati vengono messi in coda e il thread li scrive a gruppi: aspetta un attimo dopo il primo
+ * per raccogliere quelli arrivati insieme e li aggiunge alla {@link LeaderboardStore} con una sola
+ * scrittura e una sola sincronizzazione su disco. Anche l'apertura della classifica, che la prima
+ * volta converte il vecchio file di testo, avviene su questo thread.
+ *
+ * <p>
+ * Il thread parte con il primo risultato. Alla chiusura del programma i risultati ancora in coda
+ * vengono scritti prima di uscire.
+ */
+public class LeaderboardWriter implements Runnable {
+    /** Il tempo in millisecondi per cui si aspettano altri risultati dopo il primo di un gruppo */
+    private static final long LINGER_MILLIS = 20;
+    /** Il numero massimo di risultati scritti in un gruppo */
+    private static final int MAX_BATCH = 256;
+
+    /** I risultati in attesa di essere scritti, protetti dal blocco dell'oggetto */
+    private final List<Score> pending = new ArrayList<>();
+    /**
+     * Il gruppo preso dal thread e non ancora scritto, protetto dal blocco dell'oggetto: così
+     * anche flush() lo vede e un risultato non resta mai solo in una variabile locale
+     */
+    private final List<Score> inFlight = new ArrayList<>();
+    /** Il blocco che tiene in fila le scritture su disco, per non scrivere due volte lo stesso gruppo */
+    private final Object writeLock = new Object();
+    /** Il thread di scrittura, creato con il primo risultato */
+    private Thread thread;
+    /** Il numero di gruppi scritti */
+    private volatile long batches = 0;
+
+    /**
+     * Mette in coda un risultato, senza toccare il disco
+     *
+     * @param score il risultato da aggiungere alla classifica
+     */
+    public synchronized void submit(Score score) {
+        pending.add(score);
+        notifyAll();
+        startIfNeeded();
+    }
+
+    /**
+     * Avvia il thread di scrittura e il salvataggio alla chiusura, la prima volta
+     */
+    private synchronized void startIfNeeded() {
+        if (thread != null) {
+            return;
+        }
+        thread = new Thread(this, "leaderboard");
+        thread.setDaemon(true);
+        thread.start();
+        Runtime.getRuntime().addShutdownHook(new Thread(this::flush, "leaderboard-flush"));
+    }
+
+    /**
+     * Il ciclo di scrittura
+     */
+    @Override
+    public void run() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                synchronized (this) {
+                    while (pending.isEmpty()) {
+                        wait();
+                    }
+                    long end = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(LINGER_MILLIS);
+                    long left;
+                    while (pending.size() < MAX_BATCH && (left = end - System.nanoTime()) > 0) {
+                        TimeUnit.NANOSECONDS.timedWait(this, left);
+                    }
+                    List<Score> taken = pending.subList(0, Math.min(MAX_BATCH, pending.size()));
+                    inFlight.addAll(taken);
+                    taken.clear();
+                }
+                writeInFlight();
+            }
+        } catch (InterruptedException e) {
+            // Fine del thread: quello che resta lo scrive flush()
+        }
+    }
+
+    /**
+     * Scrive subito tutti i risultati in coda, compreso il gruppo che il thread sta raccogliendo,
+     * chiamato alla chiusura del programma
+     */
+    public void flush() {
+        synchronized (this) {
+            inFlight.addAll(pending);
+            pending.clear();
+        }
+        writeInFlight();
+    }
+
+    /**
+     * Scrive il gruppo preso, se qualcun altro non l'ha già scritto
+     */
+    private void writeInFlight() {
+        synchronized (writeLock) {
+            List<Score> batch;
+            synchronized (this) {
+                batch = new ArrayList<>(inFlight);
+                inFlight.clear();
+            }
+            if (!batch.isEmpty()) {
+                write(batch);
+            }
+        }
+    }
+
+    /**
+     * Aggiunge un gruppo di risultati alla classifica
+     *
+     * @param batch i risultati da scrivere
+     */
+    private void write(List<Score> batch) {
+        try {
+            LeaderboardStore.getDefault().append(batch);
+            batches++;
+        } catch (IOException ex) {
+            System.out.println("Error saving game data: " + ex.getMessage());
+        }
+    }
+
+    /**
+     * Restituisce il numero di gruppi scritti
+     *
+     * @return il numero di gruppi
+     */
+    public long getBatches() {
+        return batches;
+    }
+}
@@ -0,0 +1,123 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Un livello già generato: mappa, giocatore, portale, nemici e oggetti
+ *
+ * <p>
+ * Si costruisce con {@link #generate(ChunkedWorld, int, int, Streams)} e poi non cambia più,
+ * quindi si può generare su un altro thread e passare al motore così com'è. Il motore non usa
+ * i nemici e gli oggetti del livello ma ne fa delle copie ({@link #copyEnemies()},
+ * {@link #copyItems()}), così come delle celle libere ({@link #copyFreeCells()}), e i blocchi di mappa generati vengono solo letti.
+ *
+ * <p>
+ * La generazione dipende solo dai livelli di nemici e oggetti e dagli stati dei generatori
+ * in {@link #before()}: con gli stessi valori esce sempre lo stesso livello, qualunque sia il
+ * thread che lo genera. Alla fine i generatori si trovano negli stati di {@link #after()}.
+ *
+ * @param enemyDepth il livello del dungeon usato per i nemici
+ * @param itemDepth il livello del dungeon usato per gli oggetti
+ * @param before gli stati dei generatori prima della generazione
+ * @param after gli stati dei generatori dopo la generazione
+ * @param seed il seme della mappa
+ * @param playerRow la riga del giocatore
+ * @param playerCol la colonna del giocatore
+ * @param portalRow la riga del portale
+ * @param portalCol la colonna del portale
+ * @param enemies i nemici, da non modificare
+ * @param items gli oggetti, da non modificare
+ * @param chunks i blocchi di mappa già generati, per chiave, dal meno al più recentemente usato
+ * @param free le celle di pavimento rimaste libere, da non modificare
+ */
+public record Level(int enemyDepth, int itemDepth, Streams before, Streams after, long seed,
+        int playerRow, int playerCol, int portalRow, int portalCol,
+        List<Enemy> enemies, List<Item> items, Map<Integer, DungeonMap> chunks,
+        FreeCellIndex free) {
+
+    /**
+     * Gli stati dei generatori usati per creare un livello
+     *
+     * @param level lo stato del flusso {@link GameRandom#LEVEL_STREAM}
+     * @param enemy lo stato del flusso {@link GameRandom#ENEMY_STREAM}
+     * @param item lo stato del flusso {@link GameRandom#ITEM_STREAM}
+     */
+    public record Streams(long level, long enemy, long item) {
+    }
+
+    /**
+     * Genera un livello
+     *
+     * @param world un mondo vuoto con le dimensioni dei livelli, che viene riempito e non va più usato
+     * @param enemyDepth il livello del dungeon usato per i nemici
+     * @param itemDepth il livello del dungeon usato per gli oggetti
+     * @param before gli stati dei generatori da cui partire
+     *
+     * @return il livello
+     */
+    public static Level generate(ChunkedWorld world, int enemyDepth, int itemDepth, Streams before) {
+        GameRandom random = new GameRandom(before.level());
+        GameRandom enemyRandom = new GameRandom(before.enemy());
+        GameRandom itemRandom = new GameRandom(before.item());
+
+        long seed = random.nextLong();
+        world.regenerate(seed);
+
+        // Giocatore, portale, nemici e oggetti si pescano dallo stesso indice e non si sovrappongono mai
+        FreeCellIndex free = FreeCellIndex.of(world, random);
+        long player = free.take(random);
+        if (player < 0) {
+            throw new IllegalArgumentException("Il livello non ha pavimento: " + world.getRows() + "x" + world.getCols());
+        }
+        long portal = free.take(random);
+        if (portal < 0) {
+            portal = player; // Una sola cella di pavimento: il portale è sotto il giocatore
+        }
+
+        OccupancyGrid grid = new OccupancyGrid(world.getRows(), world.getCols());
+        List<Enemy> enemies = new EnemyManager(enemyRandom).generaNemici(free, enemyDepth, grid);
+        List<Item> items = new ItemManager(itemRandom).generaOggetti(free, itemDepth, grid);
+        grid.clear();
+
+        Streams after = new Streams(random.getState(), enemyRandom.getState(), itemRandom.getState());
+        return new Level(enemyDepth, itemDepth, before, after, seed, free.rowOf(player), free.colOf(player),
+                free.rowOf(portal), free.colOf(portal), List.copyOf(enemies), List.copyOf(items),
+                world.copyChunks(), free);
+    }
+
+    /**
+     * Restituisce una copia delle celle rimaste libere, da dare al motore
+     *
+     * @return le celle libere, senza giocatore, portale, nemici e oggetti
+     */
+    public FreeCellIndex copyFreeCells() {
+        return free.copy();
+    }
+
+    /**
+     * Restituisce una copia dei nemici del livello, da dare al motore
+     *
+     * @return i nemici, nuovi e non registrati in nessun indice
+     */
+    public List<Enemy> copyEnemies() {
+        List<Enemy> copy = new ArrayList<>(enemies.size());
+        for (Enemy enemy : enemies) {
+            copy.add(new Enemy(enemy.getRow(), enemy.getCol(), enemy.getTipo(), enemy.getVita(), enemy.getDanni(),
+                    enemy.getExp()));
+        }
+        return copy;
+    }
+
+    /**
+     * Restituisce una copia degli oggetti del livello, da dare al motore
+     *
+     * @return gli oggetti, nuovi e non registrati in nessun indice
+     */
+    public List<Item> copyItems() {
+        List<Item> copy = new ArrayList<>(items.size());
+        for (Item item : items) {
+            copy.add(new Item(item.getRow(), item.getCol(), item.getTipo(), item.getValue()));
+        }
+        return copy;
+    }
+}
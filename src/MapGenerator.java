@@ -0,0 +1,105 @@
+import java.util.Random;
+
+/**
+ * Il modo in cui si disegna la pianta di una mappa
+ *
+ * <p>
+ * Un generatore riceve una mappa tutta muro e ci scava il pavimento, usando solo il generatore
+ * di numeri casuali ricevuto: con lo stesso seme disegna sempre la stessa pianta. Il bordo della
+ * mappa resta muro, e tutto il pavimento deve essere collegato, perché il {@link ChunkedWorld}
+ * collega i blocchi scavando da ogni porta un corridoio fino al punto di aggancio più vicino.
+ *
+ * <p>
+ * I generatori non hanno stato: lo stesso oggetto può generare più mappe insieme, anche su
+ * thread diversi, per esempio quando il livello successivo si genera in background.
+ */
+public interface MapGenerator {
+    /** L'identificativo delle stanze collegate in catena, il generatore predefinito */
+    int ROOMS = 0;
+    /** L'identificativo della partizione binaria dello spazio */
+    int BSP = 1;
+    /** L'identificativo delle caverne dell'automa cellulare */
+    int CAVES = 2;
+
+    /** La proprietà di sistema con il nome del generatore dei livelli */
+    String PROPERTY = "rogue.generator";
+
+    /**
+     * Scava il pavimento di una mappa
+     *
+     * @param map la mappa, tutta muro
+     * @param random il generatore di numeri casuali
+     *
+     * @return i punti a cui agganciare i corridoi delle porte, come riga per il numero di
+     *         colonne più colonna; vuoto se la mappa è troppo piccola per avere pavimento
+     */
+    int[] generate(DungeonMap map, Random random);
+
+    /**
+     * Restituisce l'identificativo del generatore, salvato con la partita
+     *
+     * @return l'identificativo, per esempio {@link #ROOMS}
+     */
+    int getId();
+
+    /**
+     * Restituisce il nome del generatore
+     *
+     * @return il nome, come si scrive nella proprietà {@value #PROPERTY}
+     */
+    String getName();
+
+    /**
+     * Restituisce il generatore con un certo identificativo
+     *
+     * @param id l'identificativo
+     *
+     * @return il generatore
+     *
+     * @throws IllegalArgumentException se l'identificativo non esiste
+     */
+    static MapGenerator forId(int id) {
+        return switch (id) {
+            case ROOMS -> new RoomsGenerator();
+            case BSP -> new BspGenerator();
+            case CAVES -> new CaveGenerator();
+            default -> throw new IllegalArgumentException("Generatore sconosciuto: " + id);
+        };
+    }
+
+    /**
+     * Restituisce il generatore con un certo nome
+     *
+     * @param name il nome: rooms, bsp o caves
+     *
+     * @return il generatore
+     *
+     * @throws IllegalArgumentException se il nome non esiste
+     */
+    static MapGenerator forName(String name) {
+        return switch (name.trim().toLowerCase()) {
+            case "rooms" -> forId(ROOMS);
+            case "bsp" -> forId(BSP);
+            case "caves" -> forId(CAVES);
+            default -> throw new IllegalArgumentException("Generatore sconosciuto: " + name);
+        };
+    }
+
+    /**
+     * Restituisce il generatore scelto con la proprietà {@value #PROPERTY}, quello a stanze se manca o non esiste
+     *
+     * @return il generatore
+     */
+    static MapGenerator fromSystemProperties() {
+        String name = System.getProperty(PROPERTY);
+        if (name == null) {
+            return forId(ROOMS);
+        }
+        try {
+            return forName(name);
+        } catch (IllegalArgumentException e) {
+            System.out.println(e.getMessage() + ", uso rooms");
+            return forId(ROOMS);
+        }
+    }
+}
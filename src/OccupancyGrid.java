@@ -0,0 +1,252 @@
+import java.util.Arrays;
+
+/**
+ * Indice di occupazione della mappa
+ *
+ * <p>
+ * Per ogni cella tiene l'handle del nemico e dell'oggetto che la occupano. L'handle 0 indica
+ * una cella libera, gli altri sono posizioni (a partire da 1) nelle tabelle dei nemici e degli oggetti.
+ * Così disegno, collisioni e raccolta degli oggetti costano O(1) per cella.
+ *
+ * <p>
+ * Gli handle stanno in pagine di 64 per 64 celle allocate solo quando un nemico o un oggetto
+ * ci entra, così anche un livello enorme costa memoria solo dove c'è qualcuno.
+ */
+public class OccupancyGrid {
+    /** L'handle di una cella libera */
+    private static final int VUOTO = 0;
+
+    /** Il logaritmo in base 2 del lato di una pagina */
+    private static final int PAGE_SHIFT = 6;
+    /** La maschera delle coordinate dentro una pagina */
+    private static final int PAGE_MASK = (1 << PAGE_SHIFT) - 1;
+
+    /** Il numero di righe e di colonne della mappa */
+    private final int rows, cols;
+    /** Il numero di pagine per riga di pagine */
+    private final int pageCols;
+    /** Le pagine degli handle dei nemici, null se nessun nemico ci è mai entrato */
+    private final int[][] nemici;
+    /** Le pagine degli handle degli oggetti, null se nessun oggetto ci è mai entrato */
+    private final int[][] oggetti;
+
+    /** La tabella dei nemici registrati, indicizzata per handle */
+    private Enemy[] tabellaNemici = new Enemy[16];
+    /** Il prossimo handle libero per i nemici */
+    private int prossimoNemico = 1;
+    /** La tabella degli oggetti registrati, indicizzata per handle */
+    private Item[] tabellaOggetti = new Item[8];
+    /** Il prossimo handle libero per gli oggetti */
+    private int prossimoOggetto = 1;
+
+    /**
+     * Costruttore di OccupancyGrid
+     *
+     * @param rows il numero di righe della mappa
+     * @param cols il numero di colonne della mappa
+     */
+    public OccupancyGrid(int rows, int cols) {
+        this.rows = rows;
+        this.cols = cols;
+        this.pageCols = (cols + PAGE_MASK) >>> PAGE_SHIFT;
+        int pages = ((rows + PAGE_MASK) >>> PAGE_SHIFT) * pageCols;
+        this.nemici = new int[pages][];
+        this.oggetti = new int[pages][];
+    }
+
+    /**
+     * Svuota l'indice, da chiamare a ogni cambio di livello
+     */
+    public void clear() {
+        for (int h = 1; h < prossimoNemico; h++) {
+            if (tabellaNemici[h] != null) {
+                tabellaNemici[h].detach();
+            }
+        }
+        Arrays.fill(nemici, null);
+        Arrays.fill(oggetti, null);
+        Arrays.fill(tabellaNemici, null);
+        Arrays.fill(tabellaOggetti, null);
+        prossimoNemico = 1;
+        prossimoOggetto = 1;
+    }
+
+    /**
+     * Controlla se una cella è dentro la mappa
+     *
+     * @param row riga
+     * @param col colonna
+     *
+     * @return true se la cella è dentro la mappa
+     */
+    private boolean inside(int row, int col) {
+        return row >= 0 && row < rows && col >= 0 && col < cols;
+    }
+
+    /**
+     * Legge l'handle di una cella dentro la mappa
+     *
+     * @param pagine le pagine da leggere
+     * @param row riga
+     * @param col colonna
+     *
+     * @return l'handle, {@link #VUOTO} se la pagina non esiste
+     */
+    private int get(int[][] pagine, int row, int col) {
+        int[] page = pagine[(row >>> PAGE_SHIFT) * pageCols + (col >>> PAGE_SHIFT)];
+        return page == null ? VUOTO : page[((row & PAGE_MASK) << PAGE_SHIFT) | (col & PAGE_MASK)];
+    }
+
+    /**
+     * Scrive l'handle di una cella dentro la mappa, allocando la pagina se serve
+     *
+     * @param pagine le pagine da scrivere
+     * @param row riga
+     * @param col colonna
+     * @param handle l'handle
+     */
+    private void set(int[][] pagine, int row, int col, int handle) {
+        int p = (row >>> PAGE_SHIFT) * pageCols + (col >>> PAGE_SHIFT);
+        int[] page = pagine[p];
+        if (page == null) {
+            if (handle == VUOTO) {
+                return;
+            }
+            page = new int[1 << (2 * PAGE_SHIFT)];
+            pagine[p] = page;
+        }
+        page[((row & PAGE_MASK) << PAGE_SHIFT) | (col & PAGE_MASK)] = handle;
+    }
+
+    /**
+     * Registra un nemico nella sua cella
+     *
+     * <p>
+     * Da qui in poi il nemico aggiorna l'indice da solo quando si sposta.
+     *
+     * @param enemy il nemico
+     */
+    public void aggiungiNemico(Enemy enemy) {
+        if (prossimoNemico == tabellaNemici.length) {
+            tabellaNemici = Arrays.copyOf(tabellaNemici, tabellaNemici.length * 2);
+        }
+        int handle = prossimoNemico++;
+        tabellaNemici[handle] = enemy;
+        enemy.attach(this, handle);
+        set(nemici, enemy.getRow(), enemy.getCol(), handle);
+    }
+
+    /**
+     * Aggiorna l'indice dopo lo spostamento di un nemico
+     *
+     * @param handle l'handle del nemico
+     * @param oldRow la riga di partenza
+     * @param oldCol la colonna di partenza
+     * @param newRow la riga di arrivo
+     * @param newCol la colonna di arrivo
+     */
+    void spostaNemico(int handle, int oldRow, int oldCol, int newRow, int newCol) {
+        if (inside(oldRow, oldCol) && get(nemici, oldRow, oldCol) == handle) {
+            set(nemici, oldRow, oldCol, VUOTO);
+        }
+        if (inside(newRow, newCol)) {
+            set(nemici, newRow, newCol, handle);
+        }
+    }
+
+    /**
+     * Rimuove un nemico dall'indice
+     *
+     * @param enemy il nemico
+     */
+    public void rimuoviNemico(Enemy enemy) {
+        int handle = enemy.getHandle();
+        if (handle == VUOTO || handle >= prossimoNemico || tabellaNemici[handle] != enemy) {
+            return;
+        }
+        spostaNemico(handle, enemy.getRow(), enemy.getCol(), -1, -1);
+        tabellaNemici[handle] = null;
+        enemy.detach();
+    }
+
+    /**
+     * Restituisce il nemico in una cella
+     *
+     * @param row riga
+     * @param col colonna
+     *
+     * @return il nemico, o null se la cella è libera
+     */
+    public Enemy nemicoIn(int row, int col) {
+        if (!inside(row, col)) {
+            return null;
+        }
+        return tabellaNemici[get(nemici, row, col)];
+    }
+
+    /**
+     * Controlla se una cella è occupata da un nemico
+     *
+     * @param row riga
+     * @param col colonna
+     *
+     * @return true se nella cella c'è un nemico
+     */
+    public boolean haNemico(int row, int col) {
+        return inside(row, col) && get(nemici, row, col) != VUOTO;
+    }
+
+    /**
+     * Registra un oggetto nella sua cella
+     *
+     * @param item l'oggetto
+     */
+    public void aggiungiOggetto(Item item) {
+        if (prossimoOggetto == tabellaOggetti.length) {
+            tabellaOggetti = Arrays.copyOf(tabellaOggetti, tabellaOggetti.length * 2);
+        }
+        int handle = prossimoOggetto++;
+        tabellaOggetti[handle] = item;
+        set(oggetti, item.getRow(), item.getCol(), handle);
+    }
+
+    /**
+     * Rimuove un oggetto dall'indice, ad esempio quando viene raccolto
+     *
+     * @param item l'oggetto
+     */
+    public void rimuoviOggetto(Item item) {
+        int handle = get(oggetti, item.getRow(), item.getCol());
+        if (handle != VUOTO && tabellaOggetti[handle] == item) {
+            set(oggetti, item.getRow(), item.getCol(), VUOTO);
+            tabellaOggetti[handle] = null;
+        }
+    }
+
+    /**
+     * Restituisce l'oggetto in una cella
+     *
+     * @param row riga
+     * @param col colonna
+     *
+     * @return l'oggetto, o null se la cella è libera
+     */
+    public Item oggettoIn(int row, int col) {
+        if (!inside(row, col)) {
+            return null;
+        }
+        return tabellaOggetti[get(oggetti, row, col)];
+    }
+
+    /**
+     * Controlla se una cella è occupata da un oggetto
+     *
+     * @param row riga
+     * @param col colonna
+     *
+     * @return true se nella cella c'è un oggetto
+     */
+    public boolean haOggetto(int row, int col) {
+        return inside(row, col) && get(oggetti, row, col) != VUOTO;
+    }
+}
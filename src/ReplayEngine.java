@@ -0,0 +1,348 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Rigioca senza finestra una partita scritta da un {@link InputJournal}
+ *
+ * <p>
+ * Crea un motore con il seme del diario e gli applica gli input uno dopo l'altro, alla velocità
+ * del processore: non c'è niente da disegnare e nessuna coda da aspettare. Per arrivare a un turno
+ * si riparte dall'ultimo fotogramma chiave che lo precede, o dall'ultimo caricamento, invece che
+ * dall'inizio della partita.
+ *
+ * <p>
+ * Si usa da riga di comando: {@code java -cp bin ReplayEngine journal.dat [turno]}. Senza turno
+ * rigioca tutto il diario e controlla che ogni fotogramma chiave coincida con lo stato rigiocato.
+ */
+public class ReplayEngine {
+    /** Le azioni, per tipo */
+    private static final GameEngine.Action[] ACTIONS = GameEngine.Action.values();
+
+    /**
+     * Un elemento del diario con lo stato completo del motore
+     *
+     * @param turn il numero di azioni applicate prima dell'elemento
+     * @param position la posizione dell'elemento nel diario
+     */
+    private record Mark(int turn, int position) {
+    }
+
+    /** Gli elementi del diario dopo l'intestazione, fino all'ultimo intero */
+    private final ByteBuffer data;
+    /** Il numero di righe della mappa */
+    private final int rows;
+    /** Il numero di colonne della mappa */
+    private final int cols;
+    /** Il seme della partita */
+    private final long runSeed;
+    /** Il generatore delle mappe della partita */
+    private final MapGenerator generator;
+    /** Il numero di azioni nel diario */
+    private final int totalTurns;
+    /** I fotogrammi chiave e i caricamenti, in ordine */
+    private final List<Mark> marks = new ArrayList<>();
+    /** Il numero di fotogrammi chiave */
+    private int keyframes = 0;
+
+    /** Il motore che rigioca la partita */
+    private GameEngine engine;
+    /** Il numero di azioni applicate */
+    private int turn;
+    /** La posizione del prossimo elemento da applicare */
+    private int position;
+    /** Le azioni già applicate del gruppo alla posizione attuale */
+    private int appliedInRun;
+    /** La booleana che indica se la nebbia di guerra è accesa */
+    private boolean fog;
+
+    /**
+     * Costruttore di ReplayEngine, legge il diario e si posiziona all'inizio della partita
+     *
+     * @param journal il file del diario
+     *
+     * @throws IOException se il file non si può leggere o non è un diario
+     */
+    public ReplayEngine(Path journal) throws IOException {
+        ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(journal));
+        if (in.remaining() < InputJournal.HEADER_SIZE || in.getInt() != InputJournal.MAGIC) {
+            throw new IOException("Il file non è un diario: " + journal);
+        }
+        int version = in.getInt();
+        if (version < InputJournal.MIN_VERSION || version > InputJournal.VERSION) {
+            throw new IOException("Versione del diario non supportata: " + version);
+        }
+        rows = in.getInt();
+        cols = in.getInt();
+        runSeed = in.getLong();
+        try {
+            generator = MapGenerator.forId(in.getInt());
+        } catch (IllegalArgumentException e) {
+            throw new IOException(e.getMessage());
+        }
+
+        ByteBuffer body = in.slice();
+        int turns = 0;
+        int end = 0;
+        while (body.hasRemaining()) {
+            int at = body.position();
+            int code = body.get() & 0xFF;
+            if ((code & InputJournal.RUN_FLAG) != 0) {
+                turns += ((code >>> 3) & 0x0F) + 1;
+            } else if (code == InputJournal.KEYFRAME || code == InputJournal.RESET) {
+                int length = stateLength(body, at);
+                if (length < 0) {
+                    break;
+                }
+                marks.add(new Mark(body.getInt(at + 1), at));
+                if (code == InputJournal.KEYFRAME) {
+                    keyframes++;
+                }
+                body.position(at + length);
+            } else if (code != InputJournal.RESTART && code != InputJournal.FOG_OFF && code != InputJournal.FOG_ON) {
+                break;
+            }
+            end = body.position();
+        }
+        data = body.position(0).limit(end).slice();
+        totalTurns = turns;
+        rewind();
+    }
+
+    /**
+     * Il punto di ingresso da riga di comando
+     *
+     * @param args il diario e, facoltativo, il turno a cui arrivare
+     */
+    public static void main(String[] args) {
+        if (args.length < 1) {
+            System.out.println("Uso: java -cp bin ReplayEngine <diario> [<turno>]");
+            System.exit(2);
+        }
+        try {
+            ReplayEngine replay = new ReplayEngine(Path.of(args[0]));
+            long start = System.nanoTime();
+            if (args.length > 1) {
+                replay.seek(Integer.parseInt(args[1]));
+            } else {
+                int mismatch = replay.verify();
+                if (mismatch >= 0) {
+                    System.out.println("Il fotogramma chiave del turno " + mismatch + " non coincide con la partita rigiocata");
+                    System.exit(1);
+                }
+            }
+            double seconds = Math.max(1e-9, (System.nanoTime() - start) / 1e9);
+            GameEngine engine = replay.getEngine();
+            System.out.printf("Turno %d di %d: livello %d, vita %d, posizione %d,%d%s (%.0f turni/s)%n",
+                    replay.getTurn(), replay.getTurns(), engine.getLevel(), engine.getPlayerHealth(),
+                    engine.getPlayerRow(), engine.getPlayerCol(), engine.isGameOver() ? ", partita finita" : "",
+                    replay.getTurn() / seconds);
+        } catch (IOException | NumberFormatException e) {
+            System.out.println("Errore nel rigioco del diario: " + e.getMessage());
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Porta la partita a un turno, ripartendo dallo stato completo più vicino che lo precede
+     *
+     * <p>
+     * Gli elementi scritti dopo l'azione del turno, come un cambio della nebbia, vengono applicati;
+     * ci si ferma prima dell'azione successiva.
+     *
+     * @param target il numero di azioni da applicare, al massimo {@link #getTurns()}
+     *
+     * @throws IOException se uno stato completo del diario è danneggiato
+     */
+    public void seek(int target) throws IOException {
+        target = Math.max(0, Math.min(target, totalTurns));
+        Mark best = null;
+        for (Mark mark : marks) {
+            if (mark.turn() > target) {
+                break;
+            }
+            best = mark;
+        }
+        if (best != null && (best.position() > position || target < turn)) {
+            restore(best.position());
+        } else if (target < turn) {
+            rewind();
+        }
+        play(target, false);
+    }
+
+    /**
+     * Rigioca il diario fino alla fine
+     *
+     * @throws IOException se uno stato completo del diario è danneggiato
+     */
+    public void runToEnd() throws IOException {
+        seek(totalTurns);
+    }
+
+    /**
+     * Rigioca tutto il diario dall'inizio, confrontando ogni fotogramma chiave con lo stato del motore
+     *
+     * @return il turno del primo fotogramma chiave diverso, -1 se coincidono tutti
+     *
+     * @throws IOException se un fotogramma chiave è danneggiato
+     */
+    public int verify() throws IOException {
+        rewind();
+        return play(totalTurns, true);
+    }
+
+    /**
+     * Restituisce il motore che rigioca la partita
+     *
+     * @return il motore; dopo un {@link #seek(int)} all'indietro può essere un motore nuovo
+     */
+    public GameEngine getEngine() {
+        return engine;
+    }
+
+    /**
+     * Restituisce il numero di azioni applicate
+     *
+     * @return il turno attuale
+     */
+    public int getTurn() {
+        return turn;
+    }
+
+    /**
+     * Restituisce il numero di azioni nel diario
+     *
+     * @return il numero di azioni
+     */
+    public int getTurns() {
+        return totalTurns;
+    }
+
+    /**
+     * Restituisce il seme della partita
+     *
+     * @return il seme
+     */
+    public long getRunSeed() {
+        return runSeed;
+    }
+
+    /**
+     * Restituisce il numero di fotogrammi chiave nel diario
+     *
+     * @return il numero di fotogrammi chiave
+     */
+    public int getKeyframes() {
+        return keyframes;
+    }
+
+    /**
+     * Riporta la partita all'inizio, con un motore nuovo creato dal seme e dal generatore
+     */
+    private void rewind() {
+        engine = new GameEngine(rows, cols, ChunkedWorld.DEFAULT_MAX_CHUNKS, runSeed, generator);
+        turn = 0;
+        position = 0;
+        appliedInRun = 0;
+        fog = false;
+    }
+
+    /**
+     * Riporta la partita allo stato completo di un elemento del diario
+     *
+     * @param at la posizione dell'elemento
+     *
+     * @throws IOException se lo stato è danneggiato
+     */
+    private void restore(int at) throws IOException {
+        turn = data.getInt(at + 1);
+        fog = data.get(at + 5) != 0;
+        engine.setTrackExplored(fog);
+        engine.restoreState(readState(at));
+        position = at + stateLength(data, at);
+        appliedInRun = 0;
+    }
+
+    /**
+     * Applica gli elementi del diario fino a un turno
+     *
+     * @param target il numero di azioni da applicare
+     * @param check true per confrontare i fotogrammi chiave con lo stato del motore
+     *
+     * @return il turno del primo fotogramma chiave diverso, -1 se coincidono tutti o non si controllano
+     *
+     * @throws IOException se uno stato completo del diario è danneggiato
+     */
+    private int play(int target, boolean check) throws IOException {
+        int mismatch = -1;
+        while (position < data.limit()) {
+            int code = data.get(position) & 0xFF;
+            if ((code & InputJournal.RUN_FLAG) != 0) {
+                int length = ((code >>> 3) & 0x0F) + 1;
+                GameEngine.Action action = ACTIONS[code & 0x07];
+                for (; appliedInRun < length; appliedInRun++) {
+                    if (turn >= target) {
+                        return mismatch;
+                    }
+                    engine.step(action);
+                    turn++;
+                }
+                appliedInRun = 0;
+                position++;
+            } else if (code == InputJournal.RESTART) {
+                engine.restart();
+                position++;
+            } else if (code == InputJournal.FOG_OFF || code == InputJournal.FOG_ON) {
+                fog = code == InputJournal.FOG_ON;
+                engine.setTrackExplored(fog);
+                position++;
+            } else if (code == InputJournal.RESET) {
+                restore(position);
+            } else {
+                if (check && mismatch < 0 && !engine.captureState(true).matches(readState(position))) {
+                    mismatch = data.getInt(position + 1);
+                }
+                position += stateLength(data, position);
+            }
+        }
+        return mismatch;
+    }
+
+    /**
+     * Legge lo stato completo di un fotogramma chiave o di un caricamento
+     *
+     * @param at la posizione dell'elemento
+     *
+     * @return lo stato
+     *
+     * @throws IOException se lo stato è danneggiato
+     */
+    private SaveGame.State readState(int at) throws IOException {
+        ByteBuffer record = data.duplicate().position(at + InputJournal.KEYFRAME_HEADER_SIZE);
+        return SaveGame.readCheckpoint(record, rows, cols);
+    }
+
+    /**
+     * Calcola la lunghezza di un elemento con lo stato completo
+     *
+     * @param in il diario
+     * @param at la posizione dell'elemento
+     *
+     * @return la lunghezza in byte, o -1 se l'elemento è troncato
+     */
+    private static int stateLength(ByteBuffer in, int at) {
+        int header = InputJournal.KEYFRAME_HEADER_SIZE + SaveGame.RECORD_HEADER_SIZE;
+        if (in.limit() - at < header) {
+            return -1;
+        }
+        int length = in.getInt(at + InputJournal.KEYFRAME_HEADER_SIZE + 1);
+        if (length < 0 || in.limit() - at - header < length) {
+            return -1;
+        }
+        return header + length;
+    }
+}
@@ -1,54 +1,25 @@
 import java.awt.*;
 import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
-import java.util.Random;
 import javax.swing.*;
 
 public class RogueLikeCombat extends JPanel implements KeyListener {
     /** Il costrutto gioco */
     private final RogueLikeGame game;
-
-    /** Vita, danni e armatura del giocatore */
-    private int playerHealth;
-    @SuppressWarnings("FieldMayBeFinal")
-    private int playerDmg;
-    private int playerArmor;
-
-    /** Nemico con vita e danni del nemico */
-    private final Enemy enemy;
-    private int enemyHealth;
-    @SuppressWarnings("FieldMayBeFinal")
-    private int enemyDmg;
-    @SuppressWarnings("FieldMayBeFinal")
-    private int enemyExp;
-
-    /** Variabili per il lancio dei dadi */
-    private boolean playerRolled = false;
-    private boolean enemyRolled = false;
-    private int playerRoll = 0;
-    private int enemyRoll = 0;
-    /** Generatore di numeri casuali */
-    private final Random random = new Random();
+    /** La simulazione che applica i tiri e pubblica lo stato del combattimento */
+    private final GameSimulation simulation;
+    /** La booleana che indica se il combattimento è già stato chiuso */
+    private boolean resolved = false;
 
     /**
      * Costruttore di RogueLikeCombat
      * 
      * @param game costrutto gioco
-     * @param playerHealth vita del giocatore
-     * @param playerDmg danni del giocatore
-     * @param playerArmor armatura del giocatore
-     * @param enemy nemico
+     * @param simulation simulazione del gioco con il combattimento in corso
      */
-    public RogueLikeCombat(RogueLikeGame game, int playerHealth, int playerDmg, int playerArmor, Enemy enemy) {
+    public RogueLikeCombat(RogueLikeGame game, GameSimulation simulation) {
         this.game = game;
-        this.playerHealth = playerHealth;
-        this.playerDmg = playerDmg;
-        this.playerArmor = playerArmor;
-        
-        this.enemy = enemy;
-        this.enemyHealth = enemy.getVita();
-        this.enemyDmg = enemy.getDanni();
-        this.enemyExp = enemy.getExp();
+        this.simulation = simulation;
 
         setPreferredSize(new Dimension(400, 400));
         setBackground(Color.BLACK);
@@ -57,23 +28,23 @@ public class RogueLikeCombat extends JPanel implements KeyListener {
     }
 
     /**
-     * Lancia un dado a 6 facce
+     * Chiude la finestra e restituisce il controllo al gioco, chiamato dal gioco sull'EDT
      * 
-     * @return risultato del lancio
+     * @param event l'evento con cui il motore ha chiuso il combattimento
      */
-    private int rollDice() {
-        return random.ints(1, 1, 7).findFirst().getAsInt();
-    }
-
-    private void resolveCombat() {
-        boolean playerWon = enemyHealth <= 0;
-        game.endCombat(playerWon, playerHealth, playerArmor, enemyExp, enemy);
+    void resolveCombat(GameEngine.Event event) {
+        resolved = true;
+        game.endCombat(event);
         SwingUtilities.getWindowAncestor(this).dispose();
     }
 
     @Override
     protected void paintComponent(Graphics g) {
         super.paintComponent(g);
+        FrameSnapshot.CombatState combat = simulation.getSnapshot().getCombat();
+        if (combat == null) {
+            return; // Il combattimento è finito, la finestra sta per chiudersi
+        }
 
         g.setColor(Color.GREEN);
         g.fillRect(50, 150, 100, 100); // Enemy square
@@ -83,15 +54,15 @@ public class RogueLikeCombat extends JPanel implements KeyListener {
 
         g.setColor(Color.WHITE);
         g.setFont(new Font("Monospaced", Font.BOLD, 24));
-        g.drawString(enemy.getTipo()+": " + enemyHealth, 50, 100);
-        g.drawString("Player: " + playerHealth, 250, 100);
+        g.drawString(combat.enemyType()+": " + combat.enemyHealth(), 50, 100);
+        g.drawString("Player: " + combat.playerHealth(), 250, 100);
 
-        if (enemyRolled) {
-            g.drawString(String.valueOf(enemyRoll), 90, 200);
+        if (combat.enemyRolled()) {
+            g.drawString(String.valueOf(combat.enemyRoll()), 90, 200);
         }
 
-        if (playerRolled) {
-            g.drawString(String.valueOf(playerRoll), 290, 200);
+        if (combat.playerRolled()) {
+            g.drawString(String.valueOf(combat.playerRoll()), 290, 200);
         }
 
         FontMetrics fm = g.getFontMetrics();
@@ -101,44 +72,20 @@ public class RogueLikeCombat extends JPanel implements KeyListener {
         int y = 300;
 
         g.drawString(text, x, y);
+
+        g.setFont(new Font("Monospaced", Font.PLAIN, 16));
+        fm = g.getFontMetrics();
+        text = String.format("Vittoria: %.0f%%   A: risolvi", combat.winProbability() * 100);
+        g.drawString(text, (getWidth() - fm.stringWidth(text)) / 2, 340);
     }
 
     @Override
     public void keyPressed(KeyEvent e) {
-        if (e.getKeyCode() == KeyEvent.VK_SPACE) {
-            if (!playerRolled || !enemyRolled) {
-                if (!playerRolled) {
-                    playerRoll = rollDice();
-                    playerRolled = true;
-                } else if (!enemyRolled) {
-                    enemyRoll = rollDice();
-                    enemyRolled = true;
-                }
-                repaint();
-            } else {
-                // Apply damage
-                if (playerRoll > enemyRoll) {
-                    enemyHealth-=playerDmg;
-                } else if (enemyRoll > playerRoll) {
-                    if(enemyRoll-playerRoll>playerArmor){
-                        playerHealth-=enemyDmg;
-                    }else if(enemyRoll-playerRoll==playerArmor){
-                        //playerArmor-=enemyRoll-playerRoll;
-                        playerArmor--;
-                    }
-                }
-
-                // Reset rolls for next round
-                playerRolled = false;
-                enemyRolled = false;
-
-                // Check if combat ends
-                if (enemyHealth <= 0 || playerHealth <= 0) {
-                    resolveCombat();
-                }
-
-                repaint();
-            }
+        if (e.getKeyCode() == KeyEvent.VK_SPACE && !resolved) {
+            // Il risultato arriva dal gioco con la fotografia del turno
+            simulation.submit(GameEngine.Action.ROLL);
+        } else if (e.getKeyCode() == KeyEvent.VK_A && !resolved) {
+            simulation.submit(GameEngine.Action.RESOLVE); // Tutto il combattimento in un passo
         }
     }
 
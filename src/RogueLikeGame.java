@@ -1,16 +1,15 @@
 import java.awt.*;
-import java.awt.event.KeyAdapter;
 import java.awt.event.KeyEvent;
 import java.awt.event.KeyListener;
 import java.awt.image.BufferedImage;
-import java.io.File;
-import java.io.FileOutputStream;
-import java.io.IOException;
-import java.io.ObjectOutputStream;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.Random;
-import javax.imageio.ImageIO;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
 import javax.swing.*;
 
 public final class RogueLikeGame extends JPanel implements KeyListener {
@@ -20,638 +19,526 @@ public final class RogueLikeGame extends JPanel implements KeyListener {
     /** La altezza del frame */
     @SuppressWarnings("unused")
     private final int height;
-    /** Il numero di righe della mappa */
+    /** Il numero di righe visibili nella finestra */
     private final int rows;
-    /** Il numero di colonne della mappa */
+    /** Il numero di colonne visibili nella finestra */
     private final int cols;
 
+    /** La dimensione in pixel di una cella */
+    private static final int TILE_SIZE = 24;
     /** La dimensione di ogni oggetto */
-    private final int dim=24;
+    private final int dim = TILE_SIZE;
+
+    /** La simulazione che applica i turni e pubblica le fotografie da disegnare */
+    private final GameSimulation simulation;
+    /** La copia dei muri del livello per chi disegna, rigenerata dal seme della fotografia */
+    private final ChunkedWorld viewMap;
+    /** La posizione della telecamera nell'ultimo frame disegnato */
+    private int paintedCameraRow = -1, paintedCameraCol = -1;
+    /**
+     * La fotografia usata da repaintDirty per calcolare i rettangoli, null fuori dai suoi disegni:
+     * così un disegno parziale non prende una fotografia più nuova con la telecamera già spostata
+     */
+    private FrameSnapshot partialFrame;
+
+    /**
+     * Un turno applicato dalla simulazione, in attesa di essere gestito sull'EDT
+     *
+     * @param event l'evento prodotto dal turno
+     * @param snapshot la fotografia pubblicata dopo il turno
+     */
+    private record Turn(GameEngine.Event event, FrameSnapshot snapshot) {
+    }
+
+    /** I turni applicati e non ancora gestiti sull'EDT */
+    private final Queue<Turn> turns = new ConcurrentLinkedQueue<>();
+    /** La booleana che indica se la gestione dei turni è già in coda sull'EDT */
+    private final AtomicBoolean turnsScheduled = new AtomicBoolean();
+    /** Le celle cambiate nei turni gestiti e non ancora ridisegnate */
+    private final DirtyRegion dirty = new DirtyRegion();
+    /** I tasti premuti e non ancora rilasciati, per riconoscere le ripetizioni automatiche */
+    private final Set<Integer> heldKeys = new HashSet<>();
 
-    /** La mappa del gioco */
-    @SuppressWarnings("FieldMayBeFinal")
-    private char[][] map;
-
-    /** Inizializzazione di Random */
-    private final Random random = new Random();
-
-    /** La posizione del giocatore */
-    private int playerRow, playerCol;
-    /** La salute massima del giocatore */
-    private int hpMax = 10;
-    /** La salute del giocatore */
-    private int playerHealth = hpMax;
-    /** L'armatura del giocatore */
-    private int armor = 0;
-    /** Il danno inflitto dall'arma */
-    private int weaponDamage;
-    /** L'immagine del giocatore */
-    private BufferedImage playerImage;
-    /** L'espererienza del giocatore */
-    private int playerExp = 0;
-    /** Il livello del giocatore */
-    private int playerLevel = 1;
-    /** La quantità di punti vita curabili */
-    @SuppressWarnings("unused")
-    private final int healAmount = 0;
     /** Il lettore musicale */
     @SuppressWarnings("FieldMayBeFinal")
     private AudioPlayer audioPlayer;
-    /** file di salvataggio */
-    
-    /** La posizione del portale */
-    private int portalRow, portalCol;
-    /** L'immagine del portale */
-    private BufferedImage portalImage;
-    
-    /** La lista degli oggetti */
-    private List<Item> items = new ArrayList<>();
-    /** Inizializzazione del gestore oggetti */
-    private final ItemManager gestoreOggetti;
-    /** 
-     * Le immagini degli oggetti
-     * 
-     * <ul>
-     * <li>healthImage: l'immagine dell'oggetto salute</li>
-     * <li>armorImage: l'immagine dell'oggetto armatura</li>
-     * <li>weaponImage: l'immagine dell'oggetto arma</li>
-     * </ul>
+
+    /** Gli sprite già ridimensionati alla dimensione delle celle, condivisi da tutti i pannelli */
+    private final SpriteAtlas sprites = SpriteAtlas.forTileSize(TILE_SIZE);
+
+    /** L'altezza in pixel della barra delle informazioni */
+    private static final int HUD_HEIGHT = 48;
+    /** I valori mostrati nell'ultima barra delle informazioni disegnata */
+    private long hudState = -1;
+
+    /** Il colore dei muri */
+    private static final Color WALL_COLOR = new Color(64, 64, 64); // Grigio scuro
+    /** Il colore del pavimento */
+    private static final Color FLOOR_COLOR = new Color(128, 128, 128); // Grigio
+    /** Il font usato per misurare il testo del livello */
+    private final Font metricsFont = new Font("Monospaced", Font.PLAIN, dim);
+    /** Il font della barra delle informazioni */
+    private final Font infoFont = new Font("Monospaced", Font.BOLD, dim);
+    /** Il font del messaggio di fine partita */
+    private static final Font GAME_OVER_FONT = new Font("Monospaced", Font.BOLD, 42);
+    /** Il font del messaggio per ricominciare */
+    private static final Font RESTART_FONT = new Font("Monospaced", Font.BOLD, 24);
+
+    /** Il lato in celle di una pagina dello strato statico */
+    private static final int PAGE_TILES = 16;
+    /**
+     * Lo strato statico di muri e pavimento, diviso in pagine quadrate disegnate
+     * la prima volta che entrano nella vista e scartate quando sono le meno usate di recente
      */
-    private BufferedImage armorImage;
-    private BufferedImage weaponImage;
-    private BufferedImage healthImage;
-
-    /** La lista degli nemici */
-    private List<Enemy> enemies = new ArrayList<>();
-    /** Inizializzazione del gestore nemici */
-    private final EnemyManager gestoreNemici;
-    /** 
-     * Le immagini dei nemici
+    private final LinkedHashMap<Integer, BufferedImage> tilePages;
+    /** La versione della mappa disegnata nelle pagine */
+    private int tilePagesVersion = -1;
+
+    /** La booleana che indica se la nebbia di guerra è attiva */
+    private boolean fogOfWar = false;
+    /** Il colore della nebbia sulle celle esplorate ma non visibili */
+    private static final Color FOG_COLOR = new Color(0, 0, 0, 160);
+
+    /** Il disegno attivo su una tela dedicata, null se si disegna con Swing */
+    private ActiveRenderer activeRenderer;
+    /** La tela del disegno attivo */
+    private Canvas canvas;
+    /** La booleana che indica se la fine della partita è già stata salvata e gestita */
+    private boolean gameOverHandled = false;
+    /** La booleana che indica se è già stato chiesto di ricominciare dopo la fine della partita */
+    private boolean restartRequested = false;
+
+    /** Lo scrittore della classifica, condiviso da tutti i pannelli */
+    private static final LeaderboardWriter LEADERBOARD = new LeaderboardWriter();
+
+    /** Il pannello del combattimento in corso */
+    @SuppressWarnings("unused")
+    private RogueLikeCombat combat;
+
+    /** La proprietà di sistema con le dimensioni dei livelli, nel formato righe x colonne, ad esempio "512x512" */
+    public static final String LEVEL_SIZE_PROPERTY = "rogue.levelSize";
+
+    /**
+     * Crea il pannello del gioco con i livelli scelti dalla proprietà {@value #LEVEL_SIZE_PROPERTY},
+     * grandi quanto la finestra se manca o non è valida
+     *
+     * <p>
+     * Il numero di celle di un livello non può superare {@link Integer#MAX_VALUE}.
+     *
+     * @param width la larghezza del frame
+     * @param height l'altezza del frame
+     *
+     * @return il pannello del gioco
+     */
+    public static RogueLikeGame fromSystemProperties(int width, int height) {
+        String size = System.getProperty(LEVEL_SIZE_PROPERTY);
+        if (size != null) {
+            String[] parts = size.trim().toLowerCase().split("x");
+            if (parts.length == 2) {
+                try {
+                    int levelRows = Integer.parseInt(parts[0].trim());
+                    int levelCols = Integer.parseInt(parts[1].trim());
+                    if (levelRows > 0 && levelCols > 0 && (long) levelRows * levelCols <= Integer.MAX_VALUE) {
+                        return new RogueLikeGame(width, height, levelRows, levelCols);
+                    }
+                } catch (NumberFormatException e) {
+                    // Si usa la dimensione della finestra, come per un valore fuori misura
+                }
+            }
+            System.out.println("Dimensione dei livelli non valida: " + size + ", uso quella della finestra");
+        }
+        return new RogueLikeGame(width, height);
+    }
+
+    /**
+     * Costruttore di RogueLikeGame, con livelli grandi quanto la finestra
      * 
-     * <ul>
-     * <li>zombieImage: l'immagine del nemico zombie</li>
-     * <li>skeletonImage: l'immagine del nemico scheletro</li>
-     * <li>vampireImage: l'immagine del nemico vampiro</li>
-     * </ul>
+     * @param width la larghezza del frame
+     * @param height l'altezza del frame
      */
-    private BufferedImage zombieImage;
-    private BufferedImage skeletonImage;
-    private BufferedImage ghoulImage;
-    private BufferedImage wraithImage;
-    private BufferedImage vampireImage;
-    private BufferedImage lichImage;
-    private BufferedImage dragonImage;
-
-    /** La booleana che indica se il gioco è finito */
-    private boolean gameOver = false;
-    /** La booleana che indica se il gioco è vinto */
-    private boolean gameWin = false;
-    /** Il livello del gioco */
-    private int level = 1;        
-    
-    /** Inizializzazione di Combat */
-    private RogueLikeCombat combat;
-    /** La booleana che indica se il giocatore è in combattimento */
-    @SuppressWarnings("unused")
-    private boolean inCombat = false;
-    
+    public RogueLikeGame(int width, int height) {
+        this(width, height, height / TILE_SIZE, width / TILE_SIZE);
+    }
+
     /**
      * Costruttore di RogueLikeGame
      * 
      * @param width la larghezza del frame
      * @param height l'altezza del frame
+     * @param levelRows il numero di righe dei livelli
+     * @param levelCols il numero di colonne dei livelli
      */
-    public RogueLikeGame(int width, int height) {
+    public RogueLikeGame(int width, int height, int levelRows, int levelCols) {
         this.width = width;
         this.height = height;
         this.rows =  height/ dim;
         this.cols =  width / dim;
-    
-        this.map = new char[rows][cols];
-    
-        this.gestoreNemici = new EnemyManager();
-    
-        this.gestoreOggetti = new ItemManager();
-    
-        this.armor=0;
-        this.weaponDamage=1;
+
+        long runSeed = GameEngine.seedFromSystemProperties();
+        System.out.println("Seme della partita: " + runSeed); // Con -Drogue.seed si rigioca lo stesso dungeon
+        GameEngine engine = new GameEngine(levelRows, levelCols, ChunkedWorld.DEFAULT_MAX_CHUNKS, runSeed);
+        this.simulation = new GameSimulation(engine, rows, cols, this::onTurn, Autosave.fromSystemProperties(),
+                InputJournal.fromSystemProperties());
+        this.viewMap = engine.getMap().emptyCopy(); // Stesse dimensioni e stesso generatore del motore
+
+        // Le pagine che coprono la vista in qualunque posizione, più un giro di scorta
+        int maxPages = (rows / PAGE_TILES + 3) * (cols / PAGE_TILES + 3);
+        this.tilePages = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Integer, BufferedImage> eldest) {
+                return size() > maxPages;
+            }
+        };
+
         setPreferredSize(new Dimension(cols * dim, rows * dim));
         setBackground(Color.BLACK);
         setFocusable(true);
         addKeyListener(this);
         
-        generateMap();
-        placePlayer();
-        placePortal();
-        placeItems();
-        placeEnemies();
-        
-        loadImages();
-        
         audioPlayer = new AudioPlayer();
         audioPlayer.load("src/musica/musichetta_01.wav");
         audioPlayer.play();
-    }
-    
-    
-    /**
-     * Il metodo per caricare le immagini
-     */
-    private void loadImages(){
-        try {
-            zombieImage = ImageIO.read(new File("src/icone/zombie.png"));
-            skeletonImage = ImageIO.read(new File("src/icone/scheletro.png"));
-            ghoulImage = ImageIO.read(new File("src/icone/ghoul.png"));
-            wraithImage = ImageIO.read(new File("src/icone/wraith.png"));
-            vampireImage = ImageIO.read(new File("src/icone/vampiro.png"));
-            lichImage = ImageIO.read(new File("src/icone/lich.png"));
-            dragonImage = ImageIO.read(new File("src/icone/drago.png"));
-
-            playerImage = ImageIO.read(new File("src/icone/eroe.png"));
-            portalImage = ImageIO.read(new File("src/icone/scale.png"));
-            healthImage = ImageIO.read(new File("src/icone/cura.png"));
-            armorImage = ImageIO.read(new File("src/icone/scudo.png"));
-            weaponImage = ImageIO.read(new File("src/icone/arma.png"));
-        } catch (IOException e) {
-            System.out.println("Errore nel caricamento delle immagini!");
-        }
+
+        simulation.start();
     }
 
     /**
-     * Il metodo per passare al livello successivo
+     * Il metodo chiamato dal thread della simulazione dopo ogni turno
+     *
+     * <p>
+     * Il turno viene messo in coda e l'EDT li gestisce tutti insieme con un solo invokeLater,
+     * così una raffica di turni non riempie la coda degli eventi di Swing.
+     *
+     * @param event l'evento prodotto dal turno
+     * @param snapshot la fotografia pubblicata dopo il turno
      */
-    private void nextLevel() {
-        enemies.clear();
-        generateMap();
-        placePlayer();
-        placePortal();
-        gestoreNemici.generaNemici(map, level);
-        placeEnemies();
-        if(playerHealth<hpMax){
-            playerHealth +=1;
+    private void onTurn(GameEngine.Event event, FrameSnapshot snapshot) {
+        turns.add(new Turn(event, snapshot));
+        if (turnsScheduled.compareAndSet(false, true)) {
+            SwingUtilities.invokeLater(this::drainTurns);
         }
-        gameOver = false; // Ripristina lo stato di fine partita
-        gameWin = false;  // Ripristina lo stato di vittoria
-        level++; // Incrementa il livello
-        placeItems();
-        repaint();
     }
 
     /**
-     * Il metodo per generare la mappa
+     * Il metodo per gestire sull'EDT i turni applicati dalla simulazione
      */
-    private void generateMap() {
-        for (int row = 0; row < rows; row++) {
-            for (int col = 0; col < cols; col++) {
-                map[row][col] = '#';
-            }
-        }
-
-        List<Rectangle> rooms = new ArrayList<>();
-        int roomCount = 8;
-
-        // Genera stanze casuali
-        for (int i = 0; i < roomCount; i++) {
-            int w = random.nextInt(10 - 5 + 1) + 5;
-            int h = random.nextInt(10 - 5 + 1) + 5;
-            int x = random.nextInt(cols - w - 1) + 1;
-            int y = random.nextInt(rows - h - 1) + 1;
-
-            Rectangle newRoom = new Rectangle(x, y, w, h);
-            boolean overlaps = false;
-
-            for (Rectangle room : rooms) {
-                if (newRoom.intersects(room)) {
-                    overlaps = true;
-                    break;
+    private void drainTurns() {
+        turnsScheduled.set(false);
+        Turn turn;
+        while ((turn = turns.poll()) != null) {
+            turn.snapshot().addDirtyTo(dirty);
+            if (turn.snapshot().isGameOver()) {
+                if (!gameOverHandled) {
+                    gameOverHandled = true; // Il passaggio alla fine della partita avviene una volta sola
+                    saveInfo(turn.snapshot());
                 }
-            }
-
-            if (!overlaps) {
-                rooms.add(newRoom);
-                createRoom(newRoom);
-            }
-        }
-
-        // Collega le stanze con corridoi
-        for (int i = 1; i < rooms.size(); i++) {
-            Rectangle prevRoom = rooms.get(i - 1);
-            Rectangle currRoom = rooms.get(i);
-
-            int prevCenterX = prevRoom.x + prevRoom.width / 2;
-            int prevCenterY = prevRoom.y + prevRoom.height / 2;
-            int currCenterX = currRoom.x + currRoom.width / 2;
-            int currCenterY = currRoom.y + currRoom.height / 2;
-
-            if (random.nextBoolean()) {
-                createHorizontalCorridor(prevCenterX, currCenterX, prevCenterY);
-                createVerticalCorridor(prevCenterY, currCenterY, currCenterX);
             } else {
-                createVerticalCorridor(prevCenterY, currCenterY, prevCenterX);
-                createHorizontalCorridor(prevCenterX, currCenterX, currCenterY);
+                gameOverHandled = false;
+                restartRequested = false;
             }
-        }
-    }
-
-    /**
-     * Il metodo per creare una stanza
-     * 
-     * @param room
-     */
-    private void createRoom(Rectangle room) {
-        for (int row = room.y; row < room.y + room.height; row++) {
-            for (int col = room.x; col < room.x + room.width; col++) {
-                map[row][col] = '.';
+            switch (turn.event()) {
+                case COMBAT_STARTED -> startCombat();
+                case COMBAT_ROLL -> {
+                    if (combat != null) {
+                        combat.repaint();
+                    }
+                }
+                case COMBAT_WON, LEVEL_UP, GAME_OVER -> {
+                    if (combat != null) {
+                        combat.resolveCombat(turn.event());
+                    }
+                }
+                default -> { }
             }
         }
+        repaintDirty();
     }
-
+    
+    
     /**
-     * Il metodo per creare un corridoio orizzontale
-     * 
-     * @param x1 inizio del corridoio
-     * @param x2 fine del corridoio
-     * @param y larghezza del corridoio
+     * Il metodo per aprire la finestra del combattimento
      */
-    private void createHorizontalCorridor(int x1, int x2, int y) {
-        for (int x = Math.min(x1, x2); x <= Math.max(x1, x2); x++) {
-            map[y][x] = '.';
-        }
+    private void startCombat() {
+        combat = new RogueLikeCombat(this, simulation);
+        JFrame combatFrame = new JFrame("Combat");
+        combatFrame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+        combatFrame.add(combat);
+        combatFrame.pack();
+        combatFrame.setLocationRelativeTo(null);
+        combatFrame.setVisible(true);
     }
 
     /**
-     * Il metodo per creare un corridoio verticale
+     * Il metodo chiamato dalla finestra del combattimento quando lo scontro è finito
      * 
-     * @param y1 inizio del corridoio
-     * @param y2 fine del corridoio
-     * @param x larghezza del corridoio
+     * @param event l'evento con cui il motore ha chiuso il combattimento
      */
-    private void createVerticalCorridor(int y1, int y2, int x) {
-        for (int y = Math.min(y1, y2); y <= Math.max(y1, y2); y++) {
-            map[y][x] = '.';
+    public void endCombat(GameEngine.Event event) {
+        combat = null;
+        if (event == GameEngine.Event.LEVEL_UP) {
+            showLevelUp();
         }
+        repaint();
     }
 
     /**
-     * Il metodo per posizionare il giocatore
+     * Il metodo per mostrare il livello raggiunto
      */
-    private void placePlayer() {
-        while (true) {
-            int row = random.nextInt(rows);
-            int col = random.nextInt(cols);
-            if (map[row][col] == '.') {
-                playerRow = row;
-                playerCol = col;
-                break;
-            }
+    private void showLevelUp() {
+        JFrame levelUpFrame = new JFrame("Level Up");
+        levelUpFrame.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
+        JLabel levelUpLabel = new JLabel("Hai raggiunto il livello "+simulation.getSnapshot().getPlayerLevel()+"!");
+        levelUpLabel.setFont(new Font("Monospaced", Font.BOLD, 24));
+        levelUpFrame.add(levelUpLabel);
+        levelUpFrame.pack();
+        levelUpFrame.setLocationRelativeTo(null);
+        levelUpFrame.setVisible(true);
         }
-    }
 
     /**
-     * Il metodo per posizionare il portale
+     * Il metodo per salvare il risultato in classifica, senza aspettare la scrittura su disco
+     *
+     * @param frame la fotografia della partita finita
      */
-    private void placePortal() {
-        while (true) {
-            int row = random.nextInt(rows);
-            int col = random.nextInt(cols);
-            if (map[row][col] == '.') {
-                portalRow = row;
-                portalCol = col;
-                break;
-            }
-        }
+    private void saveInfo(FrameSnapshot frame) {
+        LEADERBOARD.submit(new Score(playerName, frame.getPlayerLevel(), frame.getLevel(), System.currentTimeMillis()));
     }
 
     /**
-     * Il metodo per posizionare gli oggetti
+     * Il metodo per disegnare muri e pavimento di una pagina in un'immagine fuori schermo
+     *
+     * <p>
+     * L'immagine è compatibile con lo schermo, così Java2D può tenerla in memoria video
+     * e ogni repaint si riduce a poche copie. La cella del portale resta nera,
+     * come nel disegno cella per cella.
+     *
+     * @param frame la fotografia da disegnare
+     * @param pageRow la riga della pagina
+     * @param pageCol la colonna della pagina
+     *
+     * @return l'immagine della pagina
      */
-    private void placeItems() {
-        items = gestoreOggetti.generaOggetti(map, level);
-    }
+    private BufferedImage buildTilePage(FrameSnapshot frame, int pageRow, int pageCol) {
+        int firstRow = pageRow * PAGE_TILES;
+        int firstCol = pageCol * PAGE_TILES;
+        int pageRows = Math.min(PAGE_TILES, frame.getRows() - firstRow);
+        int pageCols = Math.min(PAGE_TILES, frame.getCols() - firstCol);
+        int pageWidth = pageCols * dim;
+        int pageHeight = pageRows * dim;
+        BufferedImage page;
+        GraphicsConfiguration gc = getGraphicsConfiguration();
+        if (gc != null) {
+            page = gc.createCompatibleImage(pageWidth, pageHeight, Transparency.OPAQUE);
+        } else {
+            page = new BufferedImage(pageWidth, pageHeight, BufferedImage.TYPE_INT_RGB);
+        }
 
-    /**
-     * Il metodo per gestire il ritiro degli oggetti
-     */
-    private void handleItemPickup() {
-        for (Item item : items) {
-            if (item.getRow() == playerRow && item.getCol() == playerCol) {                
-                switch (item.getTipo()) {
-                    case 'W' -> 
-                           this.weaponDamage += item.getValue(); // Aumenta il danno dell'arma                    
-                    case 'A' -> 
-                            this.armor += item.getValue(); // Ignora 4 colpi nemici
-                    case 'H' -> {
-                        playerHealth += item.getValue(); // Cura il giocatore di 10 danni
-                        if (playerHealth > hpMax) playerHealth = hpMax; // La salute non supera hpMax
+        Graphics2D g = page.createGraphics();
+        try {
+            g.setColor(Color.BLACK);
+            g.fillRect(0, 0, pageWidth, pageHeight);
+            int portalRow = frame.getPortalRow();
+            int portalCol = frame.getPortalCol();
+            for (int r = 0; r < pageRows; r++) {
+                for (int c = 0; c < pageCols; c++) {
+                    int row = firstRow + r;
+                    int col = firstCol + c;
+                    if (!viewMap.isWalkable(row, col)) {
+                        g.setColor(WALL_COLOR);
+                    } else if (row == portalRow && col == portalCol) {
+                        continue;
+                    } else {
+                        g.setColor(FLOOR_COLOR);
                     }
+                    g.fillRect(c * dim, r * dim, dim, dim);
                 }
-                items.remove(item); // Rimuove l'oggetto dalla mappa dopo che è stato raccolto
-                break; // Esci dopo aver raccolto l'oggetto
-            }
-        }
-    }
-    
-    /**
-     * Il metodo per posizionare i nemici
-     */
-    private void placeEnemies() {
-        enemies=gestoreNemici.generaNemici(map, level);
-    }
-    
-    /**
-     * Il metodo per muovere i nemici nella mappa
-     */
-    private void moveEnemies() {
-        for (Enemy enemy : enemies) {
-            if (canSeePlayer(enemy)) {
-                moveTowardPlayer(enemy);
-            } else {
-                moveRandomly(enemy);
             }
+        } finally {
+            g.dispose();
         }
+        return page;
     }
 
     /**
-     * Il metodo per controllare se un nemico può vedere il giocatore
-     * 
-     * @param enemy
-     * @return true se il nemico può vedere il giocatore, false altrimenti
+     * Il metodo per disegnare lo strato statico delle celle visibili, una pagina alla volta
+     *
+     * @param g il contesto grafico, già spostato nelle coordinate del livello
+     * @param frame la fotografia da disegnare
+     * @param firstRow la prima riga visibile
+     * @param lastRow l'ultima riga visibile
+     * @param firstCol la prima colonna visibile
+     * @param lastCol l'ultima colonna visibile
      */
-    private boolean canSeePlayer(Enemy enemy) {
-        int enemyRow = enemy.getRow();
-        int enemyCol = enemy.getCol();
-
-        // Calcola la distanza euclidea
-        int dx = playerCol - enemyCol;
-        int dy = playerRow - enemyRow;
-        double distance = Math.sqrt(dx * dx + dy * dy);
-
-        if (distance > 6) {
-            return false; // Fuori dal raggio
+    private void paintTiles(Graphics g, FrameSnapshot frame, int firstRow, int lastRow, int firstCol, int lastCol) {
+        if (tilePagesVersion != frame.getMapVersion()) {
+            // Nuovo livello: i muri si rigenerano dal seme, senza toccare la mappa della simulazione
+            viewMap.regenerate(frame.getLevelSeed());
+            tilePages.clear();
+            tilePagesVersion = frame.getMapVersion();
         }
-    
-        // Controlla la linea di vista usando il tracciamento del raggio
-        return hasLineOfSight(enemyRow, enemyCol, playerRow, playerCol);
-    }
-    
-    /**
-     * Il metodo per controllare se c'è una linea di vista tra due punti
-     * 
-     * @param x1 coordinata x del punto 1
-     * @param y1 coordinata y del punto 1
-     * @param x2 coordinata x del punto 2
-     * @param y2 coordinata y del punto 2
-     * 
-     * @return true se c'è una linea di vista, false altrimenti
-     */
-    private boolean hasLineOfSight(int x1, int y1, int x2, int y2) {
-        int dx = Math.abs(x2 - x1);
-        int dy = Math.abs(y2 - y1);
-
-        int sx = x1 < x2 ? 1 : -1;
-        int sy = y1 < y2 ? 1 : -1;
-
-        int err = dx - dy;
-
-        while (true) {
-            if (map[x1][y1] == '#') {
-                return false; // Muro blocca la vista
-            }
-
-            if (x1 == x2 && y1 == y2) {
-                return true; // Linea di vista libera
-            }
-
-            int e2 = 2 * err;
-
-            if (e2 > -dy) {
-                err -= dy;
-                x1 += sx;
-            }
-
-            if (e2 < dx) {
-                err += dx;
-                y1 += sy;
+        int levelPageCols = (frame.getCols() + PAGE_TILES - 1) / PAGE_TILES;
+        for (int pageRow = firstRow / PAGE_TILES; pageRow <= lastRow / PAGE_TILES; pageRow++) {
+            for (int pageCol = firstCol / PAGE_TILES; pageCol <= lastCol / PAGE_TILES; pageCol++) {
+                int key = pageRow * levelPageCols + pageCol;
+                BufferedImage page = tilePages.get(key);
+                if (page == null) {
+                    page = buildTilePage(frame, pageRow, pageCol);
+                    tilePages.put(key, page);
+                }
+                g.drawImage(page, pageCol * PAGE_TILES * dim, pageRow * PAGE_TILES * dim, this);
             }
         }
     }
-    
+
     /**
-     * Il metodo per muovere un nemico verso il giocatore
-     * 
-     * @param enemy il nemico da muovere
+     * Il metodo per disegnare la nebbia di guerra sulle celle visibili
+     *
+     * <p>
+     * Le celle fuori dal campo visivo del giocatore vengono scurite se già esplorate
+     * e coperte del tutto se non ancora viste.
+     *
+     * @param g il contesto grafico, già spostato nelle coordinate del livello
+     * @param frame la fotografia da disegnare
+     * @param firstRow la prima riga visibile
+     * @param lastRow l'ultima riga visibile
+     * @param firstCol la prima colonna visibile
+     * @param lastCol l'ultima colonna visibile
      */
-    private void moveTowardPlayer(Enemy enemy) {
-        int dx = playerCol - enemy.getCol();
-        int dy = playerRow - enemy.getRow();
-
-        if (Math.abs(dx) > Math.abs(dy)) { // Movimento orizzontale
-            if (dx > 0 && map[enemy.getRow()][enemy.getCol() + 1] == '.') {
-                enemy.updateCol(+1);
-            } else if (dx < 0 && map[enemy.getRow()][enemy.getCol() - 1] == '.') {
-                enemy.updateCol(-1);
-            }
-        } else { // Movimento verticale
-            if (dy > 0 && map[enemy.getRow() + 1][enemy.getCol()] == '.') {
-                enemy.updateRow(+1);
-            } else if (dy < 0 && map[enemy.getRow() - 1][enemy.getCol()] == '.') {
-                enemy.updateRow(-1);
+    private void paintFog(Graphics g, FrameSnapshot frame, int firstRow, int lastRow, int firstCol, int lastCol) {
+        for (int row = firstRow; row <= lastRow; row++) {
+            for (int col = firstCol; col <= lastCol; col++) {
+                if (!frame.isVisible(row, col)) {
+                    g.setColor(frame.isExplored(row, col) ? FOG_COLOR : Color.BLACK);
+                    g.fillRect(col * dim, row * dim, dim, dim);
+                }
             }
         }
     }
 
     /**
-     * Il metodo per muovere un nemico casualmente
-     * 
-     * @param enemy il nemico da muovere
-     */
-    private void moveRandomly(Enemy enemy) {
-        // Movimento casuale in una delle 4 direzioni
-        int[] directions = {-1, 1, 0, 0};
-        int[] rowOffsets = {0, 0, -1, 1};
-
-        int direction = random.nextInt(4);
-        int newRow = enemy.getRow() + directions[direction];
-        int newCol = enemy.getCol() + rowOffsets[direction];
-
-        if (newRow >= 0 && newRow < rows && newCol >= 0 && newCol < cols && map[newRow][newCol] == '.') {
-            enemy.setRow(newRow);
-            enemy.setCol(newCol);
-        }
-    }
-    
-    /**
-     * Il metodo per controllare se il gioco è finito
-     * 
-     * @return true se il gioco è finito, false altrimenti
+     * Il metodo per disegnare nemici e oggetti nelle celle visibili
+     *
+     * <p>
+     * La fotografia contiene solo le entità inquadrate, quindi il costo dipende
+     * dalla dimensione della vista e non dal numero di nemici nel livello.
+     *
+     * @param g il contesto grafico, già spostato nelle coordinate del livello
+     * @param frame la fotografia da disegnare
+     * @param firstRow la prima riga visibile
+     * @param lastRow l'ultima riga visibile
+     * @param firstCol la prima colonna visibile
+     * @param lastCol l'ultima colonna visibile
      */
-    private boolean checkGameOver() {
-        for (Enemy enemy : enemies) {
-            if (enemy.getRow() == playerRow && enemy.getCol() == playerCol) {
-                startCombat(enemy);
-                return false; // Interrompi per il combattimento
+    private void paintEntities(Graphics g, FrameSnapshot frame, int firstRow, int lastRow, int firstCol, int lastCol) {
+        int playerRow = frame.getPlayerRow();
+        int playerCol = frame.getPlayerCol();
+        int portalRow = frame.getPortalRow();
+        int portalCol = frame.getPortalCol();
+        for (int i = 0; i < frame.getEntityCount(); i++) {
+            int row = frame.getEntityRow(i);
+            int col = frame.getEntityCol(i);
+            if (row < firstRow || row > lastRow || col < firstCol || col > lastCol
+                    || (row == playerRow && col == playerCol) || (row == portalRow && col == portalCol)) {
+                continue;
             }
+            SpriteAtlas.Sprite sprite = frame.getEntityKind(i) == FrameSnapshot.ENEMY
+                    ? SpriteAtlas.Sprite.forEnemy(frame.getEntityType(i))
+                    : SpriteAtlas.Sprite.forItem(frame.getEntityType(i));
+            sprites.draw(g, sprite, col * dim, row * dim);
         }
-        return false;
     }
 
     /**
-     * Il metodo per iniziare il combattimento
-     * 
-     * @param enemy il nemico con cui combattere
+     * Il metodo per disegnare il gioco con Swing, quando il disegno attivo è spento
      */
-    private void startCombat(Enemy enemy) {
-        combat = new RogueLikeCombat(this, playerHealth, weaponDamage, armor, enemy);
-        inCombat = true;
-        JFrame combatFrame = new JFrame("Combat");
-        combatFrame.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
-        combatFrame.add(combat);
-        combatFrame.pack();
-        combatFrame.setLocationRelativeTo(null);
-        combatFrame.setVisible(true);
-    }
-
-    /**
-     * Il metodo per terminare il combattimento
-     * 
-     * @param playerWon true se il giocatore ha vinto, false altrimenti
-     * @param newPlayerHealth la nuova salute del giocatore
-     * @param defeatedEnemy il nemico sconfitto
-     */
-    public void endCombat(boolean playerWon, int newPlayerHealth, int playerArmor, int newExp, Enemy defeatedEnemy) {
-        
-        armor = playerArmor;
-        inCombat = false;
-
-        if (playerWon) {
-            enemies.remove(defeatedEnemy);
-            gestoreNemici.rimuoviNemico(defeatedEnemy);
-            playerExp += newExp;
-            if(playerExp>=(2*playerLevel*10)){
-                playerLevel++;
-                hpMax+=10;
-                showLevelUp();
-            }else{
-                playerHealth = newPlayerHealth;
-            }                
-        } else {
-            gameOver = true;
+    @Override
+    protected void paintComponent(Graphics g) {
+        super.paintComponent(g);
+        if (activeRenderer != null) {
+            return; // La tela copre il pannello
+        }
+        Rectangle clip = g.getClipBounds();
+        if (clip == null) {
+            clip = new Rectangle(0, 0, getWidth(), getHeight());
         }
-    repaint();
+        render(g, clip);
     }
 
     /**
-     * Il metodo per mostrare il livello raggiunto
+     * Il metodo per disegnare un frame sulla tela del disegno attivo, dal thread di disegno
+     *
+     * @param g il contesto grafico del buffer nascosto
      */
-    private void showLevelUp() {
-        JFrame levelUpFrame = new JFrame("Level Up");
-        levelUpFrame.setDefaultCloseOperation(JFrame.DISPOSE_ON_CLOSE);
-        JLabel levelUpLabel = new JLabel("Hai raggiunto il livello "+playerLevel+"!");
-        levelUpLabel.setFont(new Font("Monospaced", Font.BOLD, 24));
-        levelUpFrame.add(levelUpLabel);
-        levelUpFrame.pack();
-        levelUpFrame.setLocationRelativeTo(null);
-        levelUpFrame.setVisible(true);
-        }
-
-    private void saveInfo() {
-        try (FileOutputStream fos = new FileOutputStream("lead.bin", true);
-            ObjectOutputStream oos = new ObjectOutputStream(fos) {
-            @Override
-            protected void writeStreamHeader() throws IOException {
-                reset();
-            }
-            }) {
-            String saveData = playerName + ", of level " + playerLevel + ", reached the " + level + "th level of the dungeon\n";
-            oos.write(saveData.getBytes());
-        } catch (IOException ex) {
-            System.out.println("Error saving game data: " + ex.getMessage());
-        }
+    private void renderFrame(Graphics g) {
+        g.setColor(Color.BLACK);
+        g.fillRect(0, 0, canvas.getWidth(), canvas.getHeight());
+        render(g, new Rectangle(0, 0, canvas.getWidth(), canvas.getHeight()));
     }
 
     /**
      * Il metodo per disegnare il gioco
+     *
+     * <p>
+     * Si disegna l'ultima fotografia pubblicata dalla simulazione, senza mai aspettarla.
+     * La telecamera segue il giocatore e dal clip si ricava il rettangolo di celle
+     * da disegnare, così il costo di un frame dipende dalla finestra e non dal livello.
+     *
+     * @param g il contesto grafico
+     * @param clip la zona da disegnare, in pixel
      */
-    @Override
-    protected void paintComponent(Graphics g) {
-        super.paintComponent(g);
-        g.setColor(Color.WHITE);
+    private void render(Graphics g, Rectangle clip) {
+        FrameSnapshot frame = partialFrame != null ? partialFrame : simulation.getSnapshot();
+        int playerRow = frame.getPlayerRow();
+        int playerCol = frame.getPlayerCol();
+        int portalRow = frame.getPortalRow();
+        int portalCol = frame.getPortalCol();
+
+        int cameraRow = frame.getCameraRow();
+        int cameraCol = frame.getCameraCol();
+        paintedCameraRow = cameraRow;
+        paintedCameraCol = cameraCol;
+        int firstRow = Math.max(0, cameraRow + clip.y / dim);
+        int lastRow = Math.min(frame.getRows() - 1, cameraRow + (clip.y + clip.height - 1) / dim);
+        int firstCol = Math.max(0, cameraCol + clip.x / dim);
+        int lastCol = Math.min(frame.getCols() - 1, cameraCol + (clip.x + clip.width - 1) / dim);
+
+        Graphics world = g.create();
+        try {
+            world.translate(-cameraCol * dim, -cameraRow * dim);
+            paintTiles(world, frame, firstRow, lastRow, firstCol, lastCol);
 
-        Font font = new Font("Monospaced", Font.PLAIN, dim);
-        g.setFont(font);
-        FontMetrics metrics = g.getFontMetrics(font);
+            // Disegnare il portale
+            sprites.draw(world, SpriteAtlas.Sprite.PORTAL, portalCol * dim, portalRow * dim);
 
-        // Impostiamo il colore per i muri
-        Color wallColor = new Color(64, 64, 64); // Grigio scuro
-        Color floorColor = new Color(128, 128, 128); // Grigio
+            paintEntities(world, frame, firstRow, lastRow, firstCol, lastCol);
 
-        for (int row = 0; row < rows; row++) {
-            for (int col = 0; col < cols; col++) {
-                if (map[row][col] == '#') {
-                    // Se la cella è un muro, la riempiamo con il colore grigio
-                    g.setColor(wallColor);
-                    g.fillRect(col * dim, row * dim, dim, dim);
-                } else if (row == playerRow && col == playerCol) {
-                    // Disegnare il giocatore
-                    g.setColor(floorColor);
-                    g.fillRect(col * dim, row * dim, dim, dim);
-                    g.drawImage(playerImage, col*dim, row*dim,dim,dim, this);
-                } else if (row == portalRow && col == portalCol) {
-                    // Disegnare il portale
-                    g.drawImage(portalImage, col*dim, row*dim,dim,dim, this);
-                } else {
-                    g.setColor(floorColor);
-                    g.fillRect(col * dim, row * dim, dim, dim);  // Riempie il pavimento con il colore grigio chiaro
-
-                    boolean isEnemy = false;
-                    for (Enemy enemy : gestoreNemici.getNemici()) {
-                        if (enemy.getRow() == row && enemy.getCol() == col) {
-                            isEnemy = true;
-                            switch (enemy.getTipo()) {
-                                case 'Z' -> g.drawImage(zombieImage, col * dim, row * dim, dim, dim, this);
-                                case 'S' -> g.drawImage(skeletonImage, col * dim, row * dim, dim, dim, this);
-                                case 'G' -> g.drawImage(ghoulImage, col*dim, row*dim, dim, dim, this);
-                                case 'W' -> g.drawImage(wraithImage, col*dim, row*dim, dim, dim, this);
-                                case 'V' -> g.drawImage(vampireImage, col * dim, row * dim, dim, dim, this);
-                                case 'L' -> g.drawImage(lichImage, col*dim, row*dim, dim, dim, this);
-                                case 'D' -> g.drawImage(dragonImage, col*dim, row*dim, dim, dim, this);
-                                default -> {
-                                }
-                            }
-                            break;
-                        }
-                    }
-                    boolean isItem = false;
-                    for (Item item : items) {
-                        if (item.getRow() == row && item.getCol() == col) {
-                            isItem = true;
-                            switch (item.getTipo()) {
-                                case 'H' -> g.drawImage(healthImage, col*dim, row*dim, dim, dim, this);
-                                case 'A' -> g.drawImage(armorImage, col*dim, row*dim, dim, dim, this);
-                                case 'W' -> g.drawImage(weaponImage, col*dim, row*dim, dim, dim, this);
-                                default -> {
-                                }
-                            }
-                        }
-                    }
-                    if (!isEnemy && !isItem) {
-                        g.setColor(floorColor);
-                        g.fillRect(col * dim, row * dim, dim, dim);  // Riempie il pavimento con il colore bianco
-                    }
-                }
+            if (frame.hasFog()) {
+                paintFog(world, frame, firstRow, lastRow, firstCol, lastCol);
+            }
+
+            // Disegnare il giocatore
+            if (playerRow != portalRow || playerCol != portalCol) {
+                sprites.draw(world, SpriteAtlas.Sprite.PLAYER, playerCol * dim, playerRow * dim);
             }
+        } finally {
+            world.dispose();
         }
 
         // Disegno della barra delle informazioni in alto
         g.setColor(Color.BLACK);
-        g.setFont(new Font("Monospaced", Font.BOLD, dim));
-        g.drawString("Vita: " + playerHealth+" Armatura: "+armor+" Danni: "+weaponDamage, 10, 20); // Mostra la vita in alto a sinistra
-        g.drawString("Exp: "+playerExp+" Livello Giocatore: "+playerLevel, 10, 40); // Mostra l'esperienza in alto a sinistra
-        String levelText = "Livello: " + level;
+        g.setFont(infoFont);
+        FontMetrics metrics = g.getFontMetrics(metricsFont);
+        if (clip.contains(0, 0, getWidth(), HUD_HEIGHT)) {
+            hudState = hudState(frame); // Solo se la barra è stata disegnata tutta
+        }
+        g.drawString("Vita: " + frame.getPlayerHealth()+" Armatura: "+frame.getArmor()+" Danni: "+frame.getWeaponDamage(), 10, 20); // Mostra la vita in alto a sinistra
+        g.drawString("Exp: "+frame.getPlayerExp()+" Livello Giocatore: "+frame.getPlayerLevel(), 10, 40); // Mostra l'esperienza in alto a sinistra
+        String levelText = "Livello: " + frame.getLevel();
         int levelTextWidth = metrics.stringWidth(levelText);
         g.drawString(levelText, width - levelTextWidth - 10, 20); // Mostra il livello in alto a destra considerando la dimensione del testo
 
-        if (gameOver || gameWin) {
+        boolean gameOver = frame.isGameOver();
+        if (gameOver || frame.isGameWin()) {
 
             g.setColor(Color.BLACK);
             g.fillRect(0, 0, cols * dim, rows * dim);
@@ -662,43 +549,20 @@ public final class RogueLikeGame extends JPanel implements KeyListener {
                 g.setColor(Color.GREEN);
             }
 
-            g.setFont(new Font("Monospaced", Font.BOLD, 42));
+            g.setFont(GAME_OVER_FONT);
             FontMetrics fm = g.getFontMetrics();
-            String message = gameOver ? "GAME OVER - LEVEL " + level : "GAME WIN";
+            String message = gameOver ? "GAME OVER - LEVEL " + frame.getLevel() : "GAME WIN";
             int x = (getWidth() - fm.stringWidth(message)) / 2;
             int y = (getHeight() - fm.getHeight()) / 2 + fm.getAscent();
             g.drawString(message, x, y);
 
             if (gameOver) {
-
-                saveInfo();
-
-                g.setFont(new Font("Monospaced", Font.BOLD, 24));
+                g.setFont(RESTART_FONT);
                 fm = g.getFontMetrics();
                 String restartMessage = "Premi R per ricominciare o ESC per uscire";
                 int restartX = (getWidth() - fm.stringWidth(restartMessage)) / 2;
                 int restartY = y + fm.getHeight() + 20; // Ensure no overlap by adding extra space
                 g.drawString(restartMessage, restartX, restartY);
-
-                addKeyListener(new KeyAdapter() {
-                    @Override
-                    public void keyPressed(KeyEvent e) {
-                        if (e.getKeyCode() == KeyEvent.VK_R) {
-                            level = 0;
-                            gameOver = false;
-                            gameWin = false;
-                            playerHealth = hpMax;
-                            playerExp = 0;
-                            playerLevel = 1;
-                            armor = 0;
-                            weaponDamage = 1;
-                            playerName = askPlayerName();
-                            nextLevel();
-                        } else if (e.getKeyCode() == KeyEvent.VK_ESCAPE) {
-                            System.exit(0);
-                        }
-                    }
-                });
             }
         }
     }
@@ -710,41 +574,134 @@ public final class RogueLikeGame extends JPanel implements KeyListener {
      */
     @Override
     public void keyPressed(KeyEvent e) {
-        if (gameOver || gameWin) return;
-
-        int newRow = playerRow;
-        int newCol = playerCol;
-
-        switch (e.getKeyCode()) {
-            case KeyEvent.VK_UP -> newRow--;
-            case KeyEvent.VK_DOWN -> newRow++;
-            case KeyEvent.VK_LEFT -> newCol--;
-            case KeyEvent.VK_RIGHT -> newCol++;
-            case KeyEvent.VK_SPACE -> {
-                if (playerRow == portalRow && playerCol == portalCol) {
-                    nextLevel();
-                    return;
-                }
+        boolean repeat = !heldKeys.add(e.getKeyCode());
+        FrameSnapshot frame = simulation.getSnapshot();
+        if (frame.isGameOver()) {
+            handleGameOverKey(e, repeat);
+            return;
+        }
+        if (frame.isGameWin() || frame.getCombat() != null) return;
+
+        if (e.getKeyCode() == KeyEvent.VK_F) {
+            if (repeat) return; // Tenere premuto F non fa lampeggiare la nebbia
+            fogOfWar = !fogOfWar; // Attiva o disattiva la nebbia di guerra
+            simulation.setFogOfWar(fogOfWar);
+            return;
+        }
+
+        if (e.getKeyCode() == KeyEvent.VK_F5 || e.getKeyCode() == KeyEvent.VK_F9) {
+            if (repeat) return;
+            if (e.getKeyCode() == KeyEvent.VK_F5) {
+                simulation.save(Path.of(SaveGame.DEFAULT_FILE)); // Salva la partita
+            } else {
+                simulation.load(Path.of(SaveGame.DEFAULT_FILE), Path.of(Autosave.DEFAULT_FILE)); // Carica la più recente
             }
+            return;
+        }
+
+        GameEngine.Action action = switch (e.getKeyCode()) {
+            case KeyEvent.VK_UP -> GameEngine.Action.UP;
+            case KeyEvent.VK_DOWN -> GameEngine.Action.DOWN;
+            case KeyEvent.VK_LEFT -> GameEngine.Action.LEFT;
+            case KeyEvent.VK_RIGHT -> GameEngine.Action.RIGHT;
+            case KeyEvent.VK_SPACE -> GameEngine.Action.DESCEND;
             case KeyEvent.VK_ESCAPE -> {
                 System.exit(0);
+                yield null;
             }
+            default -> GameEngine.Action.WAIT;
+        };
+
+        simulation.submit(action, repeat); // Il ridisegno arriva con la fotografia del turno
+    }
+
+    /**
+     * Il metodo per gestire i tasti della schermata di fine partita
+     * 
+     * @param e l'evento di tastiera
+     * @param repeat true se il tasto è tenuto premuto
+     */
+    private void handleGameOverKey(KeyEvent e, boolean repeat) {
+        if (e.getKeyCode() == KeyEvent.VK_R && !repeat && !restartRequested) {
+            restartRequested = true;
+            playerName = askPlayerName();
+            simulation.restart();
+        } else if (e.getKeyCode() == KeyEvent.VK_ESCAPE) {
+            System.exit(0);
         }
+    }
 
-        if (newRow >= 0 && newRow < rows && newCol >= 0 && newCol < cols && map[newRow][newCol] == '.') {
-            playerRow = newRow;
-            playerCol = newCol;
+    /**
+     * Il metodo per ridisegnare solo le celle cambiate nel turno, più la barra delle informazioni
+     * se i valori mostrati sono cambiati
+     * 
+     * <p>
+     * Ogni rettangolo raccolto dai turni viene disegnato subito con il suo clip, invece di
+     * passare da repaint() che unirebbe tutte le zone in un unico rettangolo. Se la telecamera
+     * si è spostata o è cambiato tutto il livello si ridisegna l'intero pannello.
+     */
+    private void repaintDirty() {
+        if (activeRenderer != null) {
+            dirty.clear(); // Il thread di disegno ridisegna tutto a ogni frame
+            return;
+        }
+        FrameSnapshot frame = simulation.getSnapshot();
+        int cameraRow = frame.getCameraRow();
+        int cameraCol = frame.getCameraCol();
+        boolean scrolled = cameraRow != paintedCameraRow || cameraCol != paintedCameraCol;
+        if (dirty.isAll() || scrolled || !isShowing()) {
+            dirty.clear();
+            repaint();
+            return;
+        }
 
-            handleItemPickup();  // Controlla se il giocatore ha raccolto un oggetto
-            moveEnemies();
-            if (checkGameOver()) gameOver = true;
+        // I valori da mostrare si leggono prima di disegnare, perché render aggiorna hudState
+        long hud = hudState(frame);
+        boolean hudTouched = false;
+        Rectangle bounds = new Rectangle(0, 0, getWidth(), getHeight());
+        partialFrame = frame;
+        try {
+            for (int i = 0; i < dirty.size(); i++) {
+                int[] cells = dirty.get(i);
+                Rectangle area = new Rectangle((cells[1] - cameraCol) * dim, (cells[0] - cameraRow) * dim,
+                        (cells[3] - cells[1] + 1) * dim, (cells[2] - cells[0] + 1) * dim).intersection(bounds);
+                if (!area.isEmpty()) {
+                    paintImmediately(area);
+                    hudTouched |= area.y < HUD_HEIGHT; // La barra è stata disegnata solo in parte
+                }
+            }
+            if (hud != hudState || hudTouched) {
+                paintImmediately(0, 0, getWidth(), HUD_HEIGHT);
+            }
+        } finally {
+            partialFrame = null;
         }
+        dirty.clear();
+        if (simulation.getSnapshot().getCameraRow() != cameraRow || simulation.getSnapshot().getCameraCol() != cameraCol) {
+            repaint(); // Nel frattempo la telecamera si è spostata: il prossimo disegno è completo
+        }
+    }
 
-        repaint();
+    /**
+     * Il metodo per riassumere in un numero i valori della barra delle informazioni
+     * 
+     * @param frame la fotografia da riassumere
+     *
+     * @return un valore che cambia quando cambia uno dei valori mostrati
+     */
+    private long hudState(FrameSnapshot frame) {
+        long state = frame.getPlayerHealth();
+        state = state * 31 + frame.getArmor();
+        state = state * 31 + frame.getWeaponDamage();
+        state = state * 31 + frame.getPlayerExp();
+        state = state * 31 + frame.getPlayerLevel();
+        return state * 31 + frame.getLevel();
     }
 
     @Override
-    public void keyReleased(KeyEvent e) { }
+    public void keyReleased(KeyEvent e) {
+        heldKeys.remove(e.getKeyCode());
+    }
     @Override
     public void keyTyped(KeyEvent e) { }
 
@@ -755,7 +712,57 @@ public final class RogueLikeGame extends JPanel implements KeyListener {
      */
     public void start(RogueLikeGame gamePanel) {
         playerName = askPlayerName();
-        gamePanel.requestFocusInWindow(); // Ensure the game panel has focus for key events
+        if (ActiveRenderer.isRequested()) {
+            gamePanel.startActiveRendering();
+        }
+        gamePanel.keyTarget().requestFocusInWindow(); // Ensure the game panel has focus for key events
+    }
+
+    /**
+     * Il metodo per passare al disegno attivo su una tela che copre il pannello
+     * 
+     * <p>
+     * Se l'accelerazione non è disponibile la tela viene tolta e si resta al disegno Swing.
+     */
+    private void startActiveRendering() {
+        canvas = new Canvas();
+        canvas.setIgnoreRepaint(true);
+        canvas.setFocusable(true);
+        canvas.addKeyListener(this);
+        setLayout(new BorderLayout());
+        add(canvas, BorderLayout.CENTER);
+        validate();
+
+        ActiveRenderer renderer = new ActiveRenderer(canvas, this::renderFrame, ActiveRenderer.requestedFps());
+        if (renderer.start()) {
+            activeRenderer = renderer;
+        } else {
+            System.out.println("Disegno attivo non disponibile, si usa Swing");
+            remove(canvas);
+            canvas = null;
+            validate();
+        }
+    }
+
+    /**
+     * Il metodo per sapere quale componente riceve i tasti
+     * 
+     * @return la tela del disegno attivo, o il pannello
+     */
+    private Component keyTarget() {
+        return canvas != null ? canvas : this;
+    }
+
+    /**
+     * Il metodo per fermare il thread di disegno quando il pannello viene tolto dalla finestra
+     */
+    @Override
+    public void removeNotify() {
+        if (activeRenderer != null) {
+            activeRenderer.stop();
+            activeRenderer = null;
+        }
+        super.removeNotify();
     }
     
     /**
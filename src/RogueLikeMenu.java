@@ -2,9 +2,6 @@ import java.awt.*;
 import java.awt.event.KeyAdapter;
 import java.awt.event.KeyEvent;
 import java.awt.image.BufferedImage;
-import java.io.File;
-import java.io.IOException;
-import javax.imageio.ImageIO;
 import javax.swing.*;
 
 public class RogueLikeMenu extends JPanel {
@@ -17,7 +14,9 @@ public class RogueLikeMenu extends JPanel {
     /** La altezza del menù */
     @SuppressWarnings("FieldMayBeFinal")
     private int height;
-    /** Sfondo del menù */
+    /** Il file dello sfondo del menù */
+    private static final String BACKGROUND = "src/Menu/dungeonSlayer.png";
+    /** Sfondo del menù, già ridimensionato alla finestra */
     public BufferedImage background; // Changed to public to allow access
 
     /**
@@ -57,12 +56,11 @@ public class RogueLikeMenu extends JPanel {
     }
 
     /**
-     * Carica lo sfondo del menù
+     * Carica lo sfondo del menù, ridimensionato una volta sola alle dimensioni della finestra
      */
     private void loadBackground() {
-        try {
-            background = ImageIO.read(new File("src/Menu/dungeonSlayer.png"));
-        } catch (IOException e) {
+        background = SpriteAtlas.scaled(BACKGROUND, width, height);
+        if (background == null) {
             System.out.println("Errore nel caricamento dell'immagine di sfondo");
         }
     }
@@ -84,7 +82,7 @@ public class RogueLikeMenu extends JPanel {
      */
     private void startGame() {
         frame.getContentPane().removeAll(); // Rimuove il menù
-        RogueLikeGame gamePanel = new RogueLikeGame(width, height); // Pannello del gioco
+        RogueLikeGame gamePanel = RogueLikeGame.fromSystemProperties(width, height); // Pannello del gioco
         frame.add(gamePanel); // Aggiunge il gioco alla finestra
         frame.revalidate();
         frame.repaint();
@@ -97,7 +95,7 @@ public class RogueLikeMenu extends JPanel {
         Graphics2D g2d = (Graphics2D) g;
         g2d.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
 
-        g2d.drawImage(background, 0, 0, width, height, this);
+        g2d.drawImage(background, 0, 0, this);
     
         // Disegno delle istruzioni
         g2d.setFont(new Font("Arial", Font.PLAIN, Math.min(width, height) / 25));
@@ -0,0 +1,114 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Il generatore classico: stanze rettangolari a caso, collegate in catena da corridoi a L
+ *
+ * <p>
+ * Si tentano {@value #ROOM_COUNT} stanze e si scartano quelle che si sovrappongono a una già
+ * scavata. Pochi tentativi bastano per un blocco di 64 celle di lato; su una mappa grande le
+ * stanze restano poche e piccole, per quello ci sono {@link BspGenerator} e {@link CaveGenerator}.
+ */
+public class RoomsGenerator implements MapGenerator {
+    /** Il numero di stanze tentate */
+    private static final int ROOM_COUNT = 8;
+
+    /**
+     * Una stanza rettangolare
+     *
+     * @param x colonna dell'angolo in alto a sinistra
+     * @param y riga dell'angolo in alto a sinistra
+     * @param width larghezza
+     * @param height altezza
+     */
+    private record Room(int x, int y, int width, int height) {
+        /**
+         * Controlla se due stanze si sovrappongono
+         *
+         * @param other l'altra stanza
+         *
+         * @return true se le stanze hanno almeno una cella in comune
+         */
+        boolean intersects(Room other) {
+            return x < other.x + other.width && other.x < x + width
+                    && y < other.y + other.height && other.y < y + height;
+        }
+
+        /**
+         * La colonna del centro
+         *
+         * @return la colonna
+         */
+        int centerX() {
+            return x + width / 2;
+        }
+
+        /**
+         * La riga del centro
+         *
+         * @return la riga
+         */
+        int centerY() {
+            return y + height / 2;
+        }
+    }
+
+    @Override
+    public int[] generate(DungeonMap map, Random random) {
+        int width = map.getCols();
+        int height = map.getRows();
+        List<Room> rooms = new ArrayList<>();
+        for (int i = 0; i < ROOM_COUNT; i++) {
+            int w = Math.min(random.nextInt(10 - 5 + 1) + 5, width - 2);
+            int h = Math.min(random.nextInt(10 - 5 + 1) + 5, height - 2);
+            if (w < 1 || h < 1) {
+                break; // Mappa troppo piccola per una stanza
+            }
+            int x = random.nextInt(width - w - 1) + 1;
+            int y = random.nextInt(height - h - 1) + 1;
+
+            Room newRoom = new Room(x, y, w, h);
+            boolean overlaps = false;
+            for (Room room : rooms) {
+                if (newRoom.intersects(room)) {
+                    overlaps = true;
+                    break;
+                }
+            }
+            if (!overlaps) {
+                rooms.add(newRoom);
+                map.carveRect(x, y, w, h);
+            }
+        }
+
+        // Collega le stanze con corridoi
+        for (int i = 1; i < rooms.size(); i++) {
+            Room prevRoom = rooms.get(i - 1);
+            Room currRoom = rooms.get(i);
+            if (random.nextBoolean()) {
+                map.carveRow(prevRoom.centerY(), prevRoom.centerX(), currRoom.centerX());
+                map.carveColumn(currRoom.centerX(), prevRoom.centerY(), currRoom.centerY());
+            } else {
+                map.carveColumn(prevRoom.centerX(), prevRoom.centerY(), currRoom.centerY());
+                map.carveRow(currRoom.centerY(), prevRoom.centerX(), currRoom.centerX());
+            }
+        }
+
+        int[] anchors = new int[rooms.size()];
+        for (int i = 0; i < anchors.length; i++) {
+            anchors[i] = rooms.get(i).centerY() * width + rooms.get(i).centerX();
+        }
+        return anchors;
+    }
+
+    @Override
+    public int getId() {
+        return ROOMS;
+    }
+
+    @Override
+    public String getName() {
+        return "rooms";
+    }
+}
@@ -0,0 +1,723 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.BufferUnderflowException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Il formato binario dei salvataggi
+ *
+ * <p>
+ * Un file di salvataggio comincia con un'intestazione (numero magico, versione, righe e colonne
+ * del livello) seguita da record. Il primo è sempre un punto di controllo con lo stato completo;
+ * gli altri, se ci sono, sono differenze da applicare in ordine, una per turno. Ogni record ha
+ * tipo, lunghezza e CRC: un record scritto a metà da una chiusura improvvisa viene ignorato
+ * e si carica lo stato dell'ultimo turno intero.
+ *
+ * <p>
+ * I muri non si salvano: il livello si rigenera identico dal suo seme. Della mappa si salvano
+ * le celle esplorate, un bit per cella in pagine di 64 per 64 come nel {@link FieldOfView},
+ * compresse con Deflate. Statistiche ed entità sono interi a lunghezza variabile,
+ * quindi di solito un byte o due l'uno.
+ */
+public final class SaveGame {
+    /** Il file predefinito del salvataggio manuale */
+    public static final String DEFAULT_FILE = "save.dat";
+
+    /** Il numero magico all'inizio del file, "RSAV" */
+    private static final int MAGIC = 0x52534156;
+    /**
+     * La versione del formato; la 2 ha un generatore per ogni flusso di {@link GameRandom},
+     * la 3 salva anche il {@link MapGenerator} dei livelli
+     */
+    private static final int VERSION = 3;
+    /** La dimensione dell'intestazione in byte */
+    private static final int HEADER_SIZE = 16;
+    /** La dimensione dell'inizio di un record: tipo, lunghezza e CRC */
+    static final int RECORD_HEADER_SIZE = 9;
+    /** Il tipo di record con lo stato completo */
+    private static final byte CHECKPOINT = 1;
+    /** Il tipo di record con le differenze dal turno precedente */
+    private static final byte DELTA = 2;
+
+    /** Le posizioni dei valori nelle statistiche salvate */
+    static final int PLAYER_ROW = 0, PLAYER_COL = 1, HP_MAX = 2, HEALTH = 3, ARMOR = 4, WEAPON = 5,
+            EXP = 6, PLAYER_LEVEL = 7, PORTAL_ROW = 8, PORTAL_COL = 9, LEVEL = 10, GAME_OVER = 11, GAME_WIN = 12,
+            GENERATOR = 13;
+    /** Il numero di statistiche salvate */
+    static final int STAT_COUNT = 14;
+    /** Il numero di generatori casuali salvati */
+    static final int RANDOM_COUNT = GameRandom.STREAM_COUNT;
+    /** I valori salvati per ogni nemico: riga, colonna, tipo, vita, danni, esperienza */
+    static final int ENEMY_FIELDS = 6;
+    /** I valori salvati per ogni oggetto: riga, colonna, tipo, valore */
+    static final int ITEM_FIELDS = 4;
+    /**
+     * I valori salvati per il combattimento in corso: posizione del nemico nella lista, vita e
+     * armatura del giocatore, vita del nemico, tiro del giocatore e del nemico (0 se non ancora fatto)
+     */
+    static final int COMBAT_FIELDS = 6;
+    /** Il numero di long di una pagina di celle esplorate */
+    private static final int PAGE_LONGS = 64;
+
+    /**
+     * Lo stato di una partita in un turno, catturato dal {@link GameEngine}
+     *
+     * @param rows il numero di righe del livello
+     * @param cols il numero di colonne del livello
+     * @param seed il seme del livello
+     * @param stats le statistiche, nelle posizioni di {@link #PLAYER_ROW} e seguenti
+     * @param randoms gli stati dei generatori casuali
+     * @param enemies i nemici, {@value #ENEMY_FIELDS} valori ciascuno
+     * @param items gli oggetti, {@value #ITEM_FIELDS} valori ciascuno
+     * @param combat il combattimento in corso, {@value #COMBAT_FIELDS} valori, o null
+     * @param pageIndexes gli indici delle pagine di celle esplorate
+     * @param pages le pagine, nello stesso ordine degli indici
+     * @param checkpoint true se ci sono tutte le pagine, false se ci sono solo quelle cambiate
+     *                   dallo stato precedente
+     */
+    public record State(int rows, int cols, long seed, int[] stats, long[] randoms, int[] enemies, int[] items,
+            int[] combat, int[] pageIndexes, long[][] pages, boolean checkpoint) {
+
+        /**
+         * Controlla se la partita salvata è finita
+         *
+         * @return true se il giocatore è morto
+         */
+        public boolean isGameOver() {
+            return stats[GAME_OVER] != 0;
+        }
+
+        /**
+         * Controlla se due stati descrivono la stessa partita nello stesso turno
+         *
+         * @param other l'altro stato
+         *
+         * @return true se livello, statistiche, generatori, entità e celle esplorate coincidono
+         */
+        public boolean matches(State other) {
+            return rows == other.rows && cols == other.cols && seed == other.seed
+                    && Arrays.equals(stats, other.stats) && Arrays.equals(randoms, other.randoms)
+                    && Arrays.equals(enemies, other.enemies) && Arrays.equals(items, other.items)
+                    && Arrays.equals(combat, other.combat) && Arrays.equals(pageIndexes, other.pageIndexes)
+                    && Arrays.deepEquals(pages, other.pages);
+        }
+    }
+
+    /**
+     * Costruttore privato, la classe ha solo metodi statici
+     */
+    private SaveGame() {
+    }
+
+    /**
+     * Scrive un salvataggio con il solo punto di controllo, passando da un file temporaneo
+     *
+     * @param path il file da creare o sostituire
+     * @param state lo stato, con tutte le pagine
+     *
+     * @throws IOException se il file non si può scrivere
+     */
+    public static void write(Path path, State state) throws IOException {
+        Path tmp = path.resolveSibling(path.getFileName() + ".tmp");
+        try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            writeHeader(out, state);
+            writeFully(out, ByteBuffer.wrap(checkpointRecord(state)));
+            out.force(true);
+        }
+        Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Legge un salvataggio: il punto di controllo più tutte le differenze intere che lo seguono
+     *
+     * @param path il file
+     *
+     * @return lo stato dell'ultimo turno salvato, con tutte le pagine
+     *
+     * @throws IOException se il file non si può leggere o non è un salvataggio
+     */
+    public static State read(Path path) throws IOException {
+        ByteBuffer file = ByteBuffer.wrap(Files.readAllBytes(path));
+        if (file.remaining() < HEADER_SIZE || file.getInt() != MAGIC || file.getInt() != VERSION) {
+            throw new IOException("Il file non è un salvataggio: " + path);
+        }
+        int rows = file.getInt();
+        int cols = file.getInt();
+        State state = null;
+        Map<Integer, long[]> pages = new TreeMap<>();
+        while (file.remaining() >= RECORD_HEADER_SIZE) {
+            byte kind = file.get();
+            int length = file.getInt();
+            int expected = file.getInt();
+            if (length < 0 || length > file.remaining()) {
+                break; // Record scritto a metà
+            }
+            ByteBuffer payload = file.slice(file.position(), length);
+            file.position(file.position() + length);
+            if (crc(payload) != expected) {
+                break;
+            }
+            try {
+                if (kind == CHECKPOINT) {
+                    pages.clear();
+                    state = decodeCheckpoint(rows, cols, payload, pages);
+                } else if (kind == DELTA && state != null) {
+                    state = decodeDelta(state, payload, pages);
+                } else {
+                    break;
+                }
+            } catch (BufferUnderflowException | DataFormatException | IndexOutOfBoundsException e) {
+                throw new IOException("Salvataggio danneggiato: " + path, e);
+            }
+        }
+        if (state == null) {
+            throw new IOException("Il salvataggio non contiene un punto di controllo: " + path);
+        }
+        return withPages(state, pages);
+    }
+
+    /**
+     * Legge un punto di controllo scritto da {@link #checkpointRecord(State)}, per esempio dentro un diario
+     *
+     * @param in il buffer, posizionato all'inizio del record e spostato alla sua fine
+     * @param rows il numero di righe del livello
+     * @param cols il numero di colonne del livello
+     *
+     * @return lo stato, con tutte le pagine
+     *
+     * @throws IOException se il record è troncato o danneggiato
+     */
+    static State readCheckpoint(ByteBuffer in, int rows, int cols) throws IOException {
+        if (in.remaining() < RECORD_HEADER_SIZE) {
+            throw new IOException("Punto di controllo troncato");
+        }
+        byte kind = in.get();
+        int length = in.getInt();
+        int expected = in.getInt();
+        if (kind != CHECKPOINT || length < 0 || length > in.remaining()) {
+            throw new IOException("Punto di controllo non valido");
+        }
+        ByteBuffer payload = in.slice(in.position(), length);
+        in.position(in.position() + length);
+        if (crc(payload) != expected) {
+            throw new IOException("Punto di controllo danneggiato");
+        }
+        Map<Integer, long[]> pages = new TreeMap<>();
+        try {
+            return withPages(decodeCheckpoint(rows, cols, payload, pages), pages);
+        } catch (BufferUnderflowException | DataFormatException | IndexOutOfBoundsException e) {
+            throw new IOException("Punto di controllo danneggiato", e);
+        }
+    }
+
+    /**
+     * Completa uno stato con le pagine di celle esplorate lette
+     *
+     * @param state lo stato senza pagine
+     * @param pages le pagine per indice
+     *
+     * @return lo stato con tutte le pagine
+     */
+    private static State withPages(State state, Map<Integer, long[]> pages) {
+        int[] pageIndexes = new int[pages.size()];
+        long[][] pageBits = new long[pages.size()][];
+        int n = 0;
+        for (Map.Entry<Integer, long[]> entry : pages.entrySet()) {
+            pageIndexes[n] = entry.getKey();
+            pageBits[n++] = entry.getValue();
+        }
+        return new State(state.rows(), state.cols(), state.seed(), state.stats(), state.randoms(), state.enemies(),
+                state.items(), state.combat(), pageIndexes, pageBits, true);
+    }
+
+    /**
+     * Calcola il CRC del contenuto di un record
+     *
+     * @param payload il contenuto, che non viene spostato
+     *
+     * @return il CRC
+     */
+    private static int crc(ByteBuffer payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload.duplicate());
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Scrive l'intestazione di un file di salvataggio
+     *
+     * @param out il canale, posizionato all'inizio
+     * @param state lo stato da cui prendere le dimensioni del livello
+     *
+     * @throws IOException se il file non si può scrivere
+     */
+    static void writeHeader(FileChannel out, State state) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+        header.putInt(MAGIC).putInt(VERSION).putInt(state.rows()).putInt(state.cols());
+        header.flip();
+        writeFully(out, header);
+    }
+
+    /**
+     * Codifica un punto di controllo come record
+     *
+     * @param state lo stato, con tutte le pagine
+     *
+     * @return il record
+     */
+    static byte[] checkpointRecord(State state) {
+        Encoder out = new Encoder();
+        out.writeLong(state.seed());
+        writeInts(out, state.stats());
+        for (long random : state.randoms()) {
+            out.writeLong(random);
+        }
+        writeInts(out, state.enemies());
+        writeInts(out, state.items());
+        writeCombat(out, state.combat());
+        writePages(out, state.pageIndexes(), state.pages());
+        return out.toRecord(CHECKPOINT);
+    }
+
+    /**
+     * Codifica come record le differenze tra due stati consecutivi dello stesso livello
+     *
+     * @param previous lo stato del turno precedente
+     * @param current lo stato del turno, con le sole pagine cambiate
+     *
+     * @return il record
+     */
+    static byte[] deltaRecord(State previous, State current) {
+        Encoder out = new Encoder();
+        int[] stats = current.stats();
+        int statMask = 0;
+        for (int i = 0; i < STAT_COUNT; i++) {
+            if (stats[i] != previous.stats()[i]) {
+                statMask |= 1 << i;
+            }
+        }
+        out.writeVarint(statMask);
+        for (int i = 0; i < STAT_COUNT; i++) {
+            if ((statMask & (1 << i)) != 0) {
+                out.writeVarint(zigzag(stats[i]));
+            }
+        }
+
+        int randomMask = 0;
+        for (int i = 0; i < RANDOM_COUNT; i++) {
+            if (current.randoms()[i] != previous.randoms()[i]) {
+                randomMask |= 1 << i;
+            }
+        }
+        out.writeVarint(randomMask);
+        for (int i = 0; i < RANDOM_COUNT; i++) {
+            if ((randomMask & (1 << i)) != 0) {
+                out.writeLong(current.randoms()[i]);
+            }
+        }
+
+        int[] enemies = current.enemies();
+        int[] before = previous.enemies();
+        if (Arrays.equals(enemies, before)) {
+            out.writeVarint(0);
+        } else if (onlyMoved(before, enemies)) {
+            // Stessi nemici, cambiano solo le posizioni: un passo per nemico
+            out.writeVarint(1);
+            for (int i = 0; i < enemies.length; i += ENEMY_FIELDS) {
+                out.writeVarint(zigzag(enemies[i] - before[i]));
+                out.writeVarint(zigzag(enemies[i + 1] - before[i + 1]));
+            }
+        } else {
+            out.writeVarint(2);
+            writeInts(out, enemies);
+        }
+
+        if (Arrays.equals(current.items(), previous.items())) {
+            out.writeVarint(0);
+        } else {
+            out.writeVarint(1);
+            writeInts(out, current.items());
+        }
+
+        if (Arrays.equals(current.combat(), previous.combat())) {
+            out.writeVarint(0);
+        } else {
+            out.writeVarint(1);
+            writeCombat(out, current.combat());
+        }
+
+        writePages(out, current.pageIndexes(), current.pages());
+        return out.toRecord(DELTA);
+    }
+
+    /**
+     * Controlla se tra due elenchi di nemici cambiano solo le posizioni
+     *
+     * @param before i nemici prima
+     * @param after i nemici dopo
+     *
+     * @return true se i nemici sono gli stessi, nello stesso ordine
+     */
+    private static boolean onlyMoved(int[] before, int[] after) {
+        if (before.length != after.length) {
+            return false;
+        }
+        for (int i = 0; i < after.length; i += ENEMY_FIELDS) {
+            for (int f = 2; f < ENEMY_FIELDS; f++) {
+                if (before[i + f] != after[i + f]) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Legge un punto di controllo
+     *
+     * @param rows il numero di righe del livello
+     * @param cols il numero di colonne del livello
+     * @param in il contenuto del record
+     * @param pages le pagine di celle esplorate, riempite qui
+     *
+     * @return lo stato, senza pagine
+     *
+     * @throws DataFormatException se le pagine compresse sono danneggiate
+     */
+    private static State decodeCheckpoint(int rows, int cols, ByteBuffer in, Map<Integer, long[]> pages)
+            throws DataFormatException {
+        long seed = in.getLong();
+        int[] stats = readInts(in);
+        if (stats.length != STAT_COUNT) {
+            throw new DataFormatException("Statistiche inattese: " + stats.length);
+        }
+        long[] randoms = new long[RANDOM_COUNT];
+        for (int i = 0; i < RANDOM_COUNT; i++) {
+            randoms[i] = in.getLong();
+        }
+        int[] enemies = readInts(in);
+        int[] items = readInts(in);
+        int[] combat = readCombat(in);
+        readPages(in, pages);
+        return new State(rows, cols, seed, stats, randoms, enemies, items, combat, null, null, true);
+    }
+
+    /**
+     * Applica a uno stato le differenze di un record
+     *
+     * @param previous lo stato del turno precedente
+     * @param in il contenuto del record
+     * @param pages le pagine di celle esplorate, aggiornate qui
+     *
+     * @return lo stato del turno, senza pagine
+     *
+     * @throws DataFormatException se il record è danneggiato
+     */
+    private static State decodeDelta(State previous, ByteBuffer in, Map<Integer, long[]> pages) throws DataFormatException {
+        int[] stats = previous.stats().clone();
+        int statMask = readVarint(in);
+        for (int i = 0; i < STAT_COUNT; i++) {
+            if ((statMask & (1 << i)) != 0) {
+                stats[i] = unzigzag(readVarint(in));
+            }
+        }
+
+        long[] randoms = previous.randoms().clone();
+        int randomMask = readVarint(in);
+        for (int i = 0; i < RANDOM_COUNT; i++) {
+            if ((randomMask & (1 << i)) != 0) {
+                randoms[i] = in.getLong();
+            }
+        }
+
+        int[] enemies = previous.enemies();
+        switch (readVarint(in)) {
+            case 0 -> { }
+            case 1 -> {
+                enemies = enemies.clone();
+                for (int i = 0; i < enemies.length; i += ENEMY_FIELDS) {
+                    enemies[i] += unzigzag(readVarint(in));
+                    enemies[i + 1] += unzigzag(readVarint(in));
+                }
+            }
+            case 2 -> enemies = readInts(in);
+            default -> throw new DataFormatException("Nemici non riconosciuti");
+        }
+
+        int[] items = readVarint(in) == 0 ? previous.items() : readInts(in);
+        int[] combat = readVarint(in) == 0 ? previous.combat() : readCombat(in);
+        readPages(in, pages);
+        return new State(previous.rows(), previous.cols(), previous.seed(), stats, randoms, enemies, items, combat,
+                null, null, true);
+    }
+
+    /**
+     * Scrive un elenco di interi: la lunghezza e poi i valori
+     *
+     * @param out la destinazione
+     * @param values i valori
+     */
+    private static void writeInts(Encoder out, int[] values) {
+        out.writeVarint(values.length);
+        for (int value : values) {
+            out.writeVarint(zigzag(value));
+        }
+    }
+
+    /**
+     * Legge un elenco di interi scritto da {@link #writeInts(Encoder, int[])}
+     *
+     * @param in il contenuto del record
+     *
+     * @return i valori
+     *
+     * @throws DataFormatException se la lunghezza non è credibile
+     */
+    private static int[] readInts(ByteBuffer in) throws DataFormatException {
+        int length = readVarint(in);
+        if (length < 0 || length > in.remaining()) {
+            throw new DataFormatException("Lunghezza non valida: " + length);
+        }
+        int[] values = new int[length];
+        for (int i = 0; i < length; i++) {
+            values[i] = unzigzag(readVarint(in));
+        }
+        return values;
+    }
+
+    /**
+     * Scrive il combattimento in corso, o la sua assenza
+     *
+     * @param out la destinazione
+     * @param combat i valori del combattimento, o null
+     */
+    private static void writeCombat(Encoder out, int[] combat) {
+        if (combat == null) {
+            out.writeVarint(0);
+        } else {
+            writeInts(out, combat);
+        }
+    }
+
+    /**
+     * Legge il combattimento in corso
+     *
+     * @param in il contenuto del record
+     *
+     * @return i valori del combattimento, o null
+     *
+     * @throws DataFormatException se i valori sono danneggiati
+     */
+    private static int[] readCombat(ByteBuffer in) throws DataFormatException {
+        int[] combat = readInts(in);
+        if (combat.length == 0) {
+            return null;
+        }
+        if (combat.length != COMBAT_FIELDS) {
+            throw new DataFormatException("Combattimento non valido");
+        }
+        return combat;
+    }
+
+    /**
+     * Scrive le pagine di celle esplorate compresse con Deflate
+     *
+     * @param out la destinazione
+     * @param indexes gli indici delle pagine
+     * @param pages le pagine
+     */
+    private static void writePages(Encoder out, int[] indexes, long[][] pages) {
+        out.writeVarint(indexes.length);
+        if (indexes.length == 0) {
+            return;
+        }
+        ByteBuffer raw = ByteBuffer.allocate(indexes.length * (4 + PAGE_LONGS * 8));
+        for (int i = 0; i < indexes.length; i++) {
+            raw.putInt(indexes[i]);
+            for (long row : pages[i]) {
+                raw.putLong(row);
+            }
+        }
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(raw.array());
+            deflater.finish();
+            byte[] chunk = new byte[8192];
+            ByteArrayOutputStream compressed = new ByteArrayOutputStream();
+            while (!deflater.finished()) {
+                int n = deflater.deflate(chunk);
+                compressed.write(chunk, 0, n);
+            }
+            out.writeVarint(compressed.size());
+            out.writeBytes(compressed.toByteArray());
+        } finally {
+            deflater.end();
+        }
+    }
+
+    /**
+     * Legge le pagine di celle esplorate e le mette nella mappa, sostituendo quelle che c'erano
+     *
+     * @param in il contenuto del record
+     * @param pages le pagine per indice
+     *
+     * @throws DataFormatException se i dati compressi sono danneggiati
+     */
+    private static void readPages(ByteBuffer in, Map<Integer, long[]> pages) throws DataFormatException {
+        int count = readVarint(in);
+        if (count == 0) {
+            return;
+        }
+        int length = readVarint(in);
+        if (count < 0 || length < 0 || length > in.remaining()) {
+            throw new DataFormatException("Pagine non valide");
+        }
+        byte[] compressed = new byte[length];
+        in.get(compressed);
+        ByteBuffer raw = ByteBuffer.allocate(count * (4 + PAGE_LONGS * 8));
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(compressed);
+            while (raw.hasRemaining() && !inflater.finished()) {
+                int n = inflater.inflate(raw.array(), raw.position(), raw.remaining());
+                if (n == 0 && (inflater.needsInput() || inflater.needsDictionary())) {
+                    throw new DataFormatException("Pagine troncate");
+                }
+                raw.position(raw.position() + n);
+            }
+        } finally {
+            inflater.end();
+        }
+        raw.flip();
+        for (int i = 0; i < count; i++) {
+            int index = raw.getInt();
+            long[] page = new long[PAGE_LONGS];
+            for (int r = 0; r < PAGE_LONGS; r++) {
+                page[r] = raw.getLong();
+            }
+            pages.put(index, page);
+        }
+    }
+
+    /**
+     * Trasforma un intero con segno in uno senza segno piccolo quando il valore è vicino a zero
+     *
+     * @param value il valore
+     *
+     * @return il valore codificato
+     */
+    private static int zigzag(int value) {
+        return (value << 1) ^ (value >> 31);
+    }
+
+    /**
+     * Inverte {@link #zigzag(int)}
+     *
+     * @param value il valore codificato
+     *
+     * @return il valore
+     */
+    private static int unzigzag(int value) {
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    /**
+     * Legge un intero a lunghezza variabile, sette bit per byte
+     *
+     * @param in il contenuto del record
+     *
+     * @return il valore
+     *
+     * @throws DataFormatException se l'intero è più lungo di cinque byte
+     */
+    private static int readVarint(ByteBuffer in) throws DataFormatException {
+        int value = 0;
+        for (int shift = 0; shift < 35; shift += 7) {
+            byte b = in.get();
+            value |= (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new DataFormatException("Intero troppo lungo");
+    }
+
+    /**
+     * Scrive tutto il buffer nel canale
+     *
+     * @param out il canale
+     * @param buffer il buffer
+     *
+     * @throws IOException se il file non si può scrivere
+     */
+    static void writeFully(FileChannel out, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+    }
+
+    /**
+     * Il contenuto di un record in costruzione
+     */
+    private static final class Encoder extends ByteArrayOutputStream {
+        /**
+         * Costruttore di Encoder, lascia lo spazio per l'inizio del record
+         */
+        Encoder() {
+            super(256);
+            count = RECORD_HEADER_SIZE;
+        }
+
+        /**
+         * Scrive un intero a lunghezza variabile, sette bit per byte
+         *
+         * @param value il valore, trattato come senza segno
+         */
+        void writeVarint(int value) {
+            while ((value & ~0x7F) != 0) {
+                write((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            write(value);
+        }
+
+        /**
+         * Scrive un long in otto byte
+         *
+         * @param value il valore
+         */
+        void writeLong(long value) {
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                write((int) (value >>> shift));
+            }
+        }
+
+        /**
+         * Completa l'inizio del record con tipo, lunghezza e CRC del contenuto
+         *
+         * @param kind il tipo di record
+         *
+         * @return il record
+         */
+        byte[] toRecord(byte kind) {
+            CRC32 crc = new CRC32();
+            crc.update(buf, RECORD_HEADER_SIZE, count - RECORD_HEADER_SIZE);
+            ByteBuffer header = ByteBuffer.wrap(buf, 0, RECORD_HEADER_SIZE);
+            header.put(kind).putInt(count - RECORD_HEADER_SIZE).putInt((int) crc.getValue());
+            return toByteArray();
+        }
+    }
+}
@@ -0,0 +1,33 @@
+import java.util.Comparator;
+
+/**
+ * Il risultato di una partita in classifica
+ *
+ * @param name il nome del giocatore
+ * @param playerLevel il livello raggiunto dal giocatore
+ * @param dungeonLevel il livello del dungeon raggiunto
+ * @param timestamp l'istante della fine della partita in millisecondi, 0 se sconosciuto
+ */
+public record Score(String name, int playerLevel, int dungeonLevel, long timestamp) {
+    /**
+     * Costruttore di Score, il nome mancante viene scritto come nel vecchio file di testo
+     */
+    public Score {
+        name = String.valueOf(name);
+    }
+
+    /** L'ordine della classifica: più in profondità, poi livello più alto, poi chi è arrivato prima */
+    public static final Comparator<Score> RANKING = Comparator.comparingInt(Score::dungeonLevel).reversed()
+            .thenComparing(Comparator.comparingInt(Score::playerLevel).reversed())
+            .thenComparingLong(Score::timestamp)
+            .thenComparing(Score::name);
+
+    /**
+     * Restituisce la riga mostrata in classifica, nel formato del vecchio file di testo
+     *
+     * @return la riga, senza ritorno a capo
+     */
+    public String describe() {
+        return name + ", of level " + playerLevel + ", reached the " + dungeonLevel + "th level of the dungeon";
+    }
+}
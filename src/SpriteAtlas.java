@@ -0,0 +1,221 @@
+import java.awt.AlphaComposite;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.GraphicsEnvironment;
+import java.awt.RenderingHints;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import javax.imageio.ImageIO;
+
+/**
+ * Le immagini del gioco, lette una volta sola per processo
+ *
+ * <p>
+ * Ogni file viene decodificato al primo uso e convertito nel formato dello schermo.
+ * Per ogni dimensione delle celle in uso gli sprite vengono ridimensionati una volta sola
+ * e messi uno accanto all'altro in un'unica immagine, l'atlante: disegnarne uno è una copia
+ * senza ridimensionamento da una sola immagine sorgente.
+ */
+public final class SpriteAtlas {
+    /**
+     * Gli sprite del gioco, nell'ordine in cui stanno nell'atlante
+     */
+    public enum Sprite {
+        ZOMBIE("zombie.png"), SKELETON("scheletro.png"), GHOUL("ghoul.png"), WRAITH("wraith.png"),
+        VAMPIRE("vampiro.png"), LICH("lich.png"), DRAGON("drago.png"),
+        PLAYER("eroe.png"), PORTAL("scale.png"),
+        HEALTH("cura.png"), ARMOR("scudo.png"), WEAPON("arma.png");
+
+        /** Il file dell'immagine */
+        private final String path;
+
+        /**
+         * Costruttore di Sprite
+         *
+         * @param file il nome del file nella cartella delle icone
+         */
+        Sprite(String file) {
+            this.path = "src/icone/" + file;
+        }
+
+        /**
+         * Restituisce lo sprite di un tipo di nemico
+         *
+         * @param tipo il tipo del nemico
+         *
+         * @return lo sprite, null per un tipo sconosciuto
+         */
+        public static Sprite forEnemy(char tipo) {
+            return switch (tipo) {
+                case 'Z' -> ZOMBIE;
+                case 'S' -> SKELETON;
+                case 'G' -> GHOUL;
+                case 'W' -> WRAITH;
+                case 'V' -> VAMPIRE;
+                case 'L' -> LICH;
+                case 'D' -> DRAGON;
+                default -> null;
+            };
+        }
+
+        /**
+         * Restituisce lo sprite di un tipo di oggetto
+         *
+         * @param tipo il tipo dell'oggetto
+         *
+         * @return lo sprite, null per un tipo sconosciuto
+         */
+        public static Sprite forItem(char tipo) {
+            return switch (tipo) {
+                case 'H' -> HEALTH;
+                case 'A' -> ARMOR;
+                case 'W' -> WEAPON;
+                default -> null;
+            };
+        }
+    }
+
+    /** Le immagini decodificate, per file */
+    private static final Map<String, BufferedImage> SOURCES = new ConcurrentHashMap<>();
+    /** Le immagini ridimensionate, per file e dimensioni */
+    private static final Map<String, BufferedImage> SCALED = new ConcurrentHashMap<>();
+    /** Gli atlanti, per dimensione delle celle */
+    private static final Map<Integer, SpriteAtlas> ATLASES = new ConcurrentHashMap<>();
+
+    /** Il lato di uno sprite nell'atlante */
+    private final int size;
+    /** L'immagine con tutti gli sprite in fila */
+    private final BufferedImage atlas;
+
+    /**
+     * Costruttore di SpriteAtlas, ridimensiona e impacchetta tutti gli sprite
+     *
+     * @param size il lato di uno sprite
+     */
+    private SpriteAtlas(int size) {
+        this.size = size;
+        Sprite[] sprites = Sprite.values();
+        this.atlas = createImage(size * sprites.length, size, Transparency.TRANSLUCENT);
+        Graphics2D g = atlas.createGraphics();
+        try {
+            g.setComposite(AlphaComposite.Src);
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            for (Sprite sprite : sprites) {
+                BufferedImage source = source(sprite.path);
+                if (source != null) {
+                    g.drawImage(source, sprite.ordinal() * size, 0, size, size, null);
+                }
+            }
+        } finally {
+            g.dispose();
+        }
+    }
+
+    /**
+     * Restituisce l'atlante per una dimensione delle celle, creandolo al primo uso
+     *
+     * @param size il lato di una cella in pixel
+     *
+     * @return l'atlante
+     */
+    public static SpriteAtlas forTileSize(int size) {
+        return ATLASES.computeIfAbsent(size, SpriteAtlas::new);
+    }
+
+    /**
+     * Disegna uno sprite alle dimensioni dell'atlante, senza ridimensionarlo
+     *
+     * @param g il contesto grafico
+     * @param sprite lo sprite, ignorato se null
+     * @param x la x dell'angolo in alto a sinistra
+     * @param y la y dell'angolo in alto a sinistra
+     */
+    public void draw(Graphics g, Sprite sprite, int x, int y) {
+        if (sprite == null) {
+            return;
+        }
+        int sx = sprite.ordinal() * size;
+        g.drawImage(atlas, x, y, x + size, y + size, sx, 0, sx + size, size, null);
+    }
+
+    /**
+     * Restituisce un'immagine qualsiasi già ridimensionata, ad esempio uno sfondo
+     *
+     * @param path il percorso del file
+     * @param width la larghezza voluta
+     * @param height l'altezza voluta
+     *
+     * @return l'immagine, null se il file non si può leggere
+     */
+    public static BufferedImage scaled(String path, int width, int height) {
+        String key = path + "@" + width + "x" + height;
+        BufferedImage cached = SCALED.get(key);
+        if (cached != null) {
+            return cached;
+        }
+        BufferedImage source = source(path);
+        if (source == null) {
+            return null;
+        }
+        BufferedImage image = createImage(width, height, source.getTransparency());
+        Graphics2D g = image.createGraphics();
+        try {
+            g.setComposite(AlphaComposite.Src);
+            g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+            g.drawImage(source, 0, 0, width, height, null);
+        } finally {
+            g.dispose();
+        }
+        SCALED.putIfAbsent(key, image);
+        return SCALED.get(key);
+    }
+
+    /**
+     * Restituisce un'immagine decodificata, leggendo il file al primo uso
+     *
+     * @param path il percorso del file
+     *
+     * @return l'immagine, null se il file non si può leggere
+     */
+    private static BufferedImage source(String path) {
+        BufferedImage cached = SOURCES.get(path);
+        if (cached != null) {
+            return cached;
+        }
+        try {
+            BufferedImage image = ImageIO.read(new File(path));
+            if (image == null) {
+                throw new IOException("formato non riconosciuto");
+            }
+            SOURCES.putIfAbsent(path, image);
+            return SOURCES.get(path);
+        } catch (IOException e) {
+            System.out.println("Errore nel caricamento dell'immagine " + path);
+            return null;
+        }
+    }
+
+    /**
+     * Crea un'immagine nel formato dello schermo, o in ARGB premoltiplicato senza display
+     *
+     * @param width la larghezza
+     * @param height l'altezza
+     * @param transparency la trasparenza richiesta
+     *
+     * @return l'immagine vuota
+     */
+    private static BufferedImage createImage(int width, int height, int transparency) {
+        if (!GraphicsEnvironment.isHeadless()) {
+            GraphicsConfiguration gc = GraphicsEnvironment.getLocalGraphicsEnvironment()
+                    .getDefaultScreenDevice().getDefaultConfiguration();
+            return gc.createCompatibleImage(width, height, transparency);
+        }
+        return new BufferedImage(width, height, transparency == Transparency.OPAQUE
+                ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB_PRE);
+    }
+}
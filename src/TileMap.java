@@ -0,0 +1,33 @@
+/**
+ * Una mappa a celle che si può interrogare per sapere dove si cammina
+ *
+ * <p>
+ * È l'unica cosa che campo visivo, campo delle distanze, posizionamento e movimento
+ * dei nemici chiedono alla mappa, quindi vale sia per una {@link DungeonMap} intera
+ * sia per un {@link ChunkedWorld} generato a pezzi.
+ */
+public interface TileMap {
+    /**
+     * Restituisce il numero di righe
+     *
+     * @return il numero di righe
+     */
+    int getRows();
+
+    /**
+     * Restituisce il numero di colonne
+     *
+     * @return il numero di colonne
+     */
+    int getCols();
+
+    /**
+     * Controlla se una cella è percorribile; fuori dalla mappa non lo è mai
+     *
+     * @param row riga
+     * @param col colonna
+     *
+     * @return true se la cella è pavimento
+     */
+    boolean isWalkable(int row, int col);
+}